@@ -0,0 +1,152 @@
+package Backend;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AdaptiveTimeout class to derive the timeout of the internal requests to each replica from its recent latency.
+ *
+ * Every internal request is timed per replica, and the timeout of the next one is the 99th percentile
+ * of the recent latency times the factor, kept between the minimum and the configured read timeout.
+ * A request that times out counts with the time it waited, so the timeout of a replica that became slower
+ * grows back. Until a replica has enough samples, or if the factor is 0, the configured read timeout is used.
+ */
+public class AdaptiveTimeout {
+    private static final int MINIMUM_SAMPLES = 32;
+    private static final double PERCENTILE = 99;
+    private final LatencyTracker latencyTracker;
+    private final AtomicLong timeouts;
+    private volatile double factor;
+    private volatile int minimum;
+    private volatile int maximum;
+
+    /**
+     * AdaptiveTimeout constructor.
+     */
+    public AdaptiveTimeout() {
+        this.latencyTracker = new LatencyTracker();
+        this.timeouts = new AtomicLong();
+        this.factor = 3;
+        this.minimum = 100;
+        this.maximum = 5000;
+    }
+
+    /**
+     * Factor setter, the multiple of the 99th percentile latency to wait, 0 to always use the read timeout.
+     *
+     * @param factor
+     */
+    public void setFactor(double factor) {
+        this.factor = Math.max(0, factor);
+    }
+
+    /**
+     * Minimum setter in milliseconds, the shortest timeout a replica can get.
+     *
+     * @param minimum
+     */
+    public void setMinimum(int minimum) {
+        this.minimum = minimum;
+    }
+
+    /**
+     * Maximum setter in milliseconds, the configured read timeout of the internal requests.
+     *
+     * @param maximum
+     */
+    public void setMaximum(int maximum) {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Return if the timeouts adapt to the latency.
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return this.factor > 0;
+    }
+
+    /**
+     * Return the timeout of the next internal request to a replica in milliseconds.
+     *
+     * @param id
+     * @return int
+     */
+    public int getTimeout(String id) {
+        if (!isEnabled() || this.latencyTracker.getCount(id) < MINIMUM_SAMPLES) {
+            return this.maximum;
+        }
+
+        long latency = this.latencyTracker.getPercentile(id, PERCENTILE);
+        long timeout = (long) Math.ceil(latency * this.factor / TimeUnit.MILLISECONDS.toNanos(1));
+
+        return (int) Math.max(Math.min(this.minimum, this.maximum), Math.min(timeout, this.maximum));
+    }
+
+    /**
+     * Time an internal request to a replica once its future completes.
+     *
+     * @param id
+     * @param start
+     * @param future
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<T> track(String id, long start, CompletableFuture<T> future) {
+        future.whenComplete((response, error) -> record(id, start, error));
+
+        return future;
+    }
+
+    /**
+     * Record the latency of an internal request to a replica that answered or timed out.
+     * Requests that failed otherwise, such as a refused connection, say nothing about the latency and are skipped.
+     *
+     * @param id
+     * @param start
+     * @param error
+     */
+    public void record(String id, long start, Throwable error) {
+        Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                ? error.getCause() : error;
+
+        if (cause instanceof SocketTimeoutException) {
+            this.timeouts.incrementAndGet();
+        } else if (cause != null) {
+            return;
+        }
+
+        this.latencyTracker.record(id, System.nanoTime() - start);
+    }
+
+    /**
+     * Return the settings and the current timeout of each replica in Json format, in milliseconds.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("enabled", isEnabled());
+        metrics.addProperty("factor", this.factor);
+        metrics.addProperty("minimum", this.minimum);
+        metrics.addProperty("maximum", this.maximum);
+        metrics.addProperty("timeouts", this.timeouts.get());
+
+        JsonObject peers = this.latencyTracker.getMetrics();
+        for (Map.Entry<String, JsonElement> entry : peers.entrySet()) {
+            JsonObject peer = entry.getValue().getAsJsonObject();
+            peer.addProperty("samples", this.latencyTracker.getCount(entry.getKey()));
+            peer.addProperty("timeout", getTimeout(entry.getKey()));
+        }
+        metrics.add("peers", peers);
+
+        return metrics;
+    }
+}
@@ -0,0 +1,82 @@
+package Backend;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * AdminController to expose internal metrics of the replica.
+ */
+@RestController
+public class AdminController {
+
+    /**
+     * Return the metrics of the pooled connections to other servers.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/pool", method = RequestMethod.GET, produces = "application/json")
+    public String pool() {
+        return Driver.httpClient.getMetrics().toString();
+    }
+
+    /**
+     * Return the metrics of the fan-out executor for the requests to other replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/fanout", method = RequestMethod.GET, produces = "application/json")
+    public String fanOut() {
+        return Driver.fanOut.getMetrics().toString();
+    }
+
+    /**
+     * Return the metrics of the internal RPC requests to other replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/rpc", method = RequestMethod.GET, produces = "application/json")
+    public String rpc() {
+        return Driver.rpcClient.getMetrics().toString();
+    }
+
+    /**
+     * Return the metrics of the replication batches to other replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/replication", method = RequestMethod.GET, produces = "application/json")
+    public String replication() {
+        return Driver.replicationPipeline.getMetrics().toString();
+    }
+
+    /**
+     * Return the metrics of the hedged reads and the read latency of each replica.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/hedge", method = RequestMethod.GET, produces = "application/json")
+    public String hedge() {
+        return Driver.hedgePolicy.getMetrics().toString();
+    }
+
+    /**
+     * Return the adaptive timeout and the latency of the internal requests to each replica.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/timeouts", method = RequestMethod.GET, produces = "application/json")
+    public String timeouts() {
+        return Driver.adaptiveTimeout.getMetrics().toString();
+    }
+
+    /**
+     * Return the state of the circuit to each replica.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/circuits", method = RequestMethod.GET, produces = "application/json")
+    public String circuits() {
+        return Driver.circuitBreaker.getMetrics().toString();
+    }
+}
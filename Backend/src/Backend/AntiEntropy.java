@@ -0,0 +1,183 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AntiEntropy class to bound how far the replicas of a preference list drift apart.
+ *
+ * Per interval, compare the Merkle tree roots of every bucket shared with each peer.
+ * For a bucket that differs, compare the leaves, then the digests of the keys in the leaves that differ,
+ * and exchange only the objects whose digests differ. Each side keeps the copy that is not older,
+ * divergent versions are left for the client to reconcile on read.
+ *
+ * Only the replica with the smaller id starts the exchange, so each pair is compared once per round.
+ */
+public class AntiEntropy extends HttpRequest implements Runnable {
+    private final long interval;
+
+    /**
+     * AntiEntropy constructor.
+     *
+     * @param interval
+     */
+    public AntiEntropy(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Compare with the peers per interval until the server stops.
+     */
+    @Override
+    public void run() {
+        while (Driver.alive) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException ie) {
+                ie.printStackTrace();
+            }
+
+            synchronize();
+        }
+    }
+
+    /**
+     * Group the buckets this replica is responsible for by the peers sharing them, and compare with each peer.
+     * Unreachable peers are skipped, gossip takes care of removing them.
+     */
+    public void synchronize() {
+        Map<String, List<Integer>> sharedBuckets = new HashMap<>();
+
+        for (int hashKey = 0; hashKey < Driver.ring.getMaximumNumberOfReplicas(); hashKey++) {
+            if (Driver.ring.checkRedirect(hashKey) != null) {
+                continue;
+            }
+
+            for (String[] peerInfo : Driver.ring.getPreferenceList(hashKey)) {
+                if (Driver.replica.getId().compareTo(peerInfo[0]) < 0) {
+                    sharedBuckets.computeIfAbsent(peerInfo[1], k -> new ArrayList<>()).add(hashKey);
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : sharedBuckets.entrySet()) {
+            try {
+                synchronize(entry.getKey(), entry.getValue());
+            } catch (IOException | JsonParseException ignored) {}
+        }
+    }
+
+    /**
+     * Send the roots of the shared buckets to a peer, and synchronize the buckets it reports as different.
+     *
+     * @param address
+     * @param hashKeys
+     * @throws IOException
+     */
+    private void synchronize(String address, List<Integer> hashKeys) throws IOException {
+        JsonArray keys = new JsonArray();
+        JsonArray roots = new JsonArray();
+        for (int hashKey : hashKeys) {
+            keys.add(hashKey);
+            roots.add(Driver.dataStorage.getMerkleRoot(hashKey));
+        }
+
+        JsonObject requestBody = new JsonObject();
+        requestBody.add("hashKeys", keys);
+        requestBody.add("roots", roots);
+
+        JsonArray different = post(address + "/antientropy/roots", requestBody).get("hashKeys").getAsJsonArray();
+        for (int i = 0; i < different.size(); i++) {
+            synchronizeBucket(address, different.get(i).getAsInt());
+        }
+    }
+
+    /**
+     * Compare the leaves and the key digests of a bucket with a peer, then exchange the objects that differ.
+     *
+     * @param address
+     * @param hashKey
+     * @throws IOException
+     */
+    private void synchronizeBucket(String address, int hashKey) throws IOException {
+        JsonArray leaves = new JsonArray();
+        for (long leaf : Driver.dataStorage.getMerkleLeaves(hashKey)) {
+            leaves.add(leaf);
+        }
+
+        JsonObject requestBody = new JsonObject();
+        requestBody.add("leaves", leaves);
+        JsonObject response = post(address + "/antientropy/leaves/" + hashKey, requestBody);
+
+        Set<Integer> differentLeaves = new HashSet<>();
+        JsonArray leafArray = response.get("leaves").getAsJsonArray();
+        for (int i = 0; i < leafArray.size(); i++) {
+            differentLeaves.add(leafArray.get(i).getAsInt());
+        }
+
+        JsonObject theirDigests = response.get("digests").getAsJsonObject();
+        Map<String, Long> myDigests = Driver.dataStorage.getDigests(hashKey, differentLeaves);
+
+        List<String> toSend = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : myDigests.entrySet()) {
+            JsonElement theirs = theirDigests.get(entry.getKey());
+
+            if (theirs == null || theirs.getAsLong() != entry.getValue()) {
+                toSend.add(entry.getKey());
+            }
+        }
+
+        JsonArray wanted = new JsonArray();
+        for (Map.Entry<String, JsonElement> entry : theirDigests.entrySet()) {
+            Long mine = myDigests.get(entry.getKey());
+
+            if (mine == null || mine != entry.getValue().getAsLong()) {
+                wanted.add(entry.getKey());
+            }
+        }
+
+        if (toSend.isEmpty() && wanted.size() == 0) {
+            return;
+        }
+
+        requestBody = new JsonObject();
+        requestBody.add("data", Driver.dataStorage.getObjects(hashKey, toSend));
+        requestBody.add("want", wanted);
+        JsonArray received = post(address + "/antientropy/exchange/" + hashKey, requestBody)
+                .get("data").getAsJsonArray();
+
+        Driver.dataStorage.storeNewerObjects(hashKey, received);
+
+        System.out.println("[AntiEntropy] Bucket " + hashKey + " with " + address + ": sent " +
+                toSend.size() + " and received " + received.size() + " object(s)");
+    }
+
+    /**
+     * Helper method to send a POST request and return the Json response.
+     *
+     * @param url
+     * @param requestBody
+     * @return JsonObject
+     * @throws IOException
+     */
+    private JsonObject post(String url, JsonObject requestBody) throws IOException {
+        HttpClient.Response response = doPostRequest(url, requestBody);
+
+        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException();
+        }
+
+        return parseResponse(response).getAsJsonObject();
+    }
+}
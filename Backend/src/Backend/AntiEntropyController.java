@@ -0,0 +1,135 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * AntiEntropyController class to answer the anti-entropy comparisons started by other replicas.
+ */
+@RestController
+public class AntiEntropyController extends HttpRequest {
+
+    /**
+     * Compare the Merkle tree roots in the request body with the local ones,
+     * and response with the hashKeys of the buckets that differ.
+     *
+     * @param request
+     * @param response
+     * @return String
+     */
+    @RequestMapping(value = "/antientropy/roots", method = RequestMethod.POST, produces = "application/json")
+    public String roots(@RequestBody String request, HttpServletResponse response) {
+        try {
+            JsonObject body = parseJson(request).getAsJsonObject();
+            JsonArray hashKeys = body.get("hashKeys").getAsJsonArray();
+            JsonArray roots = body.get("roots").getAsJsonArray();
+            JsonArray different = new JsonArray();
+
+            for (int i = 0; i < hashKeys.size(); i++) {
+                int hashKey = hashKeys.get(i).getAsInt();
+
+                if (Driver.dataStorage.getMerkleRoot(hashKey) != roots.get(i).getAsLong()) {
+                    different.add(hashKey);
+                }
+            }
+
+            JsonObject result = new JsonObject();
+            result.add("hashKeys", different);
+
+            return result.toString();
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Compare the Merkle tree leaves of a bucket in the request body with the local ones,
+     * and response with the leaves that differ and the digests of the local keys in them.
+     *
+     * @param hashKey
+     * @param request
+     * @param response
+     * @return String
+     */
+    @RequestMapping(value = "/antientropy/leaves/{hashKey}", method = RequestMethod.POST, produces = "application/json")
+    public String leaves(@PathVariable("hashKey") int hashKey, @RequestBody String request
+            , HttpServletResponse response) {
+        try {
+            JsonArray leaves = parseJson(request).getAsJsonObject().get("leaves").getAsJsonArray();
+            long[] myLeaves = Driver.dataStorage.getMerkleLeaves(hashKey);
+            Set<Integer> differentLeaves = new HashSet<>();
+
+            for (int i = 0; i < myLeaves.length; i++) {
+                if (myLeaves[i] != leaves.get(i).getAsLong()) {
+                    differentLeaves.add(i);
+                }
+            }
+
+            JsonArray leafArray = new JsonArray();
+            for (int leaf : differentLeaves) {
+                leafArray.add(leaf);
+            }
+
+            JsonObject digests = new JsonObject();
+            for (Map.Entry<String, Long> entry : Driver.dataStorage.getDigests(hashKey, differentLeaves).entrySet()) {
+                digests.addProperty(entry.getKey(), entry.getValue());
+            }
+
+            JsonObject result = new JsonObject();
+            result.add("leaves", leafArray);
+            result.add("digests", digests);
+
+            return result.toString();
+        } catch (JsonParseException | IllegalStateException | NullPointerException | IndexOutOfBoundsException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+
+    /**
+     * Store the objects in the request body that are not older than the local ones,
+     * and response with the local objects the other replica wants.
+     *
+     * @param hashKey
+     * @param request
+     * @param response
+     * @return String
+     */
+    @RequestMapping(value = "/antientropy/exchange/{hashKey}", method = RequestMethod.POST, produces = "application/json")
+    public String exchange(@PathVariable("hashKey") int hashKey, @RequestBody String request
+            , HttpServletResponse response) {
+        try {
+            JsonObject body = parseJson(request).getAsJsonObject();
+            JsonArray wanted = body.get("want").getAsJsonArray();
+
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < wanted.size(); i++) {
+                keys.add(wanted.get(i).getAsString());
+            }
+
+            JsonObject result = new JsonObject();
+            result.add("data", Driver.dataStorage.getObjects(hashKey, keys));
+
+            JsonArray received = body.get("data").getAsJsonArray();
+            Driver.dataStorage.storeNewerObjects(hashKey, received);
+
+            System.out.println("[AntiEntropy] Bucket " + hashKey + ": received " + received.size() +
+                    " and sent " + keys.size() + " object(s)");
+
+            return result.toString();
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+    }
+}
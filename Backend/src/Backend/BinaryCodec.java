@@ -0,0 +1,820 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BinaryCodec class to encode the bodies of internal RPC requests and responses in a compact binary format
+ * instead of Json text.
+ *
+ * A body starts with the codec version, an empty body has no bytes at all. Lengths, counts, hashKeys and
+ * timestamps are varints, and strings are length-prefixed UTF-8. Replica ids are dictionary-encoded:
+ * the first time an id appears in a body it is written in full after a 0, afterwards only as its index plus one.
+ *
+ * Object: flags (1 = replicate), number of items, items, clocks.
+ * Clocks: number of clocks, (node, timestamp) pairs.
+ * Replicate write: flags, op (0 = add, 1 = remove), item, clocks.
+ * Hinted record: node, hashKey, key, replicate write.
+ * Replicate batch: number of writes, (hashKey, key, replicate write) triples, answered by the status of each write.
+ * Buckets: number of buckets, (hashKey, number of objects, (key, object) pairs).
+ * Anything else, like the membership, is written as a tagged Json tree.
+ */
+public class BinaryCodec {
+    static final byte VERSION = 1;
+    private static final int REPLICATE = 1;
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte ARRAY = 5;
+    private static final byte OBJECT = 6;
+
+    /**
+     * Encode the body of a request for an op.
+     *
+     * @param out
+     * @param op
+     * @param body
+     */
+    static void encodeRequest(Writer out, byte op, JsonElement body) {
+        if (body == null) {
+            return;
+        }
+
+        out.putByte(VERSION);
+        switch (op) {
+            case RpcServer.PUT:
+                writeReplicate(out, body.getAsJsonObject());
+                break;
+            case RpcServer.MERGE:
+                writeObject(out, body.getAsJsonObject());
+                break;
+            case RpcServer.HINTED_PUT:
+                writeHinted(out, body.getAsJsonObject());
+                break;
+            case RpcServer.GOSSIP:
+                writeGossip(out, body.getAsJsonObject());
+                break;
+            case RpcServer.RECEIVER:
+                writeBuckets(out, body.getAsJsonArray());
+                break;
+            case RpcServer.PUT_BATCH:
+                writeReplicates(out, body.getAsJsonArray());
+                break;
+            default:
+                writeJson(out, body);
+        }
+    }
+
+    /**
+     * Decode the body of a request for an op, null if it is empty.
+     *
+     * @param in
+     * @param op
+     * @return JsonElement
+     * @throws IllegalArgumentException
+     */
+    static JsonElement decodeRequest(Reader in, byte op) throws IllegalArgumentException {
+        if (!checkVersion(in)) {
+            return null;
+        }
+
+        switch (op) {
+            case RpcServer.PUT:
+                return readReplicate(in);
+            case RpcServer.MERGE:
+                return readObject(in);
+            case RpcServer.HINTED_PUT:
+                return readHinted(in);
+            case RpcServer.GOSSIP:
+                return readGossip(in);
+            case RpcServer.RECEIVER:
+                return readBuckets(in);
+            case RpcServer.PUT_BATCH:
+                return readReplicates(in);
+            default:
+                return readJson(in);
+        }
+    }
+
+    /**
+     * Encode the body of a response for an op.
+     *
+     * @param out
+     * @param op
+     * @param status
+     * @param body
+     */
+    static void encodeResponse(Writer out, byte op, int status, JsonElement body) {
+        if (body == null) {
+            return;
+        }
+
+        out.putByte(VERSION);
+        if (op == RpcServer.GET && status == 200) {
+            writeObject(out, body.getAsJsonObject());
+        } else if (op == RpcServer.PUT_BATCH && status == 200) {
+            writeStatuses(out, body.getAsJsonArray());
+        } else {
+            writeJson(out, body);
+        }
+    }
+
+    /**
+     * Decode the body of a response for an op, null if it is empty.
+     *
+     * @param in
+     * @param op
+     * @param status
+     * @return JsonElement
+     * @throws IllegalArgumentException
+     */
+    static JsonElement decodeResponse(Reader in, byte op, int status) throws IllegalArgumentException {
+        if (!checkVersion(in)) {
+            return null;
+        }
+
+        if (op == RpcServer.GET && status == 200) {
+            return readObject(in);
+        } else if (op == RpcServer.PUT_BATCH && status == 200) {
+            return readStatuses(in);
+        }
+
+        return readJson(in);
+    }
+
+    /**
+     * Helper method to read the version of a body, return false if the body is empty.
+     *
+     * @param in
+     * @return boolean
+     * @throws IllegalArgumentException
+     */
+    private static boolean checkVersion(Reader in) throws IllegalArgumentException {
+        if (!in.hasRemaining()) {
+            return false;
+        }
+
+        byte version = in.getByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported codec version " + version);
+        }
+
+        return true;
+    }
+
+    /**
+     * Helper method to write the clocks of an object or a write.
+     *
+     * @param out
+     * @param clocks
+     */
+    private static void writeClocks(Writer out, JsonArray clocks) {
+        out.putVarint(clocks.size());
+        for (int i = 0; i < clocks.size(); i++) {
+            JsonObject clock = clocks.get(i).getAsJsonObject();
+            out.putNode(clock.get("node").getAsString());
+            out.putVarint(clock.get("timestamp").getAsInt());
+        }
+    }
+
+    /**
+     * Helper method to read the clocks of an object or a write.
+     *
+     * @param in
+     * @return JsonArray
+     */
+    private static JsonArray readClocks(Reader in) {
+        int count = in.getVarint();
+        JsonArray clocks = new JsonArray();
+
+        for (int i = 0; i < count; i++) {
+            JsonObject clock = new JsonObject();
+            clock.addProperty("node", in.getNode());
+            clock.addProperty("timestamp", in.getVarint());
+            clocks.add(clock);
+        }
+
+        return clocks;
+    }
+
+    /**
+     * Helper method to write an object with its items and clocks.
+     *
+     * @param out
+     * @param object
+     */
+    private static void writeObject(Writer out, JsonObject object) {
+        JsonArray items = object.get("items").getAsJsonArray();
+
+        out.putByte((byte) (object.get("replicate") != null ? REPLICATE : 0));
+        out.putVarint(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            out.putString(items.get(i).getAsString());
+        }
+        writeClocks(out, object.get("clocks").getAsJsonArray());
+    }
+
+    /**
+     * Helper method to read an object with its items and clocks.
+     *
+     * @param in
+     * @return JsonObject
+     */
+    private static JsonObject readObject(Reader in) {
+        int flags = in.getByte();
+        int count = in.getVarint();
+        JsonObject object = new JsonObject();
+        JsonArray items = new JsonArray();
+
+        for (int i = 0; i < count; i++) {
+            items.add(in.getString());
+        }
+        object.add("items", items);
+        object.add("clocks", readClocks(in));
+        if ((flags & REPLICATE) != 0) {
+            object.addProperty("replicate", true);
+        }
+
+        return object;
+    }
+
+    /**
+     * Helper method to write a replicated add or remove.
+     *
+     * @param out
+     * @param replicate
+     */
+    private static void writeReplicate(Writer out, JsonObject replicate) {
+        String op = replicate.get("op").getAsString();
+
+        out.putByte((byte) (replicate.get("replicate") != null ? REPLICATE : 0));
+        switch (op) {
+            case "add":
+                out.putByte((byte) 0);
+                break;
+            case "remove":
+                out.putByte((byte) 1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op " + op);
+        }
+        out.putString(replicate.get("item").getAsString());
+        writeClocks(out, replicate.get("clocks").getAsJsonArray());
+    }
+
+    /**
+     * Helper method to read a replicated add or remove.
+     *
+     * @param in
+     * @return JsonObject
+     */
+    private static JsonObject readReplicate(Reader in) {
+        int flags = in.getByte();
+        JsonObject replicate = new JsonObject();
+
+        replicate.addProperty("op", (in.getByte() == 0) ? "add" : "remove");
+        replicate.addProperty("item", in.getString());
+        replicate.add("clocks", readClocks(in));
+        if ((flags & REPLICATE) != 0) {
+            replicate.addProperty("replicate", true);
+        }
+
+        return replicate;
+    }
+
+    /**
+     * Helper method to write a batch of replicated writes, each with its hashKey and key.
+     *
+     * @param out
+     * @param replicates
+     */
+    private static void writeReplicates(Writer out, JsonArray replicates) {
+        out.putVarint(replicates.size());
+        for (int i = 0; i < replicates.size(); i++) {
+            JsonObject entry = replicates.get(i).getAsJsonObject();
+            out.putVarint(entry.get("hashKey").getAsInt());
+            out.putString(entry.get("key").getAsString());
+            writeReplicate(out, entry.get("data").getAsJsonObject());
+        }
+    }
+
+    /**
+     * Helper method to read a batch of replicated writes.
+     *
+     * @param in
+     * @return JsonArray
+     */
+    private static JsonArray readReplicates(Reader in) {
+        int count = in.getVarint();
+        JsonArray replicates = new JsonArray();
+
+        for (int i = 0; i < count; i++) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("hashKey", in.getVarint());
+            entry.addProperty("key", in.getString());
+            entry.add("data", readReplicate(in));
+            replicates.add(entry);
+        }
+
+        return replicates;
+    }
+
+    /**
+     * Helper method to write the status of each write in a batch.
+     *
+     * @param out
+     * @param statuses
+     */
+    private static void writeStatuses(Writer out, JsonArray statuses) {
+        out.putVarint(statuses.size());
+        for (int i = 0; i < statuses.size(); i++) {
+            out.putVarint(statuses.get(i).getAsInt());
+        }
+    }
+
+    /**
+     * Helper method to read the status of each write in a batch.
+     *
+     * @param in
+     * @return JsonArray
+     */
+    private static JsonArray readStatuses(Reader in) {
+        int count = in.getVarint();
+        JsonArray statuses = new JsonArray();
+
+        for (int i = 0; i < count; i++) {
+            statuses.add(in.getVarint());
+        }
+
+        return statuses;
+    }
+
+    /**
+     * Helper method to write a hinted record, a replicated write with the replica it is meant for.
+     *
+     * @param out
+     * @param hinted
+     */
+    private static void writeHinted(Writer out, JsonObject hinted) {
+        out.putNode(hinted.get("id").getAsString());
+        out.putVarint(hinted.get("hashKey").getAsInt());
+        out.putString(hinted.get("key").getAsString());
+        writeReplicate(out, hinted);
+    }
+
+    /**
+     * Helper method to read a hinted record.
+     *
+     * @param in
+     * @return JsonObject
+     */
+    private static JsonObject readHinted(Reader in) {
+        String id = in.getNode();
+        int hashKey = in.getVarint();
+        String key = in.getString();
+        JsonObject hinted = readReplicate(in);
+
+        hinted.addProperty("id", id);
+        hinted.addProperty("hashKey", hashKey);
+        hinted.addProperty("key", key);
+
+        return hinted;
+    }
+
+    /**
+     * Helper method to write a gossip request, the membership and the hinted records sent along with it.
+     *
+     * @param out
+     * @param gossip
+     */
+    private static void writeGossip(Writer out, JsonObject gossip) {
+        JsonObject membership = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : gossip.entrySet()) {
+            if (!entry.getKey().equals("hintedData")) {
+                membership.add(entry.getKey(), entry.getValue());
+            }
+        }
+        writeJson(out, membership);
+
+        JsonArray hintedData = (gossip.get("hintedData") == null)
+                ? new JsonArray() : gossip.get("hintedData").getAsJsonArray();
+        out.putVarint(hintedData.size());
+        for (int i = 0; i < hintedData.size(); i++) {
+            writeHinted(out, hintedData.get(i).getAsJsonObject());
+        }
+    }
+
+    /**
+     * Helper method to read a gossip request.
+     *
+     * @param in
+     * @return JsonObject
+     */
+    private static JsonObject readGossip(Reader in) {
+        JsonObject gossip = readJson(in).getAsJsonObject();
+
+        int count = in.getVarint();
+        if (count > 0) {
+            JsonArray hintedData = new JsonArray();
+            for (int i = 0; i < count; i++) {
+                hintedData.add(readHinted(in));
+            }
+            gossip.add("hintedData", hintedData);
+        }
+
+        return gossip;
+    }
+
+    /**
+     * Helper method to write the buckets of a transfer.
+     *
+     * @param out
+     * @param buckets
+     */
+    private static void writeBuckets(Writer out, JsonArray buckets) {
+        out.putVarint(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            JsonObject bucket = buckets.get(i).getAsJsonObject();
+            JsonArray dataArray = bucket.get("data").getAsJsonArray();
+
+            out.putVarint(bucket.get("hashKey").getAsInt());
+            out.putVarint(dataArray.size());
+            for (int j = 0; j < dataArray.size(); j++) {
+                JsonObject singleData = dataArray.get(j).getAsJsonObject();
+                out.putString(singleData.get("key").getAsString());
+                writeObject(out, singleData.get("object").getAsJsonObject());
+            }
+        }
+    }
+
+    /**
+     * Helper method to read the buckets of a transfer.
+     *
+     * @param in
+     * @return JsonArray
+     */
+    private static JsonArray readBuckets(Reader in) {
+        int bucketCount = in.getVarint();
+        JsonArray buckets = new JsonArray();
+
+        for (int i = 0; i < bucketCount; i++) {
+            JsonObject bucket = new JsonObject();
+            bucket.addProperty("hashKey", in.getVarint());
+
+            int count = in.getVarint();
+            JsonArray dataArray = new JsonArray();
+            for (int j = 0; j < count; j++) {
+                JsonObject singleData = new JsonObject();
+                singleData.addProperty("key", in.getString());
+                singleData.add("object", readObject(in));
+                dataArray.add(singleData);
+            }
+            bucket.add("data", dataArray);
+
+            buckets.add(bucket);
+        }
+
+        return buckets;
+    }
+
+    /**
+     * Helper method to write any Json tree, numbers are kept as their text so no precision is lost.
+     *
+     * @param out
+     * @param element
+     */
+    private static void writeJson(Writer out, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            out.putByte(NULL);
+        } else if (element.isJsonObject()) {
+            out.putByte(OBJECT);
+            out.putVarint(element.getAsJsonObject().size());
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                out.putString(entry.getKey());
+                writeJson(out, entry.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            out.putByte(ARRAY);
+            out.putVarint(element.getAsJsonArray().size());
+            for (JsonElement child : element.getAsJsonArray()) {
+                writeJson(out, child);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+            if (primitive.isBoolean()) {
+                out.putByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                out.putByte(NUMBER);
+                out.putString(primitive.getAsString());
+            } else {
+                out.putByte(STRING);
+                out.putString(primitive.getAsString());
+            }
+        }
+    }
+
+    /**
+     * Helper method to read any Json tree.
+     *
+     * @param in
+     * @return JsonElement
+     * @throws IllegalArgumentException
+     */
+    private static JsonElement readJson(Reader in) throws IllegalArgumentException {
+        byte tag = in.getByte();
+
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case NUMBER:
+                return new JsonPrimitive(new BigDecimal(in.getString()));
+            case STRING:
+                return new JsonPrimitive(in.getString());
+            case ARRAY:
+                int size = in.getVarint();
+                JsonArray array = new JsonArray();
+                for (int i = 0; i < size; i++) {
+                    array.add(readJson(in));
+                }
+                return array;
+            case OBJECT:
+                int count = in.getVarint();
+                JsonObject object = new JsonObject();
+                for (int i = 0; i < count; i++) {
+                    String name = in.getString();
+                    object.add(name, readJson(in));
+                }
+                return object;
+            default:
+                throw new IllegalArgumentException("Unknown Json tag " + tag);
+        }
+    }
+
+    /**
+     * Nested Writer class to write a body straight into a ByteBuffer that grows when it is full.
+     */
+    static class Writer {
+        private final Map<String, Integer> nodes;
+        private ByteBuffer buffer;
+
+        /**
+         * Writer constructor.
+         *
+         * @param capacity
+         */
+        Writer(int capacity) {
+            this.nodes = new HashMap<>();
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * Write a byte.
+         *
+         * @param value
+         */
+        void putByte(byte value) {
+            ensure(1);
+            this.buffer.put(value);
+        }
+
+        /**
+         * Write a short.
+         *
+         * @param value
+         */
+        void putShort(short value) {
+            ensure(2);
+            this.buffer.putShort(value);
+        }
+
+        /**
+         * Write an int.
+         *
+         * @param value
+         */
+        void putInt(int value) {
+            ensure(4);
+            this.buffer.putInt(value);
+        }
+
+        /**
+         * Write a long.
+         *
+         * @param value
+         */
+        void putLong(long value) {
+            ensure(8);
+            this.buffer.putLong(value);
+        }
+
+        /**
+         * Write raw bytes.
+         *
+         * @param bytes
+         */
+        void putBytes(byte[] bytes) {
+            ensure(bytes.length);
+            this.buffer.put(bytes);
+        }
+
+        /**
+         * Write an int in 1 to 5 bytes, 7 bits per byte with the high bit set on every byte but the last.
+         *
+         * @param value
+         */
+        void putVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                this.buffer.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            this.buffer.put((byte) value);
+        }
+
+        /**
+         * Write a length-prefixed UTF-8 string.
+         *
+         * @param value
+         */
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            putBytes(bytes);
+        }
+
+        /**
+         * Write a replica id, in full the first time it appears and as its index afterwards.
+         *
+         * @param node
+         */
+        void putNode(String node) {
+            Integer index = this.nodes.get(node);
+
+            if (index == null) {
+                this.nodes.put(node, this.nodes.size());
+                putVarint(0);
+                putString(node);
+            } else {
+                putVarint(index + 1);
+            }
+        }
+
+        /**
+         * Return the position, the number of bytes written so far.
+         *
+         * @return int
+         */
+        int position() {
+            return this.buffer.position();
+        }
+
+        /**
+         * Flip and return the buffer, the writer must not be used afterwards.
+         *
+         * @return ByteBuffer
+         */
+        ByteBuffer finish() {
+            this.buffer.flip();
+
+            return this.buffer;
+        }
+
+        /**
+         * Helper method to grow the buffer when it cannot take more bytes.
+         *
+         * @param length
+         */
+        private void ensure(int length) {
+            if (this.buffer.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2
+                        , this.buffer.position() + length));
+                this.buffer.flip();
+                larger.put(this.buffer);
+                this.buffer = larger;
+            }
+        }
+    }
+
+    /**
+     * Nested Reader class to read a body from a ByteBuffer.
+     */
+    static class Reader {
+        private final List<String> nodes;
+        private final ByteBuffer buffer;
+
+        /**
+         * Reader constructor, reading from the position of the buffer.
+         *
+         * @param buffer
+         */
+        Reader(ByteBuffer buffer) {
+            this.nodes = new ArrayList<>();
+            this.buffer = buffer;
+        }
+
+        /**
+         * True means there are bytes left.
+         *
+         * @return boolean
+         */
+        boolean hasRemaining() {
+            return this.buffer.hasRemaining();
+        }
+
+        /**
+         * Read a byte.
+         *
+         * @return byte
+         */
+        byte getByte() {
+            return this.buffer.get();
+        }
+
+        /**
+         * Read an int written as a varint.
+         *
+         * @return int
+         * @throws IllegalArgumentException
+         */
+        int getVarint() throws IllegalArgumentException {
+            int value = 0;
+
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = this.buffer.get();
+                value |= (b & 0x7f) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        /**
+         * Read a length-prefixed UTF-8 string.
+         *
+         * @return String
+         */
+        String getString() {
+            int length = getVarint();
+            if (length > this.buffer.remaining()) {
+                throw new IllegalArgumentException("String longer than the body");
+            }
+
+            String value;
+            if (this.buffer.hasArray()) {
+                value = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position()
+                        , length, StandardCharsets.UTF_8);
+                this.buffer.position(this.buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                this.buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            return value;
+        }
+
+        /**
+         * Read a replica id.
+         *
+         * @return String
+         * @throws IllegalArgumentException
+         */
+        String getNode() throws IllegalArgumentException {
+            int ref = getVarint();
+
+            if (ref == 0) {
+                String node = getString();
+                this.nodes.add(node);
+
+                return node;
+            }
+
+            if (ref < 0 || ref > this.nodes.size()) {
+                throw new IllegalArgumentException("Unknown node reference " + ref);
+            }
+
+            return this.nodes.get(ref - 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package Backend;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BlockCache class to keep the most recently used decoded segment blocks on the heap.
+ */
+public class BlockCache {
+    private final Map<Long, Segment.Block> blocks;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * BlockCache constructor with the maximum number of blocks to keep.
+     *
+     * @param capacity
+     */
+    public BlockCache(int capacity) {
+        this.blocks = new LinkedHashMap<Long, Segment.Block>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Segment.Block> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Return the cached block, or null if it is not cached.
+     *
+     * @param id
+     * @return Segment.Block
+     */
+    public Segment.Block get(long id) {
+        Segment.Block block;
+
+        synchronized (this.blocks) {
+            block = this.blocks.get(id);
+        }
+
+        if (block == null) {
+            this.misses.incrementAndGet();
+        } else {
+            this.hits.incrementAndGet();
+        }
+
+        return block;
+    }
+
+    /**
+     * Cache a block.
+     *
+     * @param id
+     * @param block
+     */
+    public void put(long id, Segment.Block block) {
+        synchronized (this.blocks) {
+            this.blocks.put(id, block);
+        }
+    }
+
+    /**
+     * Return the number of lookups served from the cache.
+     *
+     * @return long
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Return the number of lookups that had to read the disk.
+     *
+     * @return long
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+}
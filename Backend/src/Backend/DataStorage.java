@@ -3,25 +3,68 @@ package Backend;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * DataStorage class to store objects.
+ *
+ * Objects are kept by a pluggable StorageEngine and never behind a global lock.
+ * Each hashKey is guarded by one of a fixed number of striped locks:
+ * single object operations share the stripe, while transfer and restore
+ * take it exclusively for the buckets they touch only.
+ *
+ * After a restart the buckets of the last snapshot stay in the memory-mapped file,
+ * and each one is loaded into the engine the first time it is touched.
+ *
+ * A MerkleTree of each bucket is built on first use by anti-entropy, and kept up to date
+ * by every mutation after that. Dropping or replacing a bucket drops its tree.
  */
 public class DataStorage {
+    private static final int NUMBER_OF_STRIPES = 64;
     private final ReentrantReadWriteLock lock;
-    private final Map<Integer, Map<String, MyObject>> buckets;
+    private final ReentrantReadWriteLock[] stripes;
     private final Map<String, JsonArray> histedData;
+    private final Set<Integer> unloaded;
+    private final ConcurrentMap<Integer, MerkleTree> trees;
+    private StorageEngine engine;
+    private Snapshot snapshot;
 
     /**
-     * DataStorage constructor to initialize the buckets.
+     * DataStorage constructor to initialize the buckets with the in-memory engine.
      */
     public DataStorage() {
         this.lock = new ReentrantReadWriteLock();
-        this.buckets = new HashMap<>();
+        this.stripes = new ReentrantReadWriteLock[NUMBER_OF_STRIPES];
+        for (int i = 0; i < NUMBER_OF_STRIPES; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
         this.histedData = new HashMap<>();
+        this.unloaded = ConcurrentHashMap.newKeySet();
+        this.trees = new ConcurrentHashMap<>();
+        this.engine = new MemoryEngine();
+    }
+
+    /**
+     * Storage engine setter, must be called before any object is stored.
+     *
+     * @param engine
+     */
+    public void setEngine(StorageEngine engine) {
+        this.engine = engine;
     }
 
     /**
@@ -34,29 +77,27 @@ public class DataStorage {
      * @throws NullPointerException
      */
     public JsonArray put(int hashKey, String key, JsonObject data) throws NullPointerException {
-        MyObject object;
-        initializeBucket(hashKey, key);
-
-        this.lock.readLock().lock();
+        JsonArray version = applyPut(hashKey, key, data);
 
-        object = this.buckets.get(hashKey).get(key);
+        Driver.writeAheadLog.sync();
 
-        this.lock.readLock().unlock();
+        return version;
+    }
 
-        String op = data.get("op").getAsString();
-        JsonArray version;
-        switch (op) {
-            case "add":
-                version = object.add(data);
-                break;
-            case "remove":
-                version = object.remove(data);
-                break;
-            default:
-                throw new NullPointerException();
-        }
+    /**
+     * Update the object in the buckets without waiting for the write-ahead log,
+     * the future completes with the latest version once the update is durable.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return CompletableFuture
+     * @throws NullPointerException
+     */
+    public CompletableFuture<JsonArray> putAsync(int hashKey, String key, JsonObject data) throws NullPointerException {
+        JsonArray version = applyPut(hashKey, key, data);
 
-        return version;
+        return Driver.writeAheadLog.syncAsync().thenApply(ignored -> version);
     }
 
     /**
@@ -67,37 +108,74 @@ public class DataStorage {
      * @param replicate
      */
     public void storeReplicate(int hashKey, String key, JsonObject replicate) {
-        MyObject object;
-        initializeBucket(hashKey, key);
-
-        this.lock.readLock().lock();
-
-        object = this.buckets.get(hashKey).get(key);
+        applyReplicate(hashKey, key, replicate);
 
-        this.lock.readLock().unlock();
-
-        object.storeReplicate(replicate);
+        Driver.writeAheadLog.sync();
     }
 
     /**
-     * Create the bucket for particular key.
+     * Store the replicate and the vector clock without waiting for the write-ahead log,
+     * the future completes once the replicate is durable.
      *
      * @param hashKey
      * @param key
+     * @param replicate
+     * @return CompletableFuture
      */
-    private void initializeBucket(int hashKey, String key) {
-        this.lock.writeLock().lock();
+    public CompletableFuture<Void> storeReplicateAsync(int hashKey, String key, JsonObject replicate) {
+        applyReplicate(hashKey, key, replicate);
 
-        if (!this.buckets.containsKey(hashKey)) {
-            this.buckets.put(hashKey, new HashMap<>());
-        }
+        return Driver.writeAheadLog.syncAsync();
+    }
 
-        Map<String, MyObject> bucket = this.buckets.get(hashKey);
-        if (!bucket.containsKey(key)) {
-            bucket.put(key, new MyObject());
+    /**
+     * Store a batch of replicates in one pass, and wait for the write-ahead log once for the whole batch.
+     * Return the status of each replicate in the same order, a replicate that cannot be stored
+     * does not stop the others.
+     *
+     * @param replicates
+     * @return int[]
+     */
+    public int[] storeReplicates(JsonArray replicates) {
+        int[] statuses = new int[replicates.size()];
+
+        for (int i = 0; i < replicates.size(); i++) {
+            try {
+                JsonObject entry = replicates.get(i).getAsJsonObject();
+                int hashKey = entry.get("hashKey").getAsInt();
+                String key = entry.get("key").getAsString();
+                ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+                loadBucket(hashKey);
+
+                stripe.readLock().lock();
+
+                try {
+                    this.engine.replicate(hashKey, key, entry.get("data").getAsJsonObject());
+                } finally {
+                    stripe.readLock().unlock();
+                }
+
+                statuses[i] = HttpURLConnection.HTTP_OK;
+            } catch (RuntimeException re) {
+                re.printStackTrace();
+                statuses[i] = HttpURLConnection.HTTP_BAD_REQUEST;
+            }
         }
 
-        this.lock.writeLock().unlock();
+        Driver.writeAheadLog.sync();
+
+        return statuses;
+    }
+
+    /**
+     * Return the striped lock guarding particular hashKey.
+     *
+     * @param hashKey
+     * @return ReentrantReadWriteLock
+     */
+    private ReentrantReadWriteLock getStripe(int hashKey) {
+        return this.stripes[Math.floorMod(hashKey, NUMBER_OF_STRIPES)];
     }
 
     /**
@@ -108,120 +186,527 @@ public class DataStorage {
      * @return JsonObject
      */
     public JsonObject get(int hashKey, String key) {
-        JsonObject data = null;
+        loadBucket(hashKey);
 
-        this.lock.readLock().lock();
-        if (this.buckets.containsKey(hashKey)) {
-            data = this.buckets.get(hashKey).get(key).toJson();
+        return this.engine.get(hashKey, key);
+    }
+
+    /**
+     * Get one bucket to transfer to another replica, and remove it if necessary.
+     * Only the stripe of the bucket is held while it is taken. Return null if the bucket is empty.
+     *
+     * @param hashKey
+     * @param remove
+     * @return JsonObject
+     */
+    public JsonObject getBucketAndCheckRemove(int hashKey, boolean remove) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+        JsonArray dataArray;
+
+        loadBucket(hashKey);
+
+        stripe.writeLock().lock();
+
+        try {
+            dataArray = scanBucket(hashKey);
+            if (dataArray.size() == 0) {
+                return null;
+            }
+
+            if (remove) {
+                this.trees.remove(hashKey);
+                this.engine.removeRange(hashKey);
+            }
+        } finally {
+            stripe.writeLock().unlock();
         }
-        this.lock.readLock().unlock();
 
-        return data;
+        if (remove) {
+            Driver.writeAheadLog.sync();
+        }
+
+        JsonObject bucket = new JsonObject();
+        bucket.addProperty("hashKey", hashKey);
+        bucket.add("data", dataArray);
+
+        return bucket;
     }
 
     /**
-     * Get the buckets in a particular range to transfer to another replica, and remove them if necessary.
+     * Remove a bucket that was transferred, only if it has not changed since it was taken,
+     * so the objects written into it meanwhile are not lost. Return true if the bucket is removed or empty.
      *
-     * @param start
-     * @param end
-     * @param remove
+     * @param hashKey
+     * @param digest
+     * @return boolean
+     */
+    public boolean removeBucketIfUnchanged(int hashKey, long digest) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+        loadBucket(hashKey);
+
+        stripe.writeLock().lock();
+
+        try {
+            JsonArray dataArray = scanBucket(hashKey);
+            if (dataArray.size() == 0) {
+                return true;
+            } else if (MerkleTree.hash(dataArray.toString()) != digest) {
+                return false;
+            }
+
+            this.trees.remove(hashKey);
+            this.engine.removeRange(hashKey);
+        } finally {
+            stripe.writeLock().unlock();
+        }
+
+        Driver.writeAheadLog.sync();
+
+        return true;
+    }
+
+    /**
+     * Return the digest of a bucket taken to transfer, to tell later if the bucket has changed.
+     *
+     * @param bucket
+     * @return long
+     */
+    public static long getBucketDigest(JsonObject bucket) {
+        return MerkleTree.hash(bucket.get("data").toString());
+    }
+
+    /**
+     * Helper method to return all the objects of a bucket in the transfer format, while its stripe is held.
+     *
+     * @param hashKey
      * @return JsonArray
      */
-    public JsonArray getBucketsAndCheckRemove(int start, int end, boolean remove) {
-        JsonArray buckets = new JsonArray();
+    private JsonArray scanBucket(int hashKey) {
+        JsonArray dataArray = new JsonArray();
 
-        this.lock.writeLock().lock();
+        this.engine.scanRange(hashKey, (key, object) -> {
+            JsonObject singleData = new JsonObject();
+            singleData.addProperty("key", key);
 
-        do {
-            getIthBucketAndCheckRemove(buckets, start, remove);
-            start = (start + 1) % Driver.ring.getMaximumNumberOfReplicas();
-        } while (start != (end + 1) % Driver.ring.getMaximumNumberOfReplicas());
+            object.addProperty("replicate", true); // so the receiver will not increase its clock
+            singleData.add("object", object);
 
-        this.lock.writeLock().unlock();
+            dataArray.add(singleData);
+        });
 
-        return buckets;
+        return dataArray;
     }
 
     /**
-     * Get all the objects from the Ith bucket, and remove it if necessary.
+     * Restore one bucket transferred from another replica, as soon as it arrives.
+     * The objects are merged into the local ones instead of replacing the bucket, so the writes this replica
+     * took since an earlier copy of the bucket survive when the bucket is sent again or the migration resumes.
      *
-     * @param buckets
-     * @param i
-     * @param remove
+     * @param bucket
      */
-    private void getIthBucketAndCheckRemove(JsonArray buckets, int i, boolean remove) {
-        if (this.buckets.containsKey(i)) {
-            JsonObject bucket = new JsonObject();
-            bucket.addProperty("hashKey", i);
+    public void restoreBucket(JsonObject bucket) {
+        storeNewerObjects(bucket.get("hashKey").getAsInt(), bucket.get("data").getAsJsonArray());
+    }
+
+    /**
+     * Apply one record from the write-ahead log when rebuilding the storage.
+     * Records already reflected in the storage are skipped, so replaying
+     * a log on top of persisted data is harmless.
+     *
+     * @param record
+     */
+    public void replay(JsonObject record) {
+        int hashKey = record.get("hashKey").getAsInt();
+        String op = record.get("op").getAsString();
+
+        if (op.equals("drop")) {
+            this.unloaded.remove(hashKey);
+        } else {
+            loadBucket(hashKey);
+        }
+
+        switch (op) {
+            case "add":
+            case "remove":
+                String key = record.get("key").getAsString();
+                JsonObject current = this.engine.get(hashKey, key);
+
+                if (current == null || !VectorClock.fromJson(current.get("clocks").getAsJsonArray())
+                        .descends(VectorClock.fromJson(record.get("clocks").getAsJsonArray()))) {
+                    this.engine.replicate(hashKey, key, record);
+                }
+                break;
+            case "overwrite":
+                // replace the object exactly as logged, neither increasing nor checking the clock
+                this.engine.restore(hashKey, record.get("key").getAsString(), record);
+                break;
+            case "drop":
+                this.trees.remove(hashKey);
+                this.engine.removeRange(hashKey);
+                break;
+        }
+    }
+
+    /**
+     * Overwrite the object when reconciling.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    public void overwrite(int hashKey, String key, JsonObject data) {
+        applyOverwrite(hashKey, key, data);
+
+        Driver.writeAheadLog.sync();
+    }
+
+    /**
+     * Overwrite the object when reconciling without waiting for the write-ahead log,
+     * the future completes once the overwrite is durable.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> overwriteAsync(int hashKey, String key, JsonObject data) {
+        applyOverwrite(hashKey, key, data);
+
+        return Driver.writeAheadLog.syncAsync();
+    }
+
+    /**
+     * Replace the digest of a key in the Merkle tree of its bucket, if the tree is built.
+     * Called by the object after a mutation, while the stripe is held.
+     *
+     * @param hashKey
+     * @param keyHash
+     * @param before
+     * @param after
+     */
+    public void updateDigest(int hashKey, long keyHash, long before, long after) {
+        if (before != after) {
+            MerkleTree tree = this.trees.get(hashKey);
+
+            if (tree != null) {
+                tree.update(keyHash, before, after);
+            }
+        }
+    }
+
+    /**
+     * Return the root of the Merkle tree of a bucket.
+     *
+     * @param hashKey
+     * @return long
+     */
+    public long getMerkleRoot(int hashKey) {
+        return getTree(hashKey).getRoot();
+    }
+
+    /**
+     * Return the leaves of the Merkle tree of a bucket.
+     *
+     * @param hashKey
+     * @return long[]
+     */
+    public long[] getMerkleLeaves(int hashKey) {
+        return getTree(hashKey).getLeaves();
+    }
+
+    /**
+     * Return the digest of every key of a bucket that falls into particular leaves.
+     * Keys without clock are left out, the same as in the tree.
+     *
+     * @param hashKey
+     * @param leaves
+     * @return Map
+     */
+    public Map<String, Long> getDigests(int hashKey, Set<Integer> leaves) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+        Map<String, Long> digests = new HashMap<>();
+
+        loadBucket(hashKey);
+        stripe.readLock().lock();
+
+        try {
+            this.engine.scanRange(hashKey, (key, object) -> {
+                long keyHash = MerkleTree.hash(key);
+                long digest = getDigest(keyHash, object);
+
+                if (digest != 0 && leaves.contains(MerkleTree.getLeaf(keyHash))) {
+                    digests.put(key, digest);
+                }
+            });
+        } finally {
+            stripe.readLock().unlock();
+        }
+
+        return digests;
+    }
+
+    /**
+     * Return particular objects of a bucket in the transfer format, to be sent to another replica.
+     *
+     * @param hashKey
+     * @param keys
+     * @return JsonArray
+     */
+    public JsonArray getObjects(int hashKey, Collection<String> keys) {
+        JsonArray dataArray = new JsonArray();
+
+        for (String key : keys) {
+            JsonObject object = get(hashKey, key);
+
+            if (object != null) {
+                object.addProperty("replicate", true);
 
-            JsonArray dataArray = new JsonArray();
-            for (String key : this.buckets.get(i).keySet()) {
                 JsonObject singleData = new JsonObject();
                 singleData.addProperty("key", key);
-
-                JsonObject object = this.buckets.get(i).get(key).toJson();
-                object.addProperty("replicate", true); // so the receiver will not increase its clock
                 singleData.add("object", object);
-
                 dataArray.add(singleData);
             }
+        }
 
-            bucket.add("data", dataArray);
-            buckets.add(bucket);
+        return dataArray;
+    }
 
-            if (remove) {
-                this.buckets.remove(i);
+    /**
+     * Store the objects sent by another replica, each one only if it is not older than the local one.
+     *
+     * @param hashKey
+     * @param dataArray
+     */
+    public void storeNewerObjects(int hashKey, JsonArray dataArray) {
+        applyNewerObjects(hashKey, dataArray);
+
+        Driver.writeAheadLog.sync();
+    }
+
+    /**
+     * Helper method to store the objects sent by another replica, each one only if it is not older than the local one.
+     *
+     * @param hashKey
+     * @param dataArray
+     */
+    private void applyNewerObjects(int hashKey, JsonArray dataArray) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+        loadBucket(hashKey);
+        stripe.readLock().lock();
+
+        try {
+            for (int i = 0; i < dataArray.size(); i++) {
+                JsonObject singleData = dataArray.get(i).getAsJsonObject();
+                JsonObject object = singleData.get("object").getAsJsonObject();
+                object.addProperty("replicate", true);
+
+                this.engine.overwrite(hashKey, singleData.get("key").getAsString(), object);
             }
+        } finally {
+            stripe.readLock().unlock();
         }
     }
 
     /**
-     * Restore the buckets data transferred from other replicas.
+     * Helper method to return the Merkle tree of a bucket, build it from the objects if it is not built yet.
      *
-     * @param buckets
+     * @param hashKey
+     * @return MerkleTree
      */
-    public void restoreBuckets(JsonArray buckets) {
-        this.lock.writeLock().lock();
+    private MerkleTree getTree(int hashKey) {
+        MerkleTree tree = this.trees.get(hashKey);
+
+        if (tree == null) {
+            ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+            loadBucket(hashKey);
+            stripe.writeLock().lock();
+
+            try {
+                tree = this.trees.get(hashKey);
+
+                if (tree == null) {
+                    MerkleTree newTree = new MerkleTree();
+                    this.engine.scanRange(hashKey, (key, object) -> {
+                        long keyHash = MerkleTree.hash(key);
+                        newTree.update(keyHash, 0, getDigest(keyHash, object));
+                    });
+
+                    this.trees.put(hashKey, newTree);
+                    tree = newTree;
+                }
+            } finally {
+                stripe.writeLock().unlock();
+            }
+        }
+
+        return tree;
+    }
+
+    /**
+     * Helper method to return the digest of an object in Json format.
+     *
+     * @param keyHash
+     * @param object
+     * @return long
+     */
+    private long getDigest(long keyHash, JsonObject object) {
+        return MerkleTree.digest(keyHash, VectorClock.fromJson(object.get("clocks").getAsJsonArray()));
+    }
 
-        for (int i = 0; i < buckets.size(); i++) {
-            JsonObject bucket = buckets.get(i).getAsJsonObject();
+    /**
+     * Map the snapshot file if there is one, its buckets are loaded on first access.
+     * Must be called before the write-ahead log is replayed.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void openSnapshot(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
 
-            int hashKey = bucket.get("hashKey").getAsInt();
-            Map<String, MyObject> data = new HashMap<>();
-            this.buckets.put(hashKey, data);
+        this.snapshot = new Snapshot(file);
+        this.unloaded.addAll(this.snapshot.getHashKeys());
 
-            JsonArray dataArray = bucket.get("data").getAsJsonArray();
-            for (int j = 0; j < dataArray.size(); j++) {
-                JsonObject singleData = dataArray.get(j).getAsJsonObject();
-                String key = singleData.get("key").getAsString();
-                MyObject object = new MyObject();
-                data.put(key, object);
+        System.out.println("[Snapshot] Mapped " + this.unloaded.size() + " bucket(s) from " + file);
+    }
 
-                object.overwrite(singleData.get("object").getAsJsonObject());
+    /**
+     * Write a point-in-time snapshot of every bucket into a new file, then replace the old one.
+     * Buckets never loaded since the restart are copied from the mapped snapshot without decoding.
+     * Mutations running at the same time may or may not be in the snapshot,
+     * so the write-ahead log must be rotated before and replayed on top of it.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void writeSnapshot(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        int count = 0;
+
+        try (Snapshot.Writer writer = new Snapshot.Writer(temp)) {
+            for (int i = 0; i < Driver.ring.getMaximumNumberOfReplicas(); i++) {
+                ReentrantReadWriteLock stripe = getStripe(i);
+                Map<String, JsonObject> objects = new LinkedHashMap<>();
+                ByteBuffer bucket = null;
+
+                stripe.readLock().lock();
+
+                try {
+                    if (this.unloaded.contains(i)) {
+                        bucket = this.snapshot.getBucket(i);
+                    } else {
+                        this.engine.scanRange(i, objects::put);
+                    }
+                } finally {
+                    stripe.readLock().unlock();
+                }
+
+                if (bucket != null) {
+                    writer.writeBucket(i, bucket);
+                    count++;
+                } else if (!objects.isEmpty()) {
+                    writer.writeBucket(i, objects);
+                    count++;
+                }
             }
         }
 
-        this.lock.writeLock().unlock();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.println("[Snapshot] Wrote " + count + " bucket(s) to " + file);
     }
 
     /**
-     * Overwrite the object when reconciling.
+     * Helper method to update the object in the buckets, return with the latest version.
      *
      * @param hashKey
      * @param key
      * @param data
+     * @return JsonArray
+     * @throws NullPointerException
      */
-    public void overwrite(int hashKey, String key, JsonObject data) {
-        MyObject object;
-        initializeBucket(hashKey, key);
+    private JsonArray applyPut(int hashKey, String key, JsonObject data) throws NullPointerException {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
 
-        this.lock.readLock().lock();
+        loadBucket(hashKey);
 
-        object = this.buckets.get(hashKey).get(key);
+        stripe.readLock().lock();
 
-        this.lock.readLock().unlock();
+        try {
+            return this.engine.put(hashKey, key, data);
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
 
-        object.overwrite(data);
+    /**
+     * Helper method to store the replicate and the vector clock.
+     *
+     * @param hashKey
+     * @param key
+     * @param replicate
+     */
+    private void applyReplicate(int hashKey, String key, JsonObject replicate) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+        loadBucket(hashKey);
+
+        stripe.readLock().lock();
+
+        try {
+            this.engine.replicate(hashKey, key, replicate);
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method to overwrite the object when reconciling.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    private void applyOverwrite(int hashKey, String key, JsonObject data) {
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+        loadBucket(hashKey);
+
+        stripe.readLock().lock();
+
+        try {
+            this.engine.overwrite(hashKey, key, data);
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    /**
+     * Helper method to load a bucket from the mapped snapshot if it is not loaded yet.
+     * Caller must not hold the stripe read lock.
+     *
+     * @param hashKey
+     */
+    private void loadBucket(int hashKey) {
+        if (this.unloaded.isEmpty() || !this.unloaded.contains(hashKey)) {
+            return;
+        }
+
+        ReentrantReadWriteLock stripe = getStripe(hashKey);
+
+        stripe.writeLock().lock();
+
+        try {
+            if (this.unloaded.remove(hashKey)) {
+                this.snapshot.load(hashKey, (key, object) -> this.engine.restore(hashKey, key, object));
+            }
+        } finally {
+            stripe.writeLock().unlock();
+        }
     }
 
     /**
@@ -3,8 +3,8 @@ package Backend;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
+import java.io.File;
 import java.net.InetAddress;
-import java.util.UUID;
 
 /**
  * Driver class to start the backend replica.
@@ -19,11 +19,106 @@ public class Driver {
      */
     static final Replica replica = new Replica();
 
+    /**
+     * Dictionary of replica ids used by the vector clocks.
+     */
+    static final NodeDictionary nodeDictionary = new NodeDictionary();
+
     /**
      * Data storage for objects.
      */
     static final DataStorage dataStorage = new DataStorage();
 
+    /**
+     * Write-ahead log to make the data storage durable.
+     */
+    static final WriteAheadLog writeAheadLog = new WriteAheadLog();
+
+    /**
+     * Storage engine name, memory or lsm.
+     */
+    static String engine = "memory";
+
+    /**
+     * Data directory for the write-ahead log and the lsm engine.
+     */
+    static String dataDirectory;
+
+    /**
+     * Number of objects in the lsm memtable before it is flushed.
+     */
+    static int memtableLimit = 100000;
+
+    /**
+     * Number of segment blocks in the lsm block cache.
+     */
+    static int blockCacheCapacity = 2048;
+
+    /**
+     * Http client with pooled keep-alive connections to other servers.
+     */
+    static final HttpClient httpClient = new HttpClient();
+
+    /**
+     * Client of the internal RPC port of other replicas.
+     */
+    static final RpcClient rpcClient = new RpcClient();
+
+    /**
+     * Internal RPC port for the requests from other replicas, 0 to disable.
+     */
+    static int rpcPort = 0;
+
+    /**
+     * Shared executor for the requests to other replicas.
+     */
+    static final FanOut fanOut = new FanOut();
+
+    /**
+     * Pipeline to coalesce the replicated writes to the same replica into batches.
+     */
+    static final ReplicationPipeline replicationPipeline = new ReplicationPipeline();
+
+    /**
+     * Recent latency of the internal reads to each replica.
+     */
+    static final LatencyTracker latencyTracker = new LatencyTracker();
+
+    /**
+     * Policy to hedge the internal reads of a gathering.
+     */
+    static final HedgePolicy hedgePolicy = new HedgePolicy();
+
+    /**
+     * Timeouts of the internal requests to each replica derived from their recent latency.
+     */
+    static final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+
+    /**
+     * Circuit breakers of the internal requests to each replica.
+     */
+    static final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Read repair to push the latest version to stale replicas after a read.
+     */
+    static final ReadRepair readRepair = new ReadRepair();
+
+    /**
+     * Maximum number of buckets this replica takes from a migration before acknowledging them.
+     */
+    static int migrationWindow = 8;
+
+    /**
+     * Interval between snapshots of the data storage in seconds, 0 to disable.
+     */
+    static long snapshotInterval = 0;
+
+    /**
+     * Interval between anti-entropy rounds in seconds, 0 to disable.
+     */
+    static long antiEntropyInterval = 60;
+
     /**
      * Ring to store backend replicas.
      */
@@ -49,14 +144,60 @@ public class Driver {
             // initialize property
             initialize(args);
 
+            // reuse the id and the key this replica had before a restart
+            Starter starter = new Starter();
+            starter.restoreIdentity();
+
+            // open the storage engine and rebuild the data storage from the write-ahead log
+            if (Driver.engine.equals("lsm")) {
+                if (!Driver.writeAheadLog.isEnabled()) {
+                    System.out.println("[System] The lsm engine requires a data directory: -d <data_directory>");
+                    throw new Exception();
+                }
+                Driver.dataStorage.setEngine(new LsmEngine(Driver.dataDirectory + "/lsm"
+                        , Driver.memtableLimit, Driver.blockCacheCapacity));
+            }
+            if (Driver.snapshotInterval > 0 && !Driver.engine.equals("memory")) {
+                System.out.println("[System] Snapshots are only taken with the memory engine");
+                Driver.snapshotInterval = 0;
+            }
+            if (Driver.snapshotInterval > 0 && !Driver.writeAheadLog.isEnabled()) {
+                System.out.println("[System] Snapshots require a data directory: -d <data_directory>");
+                throw new Exception();
+            }
+            if (Driver.writeAheadLog.isEnabled()) {
+                if (Driver.engine.equals("memory")) {
+                    Driver.dataStorage.openSnapshot(new File(Driver.dataDirectory, "snapshot.bin"));
+                }
+                Driver.writeAheadLog.replay(Driver.dataStorage);
+                Driver.writeAheadLog.open();
+            }
+
             // start listing
             SpringApplication.run(Driver.class);
 
+            // start listing for the internal requests from other replicas
+            if (Driver.rpcPort > 0) {
+                new Thread(new RpcServer(Driver.rpcPort, Driver.fanOut.getThreads()
+                        , Driver.fanOut.getQueueSize())).start();
+            }
+
             // join the membership
-            new Starter().registerAndInitializeRing();
+            starter.registerAndInitializeRing();
 
             // start gossip process in background
             new Thread(new Gossip()).start();
+
+            // start anti-entropy with the other replicas in background
+            if (Driver.antiEntropyInterval > 0) {
+                new Thread(new AntiEntropy(Driver.antiEntropyInterval * 1000)).start();
+            }
+
+            // start taking snapshots in background
+            if (Driver.snapshotInterval > 0) {
+                new Thread(new Snapshotter(new File(Driver.dataDirectory, "snapshot.bin")
+                        , Driver.snapshotInterval * 1000)).start();
+            }
         } catch (Exception e) {
             e.printStackTrace();
             Driver.alive = false;
@@ -87,18 +228,113 @@ public class Driver {
                 // coordinator
                 Driver.coordinator = args[++i];
                 coordinatorInit = true;
+            } else if (args[i].equals("-d")) {
+                // data directory of the write-ahead log and the lsm engine
+                Driver.dataDirectory = args[++i];
+                Driver.writeAheadLog.setDirectory(Driver.dataDirectory);
+            } else if (args[i].equals("-fi")) {
+                // flush interval of the write-ahead log in milliseconds
+                Driver.writeAheadLog.setFlushInterval(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-fb")) {
+                // number of records that triggers an early flush of the write-ahead log
+                Driver.writeAheadLog.setBatchSize(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-e")) {
+                // storage engine, memory or lsm
+                Driver.engine = args[++i];
+            } else if (args[i].equals("-mt")) {
+                // number of objects in the lsm memtable before it is flushed
+                Driver.memtableLimit = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-bc")) {
+                // number of segment blocks in the lsm block cache
+                Driver.blockCacheCapacity = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-si")) {
+                // interval between snapshots of the data storage in seconds
+                Driver.snapshotInterval = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-ae")) {
+                // interval between anti-entropy rounds in seconds
+                Driver.antiEntropyInterval = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-rr")) {
+                // maximum number of read repair pushes per second
+                Driver.readRepair.setRate(Double.parseDouble(args[++i]));
+            } else if (args[i].equals("-ct")) {
+                // connect timeout of internal requests in milliseconds
+                int connectTimeout = Integer.parseInt(args[++i]);
+                Driver.httpClient.setConnectTimeout(connectTimeout);
+                Driver.rpcClient.setConnectTimeout(connectTimeout);
+            } else if (args[i].equals("-rt")) {
+                // read timeout of internal requests in milliseconds
+                int readTimeout = Integer.parseInt(args[++i]);
+                Driver.httpClient.setReadTimeout(readTimeout);
+                Driver.rpcClient.setReadTimeout(readTimeout);
+                Driver.adaptiveTimeout.setMaximum(readTimeout);
+            } else if (args[i].equals("-pc")) {
+                // maximum number of idle connections kept for each peer
+                Driver.httpClient.setMaxIdlePerPeer(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-ft")) {
+                // number of fan-out threads, or virtual to run each request on a virtual thread
+                String threads = args[++i];
+                if (!threads.equals("virtual")) {
+                    Driver.fanOut.setThreads(Integer.parseInt(threads));
+                } else if (!Driver.fanOut.useVirtualThreads()) {
+                    System.out.println("[System] Virtual threads are not supported, using the thread pool");
+                }
+            } else if (args[i].equals("-fq")) {
+                // number of requests that can wait for a fan-out thread
+                Driver.fanOut.setQueueSize(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-fp")) {
+                // maximum number of running or waiting requests to each peer
+                Driver.fanOut.setPeerLimit(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-rp")) {
+                // internal RPC port
+                Driver.rpcPort = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-bw")) {
+                // window of the replication batches in microseconds, 0 to send every write on its own
+                Driver.replicationPipeline.setWindow(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-bn")) {
+                // number of writes that sends a replication batch before its window ends
+                Driver.replicationPipeline.setBatchSize(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-hp")) {
+                // percentile of the read latency to wait before hedging a read, 0 to read every replica at once (default)
+                Driver.hedgePolicy.setPercentile(Double.parseDouble(args[++i]));
+            } else if (args[i].equals("-hd")) {
+                // minimum delay before hedging a read in milliseconds
+                Driver.hedgePolicy.setMinimumDelay(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-tf")) {
+                // multiple of the p99 latency of a replica to wait for its internal requests, 0 to use the read timeout
+                Driver.adaptiveTimeout.setFactor(Double.parseDouble(args[++i]));
+            } else if (args[i].equals("-tm")) {
+                // minimum adaptive timeout of internal requests in milliseconds
+                Driver.adaptiveTimeout.setMinimum(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-cf")) {
+                // number of failed internal requests in a row that opens the circuit of a replica
+                Driver.circuitBreaker.setThreshold(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-co")) {
+                // time an open circuit waits before probing the replica in milliseconds
+                Driver.circuitBreaker.setCooldown(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-mw")) {
+                // maximum number of buckets taken from a migration before acknowledging them
+                Driver.migrationWindow = Math.max(1, Integer.parseInt(args[++i]));
             }
         }
 
         if (!portInit || !coordinatorInit) {
             System.out.println("[System] Usage: java -jar Backend.jar -p <port> " +
-                    "-s <seed_or_not> -c <coordinator_address>");
+                    "-s <seed_or_not> -c <coordinator_address> [-d <data_directory>] " +
+                    "[-fi <flush_interval_ms>] [-fb <flush_batch_size>] [-e <memory_or_lsm>] " +
+                    "[-mt <memtable_objects>] [-bc <block_cache_blocks>] [-si <snapshot_interval_seconds>] " +
+                    "[-ae <anti_entropy_interval_seconds>] [-rr <read_repairs_per_second>] " +
+                    "[-ct <connect_timeout_ms>] [-rt <read_timeout_ms>] [-pc <idle_connections_per_peer>] " +
+                    "[-ft <fan_out_threads_or_virtual>] [-fq <fan_out_queue_size>] [-fp <requests_per_peer>] " +
+                    "[-rp <rpc_port>] [-bw <replication_batch_window_us>] [-bn <replication_batch_size>] " +
+                    "[-hp <hedge_percentile>] [-hd <hedge_min_delay_ms>] [-tf <timeout_p99_factor>] " +
+                    "[-tm <min_timeout_ms>] [-cf <circuit_failures>] [-co <circuit_cooldown_ms>] " +
+                    "[-mw <migration_window_buckets>]");
             throw new Exception();
         }
 
-        Driver.replica.setId(UUID.randomUUID().toString());
         Driver.replica.setHost(InetAddress.getLocalHost().getHostAddress());
         Driver.replica.setPort(System.getProperty("server.port"));
+        Driver.replica.setRpcPort(Driver.rpcPort);
 
         System.out.println("[System] Running Coordinator on " +
                 Driver.replica.getAddress());
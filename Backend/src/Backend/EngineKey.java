@@ -0,0 +1,79 @@
+package Backend;
+
+/**
+ * EngineKey class to order objects by (hashKey, key),
+ * so the objects of a bucket are next to each other in sorted storage.
+ */
+public class EngineKey implements Comparable<EngineKey> {
+    private final int hashKey;
+    private final String key;
+
+    /**
+     * EngineKey constructor.
+     *
+     * @param hashKey
+     * @param key
+     */
+    public EngineKey(int hashKey, String key) {
+        this.hashKey = hashKey;
+        this.key = key;
+    }
+
+    /**
+     * Return the smallest key of a bucket.
+     *
+     * @param hashKey
+     * @return EngineKey
+     */
+    public static EngineKey first(int hashKey) {
+        return new EngineKey(hashKey, "");
+    }
+
+    /**
+     * Compare two (hashKey, key) pairs.
+     *
+     * @param hashKey1
+     * @param key1
+     * @param hashKey2
+     * @param key2
+     * @return int
+     */
+    public static int compare(int hashKey1, String key1, int hashKey2, String key2) {
+        int result = Integer.compare(hashKey1, hashKey2);
+
+        return result != 0 ? result : key1.compareTo(key2);
+    }
+
+    /**
+     * HashKey getter.
+     *
+     * @return int
+     */
+    public int getHashKey() {
+        return this.hashKey;
+    }
+
+    /**
+     * Key getter.
+     *
+     * @return String
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    @Override
+    public int compareTo(EngineKey other) {
+        return compare(this.hashKey, this.key, other.hashKey, other.key);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EngineKey && compareTo((EngineKey) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.hashKey + this.key.hashCode();
+    }
+}
@@ -2,73 +2,133 @@ package Backend;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * GatherReplicates class for replication coordinator to gather data from other replicas in the preference list.
  *
  * Reference:
- * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CountDownLatch.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CompletableFuture.html
  */
 public class GatherReplicates {
     private final int hashKey;
     private final String key;
+    private final long deadline;
 
     /**
      * GatherReplicates constructor.
      *
      * @param hashKey
      * @param key
+     * @param deadline
      */
-    public GatherReplicates(int hashKey, String key) {
+    public GatherReplicates(int hashKey, String key, long deadline) {
         this.hashKey = hashKey;
         this.key = key;
+        this.deadline = deadline;
     }
 
     /**
-     * Start the gathering process.
-     * Use CountDownLatch to support concurrent internal read from other replicas,
-     * and count the minimum success read for response.
+     * Start the gathering process without blocking.
+     * If hedging is on, send the internal reads to the replicas expected to be fastest, as many as the minimum
+     * success read needs, and hedge with the reads to the other replicas if they are slow or one of them fails.
+     * Otherwise, send the internal reads to every replica at once.
+     * Complete the future once the minimum success read is reached. Fail it with a Quorum.Failure as soon as
+     * so many replicas failed that the minimum success read can no longer be reached, or when the deadline passes.
+     * The reads that have not started by then are cancelled.
      *
-     * @return JsonArray
+     * @return CompletableFuture
      */
-    public JsonArray start() {
+    public CompletableFuture<JsonArray> start() {
         int minimumSuccessRead = Math.min(Driver.ring.getR() - 1, Driver.ring.getCurrentNumberOfReplicas() - 1);
-        CountDownLatch startSignal = new CountDownLatch(1);
-        CountDownLatch finishSignal = new CountDownLatch(minimumSuccessRead);
-        ResponseCounter responseCounter = new ResponseCounter(minimumSuccessRead);
         List<String[]> preferenceList = Driver.ring.getPreferenceList(this.hashKey);
-        String uri = "/internal_get/" + this.hashKey + "/" + this.key;
-        Vector<JsonObject> responseList = new Vector<>();
+        Vector<Reply> responseList = new Vector<>();
+        CompletableFuture<JsonArray> result = new CompletableFuture<>();
+        ResponseCounter responseCounter = new ResponseCounter(minimumSuccessRead, preferenceList.size(), responseList);
+        List<CompletableFuture<HttpClient.Response>> futures = Collections.synchronizedList(new ArrayList<>());
 
-        for (int i = 0; i < preferenceList.size(); i++) {
-            String[] hostInfo = preferenceList.get(i);
-            new Thread(new Send(startSignal, finishSignal, responseCounter, hostInfo, uri, responseList)).start();
+        if (responseCounter.quorum.isDecided()) {
+            finish(responseCounter.quorum.getOutcome(), responseCounter, result, futures, null);
+            return result;
         }
 
-        startSignal.countDown();
+        long delay = Driver.hedgePolicy.isEnabled() ? Driver.hedgePolicy.getDelay() : -1;
+        int primaries = preferenceList.size();
+        if (delay >= 0 && minimumSuccessRead < preferenceList.size()) {
+            preferenceList = Driver.hedgePolicy.order(preferenceList);
+            primaries = minimumSuccessRead;
+        }
 
-        try {
-            finishSignal.await();
-        } catch (InterruptedException ignored) {}
+        Hedge hedge = new Hedge(responseCounter, preferenceList.subList(primaries, preferenceList.size())
+                , result, futures);
+        for (int i = 0; i < primaries; i++) {
+            futures.add(new Send(responseCounter, preferenceList.get(i), result, futures, hedge, false).start());
+        }
+        hedge.schedule(delay);
+        responseCounter.quorum.expireAt(this.deadline
+                , () -> finish(Quorum.Outcome.EXPIRED, responseCounter, result, futures, hedge));
 
-        return parseResponsesAndCheckVersion(responseList);
+        return result;
+    }
+
+    /**
+     * Finish the gathering with the versions gathered if the minimum success read is reached,
+     * or with the failure of the quorum otherwise, then cancel the reads and the hedge that are left.
+     *
+     * @param outcome
+     * @param responseCounter
+     * @param result
+     * @param futures
+     * @param hedge
+     */
+    private void finish(Quorum.Outcome outcome, ResponseCounter responseCounter, CompletableFuture<JsonArray> result
+            , List<CompletableFuture<HttpClient.Response>> futures, Hedge hedge) {
+        if (hedge != null) {
+            hedge.cancel();
+        }
+
+        if (outcome == Quorum.Outcome.REACHED) {
+            try {
+                result.complete(parseResponsesAndCheckVersion(responseCounter.responseList));
+            } catch (RuntimeException re) {
+                result.completeExceptionally(re);
+            }
+        } else {
+            System.out.println("[Read] " + responseCounter.quorum.toFailure().getMessage());
+            result.completeExceptionally(responseCounter.quorum.toFailure());
+        }
+
+        synchronized (futures) {
+            for (CompletableFuture<HttpClient.Response> future : futures) {
+                future.cancel(false);
+            }
+        }
     }
 
     /**
      * Parse the response from other replicas, and check if the version is the same as replication coordinator's.
      * If not, add into the return JsonArray.
+     * Schedule read repair if one version dominates and some replicas are behind.
      *
-     * @param responseList
+     * @param replies
      * @return
      */
-    private JsonArray parseResponsesAndCheckVersion(Vector<JsonObject> responseList) {
+    private JsonArray parseResponsesAndCheckVersion(Vector<Reply> replies) {
+        List<JsonObject> responseList = new ArrayList<>();
+        for (Reply reply : replies) {
+            if (reply.data != null) {
+                responseList.add(reply.data);
+            }
+        }
+
         List<JsonObject> versionList = new ArrayList<>();
         JsonObject myVersion = Driver.dataStorage.get(this.hashKey, this.key);
         if (myVersion != null) {
@@ -79,12 +139,12 @@ public class GatherReplicates {
 
         for (int i = 0; i < responseList.size(); i++) {
             boolean sameVersion = false;
-            JsonArray clockFromResponse = responseList.get(i).get("clocks").getAsJsonArray();
+            VectorClock clockFromResponse = VectorClock.fromJson(responseList.get(i).get("clocks").getAsJsonArray());
 
             for (JsonObject version : versionList) {
-                JsonArray clockInVersionList = version.get("clocks").getAsJsonArray();
+                VectorClock clockInVersionList = VectorClock.fromJson(version.get("clocks").getAsJsonArray());
 
-                if (clockFromResponse.toString().equals(clockInVersionList.toString())) {
+                if (clockFromResponse.isSameAs(clockInVersionList)) {
                     sameVersion = true; // if there exists a same version then don't add into list
                     break;
                 }
@@ -100,62 +160,236 @@ public class GatherReplicates {
             array.add(version);
         }
 
+        checkReadRepair(versionList, myVersion, replies);
+
         return array;
     }
 
     /**
-     * Nested Send class to send the read request concurrently.
+     * Find the version that is equal to or after every other version, if there is one,
+     * and schedule it to be pushed to the replicas that returned another version or nothing.
+     *
+     * @param versionList
+     * @param myVersion
+     * @param replies
+     */
+    private void checkReadRepair(List<JsonObject> versionList, JsonObject myVersion, Vector<Reply> replies) {
+        List<VectorClock> clocks = new ArrayList<>();
+        for (JsonObject version : versionList) {
+            clocks.add(VectorClock.fromJson(version.get("clocks").getAsJsonArray()));
+        }
+
+        int latest = -1;
+        for (int i = 0; i < clocks.size() && latest < 0; i++) {
+            latest = i;
+
+            for (VectorClock other : clocks) {
+                if (!clocks.get(i).descends(other)) {
+                    latest = -1;
+                    break;
+                }
+            }
+        }
+
+        if (latest < 0) {
+            return; // divergent versions are left for the client to reconcile
+        }
+
+        VectorClock latestClock = clocks.get(latest);
+        List<String[]> staleReplicas = new ArrayList<>();
+        for (Reply reply : replies) {
+            if (reply.data == null
+                    || !VectorClock.fromJson(reply.data.get("clocks").getAsJsonArray()).isSameAs(latestClock)) {
+                staleReplicas.add(reply.hostInfo);
+            }
+        }
+
+        boolean localStale = myVersion == null
+                || !VectorClock.fromJson(myVersion.get("clocks").getAsJsonArray()).isSameAs(latestClock);
+
+        if (!staleReplicas.isEmpty() || localStale) {
+            Driver.readRepair.schedule(this.hashKey, this.key, versionList.get(latest), staleReplicas, localStale);
+        }
+    }
+
+    /**
+     * Nested Hedge class to send the reads to the replicas that were held back.
+     */
+    private class Hedge {
+        private final ResponseCounter responseCounter;
+        private final List<String[]> hostInfos;
+        private final CompletableFuture<JsonArray> result;
+        private final List<CompletableFuture<HttpClient.Response>> futures;
+        private ScheduledFuture<?> timer;
+        private boolean fired;
+
+        /**
+         * Hedge constructor.
+         *
+         * @param responseCounter
+         * @param hostInfos
+         * @param result
+         * @param futures
+         */
+        private Hedge(ResponseCounter responseCounter, List<String[]> hostInfos
+                , CompletableFuture<JsonArray> result, List<CompletableFuture<HttpClient.Response>> futures) {
+            this.responseCounter = responseCounter;
+            this.hostInfos = hostInfos;
+            this.result = result;
+            this.futures = futures;
+            this.fired = hostInfos.isEmpty();
+        }
+
+        /**
+         * Schedule the hedge after the delay.
+         *
+         * @param delay
+         */
+        private synchronized void schedule(long delay) {
+            if (!this.fired && !this.responseCounter.quorum.isDecided()) {
+                this.timer = Driver.hedgePolicy.schedule(this::fire, delay);
+            }
+        }
+
+        /**
+         * Send the reads to the remaining replicas, once, unless the gathering has finished already.
+         */
+        private void fire() {
+            synchronized (this) {
+                if (this.fired || this.responseCounter.quorum.isDecided()) {
+                    return;
+                }
+
+                this.fired = true;
+            }
+
+            Driver.hedgePolicy.issued(this.hostInfos.size());
+            for (String[] hostInfo : this.hostInfos) {
+                CompletableFuture<HttpClient.Response> future = new Send(this.responseCounter, hostInfo
+                        , this.result, this.futures, this, true).start();
+                this.futures.add(future);
+
+                if (this.responseCounter.quorum.isDecided()) {
+                    future.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * Cancel the hedge if it has not been sent.
+         */
+        private synchronized void cancel() {
+            if (this.timer != null) {
+                this.timer.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Nested Send class to send the read request concurrently and count its response.
      */
-    private class Send extends HttpRequest implements Runnable {
-        private final CountDownLatch startSignal;
-        private final CountDownLatch finishSignal;
+    private class Send extends HttpRequest {
         private final ResponseCounter responseCounter;
         private final String[] hostInfo;
-        private final String url;
-        private final Vector<JsonObject> responseList;
+        private final CompletableFuture<JsonArray> result;
+        private final List<CompletableFuture<HttpClient.Response>> futures;
+        private final Hedge hedge;
+        private final boolean hedged;
+        private long startTime;
 
         /**
          * Send constructor.
          *
-         * @param startSignal
-         * @param finishSignal
          * @param responseCounter
          * @param hostInfo
-         * @param uri
-         * @param responseList
+         * @param result
+         * @param futures
+         * @param hedge
+         * @param hedged
          */
-        private Send(CountDownLatch startSignal, CountDownLatch finishSignal, ResponseCounter responseCounter
-                , String[] hostInfo, String uri, Vector<JsonObject> responseList) {
-            this.startSignal = startSignal;
-            this.finishSignal = finishSignal;
+        private Send(ResponseCounter responseCounter, String[] hostInfo, CompletableFuture<JsonArray> result
+                , List<CompletableFuture<HttpClient.Response>> futures, Hedge hedge, boolean hedged) {
             this.responseCounter = responseCounter;
             this.hostInfo = hostInfo;
-            this.url = hostInfo[1] + uri;
-            this.responseList = responseList;
+            this.result = result;
+            this.futures = futures;
+            this.hedge = hedge;
+            this.hedged = hedged;
+        }
+
+        /**
+         * Send read request, and count the response when it arrives.
+         *
+         * @return CompletableFuture
+         */
+        private CompletableFuture<HttpClient.Response> start() {
+            this.startTime = System.nanoTime();
+            CompletableFuture<HttpClient.Response> future = doInternalRequestAsync(this.hostInfo, RpcServer.GET
+                    , GatherReplicates.this.hashKey, GatherReplicates.this.key, null);
+            future.whenComplete(this::receive);
+
+            return future;
         }
 
         /**
-         * Send read request and do the count down.
+         * Count the response, and finish the gathering if it decides the quorum.
+         * A replica that has the key or answers that it does not have it succeeds,
+         * any other answer or an unreachable replica fails.
          * If we have gathered enough data, then don't add into response list.
+         * Record the latency of the replica, and hedge right away if the read fails.
+         *
+         * @param response
+         * @param error
          */
-        @Override
-        public void run() {
-            try {
-                this.startSignal.await();
-            } catch (InterruptedException ignored) {}
+        private void receive(HttpClient.Response response, Throwable error) {
+            Quorum.Outcome outcome;
+            Reply reply = null;
 
-            try {
-                HttpURLConnection connection = doGetRequest(this.url);
-                int statusCode = connection.getResponseCode();
+            if (error == null) {
+                int statusCode = response.getStatusCode();
 
-                if (this.responseCounter.incrementAndCheck()) {
+                try {
                     if (statusCode == HttpURLConnection.HTTP_OK) {
-                        JsonObject response = parseResponse(connection).getAsJsonObject();
-                        this.responseList.add(response);
+                        reply = new Reply(this.hostInfo, parseResponse(response).getAsJsonObject());
+                    } else if (statusCode == HttpURLConnection.HTTP_BAD_REQUEST) {
+                        reply = new Reply(this.hostInfo, null); // the replica does not have the key
                     }
-                    this.finishSignal.countDown();
+                } catch (JsonParseException | IllegalStateException ignored) {}
+
+                if (reply != null) {
+                    Driver.latencyTracker.record(this.hostInfo[0], System.nanoTime() - this.startTime);
                 }
-            } catch (IOException ignored) {}
+            }
+
+            if (reply == null) {
+                this.hedge.fire();
+                outcome = this.responseCounter.quorum.failure();
+            } else {
+                outcome = this.responseCounter.incrementAndCheck(reply, this.hedged);
+            }
+
+            if (outcome != null) {
+                finish(outcome, this.responseCounter, this.result, this.futures, this.hedge);
+            }
+        }
+    }
+
+    /**
+     * Nested Reply class for the data returned by a replica, null if the replica does not have the key.
+     */
+    private static class Reply {
+        private final String[] hostInfo;
+        private final JsonObject data;
+
+        /**
+         * Reply constructor.
+         *
+         * @param hostInfo
+         * @param data
+         */
+        private Reply(String[] hostInfo, JsonObject data) {
+            this.hostInfo = hostInfo;
+            this.data = data;
         }
     }
 
@@ -163,33 +397,41 @@ public class GatherReplicates {
      * Nest ResponseCounter class to support the counting of response.
      */
     private class ResponseCounter {
-        private final int target;
-        private int counter;
+        private final Quorum quorum;
+        private final Vector<Reply> responseList;
 
         /**
          * ResponseCounter constructor.
          *
          * @param target
+         * @param total
+         * @param responseList
          */
-        private ResponseCounter(int target) {
-            this.target = target;
-            this.counter = 0;
+        private ResponseCounter(int target, int total, Vector<Reply> responseList) {
+            this.quorum = new Quorum("Read", target, total);
+            this.responseList = responseList;
         }
 
         /**
-         * Thread-safe synchronized method to increase the counter, and check if we have gathered enough data.
+         * Thread-safe synchronized method to count a reply, and add it if we have not gathered enough data.
+         * Count a hedged read that made it into the gathered data as a won hedge.
+         * Return the outcome only for the reply that decides the quorum.
          *
-         * @return boolean
+         * @param reply
+         * @param hedged
+         * @return Quorum.Outcome
          */
-        private synchronized boolean incrementAndCheck() {
-            boolean result = false;
+        private synchronized Quorum.Outcome incrementAndCheck(Reply reply, boolean hedged) {
+            if (this.quorum.isDecided()) {
+                return null;
+            }
 
-            this.counter++;
-            if (this.counter <= this.target) {
-                result = true;
+            this.responseList.add(reply);
+            if (hedged) {
+                Driver.hedgePolicy.won();
             }
 
-            return result;
+            return this.quorum.success();
         }
     }
 }
@@ -17,7 +17,8 @@ public class Gossip extends HttpRequest implements Runnable {
      * If there is hinted data for the backend replica that has been chosen, send the hinted data
      * along with gossip request. Remove the hinted data if gossip proceed successfully.
      *
-     * If a replica is unreachable remove it from the ring and info membership coordinator.
+     * If a replica is unreachable and its circuit opens, remove it from the ring and info membership coordinator.
+     * Skip the round if the circuit of the replica is open already but not ready for a probe.
      */
     @Override
     public void run() {
@@ -25,7 +26,6 @@ public class Gossip extends HttpRequest implements Runnable {
             String[] peerInfo = Driver.ring.getOnePeer();
 
             if (peerInfo[1] != null) {
-                String url = peerInfo[1] + "/gossip";
                 JsonObject requestBody = Driver.ring.getMembership();
 
                 JsonArray hintedData = Driver.dataStorage.getHintedData(peerInfo[0]);
@@ -35,18 +35,21 @@ public class Gossip extends HttpRequest implements Runnable {
                 }
 
                 try {
-                    HttpURLConnection connection = doPostRequest(url, requestBody);
-                    JsonObject response = parseResponse(connection).getAsJsonObject();
+                    HttpClient.Response reply = doInternalRequest(peerInfo, RpcServer.GOSSIP, 0, "", requestBody);
 
-                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                    if (reply.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                        JsonObject response = parseResponse(reply).getAsJsonObject();
                         Driver.ring.updateMembership(response);
                         Driver.dataStorage.removeHintedData(peerInfo[0]);
                     } else {
+                        Driver.circuitBreaker.failure(peerInfo[0]);
                         throw new IOException();
                     }
-                } catch (JsonParseException ignored) {
+                } catch (JsonParseException | CircuitBreaker.OpenException ignored) {
                 } catch (IOException ignored) {
-                    remove(peerInfo[0]);
+                    if (Driver.circuitBreaker.isOpen(peerInfo[0])) {
+                        remove(peerInfo[0]);
+                    }
                 }
             }
 
@@ -67,11 +70,11 @@ public class Gossip extends HttpRequest implements Runnable {
     private void remove(String id) {
         Replica toBeRemoved = Driver.ring.getReplica(id);
         Driver.ring.remove(id);
+        Driver.circuitBreaker.remove(id);
 
         try {
             String url = Driver.coordinator + "/deregister";
-            HttpURLConnection connection = doPostRequest(url, toBeRemoved.toJson());
-            connection.getResponseCode();
+            doPostRequest(url, toBeRemoved.toJson());
         } catch (IOException ignored) {}
     }
 }
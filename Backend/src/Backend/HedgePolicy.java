@@ -0,0 +1,143 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HedgePolicy class to decide how the internal reads of a gathering are hedged.
+ *
+ * A gathering first reads from the replicas expected to answer fastest, only as many as the minimum
+ * success read needs. If they have not all answered after a percentile of the recent read latency,
+ * or one of them fails, the reads to the remaining replicas are sent as hedges.
+ * Hedging is off by default, with a percentile of 0, and every replica is read at once.
+ */
+public class HedgePolicy {
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong hedgesIssued;
+    private final AtomicLong hedgesWon;
+    private volatile double percentile;
+    private volatile long minimumDelay;
+
+    /**
+     * HedgePolicy constructor.
+     */
+    public HedgePolicy() {
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.hedgesIssued = new AtomicLong();
+        this.hedgesWon = new AtomicLong();
+        this.percentile = 0;
+        this.minimumDelay = TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Percentile setter, the percentile of the recent read latency to wait before hedging, 0 to turn it off.
+     *
+     * @param percentile
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = Math.max(0, Math.min(100, percentile));
+    }
+
+    /**
+     * Minimum delay setter in milliseconds, the shortest time to wait before hedging.
+     *
+     * @param minimumDelay
+     */
+    public void setMinimumDelay(long minimumDelay) {
+        this.minimumDelay = TimeUnit.MILLISECONDS.toNanos(minimumDelay);
+    }
+
+    /**
+     * Return if the reads are hedged.
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return this.percentile > 0;
+    }
+
+    /**
+     * Return the replicas of a preference list ordered by their recent read latency, fastest first.
+     * Replicas without a sample yet come first, so they get one, and replicas with an open circuit come last.
+     *
+     * @param preferenceList
+     * @return List
+     */
+    public List<String[]> order(List<String[]> preferenceList) {
+        List<String[]> ordered = new ArrayList<>(preferenceList);
+        ordered.sort(Comparator.comparing((String[] hostInfo) -> !Driver.circuitBreaker.isAvailable(hostInfo[0]))
+                .thenComparingDouble(hostInfo -> Driver.latencyTracker.getAverage(hostInfo[0])));
+
+        return ordered;
+    }
+
+    /**
+     * Return the time to wait before hedging in nanoseconds, -1 to send every read at once
+     * because there is no read latency to go by yet.
+     *
+     * @return long
+     */
+    public long getDelay() {
+        long delay = Driver.latencyTracker.getPercentile(this.percentile);
+
+        return (delay < 0) ? -1 : Math.max(delay, this.minimumDelay);
+    }
+
+    /**
+     * Run the hedge after the delay.
+     *
+     * @param hedge
+     * @param delay
+     * @return ScheduledFuture
+     */
+    public ScheduledFuture<?> schedule(Runnable hedge, long delay) {
+        return this.timer.schedule(hedge, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count the reads sent as hedges.
+     *
+     * @param hedges
+     */
+    public void issued(int hedges) {
+        this.hedgesIssued.addAndGet(hedges);
+    }
+
+    /**
+     * Count a hedged read that answered in time to count toward the minimum success read.
+     */
+    public void won() {
+        this.hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Return the hedging metrics and the read latency of each replica in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        long delay = getDelay();
+
+        metrics.addProperty("enabled", isEnabled());
+        metrics.addProperty("percentile", this.percentile);
+        metrics.addProperty("delay", (delay < 0) ? -1 : (double) delay / TimeUnit.MILLISECONDS.toNanos(1));
+        metrics.addProperty("hedgesIssued", this.hedgesIssued.get());
+        metrics.addProperty("hedgesWon", this.hedgesWon.get());
+        metrics.add("latency", Driver.latencyTracker.getMetrics());
+
+        return metrics;
+    }
+}
@@ -4,12 +4,11 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Abstract HttpRequest for commonly used connection methods.
@@ -17,55 +16,146 @@ import java.net.URL;
 abstract class HttpRequest {
 
     /**
-     * Open a Http URL connection with pass-in address.
+     * Send a GET Http request over the pooled connections.
      *
-     * @param address
-     * @return HttpURLConnection
+     * @param url
+     * @return HttpClient.Response
      * @throws IOException
      */
-    private HttpURLConnection initConnection(String address) throws IOException {
-        URL url = new URL("http://" + address);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setReadTimeout(5000);
-        connection.setConnectTimeout(5000);
-
-        return connection;
+    HttpClient.Response doGetRequest(String url) throws IOException {
+        return Driver.httpClient.get(url);
     }
 
     /**
-     * Initialize a GET Http request.
+     * Send a POST Http request with the Json request body over the pooled connections.
      *
      * @param url
-     * @return HttpURLConnection
+     * @param body
+     * @return HttpClient.Response
      * @throws IOException
      */
-    HttpURLConnection doGetRequest(String url) throws IOException {
-        HttpURLConnection connection = initConnection(url);
-        connection.setRequestMethod("GET");
+    HttpClient.Response doPostRequest(String url, JsonElement body) throws IOException {
+        return Driver.httpClient.post(url, body.toString());
+    }
 
-        return connection;
+    /**
+     * Send an internal request to another replica, over its RPC port if it has one,
+     * or to the Http endpoint of the op otherwise.
+     * Fail right away if the circuit of the replica is open, and count the request on the circuit otherwise.
+     *
+     * @param hostInfo
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @return HttpClient.Response
+     * @throws IOException
+     */
+    HttpClient.Response doInternalRequest(String[] hostInfo, byte op, int hashKey, String key, JsonElement body)
+            throws IOException {
+        if (!Driver.circuitBreaker.allow(hostInfo[0])) {
+            throw new CircuitBreaker.OpenException(hostInfo[0]);
+        }
+
+        try {
+            HttpClient.Response response = sendInternalRequest(hostInfo, op, hashKey, key, body);
+            Driver.circuitBreaker.success(hostInfo[0]);
+
+            return response;
+        } catch (IOException ioe) {
+            Driver.circuitBreaker.failure(hostInfo[0]);
+            throw ioe;
+        }
     }
 
     /**
-     * Initialize a POST Http request and pass the Json request body.
+     * Send an internal request to another replica without waiting for the response.
+     * Over the RPC port no thread waits at all, otherwise the Http request runs on the shared fan-out executor.
+     * The future completes exceptionally if the request fails or is rejected, or right away if the circuit
+     * of the replica is open, and cancelling it cancels the Http request if it has not started yet.
      *
-     * @param url
+     * @param hostInfo
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @return CompletableFuture
+     */
+    CompletableFuture<HttpClient.Response> doInternalRequestAsync(String[] hostInfo, byte op, int hashKey, String key
+            , JsonElement body) {
+        String rpcAddress = Driver.ring.getRpcAddress(hostInfo[0]);
+        CompletableFuture<HttpClient.Response> future = new CompletableFuture<>();
+
+        if (!Driver.circuitBreaker.allow(hostInfo[0])) {
+            future.completeExceptionally(new CircuitBreaker.OpenException(hostInfo[0]));
+            return future;
+        }
+
+        if (rpcAddress != null) {
+            long start = System.nanoTime();
+            CompletableFuture<HttpClient.Response> call = Driver.rpcClient.callAsync(rpcAddress, op, hashKey, key
+                    , body, Driver.adaptiveTimeout.getTimeout(hostInfo[0]));
+            Driver.adaptiveTimeout.track(hostInfo[0], start, call);
+
+            return Driver.circuitBreaker.track(hostInfo[0], call);
+        }
+
+        Driver.circuitBreaker.track(hostInfo[0], future);
+        try {
+            Future<?> task = Driver.fanOut.submit(hostInfo[1], () -> {
+                try {
+                    future.complete(sendInternalRequest(hostInfo, op, hashKey, key, body));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+
+            future.whenComplete((response, error) -> {
+                if (future.isCancelled()) {
+                    Driver.fanOut.cancel(Collections.singletonList(task));
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+
+        return future;
+    }
+
+    /**
+     * Helper method to send an internal request, timed out after the adaptive timeout of the replica
+     * and recorded in its latency.
+     *
+     * @param hostInfo
+     * @param op
+     * @param hashKey
+     * @param key
      * @param body
-     * @return HttpURLConnection
+     * @return HttpClient.Response
      * @throws IOException
      */
-    HttpURLConnection doPostRequest(String url, JsonElement body) throws IOException {
-        HttpURLConnection connection = initConnection(url);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
-
-        OutputStream os = connection.getOutputStream();
-        os.write(body.toString().getBytes());
-        os.flush();
-        os.close();
-
-        return connection;
+    private HttpClient.Response sendInternalRequest(String[] hostInfo, byte op, int hashKey, String key
+            , JsonElement body) throws IOException {
+        String rpcAddress = Driver.ring.getRpcAddress(hostInfo[0]);
+        int timeout = Driver.adaptiveTimeout.getTimeout(hostInfo[0]);
+        long start = System.nanoTime();
+
+        try {
+            HttpClient.Response response;
+            if (rpcAddress != null) {
+                response = Driver.rpcClient.call(rpcAddress, op, hashKey, key, body, timeout);
+            } else {
+                response = Driver.httpClient.send((body == null) ? "GET" : "POST"
+                        , hostInfo[1] + RpcServer.getUri(op, hashKey, key)
+                        , (body == null) ? null : body.toString(), timeout);
+            }
+            Driver.adaptiveTimeout.record(hostInfo[0], start, null);
+
+            return response;
+        } catch (IOException ioe) {
+            Driver.adaptiveTimeout.record(hostInfo[0], start, ioe);
+            throw ioe;
+        }
     }
 
     /**
@@ -81,23 +171,17 @@ abstract class HttpRequest {
     }
 
     /**
-     * Read and parse the response from a Http connection.
+     * Parse the response body of a Http request, or return it if it was already decoded from an internal RPC response.
      *
-     * @param connection
+     * @param response
      * @return JsonElement
      * @throws JsonParseException
-     * @throws IOException
      */
-    JsonElement parseResponse(HttpURLConnection connection) throws JsonParseException, IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        StringBuilder sb = new StringBuilder();
-
-        String str;
-        while ((str = in.readLine()) != null) {
-            sb.append(str);
+    JsonElement parseResponse(HttpClient.Response response) throws JsonParseException {
+        if (response.getJson() != null) {
+            return response.getJson();
         }
-        in.close();
 
-        return parseJson(sb.toString());
+        return parseJson(response.getBody());
     }
 }
@@ -0,0 +1,146 @@
+package Backend;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * ItemMultiset class to keep the items of an object as distinct items with their counts.
+ *
+ * Adding, removing and checking an item are O(1), instead of the linear scan of a list.
+ * Items are iterated in the order they were first added, each one repeated by its count,
+ * without copying them into another collection.
+ *
+ * Not thread-safe, guarded by the lock of the owner.
+ */
+public class ItemMultiset implements Iterable<String> {
+    private final Map<String, Count> counts;
+    private int size;
+
+    /**
+     * ItemMultiset constructor.
+     */
+    public ItemMultiset() {
+        this.counts = new LinkedHashMap<>();
+        this.size = 0;
+    }
+
+    /**
+     * Add one occurrence of an item.
+     *
+     * @param item
+     */
+    public void add(String item) {
+        Count count = this.counts.get(item);
+
+        if (count == null) {
+            this.counts.put(item, new Count());
+        } else {
+            count.value++;
+        }
+        this.size++;
+    }
+
+    /**
+     * Remove one occurrence of an item, return false if there is no such item.
+     *
+     * @param item
+     * @return boolean
+     */
+    public boolean remove(String item) {
+        Count count = this.counts.get(item);
+
+        if (count == null) {
+            return false;
+        }
+
+        if (--count.value == 0) {
+            this.counts.remove(item);
+        }
+        this.size--;
+
+        return true;
+    }
+
+    /**
+     * Return true if there is at least one occurrence of an item.
+     *
+     * @param item
+     * @return boolean
+     */
+    public boolean contains(String item) {
+        return this.counts.containsKey(item);
+    }
+
+    /**
+     * Return the number of occurrences of an item.
+     *
+     * @param item
+     * @return int
+     */
+    public int count(String item) {
+        Count count = this.counts.get(item);
+
+        return (count == null) ? 0 : count.value;
+    }
+
+    /**
+     * Return the number of items, counting every occurrence.
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Remove every item.
+     */
+    public void clear() {
+        this.counts.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Return an iterator over every occurrence, in the order the items were first added.
+     *
+     * @return Iterator
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final Iterator<Map.Entry<String, Count>> entries = ItemMultiset.this.counts.entrySet().iterator();
+            private String item = null;
+            private int remaining = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.remaining > 0 || this.entries.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (this.remaining == 0) {
+                    if (!this.entries.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    Map.Entry<String, Count> entry = this.entries.next();
+                    this.item = entry.getKey();
+                    this.remaining = entry.getValue().value;
+                }
+                this.remaining--;
+
+                return this.item;
+            }
+        };
+    }
+
+    /**
+     * Nested Count class for a mutable count, so adding an existing item does not box an Integer.
+     */
+    private static class Count {
+        private int value = 1;
+    }
+}
@@ -0,0 +1,197 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LatencyTracker class to keep the recent latencies of the requests to other replicas.
+ *
+ * Every replica has a window of its last samples and a moving average, and one more window keeps
+ * the samples of all replicas together. Percentiles are read from a sorted copy of a window,
+ * which is sorted again only after enough new samples arrived.
+ */
+public class LatencyTracker {
+    private static final int WINDOW = 256;
+    private static final int RESORT = 16;
+    private static final double ALPHA = 0.2;
+    private final ConcurrentMap<String, Window> peers;
+    private final Window all;
+
+    /**
+     * LatencyTracker constructor.
+     */
+    public LatencyTracker() {
+        this.peers = new ConcurrentHashMap<>();
+        this.all = new Window();
+    }
+
+    /**
+     * Record the latency of a request to a replica.
+     *
+     * @param id
+     * @param nanos
+     */
+    public void record(String id, long nanos) {
+        this.peers.computeIfAbsent(id, peer -> new Window()).add(nanos);
+        this.all.add(nanos);
+    }
+
+    /**
+     * Return the moving average latency of a replica in nanoseconds, 0 if it has no samples yet.
+     *
+     * @param id
+     * @return double
+     */
+    public double getAverage(String id) {
+        Window window = this.peers.get(id);
+
+        return (window == null) ? 0 : window.getAverage();
+    }
+
+    /**
+     * Return the number of samples in the window of a replica.
+     *
+     * @param id
+     * @return int
+     */
+    public int getCount(String id) {
+        Window window = this.peers.get(id);
+
+        return (window == null) ? 0 : window.getCount();
+    }
+
+    /**
+     * Return a percentile of the latency of a replica in nanoseconds, -1 if it has no samples yet.
+     *
+     * @param id
+     * @param percentile
+     * @return long
+     */
+    public long getPercentile(String id, double percentile) {
+        Window window = this.peers.get(id);
+
+        return (window == null) ? -1 : window.getPercentile(percentile);
+    }
+
+    /**
+     * Return a percentile of the latency of all replicas in nanoseconds, -1 if there are no samples yet.
+     *
+     * @param percentile
+     * @return long
+     */
+    public long getPercentile(double percentile) {
+        return this.all.getPercentile(percentile);
+    }
+
+    /**
+     * Return the latency of each replica in Json format, in milliseconds.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+
+        for (Map.Entry<String, Window> entry : this.peers.entrySet()) {
+            Window window = entry.getValue();
+            JsonObject peer = new JsonObject();
+            peer.addProperty("average", toMillis(window.getAverage()));
+            peer.addProperty("p50", toMillis(window.getPercentile(50)));
+            peer.addProperty("p99", toMillis(window.getPercentile(99)));
+            metrics.add(entry.getKey(), peer);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Helper method to turn nanoseconds into milliseconds.
+     *
+     * @param nanos
+     * @return double
+     */
+    private double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Nested Window class for the last samples of one replica, or of all of them.
+     */
+    private static class Window {
+        private final long[] samples;
+        private long[] sorted;
+        private int count;
+        private int next;
+        private int unsorted;
+        private double average;
+
+        /**
+         * Window constructor.
+         */
+        private Window() {
+            this.samples = new long[WINDOW];
+            this.sorted = new long[0];
+            this.count = 0;
+            this.next = 0;
+            this.unsorted = 0;
+            this.average = 0;
+        }
+
+        /**
+         * Add a sample, replacing the oldest one if the window is full.
+         *
+         * @param nanos
+         */
+        private synchronized void add(long nanos) {
+            this.samples[this.next] = nanos;
+            this.next = (this.next + 1) % WINDOW;
+            this.count = Math.min(this.count + 1, WINDOW);
+            this.unsorted++;
+            this.average = (this.count == 1) ? nanos : ALPHA * nanos + (1 - ALPHA) * this.average;
+        }
+
+        /**
+         * Return the moving average.
+         *
+         * @return double
+         */
+        private synchronized double getAverage() {
+            return this.average;
+        }
+
+        /**
+         * Return the number of samples.
+         *
+         * @return int
+         */
+        private synchronized int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Return a percentile of the samples, -1 if there are none.
+         *
+         * @param percentile
+         * @return long
+         */
+        private synchronized long getPercentile(double percentile) {
+            if (this.count == 0) {
+                return -1;
+            }
+
+            if (this.unsorted >= RESORT || this.sorted.length < Math.min(this.count, RESORT)) {
+                this.sorted = Arrays.copyOf(this.samples, this.count);
+                Arrays.sort(this.sorted);
+                this.unsorted = 0;
+            }
+
+            int index = (int) Math.ceil(percentile / 100 * this.sorted.length) - 1;
+
+            return this.sorted[Math.max(0, Math.min(index, this.sorted.length - 1))];
+        }
+    }
+}
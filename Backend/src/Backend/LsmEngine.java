@@ -0,0 +1,662 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * LsmEngine class to store objects in a log-structured merge tree on disk.
+ *
+ * Writes go to a sorted memtable of live objects. A full memtable is frozen and flushed
+ * in background into an immutable Segment file, and the write-ahead log files covering it are deleted.
+ * Once there are too many segments, a background compaction merges them into one.
+ * Reads look at the memtable, the frozen memtables and then the segments, newest first.
+ *
+ * Every call holds the read lock, freezing the memtable and swapping segments hold the write lock,
+ * so a mutation and its write-ahead log record always belong to the same memtable.
+ */
+public class LsmEngine implements StorageEngine {
+    private static final MyObject TOMBSTONE = new MyObject(-1, null);
+    private static final int COMPACTION_THRESHOLD = 4;
+    private final ReentrantReadWriteLock lock;
+    private final File directory;
+    private final int memtableLimit;
+    private final BlockCache cache;
+    private final ExecutorService background;
+    private final AtomicInteger memtableSize;
+    private volatile ConcurrentSkipListMap<EngineKey, MyObject> memtable;
+    private volatile List<Frozen> frozen;
+    private volatile List<Segment> segments;
+    private long nextSegmentId;
+
+    /**
+     * LsmEngine constructor to open the segments in the directory.
+     *
+     * @param directory
+     * @param memtableLimit
+     * @param cacheCapacity
+     * @throws IOException
+     */
+    public LsmEngine(String directory, int memtableLimit, int cacheCapacity) throws IOException {
+        this.lock = new ReentrantReadWriteLock();
+        this.directory = new File(directory);
+        this.memtableLimit = memtableLimit;
+        this.cache = new BlockCache(cacheCapacity);
+        this.background = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.memtableSize = new AtomicInteger();
+        this.memtable = new ConcurrentSkipListMap<>();
+        this.frozen = Collections.emptyList();
+        this.segments = openSegments();
+    }
+
+    /**
+     * Get the object details and the vector clock.
+     *
+     * @param hashKey
+     * @param key
+     * @return JsonObject
+     */
+    @Override
+    public JsonObject get(int hashKey, String key) {
+        JsonObject data;
+
+        this.lock.readLock().lock();
+
+        try {
+            MyObject object = this.memtable.get(new EngineKey(hashKey, key));
+
+            if (object == TOMBSTONE) {
+                data = null;
+            } else if (object != null) {
+                data = object.toJson();
+            } else {
+                data = getOlder(new EngineKey(hashKey, key));
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        return data;
+    }
+
+    /**
+     * Apply the client write to the object in the memtable.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return JsonArray
+     * @throws NullPointerException
+     */
+    @Override
+    public JsonArray put(int hashKey, String key, JsonObject data) throws NullPointerException {
+        JsonArray version;
+
+        this.lock.readLock().lock();
+
+        try {
+            version = load(hashKey, key).put(data);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        checkMemtable();
+
+        return version;
+    }
+
+    /**
+     * Store the replicate into the object in the memtable.
+     *
+     * @param hashKey
+     * @param key
+     * @param replicate
+     */
+    @Override
+    public void replicate(int hashKey, String key, JsonObject replicate) {
+        this.lock.readLock().lock();
+
+        try {
+            load(hashKey, key).storeReplicate(replicate);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        checkMemtable();
+    }
+
+    /**
+     * Overwrite the whole object in the memtable.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    @Override
+    public void overwrite(int hashKey, String key, JsonObject data) {
+        this.lock.readLock().lock();
+
+        try {
+            load(hashKey, key).overwrite(data);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        checkMemtable();
+    }
+
+    /**
+     * Merge the bucket from the segments and memtables, newer versions shadow older ones,
+     * and pass the live objects to the consumer in key order.
+     *
+     * @param hashKey
+     * @param consumer
+     */
+    @Override
+    public void scanRange(int hashKey, BiConsumer<String, JsonObject> consumer) {
+        this.lock.readLock().lock();
+
+        try {
+            for (Map.Entry<String, Object> entry : mergeRange(hashKey).entrySet()) {
+                Object value = entry.getValue();
+
+                if (value instanceof MyObject) {
+                    consumer.accept(entry.getKey(), ((MyObject) value).toJson());
+                } else {
+                    consumer.accept(entry.getKey(), parse((byte[]) value));
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write a tombstone for every live object of the bucket.
+     *
+     * @param hashKey
+     */
+    @Override
+    public void removeRange(int hashKey) {
+        this.lock.readLock().lock();
+
+        try {
+            for (String key : mergeRange(hashKey).keySet()) {
+                if (this.memtable.put(new EngineKey(hashKey, key), TOMBSTONE) == null) {
+                    this.memtableSize.incrementAndGet();
+                }
+            }
+            Driver.writeAheadLog.appendDrop(hashKey);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        checkMemtable();
+    }
+
+    /**
+     * Insert an object into the memtable without logging it.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    @Override
+    public void restore(int hashKey, String key, JsonObject data) {
+        this.lock.readLock().lock();
+
+        try {
+            if (this.memtable.put(new EngineKey(hashKey, key), MyObject.fromJson(hashKey, key, data)) == null) {
+                this.memtableSize.incrementAndGet();
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        checkMemtable();
+    }
+
+    /**
+     * Return the block cache.
+     *
+     * @return BlockCache
+     */
+    public BlockCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Helper method to return the object to mutate from the memtable.
+     * If it is not in the memtable yet, copy the latest version from the frozen memtables or segments.
+     * Caller must hold the read lock.
+     *
+     * @param hashKey
+     * @param key
+     * @return MyObject
+     */
+    private MyObject load(int hashKey, String key) {
+        EngineKey engineKey = new EngineKey(hashKey, key);
+
+        while (true) {
+            MyObject current = this.memtable.get(engineKey);
+            if (current != null && current != TOMBSTONE) {
+                return current;
+            }
+
+            JsonObject older = (current == TOMBSTONE) ? null : getOlder(engineKey);
+            MyObject object = (older == null) ? new MyObject(hashKey, key) : MyObject.fromJson(hashKey, key, older);
+
+            if (current == null) {
+                if (this.memtable.putIfAbsent(engineKey, object) == null) {
+                    this.memtableSize.incrementAndGet();
+                    return object;
+                }
+            } else if (this.memtable.replace(engineKey, TOMBSTONE, object)) {
+                return object;
+            }
+        }
+    }
+
+    /**
+     * Helper method to look up a key in the frozen memtables and then the segments, newest first.
+     * Caller must hold the read lock.
+     *
+     * @param engineKey
+     * @return JsonObject
+     */
+    private JsonObject getOlder(EngineKey engineKey) {
+        for (Frozen table : this.frozen) {
+            MyObject object = table.memtable.get(engineKey);
+
+            if (object != null) {
+                return (object == TOMBSTONE) ? null : object.toJson();
+            }
+        }
+
+        try {
+            for (Segment segment : this.segments) {
+                byte[] value = segment.get(engineKey);
+
+                if (value != null) {
+                    return (value == Segment.TOMBSTONE) ? null : parse(value);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        return null;
+    }
+
+    /**
+     * Helper method to merge a bucket from oldest to newest source, and drop the deleted keys.
+     * Values are either a live MyObject or the serialized bytes of a segment entry.
+     * Caller must hold the read lock.
+     *
+     * @param hashKey
+     * @return Map
+     */
+    private Map<String, Object> mergeRange(int hashKey) {
+        Map<String, Object> merged = new TreeMap<>();
+
+        try {
+            for (int i = this.segments.size() - 1; i >= 0; i--) {
+                this.segments.get(i).scan(hashKey, merged::put);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+
+        for (int i = this.frozen.size() - 1; i >= 0; i--) {
+            mergeMemtableRange(this.frozen.get(i).memtable, hashKey, merged);
+        }
+        mergeMemtableRange(this.memtable, hashKey, merged);
+
+        merged.values().removeIf(value -> value == TOMBSTONE || value == Segment.TOMBSTONE);
+
+        return merged;
+    }
+
+    /**
+     * Helper method to put the bucket entries of a memtable into the merged map.
+     *
+     * @param memtable
+     * @param hashKey
+     * @param merged
+     */
+    private void mergeMemtableRange(NavigableMap<EngineKey, MyObject> memtable, int hashKey
+            , Map<String, Object> merged) {
+        for (Map.Entry<EngineKey, MyObject> entry
+                : memtable.subMap(EngineKey.first(hashKey), EngineKey.first(hashKey + 1)).entrySet()) {
+            merged.put(entry.getKey().getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Helper method to freeze the memtable once it is full, and schedule the flush in background.
+     * The write-ahead log is rotated at the same moment, so the older log files only cover frozen memtables.
+     */
+    private void checkMemtable() {
+        if (this.memtableSize.get() < this.memtableLimit) {
+            return;
+        }
+
+        this.lock.writeLock().lock();
+
+        if (this.memtableSize.get() >= this.memtableLimit) {
+            List<Frozen> frozen = new ArrayList<>();
+            frozen.add(new Frozen(this.memtable, Driver.writeAheadLog.rotate()));
+            frozen.addAll(this.frozen);
+
+            this.frozen = frozen;
+            this.memtable = new ConcurrentSkipListMap<>();
+            this.memtableSize.set(0);
+            this.background.submit(this::flush);
+        }
+
+        this.lock.writeLock().unlock();
+    }
+
+    /**
+     * Write the oldest frozen memtable into a new segment, then compact if there are too many segments.
+     */
+    private void flush() {
+        Frozen table = this.frozen.get(this.frozen.size() - 1);
+        long id = this.nextSegmentId++;
+        File file = getSegmentFile(id);
+
+        try {
+            Iterator<Map.Entry<EngineKey, MyObject>> entries = table.memtable.entrySet().iterator();
+            Segment.write(file, false, new Iterator<Map.Entry<EngineKey, byte[]>>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Map.Entry<EngineKey, byte[]> next() {
+                    Map.Entry<EngineKey, MyObject> entry = entries.next();
+                    byte[] value = (entry.getValue() == TOMBSTONE) ? null
+                            : entry.getValue().toJson().toString().getBytes(StandardCharsets.UTF_8);
+
+                    return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value);
+                }
+            });
+            Segment segment = new Segment(id, file, this.cache);
+
+            this.lock.writeLock().lock();
+
+            List<Segment> segments = new ArrayList<>();
+            segments.add(segment);
+            segments.addAll(this.segments);
+            this.segments = segments;
+
+            List<Frozen> frozen = new ArrayList<>(this.frozen);
+            frozen.remove(table);
+            this.frozen = frozen;
+
+            this.lock.writeLock().unlock();
+
+            if (table.walFileNumber > 0) {
+                Driver.writeAheadLog.deleteBefore(table.walFileNumber);
+            }
+            System.out.println("[LSM] Flushed memtable into segment " + id);
+
+            if (this.segments.size() > COMPACTION_THRESHOLD) {
+                compact();
+            }
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            System.out.println("[LSM] Failed to flush memtable, keep it in memory");
+        }
+    }
+
+    /**
+     * Merge every segment into one, newer entries win and tombstones are dropped,
+     * since no older data is left for them to shadow.
+     * The output takes the largest input id and replaces that file atomically,
+     * so a crash in the middle leaves either the inputs or a compacted segment that supersedes them.
+     *
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        List<Segment> inputs = this.segments;
+        long id = inputs.get(0).getId();
+        File temporary = new File(this.directory, "segment-" + id + ".tmp");
+
+        Segment.write(temporary, true, new MergeIterator(inputs));
+
+        this.lock.writeLock().lock();
+
+        try {
+            for (Segment input : inputs) {
+                input.close();
+            }
+            Files.move(temporary.toPath(), getSegmentFile(id).toPath()
+                    , StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Segment input : inputs) {
+                if (input.getId() != id) {
+                    Files.deleteIfExists(input.getFile().toPath());
+                }
+            }
+
+            List<Segment> segments = new ArrayList<>(this.segments);
+            segments.removeAll(inputs);
+            segments.add(new Segment(id, getSegmentFile(id), this.cache));
+            this.segments = segments;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+
+        System.out.println("[LSM] Compacted " + inputs.size() + " segments into segment " + id);
+    }
+
+    /**
+     * Helper method to open the segments in the directory, newest first.
+     * Segments superseded by a compacted segment are deleted.
+     *
+     * @return List
+     * @throws IOException
+     */
+    private List<Segment> openSegments() throws IOException {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IOException("Unable to create data directory " + this.directory);
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        String[] names = this.directory.list();
+        for (String name : names == null ? new String[0] : names) {
+            File file = new File(this.directory, name);
+
+            if (name.endsWith(".tmp")) {
+                Files.delete(file.toPath());
+            } else if (name.startsWith("segment-") && name.endsWith(".sst")) {
+                long id = Long.parseLong(name.substring(8, name.length() - 4));
+                segments.add(new Segment(id, file, this.cache));
+            }
+        }
+        segments.sort((a, b) -> Long.compare(b.getId(), a.getId()));
+
+        List<Segment> live = new ArrayList<>();
+        boolean superseded = false;
+        for (Segment segment : segments) {
+            if (superseded) {
+                segment.close();
+                Files.delete(segment.getFile().toPath());
+            } else {
+                live.add(segment);
+                superseded = segment.isCompacted();
+            }
+        }
+
+        this.nextSegmentId = live.isEmpty() ? 1 : live.get(0).getId() + 1;
+        System.out.println("[LSM] Opened " + live.size() + " segment(s)");
+
+        return live;
+    }
+
+    /**
+     * Helper method to return the file of a segment.
+     *
+     * @param id
+     * @return File
+     */
+    private File getSegmentFile(long id) {
+        return new File(this.directory, String.format("segment-%010d.sst", id));
+    }
+
+    /**
+     * Helper method to parse the serialized object.
+     *
+     * @param value
+     * @return JsonObject
+     */
+    private JsonObject parse(byte[] value) {
+        return new JsonParser().parse(new String(value, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    /**
+     * Nested Frozen class for a memtable waiting to be flushed,
+     * with the first write-ahead log file that is not covered by it.
+     */
+    private static class Frozen {
+        private final ConcurrentSkipListMap<EngineKey, MyObject> memtable;
+        private final long walFileNumber;
+
+        /**
+         * Frozen constructor.
+         *
+         * @param memtable
+         * @param walFileNumber
+         */
+        private Frozen(ConcurrentSkipListMap<EngineKey, MyObject> memtable, long walFileNumber) {
+            this.memtable = memtable;
+            this.walFileNumber = walFileNumber;
+        }
+    }
+
+    /**
+     * Nested MergeIterator class to merge sorted segments, newest first, and skip shadowed and deleted entries.
+     */
+    private static class MergeIterator implements Iterator<Map.Entry<EngineKey, byte[]>> {
+        private final PriorityQueue<Source> queue;
+        private Map.Entry<EngineKey, byte[]> next;
+
+        /**
+         * MergeIterator constructor.
+         *
+         * @param segments
+         */
+        private MergeIterator(List<Segment> segments) {
+            this.queue = new PriorityQueue<>();
+
+            for (int i = 0; i < segments.size(); i++) {
+                Source source = new Source(segments.get(i).iterator(), i);
+                if (source.advance()) {
+                    this.queue.add(source);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.next == null && !this.queue.isEmpty()) {
+                Source newest = this.queue.poll();
+                Map.Entry<EngineKey, byte[]> entry = newest.current;
+
+                if (newest.advance()) {
+                    this.queue.add(newest);
+                }
+                while (!this.queue.isEmpty() && this.queue.peek().current.getKey().equals(entry.getKey())) {
+                    Source shadowed = this.queue.poll();
+                    if (shadowed.advance()) {
+                        this.queue.add(shadowed);
+                    }
+                }
+
+                if (entry.getValue() != Segment.TOMBSTONE) {
+                    this.next = entry;
+                }
+            }
+
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<EngineKey, byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Map.Entry<EngineKey, byte[]> entry = this.next;
+            this.next = null;
+
+            return entry;
+        }
+
+        /**
+         * Nested Source class for the current entry of one segment, lower rank is newer.
+         */
+        private static class Source implements Comparable<Source> {
+            private final Iterator<Map.Entry<EngineKey, byte[]>> iterator;
+            private final int rank;
+            private Map.Entry<EngineKey, byte[]> current;
+
+            /**
+             * Source constructor.
+             *
+             * @param iterator
+             * @param rank
+             */
+            private Source(Iterator<Map.Entry<EngineKey, byte[]>> iterator, int rank) {
+                this.iterator = iterator;
+                this.rank = rank;
+            }
+
+            /**
+             * Move to the next entry, return false at the end.
+             *
+             * @return boolean
+             */
+            private boolean advance() {
+                this.current = this.iterator.hasNext() ? this.iterator.next() : null;
+
+                return this.current != null;
+            }
+
+            @Override
+            public int compareTo(Source other) {
+                int result = this.current.getKey().compareTo(other.current.getKey());
+
+                return result != 0 ? result : Integer.compare(this.rank, other.rank);
+            }
+        }
+    }
+}
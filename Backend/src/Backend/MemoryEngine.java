@@ -0,0 +1,146 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * MemoryEngine class to keep every object on the heap, bucketed by hashKey.
+ */
+public class MemoryEngine implements StorageEngine {
+    private final ConcurrentMap<Integer, ConcurrentMap<String, MyObject>> buckets;
+
+    /**
+     * MemoryEngine constructor to initialize the buckets.
+     */
+    public MemoryEngine() {
+        this.buckets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the object details and the vector clock.
+     *
+     * @param hashKey
+     * @param key
+     * @return JsonObject
+     */
+    @Override
+    public JsonObject get(int hashKey, String key) {
+        JsonObject data = null;
+
+        Map<String, MyObject> bucket = this.buckets.get(hashKey);
+        if (bucket != null) {
+            MyObject object = bucket.get(key);
+            if (object != null) {
+                data = object.toJson();
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Apply the client write to the object.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return JsonArray
+     * @throws NullPointerException
+     */
+    @Override
+    public JsonArray put(int hashKey, String key, JsonObject data) throws NullPointerException {
+        return getOrCreateObject(hashKey, key).put(data);
+    }
+
+    /**
+     * Store the replicate into the object.
+     *
+     * @param hashKey
+     * @param key
+     * @param replicate
+     */
+    @Override
+    public void replicate(int hashKey, String key, JsonObject replicate) {
+        getOrCreateObject(hashKey, key).storeReplicate(replicate);
+    }
+
+    /**
+     * Overwrite the whole object.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    @Override
+    public void overwrite(int hashKey, String key, JsonObject data) {
+        getOrCreateObject(hashKey, key).overwrite(data);
+    }
+
+    /**
+     * Pass every object of the bucket to the consumer.
+     *
+     * @param hashKey
+     * @param consumer
+     */
+    @Override
+    public void scanRange(int hashKey, BiConsumer<String, JsonObject> consumer) {
+        Map<String, MyObject> bucket = this.buckets.get(hashKey);
+
+        if (bucket != null) {
+            for (Map.Entry<String, MyObject> entry : bucket.entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue().toJson());
+            }
+        }
+    }
+
+    /**
+     * Remove the whole bucket.
+     *
+     * @param hashKey
+     */
+    @Override
+    public void removeRange(int hashKey) {
+        this.buckets.remove(hashKey);
+        Driver.writeAheadLog.appendDrop(hashKey);
+    }
+
+    /**
+     * Insert an object without logging it.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    @Override
+    public void restore(int hashKey, String key, JsonObject data) {
+        this.buckets.computeIfAbsent(hashKey, k -> new ConcurrentHashMap<>())
+                .put(key, MyObject.fromJson(hashKey, key, data));
+    }
+
+    /**
+     * Return the object for particular key, create the bucket and the object if absent.
+     * Check with a plain lookup first, so existing keys never contend on bin locks.
+     *
+     * @param hashKey
+     * @param key
+     * @return MyObject
+     */
+    private MyObject getOrCreateObject(int hashKey, String key) {
+        ConcurrentMap<String, MyObject> bucket = this.buckets.get(hashKey);
+        if (bucket == null) {
+            bucket = this.buckets.computeIfAbsent(hashKey, k -> new ConcurrentHashMap<>());
+        }
+
+        MyObject object = bucket.get(key);
+        if (object == null) {
+            object = bucket.computeIfAbsent(key, k -> new MyObject(hashKey, key));
+        }
+
+        return object;
+    }
+}
@@ -0,0 +1,120 @@
+package Backend;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * MerkleTree class for the digest of a hashKey bucket, used by anti-entropy to find the keys that differ.
+ *
+ * Every object has a digest of its key and vector clock, 0 for an object without clock.
+ * Keys are spread over a fixed number of leaves, and a leaf is the sum of the digests of its keys,
+ * so a mutation updates its leaf by the difference without looking at the other keys.
+ * The inner nodes up to the root are hashed from the leaves when the root is asked for.
+ */
+public class MerkleTree {
+    static final int NUMBER_OF_LEAVES = 64;
+    private static final int LEAF_BITS = 6;
+    private final AtomicLongArray leaves;
+
+    /**
+     * MerkleTree constructor for an empty bucket.
+     */
+    public MerkleTree() {
+        this.leaves = new AtomicLongArray(NUMBER_OF_LEAVES);
+    }
+
+    /**
+     * Return the 64-bit FNV-1a hash of a string.
+     *
+     * @param value
+     * @return long
+     */
+    public static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Return the digest of an object from the hash of its key and its vector clock.
+     *
+     * @param keyHash
+     * @param vectorClock
+     * @return long
+     */
+    public static long digest(long keyHash, VectorClock vectorClock) {
+        return (vectorClock.size() == 0) ? 0 : mix(keyHash ^ vectorClock.digest());
+    }
+
+    /**
+     * Return the leaf of a key.
+     *
+     * @param keyHash
+     * @return int
+     */
+    public static int getLeaf(long keyHash) {
+        return (int) (mix(keyHash) >>> (64 - LEAF_BITS));
+    }
+
+    /**
+     * Scramble the bits of a long (the finalizer of SplitMix64).
+     *
+     * @param z
+     * @return long
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Replace the digest of a key.
+     *
+     * @param keyHash
+     * @param before
+     * @param after
+     */
+    public void update(long keyHash, long before, long after) {
+        if (before != after) {
+            this.leaves.addAndGet(getLeaf(keyHash), after - before);
+        }
+    }
+
+    /**
+     * Return a copy of the leaves.
+     *
+     * @return long[]
+     */
+    public long[] getLeaves() {
+        long[] copy = new long[NUMBER_OF_LEAVES];
+
+        for (int i = 0; i < NUMBER_OF_LEAVES; i++) {
+            copy[i] = this.leaves.get(i);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Hash the leaves pairwise up to the root.
+     *
+     * @return long
+     */
+    public long getRoot() {
+        long[] level = getLeaves();
+
+        for (int size = NUMBER_OF_LEAVES / 2; size > 0; size /= 2) {
+            for (int i = 0; i < size; i++) {
+                level[i] = mix(level[2 * i] * 31 + level[2 * i + 1]);
+            }
+        }
+
+        return level[0];
+    }
+}
@@ -3,27 +3,76 @@ package Backend;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
-import java.util.List;
-import java.util.Map;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * MyObject class to store items and Vector Clock of every key.
+ *
+ * Items are kept as an ItemMultiset, so adding and removing an item are O(1).
+ * The clock is kept as a VectorClock of primitive arrays, and converted to Json only
+ * when it is returned, replicated or logged.
  */
 public class MyObject {
     private final ReentrantReadWriteLock lock;
-    private final List<String> items;
-    private final Map<String, Integer> vectorClock;
+    private final int hashKey;
+    private final String key;
+    private final long keyHash;
+    private final ItemMultiset items;
+    private final VectorClock vectorClock;
 
     /**
      * MyObject constructor to initialize the storage and the Vector Clock.
+     *
+     * @param hashKey
+     * @param key
      */
-    public MyObject() {
+    public MyObject(int hashKey, String key) {
         this.lock = new ReentrantReadWriteLock();
-        this.items = new ArrayList<>();
-        this.vectorClock = new HashMap<>();
+        this.hashKey = hashKey;
+        this.key = key;
+        this.keyHash = (key == null) ? 0 : MerkleTree.hash(key);
+        this.items = new ItemMultiset();
+        this.vectorClock = new VectorClock();
+    }
+
+    /**
+     * Create an object from its Json format without logging, when loading it from disk.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return MyObject
+     */
+    public static MyObject fromJson(int hashKey, String key, JsonObject data) {
+        MyObject object = new MyObject(hashKey, key);
+        JsonArray items = data.get("items").getAsJsonArray();
+
+        for (int i = 0; i < items.size(); i++) {
+            object.items.add(items.get(i).getAsString());
+        }
+        object.vectorClock.merge(data.get("clocks").getAsJsonArray());
+
+        return object;
+    }
+
+    /**
+     * Apply the client write base on the op in the request body.
+     *
+     * @param data
+     * @return JsonArray
+     * @throws NullPointerException
+     */
+    public JsonArray put(JsonObject data) throws NullPointerException {
+        String op = data.get("op").getAsString();
+
+        switch (op) {
+            case "add":
+                return add(data);
+            case "remove":
+                return remove(data);
+            default:
+                throw new NullPointerException();
+        }
     }
 
     /**
@@ -36,14 +85,18 @@ public class MyObject {
      * @throws NullPointerException
      */
     public JsonArray add(JsonObject data) throws NullPointerException {
-        JsonArray clocks = data.get("version").getAsJsonArray();
+        VectorClock version = VectorClock.fromJson(data.get("version").getAsJsonArray());
+        JsonArray clocks;
 
         this.lock.writeLock().lock();
 
-        if (checkUpdateVersion(clocks)) {
+        if (this.vectorClock.isSameAs(version)) {
+            long digest = getDigest();
             this.items.add(data.get("item").getAsString());
             incrementVectorClock();
+            updateDigest(digest);
             data.add("clocks", getClock());
+            logMutation("add", data.get("item").getAsString(), data.get("clocks").getAsJsonArray());
 
             clocks = null;
         } else {
@@ -58,21 +111,25 @@ public class MyObject {
     /**
      * Check if the client is updating the latest version.
      * If not, return the latest version for the client to retry the request later.
-     * It it is, remove the first item appears in the search from the storage and increase the Vector Clock.
+     * It it is, remove one occurrence of the item from the storage and increase the Vector Clock.
      *
      * @param data
      * @return JsonArray
      * @throws NullPointerException
      */
     public JsonArray remove(JsonObject data) throws NullPointerException {
-        JsonArray clocks = data.get("version").getAsJsonArray();
+        VectorClock version = VectorClock.fromJson(data.get("version").getAsJsonArray());
+        JsonArray clocks;
 
         this.lock.writeLock().lock();
 
-        if (checkUpdateVersion(clocks)) {
+        if (this.vectorClock.isSameAs(version)) {
+            long digest = getDigest();
             this.items.remove(data.get("item").getAsString());
             incrementVectorClock();
+            updateDigest(digest);
             data.add("clocks", getClock());
+            logMutation("remove", data.get("item").getAsString(), data.get("clocks").getAsJsonArray());
 
             clocks = null;
         } else {
@@ -84,32 +141,6 @@ public class MyObject {
         return clocks;
     }
 
-    /**
-     * Check if the version that the client is updating is the latest version.
-     *
-     * @param clocks
-     * @return boolean
-     */
-    private boolean checkUpdateVersion(JsonArray clocks) {
-        boolean result = true;
-
-        if (clocks.size() != this.vectorClock.size()) {
-            result = false;
-        } else {
-            for (int i = 0; i < clocks.size(); i++) {
-                JsonObject clock = clocks.get(i).getAsJsonObject();
-                String node = clock.get("node").getAsString();
-                int timestamp = clock.get("timestamp").getAsInt();
-
-                if (!this.vectorClock.containsKey(node) || this.vectorClock.get(node) != timestamp) {
-                    result = false;
-                }
-            }
-        }
-
-        return result;
-    }
-
     /**
      * Check for causal ordering and store the replicate into storage.
      *
@@ -117,11 +148,12 @@ public class MyObject {
      */
     public void storeReplicate(JsonObject replicate) {
         JsonArray clocks = replicate.get("clocks").getAsJsonArray();
+        VectorClock replicateClock = VectorClock.fromJson(clocks);
         boolean causalOrdering;
 
         this.lock.writeLock().lock();
 
-        causalOrdering = checkCausalOrdering(clocks);
+        causalOrdering = this.vectorClock.isNotAfterOnCommonNodes(replicateClock);
         if (causalOrdering) {
             String op = replicate.get("op").getAsString();
             String item = replicate.get("item").getAsString();
@@ -135,7 +167,10 @@ public class MyObject {
                     break;
             }
 
-            overwriteClock(clocks);
+            long digest = getDigest();
+            this.vectorClock.merge(replicateClock);
+            updateDigest(digest);
+            logMutation(op, item, clocks);
         } else {
             System.out.println("[Replication] Divergent versions appeared");
         }
@@ -143,46 +178,6 @@ public class MyObject {
         this.lock.writeLock().unlock();
     }
 
-    /**
-     * True means the clocks from the replicate are after this object's clocks.
-     *
-     * @param clocks
-     * @return boolean
-     */
-    private boolean checkCausalOrdering(JsonArray clocks) {
-        boolean result = true;
-
-        for (int i = 0; i < clocks.size(); i++) {
-            JsonObject clock = clocks.get(i).getAsJsonObject();
-            String node = clock.get("node").getAsString();
-            int timestamp = clock.get("timestamp").getAsInt();
-
-            if (this.vectorClock.containsKey(node)) {
-                if (this.vectorClock.get(node) > timestamp) {
-                    result = false;
-                    break;
-                }
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Helper method for replication, overwrite the current vector clock.
-     *
-     * @param clocks
-     */
-    private void overwriteClock(JsonArray clocks) {
-        for (int i = 0; i < clocks.size(); i++) {
-            JsonObject clock = clocks.get(i).getAsJsonObject();
-            String node = clock.get("node").getAsString();
-            int timestamp = clock.get("timestamp").getAsInt();
-
-            this.vectorClock.put(node, timestamp);
-        }
-    }
-
     /**
      * Return the object in Json format with item and clock data.
      *
@@ -211,47 +206,47 @@ public class MyObject {
      * @return JsonArray
      */
     private JsonArray getClock() {
-        JsonArray clocks = new JsonArray();
-
-        for (String key : this.vectorClock.keySet()) {
-            JsonObject vectorClock = new JsonObject();
-            vectorClock.addProperty("node", key);
-            vectorClock.addProperty("timestamp", this.vectorClock.get(key));
-            clocks.add(vectorClock);
-        }
-
-        return clocks;
+        return this.vectorClock.toJson();
     }
 
     /**
      * Helper method to check, initialize, and increase the timestamp of vector clock.
      */
     private void incrementVectorClock() {
-        if (!this.vectorClock.containsKey(Driver.replica.getId())) {
-            this.vectorClock.put(Driver.replica.getId(), 0);
-        }
-        this.vectorClock.put(Driver.replica.getId(),
-                this.vectorClock.get(Driver.replica.getId()) + 1);
+        this.vectorClock.increment(Driver.nodeDictionary.getIndex(Driver.replica.getId()));
     }
 
     /**
      * Overwrite the whole object when reconciling.
+     * A replicated overwrite is ignored unless its clock is equal to or after the current clock,
+     * so an older copy pushed by another replica never replaces a newer one.
      *
      * @param data
      */
     public void overwrite(JsonObject data) {
-        this.lock.writeLock().lock();
-
         JsonArray items = data.get("items").getAsJsonArray();
         JsonArray clocks = data.get("clocks").getAsJsonArray();
+        VectorClock incoming = VectorClock.fromJson(clocks);
 
+        this.lock.writeLock().lock();
+
+        if (data.get("replicate") != null && !incoming.descends(this.vectorClock)) {
+            if (!this.vectorClock.descends(incoming)) {
+                System.out.println("[Replication] Divergent versions appeared");
+            }
+            this.lock.writeLock().unlock();
+
+            return;
+        }
+
+        long digest = getDigest();
         this.items.clear();
         for (int i = 0; i < items.size(); i++) {
             this.items.add(items.get(i).getAsString());
         }
 
         this.vectorClock.clear();
-        overwriteClock(clocks);
+        this.vectorClock.merge(clocks);
 
         if (data.get("replicate") == null) {
             incrementVectorClock();
@@ -260,7 +255,52 @@ public class MyObject {
             data.add("clocks", getClock());
             data.addProperty("replicate", true);
         }
+        updateDigest(digest);
+
+        JsonObject record = new JsonObject();
+        record.addProperty("hashKey", this.hashKey);
+        record.addProperty("key", this.key);
+        record.addProperty("op", "overwrite");
+        record.add("items", items);
+        record.add("clocks", data.get("clocks"));
+        Driver.writeAheadLog.append(record);
 
         this.lock.writeLock().unlock();
     }
+
+    /**
+     * Helper method to return the digest of the key and the current clock.
+     *
+     * @return long
+     */
+    private long getDigest() {
+        return MerkleTree.digest(this.keyHash, this.vectorClock);
+    }
+
+    /**
+     * Helper method to update the Merkle tree of the bucket with the digest after a mutation.
+     *
+     * @param before
+     */
+    private void updateDigest(long before) {
+        Driver.dataStorage.updateDigest(this.hashKey, this.keyHash, before, getDigest());
+    }
+
+    /**
+     * Helper method to append an applied add or remove to the write-ahead log.
+     * The record carries the resulting clocks, so replaying it never increases the clock again.
+     *
+     * @param op
+     * @param item
+     * @param clocks
+     */
+    private void logMutation(String op, String item, JsonArray clocks) {
+        JsonObject record = new JsonObject();
+        record.addProperty("hashKey", this.hashKey);
+        record.addProperty("key", this.key);
+        record.addProperty("op", op);
+        record.addProperty("item", item);
+        record.add("clocks", clocks);
+        Driver.writeAheadLog.append(record);
+    }
 }
\ No newline at end of file
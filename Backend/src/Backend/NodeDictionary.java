@@ -0,0 +1,77 @@
+package Backend;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * NodeDictionary class to map replica ids to small ints, so vector clocks keep ints instead of UUID strings.
+ *
+ * Ids are only added and never removed, an int stays valid for the lifetime of the process.
+ * The ints are local to this process and never leave it, clocks are sent with the replica ids.
+ */
+public class NodeDictionary {
+    private final ConcurrentMap<String, Integer> indexes;
+    private volatile String[] nodes;
+    private volatile long[] hashes;
+    private int size;
+
+    /**
+     * NodeDictionary constructor.
+     */
+    public NodeDictionary() {
+        this.indexes = new ConcurrentHashMap<>();
+        this.nodes = new String[16];
+        this.hashes = new long[16];
+        this.size = 0;
+    }
+
+    /**
+     * Return the int of a replica id, add it if it is not in the dictionary yet.
+     *
+     * @param node
+     * @return int
+     */
+    public int getIndex(String node) {
+        Integer index = this.indexes.get(node);
+
+        if (index == null) {
+            synchronized (this) {
+                index = this.indexes.get(node);
+
+                if (index == null) {
+                    if (this.size == this.nodes.length) {
+                        this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+                        this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+                    }
+                    index = this.size;
+                    this.hashes[this.size] = MerkleTree.hash(node);
+                    this.nodes[this.size++] = node;
+                    this.indexes.put(node, index);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Return the replica id of an int.
+     *
+     * @param index
+     * @return String
+     */
+    public String getNode(int index) {
+        return this.nodes[index];
+    }
+
+    /**
+     * Return the 64-bit hash of the replica id of an int, computed once when the id is added.
+     *
+     * @param index
+     * @return long
+     */
+    public long getHash(int index) {
+        return this.hashes[index];
+    }
+}
@@ -2,21 +2,21 @@ package Backend;
 
 import com.google.gson.JsonObject;
 
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * OverwriteReplica class for reconciling.
  *
  * Reference:
- * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CountDownLatch.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CompletableFuture.html
  */
 public class OverwriteReplica {
     private final int hashKey;
     private final String key;
     private final JsonObject requestBody;
+    private final long deadline;
 
     /**
      * OverwriteReplica constructor.
@@ -24,81 +24,86 @@ public class OverwriteReplica {
      * @param hashKey
      * @param key
      * @param requestBody
+     * @param deadline
      */
-    public OverwriteReplica(int hashKey, String key, JsonObject requestBody) {
+    public OverwriteReplica(int hashKey, String key, JsonObject requestBody, long deadline) {
         this.hashKey = hashKey;
         this.key = key;
         this.requestBody = requestBody;
+        this.deadline = deadline;
     }
 
     /**
-     * Start the overwrite process to all other replicas in the preference list.
-     * Use CountDownLatch to support concurrent write to other replicas,
-     * and count the minimum success write for response.
+     * Start the overwrite process to all other replicas in the preference list without blocking.
+     * Send the writes to other replicas concurrently, and complete the future once the minimum success write
+     * is reached. Fail it with a Quorum.Failure as soon as so many writes failed or were rejected that the
+     * minimum success write can no longer be reached, or when the deadline passes.
+     *
+     * @return CompletableFuture
      */
-    public void start() {
-        int minimumSuccessWrite = Driver.ring.getW() - 1;
-        CountDownLatch startSignal = new CountDownLatch(1);
-        CountDownLatch finishSignal = new CountDownLatch(minimumSuccessWrite);
+    public CompletableFuture<Void> start() {
+        int minimumSuccessWrite = Math.min(Driver.ring.getW() - 1, Driver.ring.getCurrentNumberOfReplicas() - 1);
+        CompletableFuture<Void> result = new CompletableFuture<>();
         List<String[]> preferenceList = Driver.ring.getPreferenceList(this.hashKey);
-        String uri = "/reconcile/merge/" + this.hashKey + "/" + this.key;
+        Quorum quorum = new Quorum("Reconcile", minimumSuccessWrite, preferenceList.size());
+
+        complete(quorum, quorum.getOutcome(), result);
+        quorum.expireAt(this.deadline, () -> complete(quorum, Quorum.Outcome.EXPIRED, result));
 
         for (int i = 0; i < preferenceList.size(); i++) {
-            String[] hostInfo = preferenceList.get(i);
-            new Thread(new Send(startSignal, finishSignal, hostInfo, uri)).start();
+            new Send(quorum, result, preferenceList.get(i)).start();
         }
 
-        startSignal.countDown();
+        return result;
+    }
 
-        try {
-            finishSignal.await();
-        } catch (InterruptedException ignored) {}
+    /**
+     * Helper method to complete the overwrite once the quorum is decided.
+     *
+     * @param quorum
+     * @param outcome
+     * @param result
+     */
+    private void complete(Quorum quorum, Quorum.Outcome outcome, CompletableFuture<Void> result) {
+        if (outcome == Quorum.Outcome.REACHED) {
+            result.complete(null);
+        } else if (outcome != null) {
+            System.out.println("[Reconcile] " + quorum.toFailure().getMessage());
+            result.completeExceptionally(quorum.toFailure());
+        }
     }
 
     /**
      * Nested Send class to send the write request concurrently.
      */
-    private class Send extends HttpRequest implements Runnable {
-        private final CountDownLatch startSignal;
-        private final CountDownLatch finishSignal;
+    private class Send extends HttpRequest {
+        private final Quorum quorum;
+        private final CompletableFuture<Void> result;
         private final String[] hostInfo;
-        private final String url;
 
         /**
          * Send constructor.
          *
-         * @param startSignal
-         * @param finishSignal
+         * @param quorum
+         * @param result
          * @param hostInfo
-         * @param uri
          */
-        private Send(CountDownLatch startSignal, CountDownLatch finishSignal, String[] hostInfo, String uri) {
-            this.startSignal = startSignal;
-            this.finishSignal = finishSignal;
+        private Send(Quorum quorum, CompletableFuture<Void> result, String[] hostInfo) {
+            this.quorum = quorum;
+            this.result = result;
             this.hostInfo = hostInfo;
-            this.url = hostInfo[1] + uri;
         }
 
         /**
-         * Send write request and do the count down.
-         * If hit the number of minimum success write, then response.
+         * Send write request and count it when it is done.
+         * If it decides the quorum, then response.
          */
-        @Override
-        public void run() {
-            try {
-                this.startSignal.await();
-            } catch (InterruptedException ignored) {}
-
-            try {
-                HttpURLConnection connection = doPostRequest(this.url, OverwriteReplica.this.requestBody);
-
-                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                    throw new IOException();
-                }
-            } catch (IOException ignored) {
-            } finally {
-                this.finishSignal.countDown();
-            }
+        private void start() {
+            doInternalRequestAsync(this.hostInfo, RpcServer.MERGE, OverwriteReplica.this.hashKey
+                    , OverwriteReplica.this.key, OverwriteReplica.this.requestBody).whenComplete((response, error) -> {
+                boolean succeeded = error == null && response.getStatusCode() == HttpURLConnection.HTTP_OK;
+                complete(this.quorum, succeeded ? this.quorum.success() : this.quorum.failure(), this.result);
+            });
         }
     }
 }
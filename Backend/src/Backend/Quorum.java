@@ -0,0 +1,268 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quorum class to count the answers of the other replicas to a read or a write.
+ *
+ * The quorum is reached once the target number of replicas succeeded, and it fails as soon as so many
+ * replicas failed that the target can no longer be reached. If the request has a deadline and the quorum
+ * is still open when it passes, the quorum expires. Only the first outcome counts.
+ */
+public class Quorum {
+    static final String DEADLINE_HEADER = "X-Request-Deadline";
+    private static final ScheduledThreadPoolExecutor timer = createTimer();
+    private final String operation;
+    private final int target;
+    private final int total;
+    private int successes;
+    private int failures;
+    private Outcome outcome;
+    private ScheduledFuture<?> deadlineTimer;
+
+    /**
+     * Outcome of a quorum.
+     */
+    enum Outcome { REACHED, FAILED, EXPIRED }
+
+    /**
+     * Quorum constructor, the quorum is decided right away if the target is 0 or more than the replicas asked.
+     *
+     * @param operation
+     * @param target
+     * @param total
+     */
+    public Quorum(String operation, int target, int total) {
+        this.operation = operation;
+        this.target = target;
+        this.total = total;
+        this.successes = 0;
+        this.failures = 0;
+        check();
+    }
+
+    /**
+     * Turn the remaining time of a request in milliseconds into a deadline, 0 if the request has no deadline.
+     *
+     * @param milliseconds
+     * @return long
+     */
+    static long toDeadline(Long milliseconds) {
+        if (milliseconds == null || milliseconds <= 0) {
+            return 0;
+        }
+
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
+    }
+
+    /**
+     * Expire the quorum at the deadline if it is still open by then, and run the callback if it does.
+     * A deadline of 0 means no deadline.
+     *
+     * @param deadline
+     * @param onExpire
+     */
+    public void expireAt(long deadline, Runnable onExpire) {
+        if (deadline == 0) {
+            return;
+        }
+
+        ScheduledFuture<?> future = timer.schedule(() -> {
+            if (expire() != null) {
+                onExpire.run();
+            }
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        synchronized (this) {
+            if (this.outcome != null) {
+                future.cancel(false);
+            } else {
+                this.deadlineTimer = future;
+            }
+        }
+    }
+
+    /**
+     * Count a replica that succeeded, return the outcome if it decides the quorum, otherwise null.
+     *
+     * @return Outcome
+     */
+    public synchronized Outcome success() {
+        if (this.outcome != null) {
+            return null;
+        }
+
+        this.successes++;
+
+        return check();
+    }
+
+    /**
+     * Count a replica that failed, return the outcome if it decides the quorum, otherwise null.
+     *
+     * @return Outcome
+     */
+    public synchronized Outcome failure() {
+        if (this.outcome != null) {
+            return null;
+        }
+
+        this.failures++;
+
+        return check();
+    }
+
+    /**
+     * Expire the quorum if it is still open, return the outcome if it does, otherwise null.
+     *
+     * @return Outcome
+     */
+    public synchronized Outcome expire() {
+        if (this.outcome != null) {
+            return null;
+        }
+
+        return decide(Outcome.EXPIRED);
+    }
+
+    /**
+     * Return the outcome, null if the quorum is still open.
+     *
+     * @return Outcome
+     */
+    public synchronized Outcome getOutcome() {
+        return this.outcome;
+    }
+
+    /**
+     * Return true if the quorum is decided.
+     *
+     * @return boolean
+     */
+    public synchronized boolean isDecided() {
+        return this.outcome != null;
+    }
+
+    /**
+     * Return the exception to fail the request with for a failed or expired quorum.
+     *
+     * @return Failure
+     */
+    public synchronized Failure toFailure() {
+        return new Failure(this.outcome, this.operation, this.target + 1, this.successes + 1);
+    }
+
+    /**
+     * Helper method to decide the quorum once it is reached, or once it can no longer be reached.
+     *
+     * @return Outcome
+     */
+    private Outcome check() {
+        if (this.successes >= this.target) {
+            return decide(Outcome.REACHED);
+        } else if (this.total - this.failures < this.target) {
+            return decide(Outcome.FAILED);
+        }
+
+        return null;
+    }
+
+    /**
+     * Helper method to set the outcome and stop the deadline timer.
+     *
+     * @param outcome
+     * @return Outcome
+     */
+    private Outcome decide(Outcome outcome) {
+        this.outcome = outcome;
+        if (this.deadlineTimer != null) {
+            this.deadlineTimer.cancel(false);
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Helper method to create the timer shared by the deadlines of all requests.
+     *
+     * @return ScheduledThreadPoolExecutor
+     */
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "quorum-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+
+        return timer;
+    }
+
+    /**
+     * Nested Failure class for a request that failed because its quorum failed or expired.
+     * The replicas are counted including the replication coordinator itself.
+     */
+    static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final Outcome outcome;
+        private final int required;
+        private final int acknowledged;
+
+        /**
+         * Failure constructor.
+         *
+         * @param outcome
+         * @param operation
+         * @param required
+         * @param acknowledged
+         */
+        private Failure(Outcome outcome, String operation, int required, int acknowledged) {
+            super(operation + ((outcome == Outcome.EXPIRED) ? " deadline exceeded" : " quorum not reached")
+                    + ": " + acknowledged + " of " + required + " replicas");
+            this.outcome = outcome;
+            this.required = required;
+            this.acknowledged = acknowledged;
+        }
+
+        /**
+         * Return the Http status code, 504 if the deadline passed and 503 if the quorum failed.
+         *
+         * @return int
+         */
+        int getStatus() {
+            return (this.outcome == Outcome.EXPIRED) ? 504 : 503;
+        }
+
+        /**
+         * Return the failure in Json format.
+         *
+         * @return JsonObject
+         */
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("error", getMessage());
+            json.addProperty("required", this.required);
+            json.addProperty("acknowledged", this.acknowledged);
+
+            return json;
+        }
+
+        /**
+         * Return the Failure behind an exception that completed a future, null if it is another exception.
+         *
+         * @param error
+         * @return Failure
+         */
+        static Failure from(Throwable error) {
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause() : error;
+
+            return (cause instanceof Failure) ? (Failure) cause : null;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package Backend;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RangeTransfer class to migrate the buckets in a range of the ring to another replica, one bucket at a time.
+ *
+ * Each bucket is copied from the storage holding only its own stripe, so the whole range is never held
+ * on either side. A bucket is removed from this replica only after the receiver acknowledged it,
+ * and only if it has not changed since it was copied, otherwise it is sent again. The last attempt
+ * removes the bucket as it is copied, and puts it back if it cannot be sent.
+ * The first bucket in the range that is not acknowledged yet is the checkpoint, so a failed migration
+ * can resume from it instead of from the start of the range.
+ * The receiver replies how many buckets it can take before the next acknowledgement, fewer while it is
+ * still restoring or short of memory. Over the RPC port every bucket is one request and that many are
+ * in flight, and over Http that many buckets are streamed in one request.
+ */
+public class RangeTransfer {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final AtomicInteger restoring = new AtomicInteger();
+    private final int start;
+    private final int end;
+    private final boolean remove;
+    private final int size;
+    private final boolean[] acknowledged;
+    private final Deque<Sent> retries;
+    private int next;
+    private int checkpoint;
+    private int window;
+    private int buckets;
+    private int objects;
+    private int resent;
+
+    /**
+     * RangeTransfer constructor, the range includes both ends and may wrap around the ring.
+     *
+     * @param start
+     * @param end
+     * @param remove
+     */
+    public RangeTransfer(int start, int end, boolean remove) {
+        this.size = Driver.ring.getMaximumNumberOfReplicas();
+        this.start = start;
+        this.end = end;
+        this.remove = remove;
+        this.acknowledged = new boolean[Math.floorMod(end - start, this.size) + 1];
+        this.retries = new ArrayDeque<>();
+        this.next = 0;
+        this.checkpoint = 0;
+        this.window = 1;
+        this.buckets = 0;
+        this.objects = 0;
+        this.resent = 0;
+    }
+
+    /**
+     * Send the buckets to the RPC address of the target replica, one request per bucket,
+     * keeping as many requests in flight as the receiver last allowed.
+     * If a request fails, the requests in flight are still waited for before giving up.
+     *
+     * @param rpcAddress
+     * @throws IOException
+     */
+    public void toRpc(String rpcAddress) throws IOException {
+        BlockingQueue<Ack> acks = new LinkedBlockingQueue<>();
+        IOException failure = null;
+        int inFlight = 0;
+        Sent sent;
+
+        while (true) {
+            while (failure == null && inFlight < getWindow() && (sent = nextBucket()) != null) {
+                JsonArray chunk = new JsonArray();
+                chunk.add(sent.bucket);
+                sent.release();
+
+                Sent sending = sent;
+                Driver.rpcClient.callAsync(rpcAddress, RpcServer.RECEIVER, 0, "", chunk)
+                        .whenComplete((reply, error) -> acks.add(new Ack(sending, reply, error)));
+                inFlight++;
+            }
+
+            if (inFlight == 0) {
+                break;
+            }
+
+            Ack ack;
+            try {
+                ack = acks.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ie);
+            }
+            inFlight--;
+
+            try {
+                if (ack.error != null) {
+                    throw (ack.error instanceof IOException) ? (IOException) ack.error : new IOException(ack.error);
+                }
+
+                acknowledge(ack.sent, ack.reply);
+            } catch (IOException | RuntimeException e) {
+                putBack(ack.sent);
+                if (failure == null) {
+                    failure = (e instanceof IOException) ? (IOException) e : new IOException(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Send the buckets to the receiver endpoint of the target replica, as many buckets in one streamed request
+     * as the receiver last allowed, until the range is done.
+     * If a request fails, the buckets in it are not acknowledged, and the removed ones are put back.
+     *
+     * @param address
+     * @throws IOException
+     */
+    public void toHttp(String address) throws IOException {
+        List<Sent> batch = new ArrayList<>();
+        Sent first;
+
+        while ((first = nextBucket()) != null) {
+            Sent head = first;
+            batch.clear();
+
+            try {
+                HttpClient.Response reply = Driver.httpClient.stream(address + "/receiver", out -> {
+                    Gson gson = new Gson();
+                    JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    Sent sent = head;
+
+                    writer.beginArray();
+                    do {
+                        batch.add(sent);
+                        gson.toJson(sent.bucket, writer);
+                        writer.flush();
+                        sent.release();
+                    } while (batch.size() < getWindow() && (sent = nextBucket()) != null);
+                    writer.endArray();
+                    writer.flush();
+                });
+
+                for (Sent sent : batch) {
+                    acknowledge(sent, reply);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (batch.isEmpty()) {
+                    batch.add(head);
+                }
+                for (Sent sent : batch) {
+                    putBack(sent);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Return the first bucket in the range that is not acknowledged yet, -1 once the whole range is.
+     *
+     * @return int
+     */
+    public synchronized int getCheckpoint() {
+        while (this.checkpoint < this.acknowledged.length && this.acknowledged[this.checkpoint]) {
+            this.checkpoint++;
+        }
+
+        return (this.checkpoint == this.acknowledged.length) ? -1 : (this.start + this.checkpoint) % this.size;
+    }
+
+    /**
+     * Return the number of buckets sent, not counting the ones sent again.
+     *
+     * @return int
+     */
+    public synchronized int getBuckets() {
+        return this.buckets;
+    }
+
+    /**
+     * Return the number of objects sent, not counting the ones sent again.
+     *
+     * @return int
+     */
+    public synchronized int getObjects() {
+        return this.objects;
+    }
+
+    /**
+     * Return the progress of the migration in Json format.
+     *
+     * @return JsonObject
+     */
+    public synchronized JsonObject getProgress() {
+        JsonObject progress = new JsonObject();
+        JsonArray range = new JsonArray();
+        range.add(this.start);
+        range.add(this.end);
+
+        progress.add("range", range);
+        progress.addProperty("checkpoint", getCheckpoint());
+        progress.addProperty("buckets", this.buckets);
+        progress.addProperty("objects", this.objects);
+        progress.addProperty("resent", this.resent);
+        progress.addProperty("window", this.window);
+
+        return progress;
+    }
+
+    /**
+     * Restore one bucket received from another replica, counting it while it is restored.
+     *
+     * @param bucket
+     */
+    public static void receive(JsonObject bucket) {
+        restoring.incrementAndGet();
+
+        try {
+            Driver.dataStorage.restoreBucket(bucket);
+        } finally {
+            restoring.decrementAndGet();
+        }
+    }
+
+    /**
+     * Return the acknowledgement of the received buckets, with the number of buckets this replica
+     * can take before the next one. The window shrinks with the buckets still being restored,
+     * and is one bucket while less than a fifth of the heap is free.
+     *
+     * @return JsonObject
+     */
+    public static JsonObject getReceiverReply() {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        int window = (free * 5 < runtime.maxMemory()) ? 1 : Math.max(1, Driver.migrationWindow - restoring.get());
+
+        JsonObject reply = new JsonObject();
+        reply.addProperty("window", window);
+
+        return reply;
+    }
+
+    /**
+     * Helper method to return the current window.
+     *
+     * @return int
+     */
+    private synchronized int getWindow() {
+        return this.window;
+    }
+
+    /**
+     * Helper method to take the next bucket to send, a changed bucket to send again first,
+     * then the next bucket in the range that is not empty, null once there is none.
+     * Empty buckets are acknowledged as they are found.
+     *
+     * @return Sent
+     */
+    private synchronized Sent nextBucket() {
+        while (!this.retries.isEmpty()) {
+            Sent retry = this.retries.poll();
+            Sent sent = take(retry.offset, retry.attempts + 1);
+
+            if (sent != null) {
+                this.resent++;
+                return sent;
+            }
+        }
+
+        while (this.next < this.acknowledged.length) {
+            Sent sent = take(this.next++, 1);
+
+            if (sent != null) {
+                this.buckets++;
+                this.objects += sent.bucket.get("data").getAsJsonArray().size();
+                return sent;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Helper method to copy a bucket to send, removing it as it is copied if it is the last attempt.
+     * Return null and acknowledge the bucket if it is empty.
+     *
+     * @param offset
+     * @param attempts
+     * @return Sent
+     */
+    private Sent take(int offset, int attempts) {
+        int hashKey = (this.start + offset) % this.size;
+        boolean removed = this.remove && attempts >= MAX_ATTEMPTS;
+        JsonObject bucket = Driver.dataStorage.getBucketAndCheckRemove(hashKey, removed);
+
+        if (bucket == null) {
+            this.acknowledged[offset] = true;
+            return null;
+        }
+
+        return new Sent(offset, attempts, bucket, removed);
+    }
+
+    /**
+     * Helper method to handle the acknowledgement of a sent bucket. The bucket is removed if necessary
+     * unless it has changed since it was copied, then it is sent again.
+     * The window is taken from the reply, and stays at one bucket if the receiver replies none.
+     *
+     * @param sent
+     * @param reply
+     * @throws IOException
+     */
+    private void acknowledge(Sent sent, HttpClient.Response reply) throws IOException {
+        if (reply.getStatusCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Transfer rejected with status " + reply.getStatusCode());
+        }
+
+        int window = 1;
+        try {
+            JsonElement body = (reply.getJson() != null) ? reply.getJson() : new JsonParser().parse(reply.getBody());
+            if (body.isJsonObject() && body.getAsJsonObject().has("window")) {
+                window = Math.max(1, body.getAsJsonObject().get("window").getAsInt());
+            }
+        } catch (JsonParseException | IllegalStateException | NumberFormatException ignored) {}
+
+        boolean done = !this.remove || sent.removed
+                || Driver.dataStorage.removeBucketIfUnchanged((this.start + sent.offset) % this.size, sent.digest);
+
+        synchronized (this) {
+            this.window = window;
+
+            if (done) {
+                this.acknowledged[sent.offset] = true;
+            } else {
+                this.retries.add(sent);
+            }
+        }
+    }
+
+    /**
+     * Helper method to put a bucket that was removed but not sent back into the storage,
+     * keeping the objects written into it since.
+     *
+     * @param sent
+     */
+    private void putBack(Sent sent) {
+        if (sent.removed) {
+            Driver.dataStorage.storeNewerObjects((this.start + sent.offset) % this.size
+                    , sent.removedData);
+        }
+    }
+
+    /**
+     * Nested Sent class for a bucket sent and not acknowledged yet.
+     * Only the digest is kept after the bucket is sent, unless the bucket was removed.
+     */
+    private static class Sent {
+        private final int offset;
+        private final int attempts;
+        private final long digest;
+        private final boolean removed;
+        private final JsonArray removedData;
+        private JsonObject bucket;
+
+        /**
+         * Sent constructor.
+         *
+         * @param offset
+         * @param attempts
+         * @param bucket
+         * @param removed
+         */
+        private Sent(int offset, int attempts, JsonObject bucket, boolean removed) {
+            this.offset = offset;
+            this.attempts = attempts;
+            this.digest = DataStorage.getBucketDigest(bucket);
+            this.removed = removed;
+            this.removedData = removed ? bucket.get("data").getAsJsonArray() : null;
+            this.bucket = bucket;
+        }
+
+        /**
+         * Drop the bucket once it is sent.
+         */
+        private void release() {
+            this.bucket = null;
+        }
+    }
+
+    /**
+     * Nested Ack class for the reply of a bucket sent over the RPC port.
+     */
+    private static class Ack {
+        private final Sent sent;
+        private final HttpClient.Response reply;
+        private final Throwable error;
+
+        /**
+         * Ack constructor.
+         *
+         * @param sent
+         * @param reply
+         * @param error
+         */
+        private Ack(Sent sent, HttpClient.Response reply, Throwable error) {
+            this.sent = sent;
+            this.reply = reply;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadRepair class to push the dominating version of an object to the replicas that returned an older one on read.
+ *
+ * Repairs run in background after the read is answered. A key has at most one pending repair:
+ * scheduling it again while it is pending only replaces the version to push, so a hot key
+ * is not repaired once per read. Pushes are rate-limited by a token bucket.
+ */
+public class ReadRepair extends HttpRequest {
+    private static final int MAXIMUM_PENDING = 10000;
+    private final ExecutorService worker;
+    private final ConcurrentMap<String, Repair> pending;
+    private final AtomicLong pushed;
+    private final AtomicLong dropped;
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * ReadRepair constructor.
+     */
+    public ReadRepair() {
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pending = new ConcurrentHashMap<>();
+        this.pushed = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.rate = 100;
+        this.tokens = this.rate;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Rate setter, the maximum number of pushes per second, 0 to disable read repair.
+     *
+     * @param rate
+     */
+    public synchronized void setRate(double rate) {
+        this.rate = rate;
+        this.tokens = rate;
+    }
+
+    /**
+     * Schedule the dominating version of an object to be pushed to the stale replicas.
+     *
+     * @param hashKey
+     * @param key
+     * @param version
+     * @param staleReplicas
+     * @param localStale
+     */
+    public void schedule(int hashKey, String key, JsonObject version, List<String[]> staleReplicas, boolean localStale) {
+        if (getRate() <= 0) {
+            return;
+        }
+
+        String id = hashKey + "/" + key;
+        Repair repair = new Repair(hashKey, key, version, staleReplicas, localStale);
+
+        if (this.pending.size() >= MAXIMUM_PENDING && !this.pending.containsKey(id)) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+
+        if (this.pending.put(id, repair) == null) {
+            this.worker.execute(() -> repair(id));
+        }
+    }
+
+    /**
+     * Return the number of pushes sent.
+     *
+     * @return long
+     */
+    public long getPushed() {
+        return this.pushed.get();
+    }
+
+    /**
+     * Return the number of repairs dropped because too many were pending.
+     *
+     * @return long
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Helper method to run the latest pending repair of a key.
+     *
+     * @param id
+     */
+    private void repair(String id) {
+        Repair repair = this.pending.remove(id);
+        if (repair == null) {
+            return;
+        }
+
+        if (repair.localStale) {
+            Driver.dataStorage.overwrite(repair.hashKey, repair.key, repair.version.deepCopy());
+        }
+
+        for (String[] hostInfo : repair.staleReplicas) {
+            acquire();
+
+            try {
+                doInternalRequest(hostInfo, RpcServer.MERGE, repair.hashKey, repair.key, repair.version);
+                this.pushed.incrementAndGet();
+                System.out.println("[ReadRepair] Pushed the latest version of " + id + " to " + hostInfo[1]);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Helper method to return the current rate.
+     *
+     * @return double
+     */
+    private synchronized double getRate() {
+        return this.rate;
+    }
+
+    /**
+     * Helper method to block until the token bucket allows one more push.
+     */
+    private void acquire() {
+        while (true) {
+            long wait;
+
+            synchronized (this) {
+                long now = System.nanoTime();
+                this.tokens = Math.min(this.rate, this.tokens + (now - this.lastRefill) * this.rate / 1e9);
+                this.lastRefill = now;
+
+                if (this.tokens >= 1) {
+                    this.tokens -= 1;
+                    return;
+                }
+
+                wait = (long) ((1 - this.tokens) * 1000 / this.rate) + 1;
+            }
+
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Nested Repair class for the version of an object to push and where to push it.
+     */
+    private static class Repair {
+        private final int hashKey;
+        private final String key;
+        private final JsonObject version;
+        private final List<String[]> staleReplicas;
+        private final boolean localStale;
+
+        /**
+         * Repair constructor, the version is marked as a replicate so the receivers do not increase its clock.
+         *
+         * @param hashKey
+         * @param key
+         * @param version
+         * @param staleReplicas
+         * @param localStale
+         */
+        private Repair(int hashKey, String key, JsonObject version, List<String[]> staleReplicas, boolean localStale) {
+            this.hashKey = hashKey;
+            this.key = key;
+            this.version = version.deepCopy();
+            this.version.addProperty("replicate", true);
+            this.staleReplicas = staleReplicas;
+            this.localStale = localStale;
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class Replica {
     private String id;
     private String host;
     private String port;
+    private int rpcPort = 0;
     private boolean seed = false;
     private int key = -1;
 
@@ -39,6 +40,15 @@ public class Replica {
         this.port = port;
     }
 
+    /**
+     * Internal RPC port setter, 0 if the replica does not have one.
+     *
+     * @param rpcPort
+     */
+    public void setRpcPort(int rpcPort) {
+        this.rpcPort = rpcPort;
+    }
+
     /**
      * Seed setter.
      *
@@ -84,6 +94,15 @@ public class Replica {
         return this.port;
     }
 
+    /**
+     * Internal RPC port getter.
+     *
+     * @return int
+     */
+    public int getRpcPort() {
+        return this.rpcPort;
+    }
+
     /**
      * Seed getter.
      *
@@ -111,6 +130,15 @@ public class Replica {
         return this.host + ":" + this.port;
     }
 
+    /**
+     * Internal RPC address getter, null if the replica does not have an internal RPC port.
+     *
+     * @return String
+     */
+    public String getRpcAddress() {
+        return (this.rpcPort > 0) ? this.host + ":" + this.rpcPort : null;
+    }
+
     /**
      * Parse Replica into Json format.
      *
@@ -121,6 +149,7 @@ public class Replica {
         obj.addProperty("id", this.id);
         obj.addProperty("host", this.host);
         obj.addProperty("port", this.port);
+        obj.addProperty("rpcPort", this.rpcPort);
         obj.addProperty("seed", this.seed);
         obj.addProperty("key", this.key);
 
@@ -2,21 +2,21 @@ package Backend;
 
 import com.google.gson.JsonObject;
 
-import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Replication class to handle replication.
  *
  * Reference:
- * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CountDownLatch.html
+ * https://docs.oracle.com/javase/8/docs/api/java/util/concurrent/CompletableFuture.html
  */
 public class Replication {
     private final int hashKey;
     private final String key;
     private final JsonObject requestBody;
+    private final long deadline;
 
     /**
      * Replication constructor.
@@ -24,120 +24,164 @@ public class Replication {
      * @param hashKey
      * @param key
      * @param requestBody
+     * @param deadline
      */
-    public Replication(int hashKey, String key, JsonObject requestBody) {
+    public Replication(int hashKey, String key, JsonObject requestBody, long deadline) {
         this.hashKey = hashKey;
         this.key = key;
         this.requestBody = requestBody;
+        this.deadline = deadline;
         this.requestBody.addProperty("replicate", true);
     }
 
     /**
-     * Start replication to all other replicas in the preference list.
-     * Use CountDownLatch to support concurrent write to other replicas,
-     * and count the minimum success write for response.
+     * Start replication to all other replicas in the preference list without blocking.
+     * Send the writes to other replicas concurrently, and complete the future once the minimum success write
+     * is reached. A write that fails or is rejected succeeds once its hinted data is stored by the N+1th replica,
+     * and fails if that does not work either. Fail the future with a Quorum.Failure as soon as the minimum success
+     * write can no longer be reached, or when the deadline passes.
+     * The writes left after the future completes are not cancelled, every replica should still get the data.
      *
      * If there is a demo parameter in the request body, block the final replication to demo the hinted handoff.
+     *
+     * @return CompletableFuture
      */
-    public void start() {
+    public CompletableFuture<Void> start() {
         int minimumSuccessWrite = Math.min(Driver.ring.getW() - 1, Driver.ring.getCurrentNumberOfReplicas() - 1);
-        CountDownLatch startSignal = new CountDownLatch(1);
-        CountDownLatch finishSignal = new CountDownLatch(minimumSuccessWrite);
+        CompletableFuture<Void> result = new CompletableFuture<>();
         List<String[]> preferenceList = Driver.ring.getPreferenceList(this.hashKey);
-        String uri = "/put/" + this.hashKey + "/" + this.key;
+        Quorum quorum = new Quorum("Write", minimumSuccessWrite, preferenceList.size());
+
+        complete(quorum, quorum.getOutcome(), result);
+        quorum.expireAt(this.deadline, () -> complete(quorum, Quorum.Outcome.EXPIRED, result));
 
         for (int i = 0; i < preferenceList.size(); i++) {
             String[] hostInfo = preferenceList.get(i);
+            Send send;
 
             if (this.requestBody.get("demo") != null && i == 0) {
-                new Thread(new Send(startSignal, finishSignal, hostInfo, uri, this.requestBody.deepCopy())).start();
+                send = new Send(quorum, result, hostInfo, this.requestBody.deepCopy());
                 this.requestBody.remove("demo");
             } else {
-                new Thread(new Send(startSignal, finishSignal, hostInfo, uri, this.requestBody)).start();
+                send = new Send(quorum, result, hostInfo, this.requestBody);
             }
+
+            send.start();
         }
 
-        startSignal.countDown();
+        return result;
+    }
 
-        try {
-            finishSignal.await();
-        } catch (InterruptedException ignored) {}
+    /**
+     * Helper method to complete the replication once the quorum is decided.
+     *
+     * @param quorum
+     * @param outcome
+     * @param result
+     */
+    private void complete(Quorum quorum, Quorum.Outcome outcome, CompletableFuture<Void> result) {
+        if (outcome == Quorum.Outcome.REACHED) {
+            result.complete(null);
+        } else if (outcome != null) {
+            System.out.println("[Replication] " + quorum.toFailure().getMessage());
+            result.completeExceptionally(quorum.toFailure());
+        }
     }
 
     /**
      * Nested Send class to send the write request concurrently.
      */
-    private class Send extends HttpRequest implements Runnable {
-        private final CountDownLatch startSignal;
-        private final CountDownLatch finishSignal;
+    private class Send extends HttpRequest {
+        private final Quorum quorum;
+        private final CompletableFuture<Void> result;
         private final String[] hostInfo;
-        private final String url;
         private final JsonObject requestBody;
 
         /**
          * Send constructor.
          *
-         * @param startSignal
-         * @param finishSignal
+         * @param quorum
+         * @param result
          * @param hostInfo
-         * @param uri
          * @param requestBody
          */
-        private Send(CountDownLatch startSignal, CountDownLatch finishSignal, String[] hostInfo
-                , String uri, JsonObject requestBody) {
-            this.startSignal = startSignal;
-            this.finishSignal = finishSignal;
+        private Send(Quorum quorum, CompletableFuture<Void> result, String[] hostInfo, JsonObject requestBody) {
+            this.quorum = quorum;
+            this.result = result;
             this.hostInfo = hostInfo;
-            this.url = hostInfo[1] + uri;
             this.requestBody = requestBody;
         }
 
         /**
-         * Send write request and do the count down.
-         * If hit the number of minimum success write, then response.
+         * Send write request and count it when it succeeds.
          * If the replica is unreachable, send hinted data to the N+1th replica.
          */
-        @Override
-        public void run() {
-            try {
-                this.startSignal.await();
-            } catch (InterruptedException ignored) {}
-
-            try {
-                if (this.requestBody.get("demo") != null) {
-                    System.out.println("[Demo] block one replication");
-                    throw new IOException();
-                } else {
-                    HttpURLConnection connection = doPostRequest(this.url, this.requestBody);
+        private void start() {
+            if (this.requestBody.get("demo") != null) {
+                System.out.println("[Demo] block one replication");
+                fail();
+                return;
+            }
 
-                    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                        throw new IOException();
-                    }
+            send().whenComplete((response, error) -> {
+                if (error == null && response.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                    count(true);
+                } else {
+                    fail();
                 }
-            } catch (IOException ignored) {
-                System.out.println("[Replication] a node is temporally unreachable");
-                sendHintedData(this.requestBody.deepCopy());
-            } finally {
-                this.finishSignal.countDown();
+            });
+        }
+
+        /**
+         * Helper method to send the write, in the batch of the replica if the replication pipeline is on
+         * and the replica has an internal RPC port, or on its own otherwise.
+         *
+         * @return CompletableFuture
+         */
+        private CompletableFuture<HttpClient.Response> send() {
+            String rpcAddress = Driver.ring.getRpcAddress(this.hostInfo[0]);
+
+            if (rpcAddress != null && Driver.replicationPipeline.isEnabled()) {
+                return Driver.replicationPipeline.replicate(this.hostInfo[0], rpcAddress
+                        , Replication.this.hashKey, Replication.this.key, this.requestBody);
             }
+
+            return doInternalRequestAsync(this.hostInfo, RpcServer.PUT, Replication.this.hashKey, Replication.this.key
+                    , this.requestBody);
+        }
+
+        /**
+         * Send the hinted data to the N+1th replica when the replica is unreachable or the write is rejected,
+         * then count the write as succeeded if the N+1th replica stored it.
+         */
+        private void fail() {
+            System.out.println("[Replication] a node is temporally unreachable");
+            sendHintedData(this.requestBody.deepCopy()).whenComplete((response, error) ->
+                    count(error == null && response.getStatusCode() == HttpURLConnection.HTTP_OK));
         }
 
         /**
          * Add hints into the request body and send it to N+1th replica.
          *
          * @param hintedData
+         * @return CompletableFuture
          */
-        private void sendHintedData(JsonObject hintedData) {
-            String targetAddress = Driver.ring.getNPlusOneNodeAddress();
-            String url = targetAddress + "/hinted/put";
+        private CompletableFuture<HttpClient.Response> sendHintedData(JsonObject hintedData) {
+            String[] targetInfo = Driver.ring.getNPlusOneNode();
             hintedData.addProperty("id", this.hostInfo[0]);
             hintedData.addProperty("hashKey", Replication.this.hashKey);
             hintedData.addProperty("key", Replication.this.key);
 
-            try {
-                HttpURLConnection connection = doPostRequest(url, hintedData);
-                connection.getResponseCode();
-            } catch (Exception ignored) {}
+            return doInternalRequestAsync(targetInfo, RpcServer.HINTED_PUT, 0, "", hintedData);
+        }
+
+        /**
+         * Helper method to count the write, and complete the replication if it decides the quorum.
+         *
+         * @param succeeded
+         */
+        private void count(boolean succeeded) {
+            complete(this.quorum, succeeded ? this.quorum.success() : this.quorum.failure(), this.result);
         }
     }
 }
@@ -0,0 +1,270 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReplicationPipeline class to coalesce the replicated writes to the same replica into batches.
+ *
+ * The writes to a replica are collected for a short window, or until the batch is full,
+ * and then sent as one PUT_BATCH request over the internal RPC port. The replica stores the whole batch
+ * in one pass and waits for its write-ahead log once, and the status of each write comes back on its own
+ * future, so every write still counts for its own quorum.
+ * A window of 0 turns the pipeline off, and every write is sent on its own.
+ */
+public class ReplicationPipeline {
+    private final ConcurrentMap<String, Batch> batches;
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicLong sentBatches;
+    private final AtomicLong sentWrites;
+    private volatile long window;
+    private volatile int batchSize;
+
+    /**
+     * ReplicationPipeline constructor.
+     */
+    public ReplicationPipeline() {
+        this.batches = new ConcurrentHashMap<>();
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "replication-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.sentBatches = new AtomicLong();
+        this.sentWrites = new AtomicLong();
+        this.window = 200;
+        this.batchSize = 128;
+    }
+
+    /**
+     * Window setter in microseconds, the longest a write waits for other writes to the same replica.
+     *
+     * @param window
+     */
+    public void setWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Batch size setter, the number of writes that sends a batch before its window ends.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Return if the writes are coalesced.
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return this.window > 0 && this.batchSize > 1;
+    }
+
+    /**
+     * Add a replicated write into the batch of the replica at the RPC address.
+     * The future completes with the status of the write, or exceptionally if the batch fails
+     * or right away if the circuit of the replica is open.
+     *
+     * @param id
+     * @param rpcAddress
+     * @param hashKey
+     * @param key
+     * @param body
+     * @return CompletableFuture
+     */
+    public CompletableFuture<HttpClient.Response> replicate(String id, String rpcAddress, int hashKey, String key
+            , JsonObject body) {
+        CompletableFuture<HttpClient.Response> future = new CompletableFuture<>();
+        if (!Driver.circuitBreaker.allow(id)) {
+            future.completeExceptionally(new CircuitBreaker.OpenException(id));
+            return future;
+        }
+
+        JsonObject entry = new JsonObject();
+        entry.addProperty("hashKey", hashKey);
+        entry.addProperty("key", key);
+        entry.add("data", body);
+
+        while (true) {
+            Batch batch = this.batches.computeIfAbsent(rpcAddress, address -> new Batch(id, address));
+
+            if (batch.add(entry, future)) {
+                return future;
+            }
+        }
+    }
+
+    /**
+     * Return the pipeline metrics in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        long batches = this.sentBatches.get();
+        long writes = this.sentWrites.get();
+
+        metrics.addProperty("enabled", isEnabled());
+        metrics.addProperty("windowMicros", this.window);
+        metrics.addProperty("batchSize", this.batchSize);
+        metrics.addProperty("batches", batches);
+        metrics.addProperty("writes", writes);
+        metrics.addProperty("writesPerBatch", (batches == 0) ? 0 : (double) writes / batches);
+
+        JsonObject open = new JsonObject();
+        for (Map.Entry<String, Batch> entry : this.batches.entrySet()) {
+            open.addProperty(entry.getKey(), entry.getValue().size());
+        }
+        metrics.add("open", open);
+
+        return metrics;
+    }
+
+    /**
+     * Nested Batch class for the writes to one replica that wait to be sent together.
+     */
+    private class Batch {
+        private final String id;
+        private final String rpcAddress;
+        private final JsonArray entries;
+        private final List<CompletableFuture<HttpClient.Response>> futures;
+        private ScheduledFuture<?> timeout;
+        private boolean sealed;
+
+        /**
+         * Batch constructor.
+         *
+         * @param id
+         * @param rpcAddress
+         */
+        private Batch(String id, String rpcAddress) {
+            this.id = id;
+            this.rpcAddress = rpcAddress;
+            this.entries = new JsonArray();
+            this.futures = new ArrayList<>();
+            this.sealed = false;
+        }
+
+        /**
+         * Add a write, return false if the batch has been sent already.
+         * The first write starts the window, the batch is sent when the window ends unless it fills up first.
+         *
+         * @param entry
+         * @param future
+         * @return boolean
+         */
+        private boolean add(JsonObject entry, CompletableFuture<HttpClient.Response> future) {
+            boolean full;
+
+            synchronized (this) {
+                if (this.sealed) {
+                    return false;
+                }
+
+                this.entries.add(entry);
+                this.futures.add(future);
+                if (this.futures.size() == 1) {
+                    this.timeout = ReplicationPipeline.this.timer.schedule(this::send
+                            , ReplicationPipeline.this.window, TimeUnit.MICROSECONDS);
+                }
+                full = this.futures.size() >= ReplicationPipeline.this.batchSize;
+            }
+
+            if (full) {
+                send();
+            }
+
+            return true;
+        }
+
+        /**
+         * Return the number of writes in the batch.
+         *
+         * @return int
+         */
+        private synchronized int size() {
+            return this.futures.size();
+        }
+
+        /**
+         * Seal the batch and send it, then complete the future of each write with its own status.
+         */
+        private void send() {
+            synchronized (this) {
+                if (this.sealed) {
+                    return;
+                }
+
+                this.sealed = true;
+                if (this.timeout != null) {
+                    this.timeout.cancel(false);
+                }
+            }
+            ReplicationPipeline.this.batches.remove(this.rpcAddress, this);
+
+            ReplicationPipeline.this.sentBatches.incrementAndGet();
+            ReplicationPipeline.this.sentWrites.addAndGet(this.futures.size());
+
+            CompletableFuture<HttpClient.Response> call;
+            try {
+                long start = System.nanoTime();
+                call = Driver.rpcClient.callAsync(this.rpcAddress, RpcServer.PUT_BATCH, 0, "", this.entries
+                        , Driver.adaptiveTimeout.getTimeout(this.id));
+                Driver.adaptiveTimeout.track(this.id, start, call);
+                Driver.circuitBreaker.track(this.id, call);
+            } catch (RuntimeException re) {
+                fail(re);
+                return;
+            }
+
+            call.whenComplete((response, error) -> {
+                if (error != null) {
+                    fail(error);
+                    return;
+                }
+
+                JsonElement statuses = response.getJson();
+                if (response.getStatusCode() != HttpURLConnection.HTTP_OK || statuses == null
+                        || !statuses.isJsonArray() || statuses.getAsJsonArray().size() != this.futures.size()) {
+                    fail(new IOException("Rejected batch to " + this.rpcAddress
+                            + ", status " + response.getStatusCode()));
+                    return;
+                }
+
+                for (int i = 0; i < this.futures.size(); i++) {
+                    this.futures.get(i).complete(new HttpClient.Response(
+                            statuses.getAsJsonArray().get(i).getAsInt(), null));
+                }
+            });
+        }
+
+        /**
+         * Fail the future of every write in the batch.
+         *
+         * @param error
+         */
+        private void fail(Throwable error) {
+            for (CompletableFuture<HttpClient.Response> future : this.futures) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
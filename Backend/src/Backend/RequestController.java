@@ -1,10 +1,20 @@
 package Backend;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * RequestController class to handle read/write request.
@@ -17,80 +27,322 @@ public class RequestController extends HttpRequest {
      * If not, redirect to the top replica of the preference list of the key.
      * Start gathering process if don't need to redirect, and response with
      * all versions gathered from other replicas in the preference list.
+     * The response is sent when the gathering completes, no request thread waits for the other replicas.
+     * If the read quorum fails or the deadline of the request passes first, response with the failure.
      *
      * @param hashKey
      * @param key
-     * @param response
-     * @return String
+     * @param timeLeft
+     * @return DeferredResult
      */
     @RequestMapping(value = "/get/{hashKey}/{key}", method = RequestMethod.GET, produces = "application/json")
-    public String get(@PathVariable("hashKey") int hashKey, @PathVariable("key") String key
-            , HttpServletResponse response) {
+    public DeferredResult<ResponseEntity<String>> get(@PathVariable("hashKey") int hashKey
+            , @PathVariable("key") String key, @RequestHeader(value = Quorum.DEADLINE_HEADER, required = false) Long timeLeft) {
         System.out.println("[Request] GET /get/" + hashKey + "/" + key);
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
 
-        JsonObject redirect = redirect(hashKey);
-        if (redirect == null) {
-            GatherReplicates gathering = new GatherReplicates(hashKey, key);
-            JsonArray data = gathering.start();
-
-            if (data.size() == 0) {
-                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        read(hashKey, key, Quorum.toDeadline(timeLeft)).whenComplete((reply, error) -> {
+            if (error != null) {
+                result.setErrorResult(error);
+            } else {
+                result.setResult(toResponseEntity(reply));
             }
+        });
 
-            return data.toString();
-        } else {
-            response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
-
-            return redirect.toString();
-        }
+        return result;
     }
 
     /**
      * Check if the current replica is responsible for the key.
      * If not, redirect to the top replica of the preference list of the key.
-     * Store data into local storage if don't need to redirect.
+     * Store data into local storage if don't need to redirect, the write-ahead log is waited for without a request thread.
      * If the version the client is updating is not the latest version, reply the latest version.
      * Start replication, if everything works fine, to other replicas in the preference list.
+     * The response is sent when the replication completes, no request thread waits for the other replicas.
+     * If the write quorum fails or the deadline of the request passes first, response with the failure.
      *
      * @param hashKey
      * @param key
      * @param requestBody
-     * @param response
-     * @return String
+     * @param timeLeft
+     * @return DeferredResult
      */
     @RequestMapping(value = "/put/{hashKey}/{key}", method = RequestMethod.POST, produces = "application/json")
-    public String put(@PathVariable("hashKey") int hashKey, @PathVariable("key") String key
-            , @RequestBody String requestBody, HttpServletResponse response) {
+    public DeferredResult<ResponseEntity<String>> put(@PathVariable("hashKey") int hashKey
+            , @PathVariable("key") String key, @RequestBody String requestBody, @RequestHeader(value = Quorum.DEADLINE_HEADER, required = false) Long timeLeft) {
         System.out.println("[Request] POST /put/" + hashKey + "/" + key + " requestBody = " +
                 requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
         JsonObject body = parseJson(requestBody).getAsJsonObject();
 
         if (body.get("replicate") != null) {
-            Driver.dataStorage.storeReplicate(hashKey, key, body);
-
-            return null;
+            Driver.dataStorage.storeReplicateAsync(hashKey, key, body).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    result.setErrorResult(error);
+                } else {
+                    result.setResult(new ResponseEntity<>(HttpStatus.OK));
+                }
+            });
         } else {
-            JsonObject redirect = redirect(hashKey);
+            write(hashKey, key, body, Quorum.toDeadline(timeLeft)).whenComplete((reply, error) -> {
+                if (error != null) {
+                    result.setErrorResult(error);
+                } else {
+                    result.setResult(toResponseEntity(reply));
+                }
+            });
+        }
 
-            if (redirect == null) {
-                JsonArray version = Driver.dataStorage.put(hashKey, key, body);
+        return result;
+    }
 
-                if (version == null) {
-                    Replication replication = new Replication(hashKey, key, body);
-                    replication.start();
+    /**
+     * Handle the reads of a batch of keys, which all have this replica in their preference lists
+     * from the view of the frontend. Every key goes through the same checks and gathering as get(),
+     * and the keys are gathered in parallel. The response is sent when every key is done,
+     * with the status and data of each key. All keys share the deadline of the request.
+     * A key that appears more than once is read once, and an entry that cannot be read replies 400 for its key.
+     *
+     * @param requestBody
+     * @param timeLeft
+     * @return DeferredResult
+     */
+    @RequestMapping(value = "/mget", method = RequestMethod.POST, produces = "application/json")
+    public DeferredResult<ResponseEntity<String>> mget(@RequestBody String requestBody, @RequestHeader(value = Quorum.DEADLINE_HEADER, required = false) Long timeLeft) {
+        System.out.println("[Request] POST /mget requestBody = " +
+                requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+        long deadline = Quorum.toDeadline(timeLeft);
+        Map<String, List<JsonObject>> entries = groupByKey(requestBody);
+        if (entries == null) {
+            return badRequest();
+        }
+
+        JsonObject replies = new JsonObject();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
 
+        for (Map.Entry<String, List<JsonObject>> entry : entries.entrySet()) {
+            String key = entry.getKey();
+
+            try {
+                int hashKey = entry.getValue().get(0).get("hashKey").getAsInt();
+                futures.add(read(hashKey, key, deadline).handle((reply, error) -> {
+                    addReply(replies, key, (error == null) ? reply : toReply(HttpStatus.INTERNAL_SERVER_ERROR, null));
                     return null;
-                } else {
-                    response.setStatus(HttpServletResponse.SC_FOUND);
+                }));
+            } catch (RuntimeException re) {
+                addReply(replies, key, toReply(HttpStatus.BAD_REQUEST, null));
+            }
+        }
 
-                    return version.toString();
+        return whenAllReplied(futures, replies);
+    }
+
+    /**
+     * Handle the writes of a batch of keys, which all have this replica in their preference lists
+     * from the view of the frontend. Every key goes through the same checks and replication as put(),
+     * and the keys are replicated in parallel. The response is sent when every key is done,
+     * with the status and data of each key. All keys share the deadline of the request.
+     * A key that appears more than once is not written and replies 400, since it is unknown which write wins,
+     * and so does a key whose entry cannot be read.
+     *
+     * @param requestBody
+     * @param timeLeft
+     * @return DeferredResult
+     */
+    @RequestMapping(value = "/mput", method = RequestMethod.POST, produces = "application/json")
+    public DeferredResult<ResponseEntity<String>> mput(@RequestBody String requestBody, @RequestHeader(value = Quorum.DEADLINE_HEADER, required = false) Long timeLeft) {
+        System.out.println("[Request] POST /mput requestBody = " +
+                requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+        long deadline = Quorum.toDeadline(timeLeft);
+        Map<String, List<JsonObject>> entries = groupByKey(requestBody);
+        if (entries == null) {
+            return badRequest();
+        }
+
+        JsonObject replies = new JsonObject();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (Map.Entry<String, List<JsonObject>> entry : entries.entrySet()) {
+            String key = entry.getKey();
+
+            try {
+                if (entry.getValue().size() > 1) {
+                    throw new IllegalArgumentException("Key " + key + " is written more than once");
                 }
-            } else {
-                response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
 
-                return redirect.toString();
+                int hashKey = entry.getValue().get(0).get("hashKey").getAsInt();
+                JsonObject body = entry.getValue().get(0).get("data").getAsJsonObject();
+                futures.add(write(hashKey, key, body, deadline).handle((reply, error) -> {
+                    addReply(replies, key, (error == null) ? reply : toReply(HttpStatus.INTERNAL_SERVER_ERROR, null));
+                    return null;
+                }));
+            } catch (RuntimeException re) {
+                addReply(replies, key, toReply(HttpStatus.BAD_REQUEST, null));
+            }
+        }
+
+        return whenAllReplied(futures, replies);
+    }
+
+    /**
+     * Helper method to group the entries of a batch by their keys, in the order the keys first appear.
+     * Return null if the batch is not a Json array, or an entry has no key to reply to,
+     * so the batch is rejected before any key in it is handled.
+     *
+     * @param requestBody
+     * @return Map
+     */
+    private Map<String, List<JsonObject>> groupByKey(String requestBody) {
+        Map<String, List<JsonObject>> entries = new LinkedHashMap<>();
+
+        try {
+            for (JsonElement element : parseJson(requestBody).getAsJsonArray()) {
+                JsonObject entry = element.getAsJsonObject();
+                entries.computeIfAbsent(entry.get("key").getAsString(), key -> new ArrayList<>()).add(entry);
             }
+        } catch (RuntimeException re) {
+            return null;
         }
+
+        return entries;
+    }
+
+    /**
+     * Helper method to response 400 to a batch that cannot be read.
+     *
+     * @return DeferredResult
+     */
+    private DeferredResult<ResponseEntity<String>> badRequest() {
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
+        result.setResult(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+
+        return result;
+    }
+
+    /**
+     * Helper method to read a key as the coordinator, the future completes with the status and data of the key.
+     *
+     * @param hashKey
+     * @param key
+     * @param deadline
+     * @return CompletableFuture
+     */
+    private CompletableFuture<JsonObject> read(int hashKey, String key, long deadline) {
+        JsonObject redirect = redirect(hashKey);
+        if (redirect != null) {
+            return CompletableFuture.completedFuture(toReply(HttpStatus.TEMPORARY_REDIRECT, redirect));
+        }
+
+        GatherReplicates gathering = new GatherReplicates(hashKey, key, deadline);
+        return orQuorumFailure(gathering.start().thenApply(data ->
+                toReply((data.size() == 0) ? HttpStatus.BAD_REQUEST : HttpStatus.OK, data)));
+    }
+
+    /**
+     * Helper method to write a key as the coordinator, the future completes with the status and data of the key.
+     *
+     * @param hashKey
+     * @param key
+     * @param body
+     * @param deadline
+     * @return CompletableFuture
+     */
+    private CompletableFuture<JsonObject> write(int hashKey, String key, JsonObject body, long deadline) {
+        JsonObject redirect = redirect(hashKey);
+        if (redirect != null) {
+            return CompletableFuture.completedFuture(toReply(HttpStatus.TEMPORARY_REDIRECT, redirect));
+        }
+
+        return Driver.dataStorage.putAsync(hashKey, key, body).thenCompose(version -> {
+            if (version != null) {
+                return CompletableFuture.completedFuture(toReply(HttpStatus.FOUND, version));
+            }
+
+            Replication replication = new Replication(hashKey, key, body, deadline);
+            return orQuorumFailure(replication.start().thenApply(ignored -> toReply(HttpStatus.OK, null)));
+        });
+    }
+
+    /**
+     * Helper method to turn a failed or expired quorum into the reply of the key, 503 or 504 with the failure.
+     * Other exceptions are passed on.
+     *
+     * @param future
+     * @return CompletableFuture
+     */
+    private CompletableFuture<JsonObject> orQuorumFailure(CompletableFuture<JsonObject> future) {
+        return future.exceptionally(error -> {
+            Quorum.Failure failure = Quorum.Failure.from(error);
+            if (failure == null) {
+                throw (error instanceof CompletionException) ? (CompletionException) error
+                        : new CompletionException(error);
+            }
+
+            return toReply(HttpStatus.valueOf(failure.getStatus()), failure.toJson());
+        });
+    }
+
+    /**
+     * Helper method to build the reply of a key with its status and data.
+     *
+     * @param status
+     * @param data
+     * @return JsonObject
+     */
+    private JsonObject toReply(HttpStatus status, JsonElement data) {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("status", status.value());
+        if (data != null) {
+            reply.add("data", data);
+        }
+
+        return reply;
+    }
+
+    /**
+     * Helper method to turn the reply of a key into the response of a single key request.
+     *
+     * @param reply
+     * @return ResponseEntity
+     */
+    private ResponseEntity<String> toResponseEntity(JsonObject reply) {
+        HttpStatus status = HttpStatus.valueOf(reply.get("status").getAsInt());
+        JsonElement data = reply.get("data");
+
+        return (data == null) ? new ResponseEntity<>(status) : new ResponseEntity<>(data.toString(), status);
+    }
+
+    /**
+     * Helper method to add the reply of a key into the replies of a batch.
+     *
+     * @param replies
+     * @param key
+     * @param reply
+     */
+    private void addReply(JsonObject replies, String key, JsonObject reply) {
+        synchronized (replies) {
+            replies.add(key, reply);
+        }
+    }
+
+    /**
+     * Helper method to response with the replies of a batch once every key in it is done.
+     *
+     * @param futures
+     * @param replies
+     * @return DeferredResult
+     */
+    private DeferredResult<ResponseEntity<String>> whenAllReplied(List<CompletableFuture<Void>> futures
+            , JsonObject replies) {
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            synchronized (replies) {
+                result.setResult(new ResponseEntity<>(replies.toString(), HttpStatus.OK));
+            }
+        });
+
+        return result;
     }
 
     /**
@@ -138,39 +390,52 @@ public class RequestController extends HttpRequest {
      * If not, redirect to the top replica of the preference list of the key.
      * Overwrite the current version of data if don't need to redirect.
      * Send overwrite request to other replicas in the preference list.
+     * The response is sent when the overwrite completes, no request thread waits for the other replicas.
+     * If the write quorum fails or the deadline of the request passes first, response with the failure.
      *
      * @param hashKey
      * @param key
      * @param requestBody
-     * @param response
-     * @return String
+     * @param timeLeft
+     * @return DeferredResult
      */
     @RequestMapping(value = "/reconcile/merge/{hashKey}/{key}", method = RequestMethod.POST, produces = "application/json")
-    public String reconcile(@PathVariable("hashKey") int hashKey, @PathVariable("key") String key
-            , @RequestBody String requestBody, HttpServletResponse response) {
+    public DeferredResult<ResponseEntity<String>> reconcile(@PathVariable("hashKey") int hashKey
+            , @PathVariable("key") String key, @RequestBody String requestBody, @RequestHeader(value = Quorum.DEADLINE_HEADER, required = false) Long timeLeft) {
         System.out.println("[Request] POST /reconcile/merge/" + hashKey + "/" + key + " requestBody = " +
                 requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
         JsonObject body = parseJson(requestBody).getAsJsonObject();
 
         if (body.get("replicate") != null) {
-            Driver.dataStorage.overwrite(hashKey, key, body);
-
-            return null;
+            Driver.dataStorage.overwriteAsync(hashKey, key, body).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    result.setErrorResult(error);
+                } else {
+                    result.setResult(new ResponseEntity<>(HttpStatus.OK));
+                }
+            });
         } else {
             JsonObject redirect = redirect(hashKey);
 
             if (redirect == null) {
-                Driver.dataStorage.overwrite(hashKey, key, body);
-                OverwriteReplica overwrite = new OverwriteReplica(hashKey, key, body);
-                overwrite.start();
-
-                return null;
+                long deadline = Quorum.toDeadline(timeLeft);
+                Driver.dataStorage.overwriteAsync(hashKey, key, body).thenCompose(written -> {
+                    OverwriteReplica overwrite = new OverwriteReplica(hashKey, key, body, deadline);
+                    return orQuorumFailure(overwrite.start().thenApply(ignored -> toReply(HttpStatus.OK, null)));
+                }).whenComplete((reply, error) -> {
+                    if (error != null) {
+                        result.setErrorResult(error);
+                    } else {
+                        result.setResult(toResponseEntity(reply));
+                    }
+                });
             } else {
-                response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
-
-                return redirect.toString();
+                result.setResult(new ResponseEntity<>(redirect.toString(), HttpStatus.TEMPORARY_REDIRECT));
             }
         }
+
+        return result;
     }
 
     /**
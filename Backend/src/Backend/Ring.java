@@ -47,6 +47,7 @@ public class Ring {
             replica.setId(seed.get("id").getAsString());
             replica.setHost(seed.get("host").getAsString());
             replica.setPort(seed.get("port").getAsString());
+            replica.setRpcPort(seed.get("rpcPort") == null ? 0 : seed.get("rpcPort").getAsInt());
             replica.setSeed(true);
             replica.setKey(seed.get("key").getAsInt());
 
@@ -183,6 +184,7 @@ public class Ring {
                 newReplica.setId(addId);
                 newReplica.setHost(replica.get("host").getAsString());
                 newReplica.setPort(replica.get("port").getAsString());
+                newReplica.setRpcPort(replica.get("rpcPort") == null ? 0 : replica.get("rpcPort").getAsInt());
                 newReplica.setSeed(replica.get("seed").getAsBoolean());
                 newReplica.setKey(replica.get("key").getAsInt());
 
@@ -260,6 +262,27 @@ public class Ring {
         return replica;
     }
 
+    /**
+     * Return the internal RPC address of a replica, or null if it does not have one or is not in the ring.
+     *
+     * @param id
+     * @return String
+     */
+    public String getRpcAddress(String id) {
+        String address = null;
+
+        this.lock.readLock().lock();
+
+        Integer key = this.addLog.get(id);
+        if (key != null && this.replicas[key] != null && this.replicas[key].getId().equals(id)) {
+            address = this.replicas[key].getRpcAddress();
+        }
+
+        this.lock.readLock().unlock();
+
+        return address;
+    }
+
     /**
      * Remove the node with particular id from the ring and log it.
      *
@@ -484,12 +507,12 @@ public class Ring {
     }
 
     /**
-     * Return address of N+1th replica.
+     * Return id and address of N+1th replica.
      *
-     * @return String
+     * @return String[]
      */
-    public String getNPlusOneNodeAddress() {
-        String address;
+    public String[] getNPlusOneNode() {
+        String[] info = new String[2];
         int keyPointer = Driver.replica.getKey();
 
         this.lock.readLock().lock();
@@ -504,10 +527,11 @@ public class Ring {
             }
         } while (nodeCount < totalNodeCount);
 
-        address = this.replicas[keyPointer].getAddress();
+        info[0] = this.replicas[keyPointer].getId();
+        info[1] = this.replicas[keyPointer].getAddress();
 
         this.lock.readLock().unlock();
 
-        return address;
+        return info;
     }
 }
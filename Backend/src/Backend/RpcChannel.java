@@ -0,0 +1,162 @@
+package Backend;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * RpcChannel class for a non-blocking socket channel that carries length-prefixed frames.
+ *
+ * Frames are read by the selector thread. Any thread can send a frame: it is written right away
+ * if nothing is waiting before it, and the rest is queued and written by the selector thread
+ * when the socket is writable again. Frames sent while the socket is still connecting are queued
+ * until it is connected.
+ */
+public class RpcChannel {
+    private static final int MAXIMUM_FRAME_SIZE = 256 * 1024 * 1024;
+    private final SocketChannel channel;
+    private final Queue<ByteBuffer> writeQueue;
+    private ByteBuffer readBuffer;
+    private SelectionKey key;
+    private boolean connected;
+
+    /**
+     * RpcChannel constructor.
+     *
+     * @param channel
+     */
+    public RpcChannel(SocketChannel channel) {
+        this.channel = channel;
+        this.writeQueue = new ArrayDeque<>();
+        this.readBuffer = ByteBuffer.allocate(64 * 1024);
+        this.connected = channel.isConnected();
+    }
+
+    /**
+     * Set the selection key once the channel is registered, and watch for writes if frames are waiting.
+     * A channel still connecting keeps watching for the connection only.
+     *
+     * @param key
+     */
+    public synchronized void setKey(SelectionKey key) {
+        this.key = key;
+        if (this.connected && !this.writeQueue.isEmpty()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Finish connecting once the selector reports the channel connectable,
+     * then watch for reads, and for writes if frames were sent while connecting.
+     *
+     * @throws IOException
+     */
+    public synchronized void finishConnect() throws IOException {
+        if (!this.channel.finishConnect()) {
+            return;
+        }
+
+        this.connected = true;
+        this.key.interestOps(this.writeQueue.isEmpty()
+                ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Read from the channel and pass every complete frame, without its length, to the handler.
+     *
+     * @param handler
+     * @throws IOException
+     */
+    public void read(Consumer<ByteBuffer> handler) throws IOException {
+        if (this.channel.read(this.readBuffer) < 0) {
+            throw new EOFException();
+        }
+
+        this.readBuffer.flip();
+        while (this.readBuffer.remaining() >= 4) {
+            int length = this.readBuffer.getInt(this.readBuffer.position());
+            if (length < 0 || length > MAXIMUM_FRAME_SIZE) {
+                throw new IOException("Invalid frame length " + length);
+            }
+
+            if (this.readBuffer.remaining() < 4 + length) {
+                if (this.readBuffer.capacity() < 4 + length) {
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(this.readBuffer);
+                    this.readBuffer = larger;
+
+                    return;
+                }
+                break;
+            }
+
+            this.readBuffer.getInt();
+            ByteBuffer frame = ByteBuffer.allocate(length);
+            int limit = this.readBuffer.limit();
+            this.readBuffer.limit(this.readBuffer.position() + length);
+            frame.put(this.readBuffer);
+            this.readBuffer.limit(limit);
+            frame.flip();
+
+            handler.accept(frame);
+        }
+        this.readBuffer.compact();
+    }
+
+    /**
+     * Send a frame that starts with its length.
+     *
+     * @param frame
+     * @throws IOException
+     */
+    public synchronized void send(ByteBuffer frame) throws IOException {
+        if (this.connected && this.writeQueue.isEmpty()) {
+            this.channel.write(frame);
+            if (!frame.hasRemaining()) {
+                return;
+            }
+        }
+
+        this.writeQueue.add(frame);
+        if (this.connected && this.key != null) {
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            this.key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Write the waiting frames when the channel is writable, and stop watching for writes once they are all written.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        while (!this.writeQueue.isEmpty()) {
+            ByteBuffer frame = this.writeQueue.peek();
+            this.channel.write(frame);
+            if (frame.hasRemaining()) {
+                return;
+            }
+            this.writeQueue.poll();
+        }
+
+        this.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Close the channel quietly.
+     */
+    public void close() {
+        if (this.key != null) {
+            this.key.cancel();
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,464 @@
+package Backend;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RpcClient class to send internal requests to the RPC port of other replicas.
+ *
+ * There is one connection to each replica, and every request in flight on it is matched to
+ * its response by id, so concurrent requests to the same replica share the connection.
+ * One selector thread connects and reads the responses of all connections, and a timer fails
+ * the connections that do not connect within the connect timeout and the requests that wait longer
+ * than the read timeout, so a caller never has to block on a connection or a request.
+ * When a connection breaks, the requests waiting on it fail and the next request opens a new one.
+ */
+public class RpcClient implements Runnable {
+    private static final ThreadLocal<Boolean> CALLBACK = ThreadLocal.withInitial(() -> false);
+    private final ConcurrentMap<String, Connection> connections;
+    private final Queue<Connection> registrations;
+    private final AtomicLong ids;
+    private final AtomicLong calls;
+    private final AtomicLong failures;
+    private final AtomicLong timeouts;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ExecutorService callbacks;
+    private Selector selector;
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+
+    /**
+     * RpcClient constructor.
+     */
+    public RpcClient() {
+        this.connections = new ConcurrentHashMap<>();
+        this.registrations = new ConcurrentLinkedQueue<>();
+        this.ids = new AtomicLong();
+        this.calls = new AtomicLong();
+        this.failures = new AtomicLong();
+        this.timeouts = new AtomicLong();
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "rpc-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.callbacks = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(() -> {
+                CALLBACK.set(true);
+                r.run();
+            }, "rpc-callback");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connectTimeout = 5000;
+        this.readTimeout = 5000;
+    }
+
+    /**
+     * Connect timeout setter in milliseconds.
+     *
+     * @param connectTimeout
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Read timeout setter in milliseconds.
+     *
+     * @param readTimeout
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Send a request and wait for its response.
+     *
+     * @param address
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @return HttpClient.Response
+     * @throws IOException
+     */
+    public HttpClient.Response call(String address, byte op, int hashKey, String key, JsonElement body)
+            throws IOException {
+        return call(address, op, hashKey, key, body, this.readTimeout);
+    }
+
+    /**
+     * Send a request and wait for its response, at most the read timeout in milliseconds.
+     * Only for threads that may block, a callback of another request must chain on callAsync() instead.
+     *
+     * @param address
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @param readTimeout
+     * @return HttpClient.Response
+     * @throws IOException
+     * @throws IllegalStateException
+     */
+    public HttpClient.Response call(String address, byte op, int hashKey, String key, JsonElement body
+            , int readTimeout) throws IOException, IllegalStateException {
+        if (CALLBACK.get()) {
+            throw new IllegalStateException("Blocking RPC call on a callback thread");
+        }
+
+        try {
+            return callAsync(address, op, hashKey, key, body, readTimeout).get();
+        } catch (ExecutionException ee) {
+            throw (ee.getCause() instanceof IOException)
+                    ? (IOException) ee.getCause() : new IOException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        }
+    }
+
+    /**
+     * Send a request without waiting, the future completes with the response,
+     * or exceptionally with an IOException if the request fails or times out.
+     * The future is completed off the selector thread, so it is safe to chain blocking work on it.
+     *
+     * @param address
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @return CompletableFuture
+     */
+    public CompletableFuture<HttpClient.Response> callAsync(String address, byte op, int hashKey, String key
+            , JsonElement body) {
+        return callAsync(address, op, hashKey, key, body, this.readTimeout);
+    }
+
+    /**
+     * Send a request without waiting, the future times out after the read timeout in milliseconds.
+     * A new connection to the replica is opened in background, and the request is sent once it is connected.
+     *
+     * @param address
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param body
+     * @param readTimeout
+     * @return CompletableFuture
+     */
+    public CompletableFuture<HttpClient.Response> callAsync(String address, byte op, int hashKey, String key
+            , JsonElement body, int readTimeout) {
+        CompletableFuture<HttpClient.Response> result = new CompletableFuture<>();
+        long id = this.ids.incrementAndGet();
+        Connection connection;
+
+        try {
+            connection = getConnection(address, Math.min(this.connectTimeout, readTimeout));
+        } catch (IOException ioe) {
+            result.completeExceptionally(ioe);
+            return result;
+        }
+
+        CompletableFuture<ByteBuffer> future = connection.send(id, op, hashKey, key, body);
+        ScheduledFuture<?> timeout = this.timer.schedule(() -> {
+            if (connection.pending.remove(id) != null) {
+                this.timeouts.incrementAndGet();
+                future.completeExceptionally(new SocketTimeoutException("RPC to " + address + " timed out"));
+            }
+        }, readTimeout, TimeUnit.MILLISECONDS);
+
+        future.whenCompleteAsync((frame, error) -> {
+            timeout.cancel(false);
+
+            if (error != null) {
+                if (!(error instanceof SocketTimeoutException)) {
+                    this.failures.incrementAndGet();
+                }
+                result.completeExceptionally(error);
+                return;
+            }
+
+            try {
+                int status = frame.getShort();
+                result.complete(new HttpClient.Response(status
+                        , BinaryCodec.decodeResponse(new BinaryCodec.Reader(frame), op, status)));
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                this.failures.incrementAndGet();
+                result.completeExceptionally(new IOException("Malformed RPC response from " + address, e));
+            }
+        }, this.callbacks);
+
+        return result;
+    }
+
+    /**
+     * Return the RPC metrics in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("calls", this.calls.get());
+        metrics.addProperty("failures", this.failures.get());
+        metrics.addProperty("timeouts", this.timeouts.get());
+
+        JsonObject peers = new JsonObject();
+        for (Map.Entry<String, Connection> entry : this.connections.entrySet()) {
+            peers.addProperty(entry.getKey(), entry.getValue().pending.size());
+        }
+        metrics.add("pending", peers);
+
+        return metrics;
+    }
+
+    /**
+     * Read the responses of all connections.
+     */
+    @Override
+    public void run() {
+        while (Driver.alive) {
+            try {
+                this.selector.select();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                break;
+            }
+
+            Connection connection;
+            while ((connection = this.registrations.poll()) != null) {
+                try {
+                    connection.channel.setKey(connection.socket.register(this.selector
+                            , connection.socket.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ
+                            , connection));
+                } catch (IOException ioe) {
+                    connection.close(ioe);
+                }
+            }
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                Connection readable = (Connection) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        readable.channel.finishConnect();
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        readable.channel.flush();
+                    }
+                    if (key.isReadable()) {
+                        readable.channel.read(readable::receive);
+                    }
+                } catch (IOException ioe) {
+                    readable.close(ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to return the open connection to a replica, or start opening a new one.
+     * Only the connect is started here, so no caller waits for a replica that does not answer.
+     *
+     * @param address
+     * @param connectTimeout
+     * @return Connection
+     * @throws IOException
+     */
+    private Connection getConnection(String address, int connectTimeout) throws IOException {
+        Connection connection = this.connections.get(address);
+        if (connection != null && !connection.closed) {
+            return connection;
+        }
+
+        start();
+
+        try {
+            return this.connections.compute(address, (peer, current) -> {
+                if (current != null && !current.closed) {
+                    return current;
+                }
+
+                try {
+                    return new Connection(peer, connectTimeout);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        } catch (UncheckedIOException uioe) {
+            this.failures.incrementAndGet();
+            throw uioe.getCause();
+        }
+    }
+
+    /**
+     * Helper method to open the selector and start the thread reading the responses on first use.
+     *
+     * @throws IOException
+     */
+    private synchronized void start() throws IOException {
+        if (this.selector == null) {
+            this.selector = Selector.open();
+
+            Thread thread = new Thread(this, "rpc-client");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Nested Connection class for a connection to one replica and the requests waiting for a response on it.
+     */
+    private class Connection {
+        private final String address;
+        private final SocketChannel socket;
+        private final RpcChannel channel;
+        private final ConcurrentMap<Long, CompletableFuture<ByteBuffer>> pending;
+        private volatile boolean closed;
+
+        /**
+         * Connection constructor to start connecting to the replica, the selector thread finishes the connect.
+         * If the connect does not finish within the connect timeout, the connection is closed.
+         *
+         * @param address
+         * @param connectTimeout
+         * @throws IOException
+         */
+        private Connection(String address, int connectTimeout) throws IOException {
+            int colon = address.lastIndexOf(':');
+            this.address = address;
+            this.socket = SocketChannel.open();
+            this.pending = new ConcurrentHashMap<>();
+            this.closed = false;
+
+            try {
+                this.socket.configureBlocking(false);
+                this.socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                this.socket.connect(new InetSocketAddress(address.substring(0, colon)
+                        , Integer.parseInt(address.substring(colon + 1))));
+            } catch (IOException | RuntimeException e) {
+                this.socket.close();
+                throw (e instanceof IOException) ? (IOException) e : new IOException(e);
+            }
+
+            this.channel = new RpcChannel(this.socket);
+            if (this.socket.isConnectionPending()) {
+                RpcClient.this.timer.schedule(() -> {
+                    if (!this.socket.isConnected()) {
+                        close(new SocketTimeoutException("Connect to " + address + " timed out"));
+                    }
+                }, connectTimeout, TimeUnit.MILLISECONDS);
+            }
+            RpcClient.this.registrations.add(this);
+            RpcClient.this.selector.wakeup();
+        }
+
+        /**
+         * Encode and send a request frame, the future completes with the response frame after its id.
+         *
+         * @param id
+         * @param op
+         * @param hashKey
+         * @param key
+         * @param body
+         * @return CompletableFuture
+         */
+        private CompletableFuture<ByteBuffer> send(long id, byte op, int hashKey, String key, JsonElement body) {
+            byte[] keyBytes = (key == null) ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+            BinaryCodec.Writer out = new BinaryCodec.Writer(256);
+            out.putInt(0);
+            out.putLong(id);
+            out.putByte(op);
+            out.putInt(hashKey);
+            out.putInt(keyBytes.length);
+            out.putBytes(keyBytes);
+            BinaryCodec.encodeRequest(out, op, body);
+
+            ByteBuffer frame = out.finish();
+            frame.putInt(0, frame.limit() - 4);
+
+            CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+            this.pending.put(id, future);
+            RpcClient.this.calls.incrementAndGet();
+
+            try {
+                this.channel.send(frame);
+            } catch (IOException ioe) {
+                close(ioe);
+            }
+            if (this.closed) {
+                future.completeExceptionally(new IOException("Connection to " + this.address + " is closed"));
+            }
+
+            return future;
+        }
+
+        /**
+         * Match a response frame to its request.
+         *
+         * @param frame
+         */
+        private void receive(ByteBuffer frame) {
+            long id = frame.getLong();
+
+            CompletableFuture<ByteBuffer> future = this.pending.remove(id);
+            if (future != null) {
+                future.complete(frame);
+            }
+        }
+
+        /**
+         * Close the connection and fail the requests waiting on it.
+         *
+         * @param cause
+         */
+        private void close(IOException cause) {
+            this.closed = true;
+            this.channel.close();
+            RpcClient.this.connections.remove(this.address, this);
+
+            for (Long id : this.pending.keySet()) {
+                CompletableFuture<ByteBuffer> future = this.pending.remove(id);
+                if (future != null) {
+                    future.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcServer class to serve the internal requests from other replicas on a separate port.
+ *
+ * The protocol is a stream of length-prefixed binary frames over plain TCP, and a connection carries
+ * many requests at the same time: every request has an id, and its response carries the same id
+ * in whatever order the requests finish.
+ *
+ * Request frame: length, id (long), op (byte), hashKey (int), key (length-prefixed UTF-8), body.
+ * Response frame: length, id (long), status (short, Http status code), body.
+ * The body carries the same data as the Json of the Http endpoint of the op, encoded by the BinaryCodec.
+ *
+ * One selector thread accepts connections and reads frames, the requests run on a pool of workers.
+ * A request that finds the queue of the workers full is answered 503 right away.
+ * PUT_BATCH carries many replicated writes in one frame and has no Http endpoint, it is only sent over this port.
+ */
+public class RpcServer implements Runnable {
+    static final byte PUT = 1;
+    static final byte GET = 2;
+    static final byte MERGE = 3;
+    static final byte HINTED_PUT = 4;
+    static final byte GOSSIP = 5;
+    static final byte RECEIVER = 6;
+    static final byte PUT_BATCH = 7;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ExecutorService workers;
+
+    /**
+     * RpcServer constructor to open the port, with at most queueSize requests waiting for a worker.
+     *
+     * @param port
+     * @param threads
+     * @param queueSize
+     * @throws IOException
+     */
+    public RpcServer(int port, int threads, int queueSize) throws IOException {
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port));
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+            Thread thread = new Thread(r, "rpc-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+    }
+
+    /**
+     * Return the Http uri of an op, used when the other replica does not have an internal RPC port.
+     *
+     * @param op
+     * @param hashKey
+     * @param key
+     * @return String
+     */
+    static String getUri(byte op, int hashKey, String key) {
+        switch (op) {
+            case PUT:
+                return "/put/" + hashKey + "/" + key;
+            case GET:
+                return "/internal_get/" + hashKey + "/" + key;
+            case MERGE:
+                return "/reconcile/merge/" + hashKey + "/" + key;
+            case HINTED_PUT:
+                return "/hinted/put";
+            case GOSSIP:
+                return "/gossip";
+            case RECEIVER:
+                return "/receiver";
+            default:
+                throw new IllegalArgumentException("Unknown op " + op);
+        }
+    }
+
+    /**
+     * Accept connections and read requests until the server stops.
+     */
+    @Override
+    public void run() {
+        System.out.println("[Rpc] Listening on port " + this.server.socket().getLocalPort());
+
+        while (Driver.alive) {
+            try {
+                this.selector.select();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                break;
+            }
+
+            Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+
+                RpcChannel channel = (RpcChannel) key.attachment();
+                try {
+                    if (key.isWritable()) {
+                        channel.flush();
+                    }
+                    if (key.isReadable()) {
+                        channel.read(frame -> dispatch(channel, frame));
+                    }
+                } catch (IOException ioe) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to accept a new connection.
+     */
+    private void accept() {
+        try {
+            SocketChannel socket = this.server.accept();
+            if (socket == null) {
+                return;
+            }
+
+            socket.configureBlocking(false);
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            RpcChannel channel = new RpcChannel(socket);
+            channel.setKey(socket.register(this.selector, SelectionKey.OP_READ, channel));
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Helper method to hand a request frame to a worker, or answer 503 if the queue is full.
+     *
+     * @param channel
+     * @param frame
+     */
+    private void dispatch(RpcChannel channel, ByteBuffer frame) {
+        try {
+            this.workers.execute(() -> respond(channel, frame));
+        } catch (RejectedExecutionException ree) {
+            send(channel, frame.getLong(), HttpURLConnection.HTTP_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Helper method to handle a request frame and send the response frame back.
+     *
+     * @param channel
+     * @param frame
+     */
+    private void respond(RpcChannel channel, ByteBuffer frame) {
+        long id = frame.getLong();
+        byte op = frame.get();
+        Result result;
+
+        try {
+            int hashKey = frame.getInt();
+            byte[] keyBytes = new byte[frame.getInt()];
+            frame.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            JsonElement requestBody = BinaryCodec.decodeRequest(new BinaryCodec.Reader(frame), op);
+
+            result = handle(op, hashKey, key, requestBody);
+        } catch (UncheckedIOException uioe) {
+            uioe.printStackTrace(); // the write is applied but not durable
+            result = new Result(HttpURLConnection.HTTP_INTERNAL_ERROR, null);
+        } catch (RuntimeException re) {
+            result = new Result(HttpURLConnection.HTTP_BAD_REQUEST, null);
+        }
+
+        BinaryCodec.Writer out = new BinaryCodec.Writer(256);
+        out.putInt(0);
+        out.putLong(id);
+        out.putShort((short) result.status);
+        try {
+            BinaryCodec.encodeResponse(out, op, result.status, result.body);
+        } catch (RuntimeException re) {
+            re.printStackTrace();
+            send(channel, id, HttpURLConnection.HTTP_INTERNAL_ERROR);
+            return;
+        }
+
+        send(channel, out);
+    }
+
+    /**
+     * Helper method to send a response frame with an empty body.
+     *
+     * @param channel
+     * @param id
+     * @param status
+     */
+    private void send(RpcChannel channel, long id, int status) {
+        BinaryCodec.Writer out = new BinaryCodec.Writer(16);
+        out.putInt(0);
+        out.putLong(id);
+        out.putShort((short) status);
+
+        send(channel, out);
+    }
+
+    /**
+     * Helper method to finish a response frame and send it.
+     *
+     * @param channel
+     * @param out
+     */
+    private void send(RpcChannel channel, BinaryCodec.Writer out) {
+        ByteBuffer response = out.finish();
+        response.putInt(0, response.limit() - 4);
+
+        try {
+            channel.send(response);
+        } catch (IOException ioe) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Helper method to apply a request the same way as the Http endpoint of its op.
+     *
+     * @param op
+     * @param hashKey
+     * @param key
+     * @param requestBody
+     * @return Result
+     */
+    private Result handle(byte op, int hashKey, String key, JsonElement requestBody) {
+        switch (op) {
+            case PUT:
+                Driver.dataStorage.storeReplicate(hashKey, key, requestBody.getAsJsonObject());
+                return new Result(HttpURLConnection.HTTP_OK, null);
+            case GET:
+                JsonObject redirect = Driver.ring.checkRedirect(hashKey);
+                if (redirect != null) {
+                    return new Result(307, redirect);
+                }
+
+                JsonObject data = Driver.dataStorage.get(hashKey, key);
+                if (data == null) {
+                    return new Result(HttpURLConnection.HTTP_BAD_REQUEST, null);
+                }
+                return new Result(HttpURLConnection.HTTP_OK, data);
+            case MERGE:
+                Driver.dataStorage.overwrite(hashKey, key, requestBody.getAsJsonObject());
+                return new Result(HttpURLConnection.HTTP_OK, null);
+            case HINTED_PUT:
+                Driver.dataStorage.hintedPut(requestBody.getAsJsonObject());
+                return new Result(HttpURLConnection.HTTP_OK, null);
+            case GOSSIP:
+                JsonObject myMembership = Driver.ring.getMembership();
+                JsonObject membership = requestBody.getAsJsonObject();
+                Driver.ring.updateMembership(membership);
+
+                if (membership.get("hintedData") != null) {
+                    System.out.println("[HintedData] restoring hinted data");
+                    Driver.dataStorage.restoreHintedData(membership.get("hintedData").getAsJsonArray());
+                    System.out.println("[HintedData] hinted data restored");
+                }
+                return new Result(HttpURLConnection.HTTP_OK, myMembership);
+            case RECEIVER:
+                for (JsonElement bucket : requestBody.getAsJsonArray()) {
+                    RangeTransfer.receive(bucket.getAsJsonObject());
+                }
+                return new Result(HttpURLConnection.HTTP_OK, RangeTransfer.getReceiverReply());
+            case PUT_BATCH:
+                int[] statuses = Driver.dataStorage.storeReplicates(requestBody.getAsJsonArray());
+                JsonArray replies = new JsonArray();
+                for (int status : statuses) {
+                    replies.add(status);
+                }
+                return new Result(HttpURLConnection.HTTP_OK, replies);
+            default:
+                return new Result(HttpURLConnection.HTTP_BAD_REQUEST, null);
+        }
+    }
+
+    /**
+     * Nested Result class for the status code and body of a response.
+     */
+    private static class Result {
+        private final int status;
+        private final JsonElement body;
+
+        /**
+         * Result constructor.
+         *
+         * @param status
+         * @param body
+         */
+        private Result(int status, JsonElement body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package Backend;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Segment class for an immutable sorted file of the LSM engine.
+ *
+ * Entries are sorted by (hashKey, key) and packed into blocks of about 4 KB.
+ * The first key of every block is kept on the heap, so a lookup reads a single block
+ * and a bucket range is a sequential read of neighbouring blocks.
+ *
+ * File layout: blocks, index (first key, offset and length of each block),
+ * footer (index offset, compacted flag, magic number).
+ */
+public class Segment {
+    /**
+     * Value returned for a deleted key.
+     */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final int MAGIC = 0x4c534d31;
+    private static final int FOOTER_SIZE = 13;
+    private static final int BLOCK_SIZE = 4096;
+    private static final AtomicLong instances = new AtomicLong();
+    private final long id;
+    private final File file;
+    private final FileChannel channel;
+    private final BlockCache cache;
+    private final long cacheId;
+    private final boolean compacted;
+    private final int[] firstHashKeys;
+    private final String[] firstKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    /**
+     * Segment constructor to open an existing file and load its index.
+     *
+     * @param id
+     * @param file
+     * @param cache
+     * @throws IOException
+     */
+    public Segment(long id, File file, BlockCache cache) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.cache = cache;
+        this.cacheId = instances.incrementAndGet() << 24;
+
+        ByteBuffer footer = read(this.channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+        long indexOffset = footer.getLong();
+        this.compacted = footer.get() == 1;
+        if (footer.getInt() != MAGIC) {
+            this.channel.close();
+            throw new IOException("Corrupted segment " + file);
+        }
+
+        ByteBuffer index = read(indexOffset, (int) (this.channel.size() - FOOTER_SIZE - indexOffset));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+        int blockCount = in.readInt();
+        this.firstHashKeys = new int[blockCount];
+        this.firstKeys = new String[blockCount];
+        this.offsets = new long[blockCount];
+        this.lengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            this.firstHashKeys[i] = in.readInt();
+            this.firstKeys[i] = in.readUTF();
+            this.offsets[i] = in.readLong();
+            this.lengths[i] = in.readInt();
+        }
+    }
+
+    /**
+     * Write sorted entries into a new segment file and fsync it.
+     * A null value is written as a tombstone.
+     *
+     * @param file
+     * @param compacted
+     * @param entries
+     * @throws IOException
+     */
+    public static void write(File file, boolean compacted, Iterator<Map.Entry<EngineKey, byte[]>> entries)
+            throws IOException {
+        List<EngineKey> firstKeys = new ArrayList<>();
+        List<long[]> positions = new ArrayList<>();
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(BLOCK_SIZE * 2);
+        DataOutputStream block = new DataOutputStream(blockBytes);
+        int count = 0;
+        long offset = 0;
+
+        try (FileOutputStream fos = new FileOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            while (entries.hasNext()) {
+                Map.Entry<EngineKey, byte[]> entry = entries.next();
+                if (count == 0) {
+                    firstKeys.add(entry.getKey());
+                }
+
+                block.writeInt(entry.getKey().getHashKey());
+                block.writeUTF(entry.getKey().getKey());
+                if (entry.getValue() == null) {
+                    block.writeInt(-1);
+                } else {
+                    block.writeInt(entry.getValue().length);
+                    block.write(entry.getValue());
+                }
+                count++;
+
+                if (blockBytes.size() >= BLOCK_SIZE || !entries.hasNext()) {
+                    out.writeInt(count);
+                    blockBytes.writeTo(out);
+                    positions.add(new long[]{offset, 4 + blockBytes.size()});
+                    offset += 4 + blockBytes.size();
+                    blockBytes.reset();
+                    count = 0;
+                }
+            }
+
+            long indexOffset = offset;
+            out.writeInt(firstKeys.size());
+            for (int i = 0; i < firstKeys.size(); i++) {
+                out.writeInt(firstKeys.get(i).getHashKey());
+                out.writeUTF(firstKeys.get(i).getKey());
+                out.writeLong(positions.get(i)[0]);
+                out.writeInt((int) positions.get(i)[1]);
+            }
+
+            out.writeLong(indexOffset);
+            out.writeByte(compacted ? 1 : 0);
+            out.writeInt(MAGIC);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Return the value of a key, Segment.TOMBSTONE if it is deleted, or null if this segment does not have it.
+     *
+     * @param key
+     * @return byte[]
+     * @throws IOException
+     */
+    public byte[] get(EngineKey key) throws IOException {
+        int i = findBlock(key.getHashKey(), key.getKey());
+        if (i < 0) {
+            return null;
+        }
+
+        Block block = getBlock(i);
+        int low = 0;
+        int high = block.keys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = EngineKey.compare(block.hashKeys[middle], block.keys[middle]
+                    , key.getHashKey(), key.getKey());
+
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return block.values[middle];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Pass every entry of a hashKey to the consumer in key order, reading neighbouring blocks sequentially.
+     *
+     * @param hashKey
+     * @param consumer
+     * @throws IOException
+     */
+    public void scan(int hashKey, BiConsumer<String, byte[]> consumer) throws IOException {
+        int i = Math.max(findBlock(hashKey, ""), 0);
+
+        for (; i < this.firstHashKeys.length && this.firstHashKeys[i] <= hashKey; i++) {
+            Block block = getBlock(i);
+
+            for (int j = 0; j < block.keys.length; j++) {
+                if (block.hashKeys[j] == hashKey) {
+                    consumer.accept(block.keys[j], block.values[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return an iterator over every entry in order, bypassing the block cache.
+     *
+     * @return Iterator
+     */
+    public Iterator<Map.Entry<EngineKey, byte[]>> iterator() {
+        return new Iterator<Map.Entry<EngineKey, byte[]>>() {
+            private int blockIndex = 0;
+            private int entryIndex = 0;
+            private Block block = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.block == null || this.entryIndex >= this.block.keys.length) {
+                    if (this.blockIndex >= Segment.this.offsets.length) {
+                        return false;
+                    }
+
+                    try {
+                        this.block = readBlock(this.blockIndex++);
+                    } catch (IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                    this.entryIndex = 0;
+                }
+
+                return true;
+            }
+
+            @Override
+            public Map.Entry<EngineKey, byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                int j = this.entryIndex++;
+                return new AbstractMap.SimpleImmutableEntry<>(
+                        new EngineKey(this.block.hashKeys[j], this.block.keys[j]), this.block.values[j]);
+            }
+        };
+    }
+
+    /**
+     * Id getter.
+     *
+     * @return long
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * File getter.
+     *
+     * @return File
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Return true if this segment is the output of a full compaction,
+     * which supersedes every segment with a smaller id.
+     *
+     * @return boolean
+     */
+    public boolean isCompacted() {
+        return this.compacted;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Helper method to find the last block whose first key is not after the pass-in key, -1 if none.
+     *
+     * @param hashKey
+     * @param key
+     * @return int
+     */
+    private int findBlock(int hashKey, String key) {
+        int low = 0;
+        int high = this.firstKeys.length - 1;
+        int result = -1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+
+            if (EngineKey.compare(this.firstHashKeys[middle], this.firstKeys[middle], hashKey, key) <= 0) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Helper method to return a block from the cache, or read and cache it.
+     *
+     * @param i
+     * @return Block
+     * @throws IOException
+     */
+    private Block getBlock(int i) throws IOException {
+        Block block = this.cache.get(this.cacheId | i);
+
+        if (block == null) {
+            block = readBlock(i);
+            this.cache.put(this.cacheId | i, block);
+        }
+
+        return block;
+    }
+
+    /**
+     * Helper method to read and decode a block.
+     *
+     * @param i
+     * @return Block
+     * @throws IOException
+     */
+    private Block readBlock(int i) throws IOException {
+        ByteBuffer buffer = read(this.offsets[i], this.lengths[i]);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+
+        int count = in.readInt();
+        Block block = new Block(count);
+        for (int j = 0; j < count; j++) {
+            block.hashKeys[j] = in.readInt();
+            block.keys[j] = in.readUTF();
+
+            int length = in.readInt();
+            if (length < 0) {
+                block.values[j] = TOMBSTONE;
+            } else {
+                block.values[j] = new byte[length];
+                in.readFully(block.values[j]);
+            }
+        }
+
+        return block;
+    }
+
+    /**
+     * Helper method to read bytes from particular position of the file.
+     *
+     * @param position
+     * @param length
+     * @return ByteBuffer
+     * @throws IOException
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment " + this.file);
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Nested Block class for the decoded entries of a block.
+     */
+    static class Block {
+        private final int[] hashKeys;
+        private final String[] keys;
+        private final byte[][] values;
+
+        /**
+         * Block constructor.
+         *
+         * @param count
+         */
+        private Block(int count) {
+            this.hashKeys = new int[count];
+            this.keys = new String[count];
+            this.values = new byte[count][];
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Snapshot class for a point-in-time image of the data storage in a compact binary file.
+ *
+ * The file is laid out by hashKey bucket, and each bucket has its own table of node ids
+ * so the clocks only store small indexes. The file is memory-mapped when opened,
+ * and a bucket is decoded only when it is asked for.
+ *
+ * File layout: buckets, directory (hashKey, offset and length of each bucket),
+ * footer (directory offset, number of buckets, magic number).
+ * Bucket layout: number of nodes, nodes, number of objects,
+ * objects (key, number of items, items, number of clocks, (node index, timestamp) pairs).
+ *
+ * A mapping cannot be larger than 2 GB, so the file is mapped in regions of whole buckets,
+ * and the offsets in the directory are longs. Files of the first version, with int offsets, are still read.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x534e4132;
+    private static final int MAGIC_INT_OFFSETS = 0x534e4150;
+    private static final int FOOTER_SIZE = 16;
+    private static final long MAX_REGION = 1L << 30;
+    private final List<MappedByteBuffer> regions;
+    private final Map<Integer, int[]> directory;
+
+    /**
+     * Snapshot constructor to map an existing file and read its directory.
+     * The directory keeps the region, the position in the region and the length of each bucket.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public Snapshot(File file) throws IOException {
+        this.regions = new ArrayList<>();
+        this.directory = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < FOOTER_SIZE) {
+                throw new IOException("Corrupted snapshot " + file);
+            }
+
+            ByteBuffer footer = read(channel, channel.size() - FOOTER_SIZE, FOOTER_SIZE);
+            long directoryOffset = footer.getLong();
+            int bucketCount = footer.getInt();
+            int magic = footer.getInt();
+            if (magic != MAGIC && magic != MAGIC_INT_OFFSETS) {
+                throw new IOException("Corrupted snapshot " + file);
+            }
+
+            int entrySize = (magic == MAGIC) ? 16 : 12;
+            ByteBuffer in = read(channel, directoryOffset, bucketCount * entrySize);
+            TreeMap<Long, int[]> buckets = new TreeMap<>();
+            for (int i = 0; i < bucketCount; i++) {
+                int hashKey = in.getInt();
+                long offset = (magic == MAGIC) ? in.getLong() : in.getInt();
+                buckets.put(offset, new int[]{hashKey, in.getInt()});
+            }
+
+            mapRegions(channel, buckets);
+        }
+    }
+
+    /**
+     * Helper method to map the buckets in regions, each region holds whole buckets and is at most
+     * the maximum region size, unless a single bucket is larger.
+     *
+     * @param channel
+     * @param buckets
+     * @throws IOException
+     */
+    private void mapRegions(FileChannel channel, TreeMap<Long, int[]> buckets) throws IOException {
+        List<Map.Entry<Long, int[]>> region = new ArrayList<>();
+        long regionStart = 0;
+
+        for (Map.Entry<Long, int[]> bucket : buckets.entrySet()) {
+            long bucketEnd = bucket.getKey() + bucket.getValue()[1];
+
+            if (!region.isEmpty() && bucketEnd - regionStart > MAX_REGION) {
+                map(channel, region, regionStart);
+                region.clear();
+            }
+            if (region.isEmpty()) {
+                regionStart = bucket.getKey();
+            }
+            region.add(bucket);
+        }
+
+        if (!region.isEmpty()) {
+            map(channel, region, regionStart);
+        }
+    }
+
+    /**
+     * Helper method to map one region and add its buckets into the directory.
+     *
+     * @param channel
+     * @param region
+     * @param regionStart
+     * @throws IOException
+     */
+    private void map(FileChannel channel, List<Map.Entry<Long, int[]>> region, long regionStart) throws IOException {
+        Map.Entry<Long, int[]> last = region.get(region.size() - 1);
+        long regionEnd = last.getKey() + last.getValue()[1];
+
+        this.regions.add(channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart));
+        for (Map.Entry<Long, int[]> bucket : region) {
+            this.directory.put(bucket.getValue()[0], new int[]{this.regions.size() - 1
+                    , (int) (bucket.getKey() - regionStart), bucket.getValue()[1]});
+        }
+    }
+
+    /**
+     * Helper method to read some bytes of the file at a position.
+     *
+     * @param channel
+     * @param position
+     * @param length
+     * @return ByteBuffer
+     * @throws IOException
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated snapshot");
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Return the hashKeys of the buckets in the snapshot.
+     *
+     * @return Set
+     */
+    public Set<Integer> getHashKeys() {
+        return this.directory.keySet();
+    }
+
+    /**
+     * Decode a bucket and pass every object to the consumer.
+     *
+     * @param hashKey
+     * @param consumer
+     */
+    public void load(int hashKey, BiConsumer<String, JsonObject> consumer) {
+        ByteBuffer in = getBucket(hashKey);
+        if (in == null) {
+            return;
+        }
+
+        String[] nodes = new String[in.getInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = readString(in);
+        }
+
+        int objectCount = in.getInt();
+        for (int i = 0; i < objectCount; i++) {
+            String key = readString(in);
+
+            JsonArray items = new JsonArray();
+            int itemCount = in.getInt();
+            for (int j = 0; j < itemCount; j++) {
+                items.add(readString(in));
+            }
+
+            JsonArray clocks = new JsonArray();
+            int clockCount = in.getInt();
+            for (int j = 0; j < clockCount; j++) {
+                JsonObject clock = new JsonObject();
+                clock.addProperty("node", nodes[in.getInt()]);
+                clock.addProperty("timestamp", in.getInt());
+                clocks.add(clock);
+            }
+
+            JsonObject object = new JsonObject();
+            object.add("items", items);
+            object.add("clocks", clocks);
+            consumer.accept(key, object);
+        }
+    }
+
+    /**
+     * Return the encoded bytes of a bucket without decoding them, or null if the bucket is not in the snapshot.
+     *
+     * @param hashKey
+     * @return ByteBuffer
+     */
+    public ByteBuffer getBucket(int hashKey) {
+        int[] position = this.directory.get(hashKey);
+        if (position == null) {
+            return null;
+        }
+
+        ByteBuffer bucket = this.regions.get(position[0]).duplicate();
+        bucket.position(position[1]);
+        bucket.limit(position[1] + position[2]);
+
+        return bucket.slice();
+    }
+
+    /**
+     * Helper method to read a length-prefixed UTF-8 string.
+     *
+     * @param in
+     * @return String
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Nested Writer class to write a new snapshot file one bucket at a time.
+     */
+    public static class Writer implements AutoCloseable {
+        private final FileOutputStream fos;
+        private final DataOutputStream out;
+        private final Map<Integer, long[]> directory;
+        private long offset;
+
+        /**
+         * Writer constructor.
+         *
+         * @param file
+         * @throws IOException
+         */
+        public Writer(File file) throws IOException {
+            this.fos = new FileOutputStream(file);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.fos));
+            this.directory = new LinkedHashMap<>();
+            this.offset = 0;
+        }
+
+        /**
+         * Encode and write a bucket, the objects are in the Json format of MyObject.
+         *
+         * @param hashKey
+         * @param objects
+         * @throws IOException
+         */
+        public void writeBucket(int hashKey, Map<String, JsonObject> objects) throws IOException {
+            if (objects.isEmpty()) {
+                return;
+            }
+
+            Map<String, Integer> nodes = new LinkedHashMap<>();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bytes);
+
+            body.writeInt(objects.size());
+            for (Map.Entry<String, JsonObject> entry : objects.entrySet()) {
+                writeString(body, entry.getKey());
+
+                JsonArray items = entry.getValue().get("items").getAsJsonArray();
+                body.writeInt(items.size());
+                for (int i = 0; i < items.size(); i++) {
+                    writeString(body, items.get(i).getAsString());
+                }
+
+                JsonArray clocks = entry.getValue().get("clocks").getAsJsonArray();
+                body.writeInt(clocks.size());
+                for (int i = 0; i < clocks.size(); i++) {
+                    JsonObject clock = clocks.get(i).getAsJsonObject();
+                    String node = clock.get("node").getAsString();
+
+                    Integer index = nodes.get(node);
+                    if (index == null) {
+                        index = nodes.size();
+                        nodes.put(node, index);
+                    }
+                    body.writeInt(index);
+                    body.writeInt(clock.get("timestamp").getAsInt());
+                }
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream nodeTable = new DataOutputStream(header);
+            nodeTable.writeInt(nodes.size());
+            for (String node : nodes.keySet()) {
+                writeString(nodeTable, node);
+            }
+
+            this.directory.put(hashKey, new long[]{this.offset, header.size() + bytes.size()});
+            header.writeTo(this.out);
+            bytes.writeTo(this.out);
+            this.offset += header.size() + bytes.size();
+        }
+
+        /**
+         * Copy an encoded bucket from an older snapshot as is.
+         *
+         * @param hashKey
+         * @param bucket
+         * @throws IOException
+         */
+        public void writeBucket(int hashKey, ByteBuffer bucket) throws IOException {
+            byte[] bytes = new byte[bucket.remaining()];
+            bucket.get(bytes);
+
+            this.directory.put(hashKey, new long[]{this.offset, bytes.length});
+            this.out.write(bytes);
+            this.offset += bytes.length;
+        }
+
+        /**
+         * Write the directory and the footer, then fsync the file.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                for (Map.Entry<Integer, long[]> entry : this.directory.entrySet()) {
+                    this.out.writeInt(entry.getKey());
+                    this.out.writeLong(entry.getValue()[0]);
+                    this.out.writeInt((int) entry.getValue()[1]);
+                }
+
+                this.out.writeLong(this.offset);
+                this.out.writeInt(this.directory.size());
+                this.out.writeInt(MAGIC);
+                this.out.flush();
+                this.fos.getFD().sync();
+            } finally {
+                this.out.close();
+            }
+        }
+
+        /**
+         * Helper method to write a length-prefixed UTF-8 string.
+         *
+         * @param out
+         * @param value
+         * @throws IOException
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Snapshotter class to take a snapshot of the data storage periodically in background.
+ *
+ * The write-ahead log is rotated right before each snapshot, so the log files older than
+ * the rotation are fully covered by the snapshot and deleted once it is on disk.
+ */
+public class Snapshotter implements Runnable {
+    private final File file;
+    private final long interval;
+
+    /**
+     * Snapshotter constructor.
+     *
+     * @param file
+     * @param interval
+     */
+    public Snapshotter(File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Take a snapshot per interval until the server stops.
+     */
+    @Override
+    public void run() {
+        while (Driver.alive) {
+            try {
+                Thread.sleep(this.interval);
+            } catch (InterruptedException ie) {
+                ie.printStackTrace();
+            }
+
+            try {
+                takeSnapshot();
+            } catch (IOException | UncheckedIOException e) {
+                e.printStackTrace();
+                System.out.println("[Snapshot] Failed to write " + this.file);
+            }
+        }
+    }
+
+    /**
+     * Rotate the write-ahead log, write the snapshot and delete the log files it covers.
+     *
+     * @throws IOException
+     */
+    public void takeSnapshot() throws IOException {
+        long number = Driver.writeAheadLog.rotate();
+        Driver.writeAheadLog.sync(); // make sure the flusher has moved to the new file
+
+        Driver.dataStorage.writeSnapshot(this.file);
+        Driver.writeAheadLog.deleteBefore(number);
+    }
+}
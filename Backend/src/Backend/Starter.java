@@ -1,27 +1,61 @@
 package Backend;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
 
 /**
  * Starter class to prepare the server.
  */
 public class Starter extends HttpRequest {
+    private static final String IDENTITY_FILE = "replica.json";
+
+    /**
+     * Restore the id and the key of this replica from the data directory, so a restarted replica
+     * asks the membership coordinator for the key it had, and its write-ahead log and snapshot
+     * are for the range it rejoins. Without a data directory, or on the first start, use a new id.
+     *
+     * @throws IOException
+     */
+    public void restoreIdentity() throws IOException {
+        File file = (Driver.dataDirectory == null) ? null : new File(Driver.dataDirectory, IDENTITY_FILE);
+
+        if (file == null || !file.exists()) {
+            Driver.replica.setId(UUID.randomUUID().toString());
+            return;
+        }
+
+        JsonObject identity = new JsonParser().parse(
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).getAsJsonObject();
+        Driver.replica.setId(identity.get("id").getAsString());
+        Driver.replica.setKey(identity.get("key").getAsInt());
+        System.out.println("[System] Restored replica " + Driver.replica.getId() +
+                " with key " + Driver.replica.getKey());
+    }
 
     /**
      * Register the current replica to the Membership coordinator and get the key for this replica.
+     * A replica restored from the data directory asks for its previous key.
      * Get the seed nodes list from the membership coordinator and add them into the ring.
      *
      * @throws Exception
      */
     public void registerAndInitializeRing() throws Exception {
         String url = Driver.coordinator + "/register";
-        HttpURLConnection connection = doPostRequest(url, Driver.replica.toJson());
+        HttpClient.Response response = doPostRequest(url, Driver.replica.toJson());
 
-        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-            JsonObject responseBody = parseResponse(connection).getAsJsonObject();
+        if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
+            JsonObject responseBody = parseResponse(response).getAsJsonObject();
             Driver.replica.setKey(responseBody.get("key").getAsInt());
+            storeIdentity();
             initRing(responseBody);
         } else {
             System.out.println("[System] Failed to register to the membership");
@@ -29,6 +63,27 @@ public class Starter extends HttpRequest {
         }
     }
 
+    /**
+     * Helper method to store the id and the key of this replica in the data directory.
+     * The file is replaced at once, so a crash leaves either the old or the new identity.
+     *
+     * @throws IOException
+     */
+    private void storeIdentity() throws IOException {
+        if (Driver.dataDirectory == null) {
+            return;
+        }
+
+        JsonObject identity = new JsonObject();
+        identity.addProperty("id", Driver.replica.getId());
+        identity.addProperty("key", Driver.replica.getKey());
+
+        Path file = new File(Driver.dataDirectory, IDENTITY_FILE).toPath();
+        Path temp = new File(Driver.dataDirectory, IDENTITY_FILE + ".tmp").toPath();
+        Files.write(temp, identity.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     /**
      * Helper method to initialize the ring.
      *
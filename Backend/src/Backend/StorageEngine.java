@@ -0,0 +1,78 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.function.BiConsumer;
+
+/**
+ * StorageEngine interface for the storage behind DataStorage.
+ *
+ * DataStorage guards every hashKey with its striped lock before calling an engine,
+ * so an engine only has to be safe for concurrent calls on different buckets
+ * and for concurrent single object calls within the same bucket.
+ */
+public interface StorageEngine {
+
+    /**
+     * Return the object details and the vector clock, or null if there is no such key.
+     *
+     * @param hashKey
+     * @param key
+     * @return JsonObject
+     */
+    JsonObject get(int hashKey, String key);
+
+    /**
+     * Apply a client write and return null, or the latest version if the client is updating an older one.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     * @return JsonArray
+     * @throws NullPointerException
+     */
+    JsonArray put(int hashKey, String key, JsonObject data) throws NullPointerException;
+
+    /**
+     * Store the replicate sent by the replication coordinator.
+     *
+     * @param hashKey
+     * @param key
+     * @param replicate
+     */
+    void replicate(int hashKey, String key, JsonObject replicate);
+
+    /**
+     * Overwrite the whole object.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    void overwrite(int hashKey, String key, JsonObject data);
+
+    /**
+     * Pass every object of a hashKey to the consumer, ordered by key if the engine keeps keys sorted.
+     *
+     * @param hashKey
+     * @param consumer
+     */
+    void scanRange(int hashKey, BiConsumer<String, JsonObject> consumer);
+
+    /**
+     * Remove every object of a hashKey.
+     *
+     * @param hashKey
+     */
+    void removeRange(int hashKey);
+
+    /**
+     * Insert an object that is already persisted elsewhere, such as in a snapshot, without logging it.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    void restore(int hashKey, String key, JsonObject data);
+}
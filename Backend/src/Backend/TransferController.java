@@ -3,64 +3,179 @@ package Backend;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * TransferController class to handle transfer request.
+ * The migrations are kept by their ids, so a repeated transfer request is answered with the progress
+ * of the migration already running or done, instead of starting it again.
+ * A migration that stops for any reason other than being done is failed, so it can be started again.
  */
 @RestController
 public class TransferController extends HttpRequest {
+    private static final int MAX_MIGRATIONS = 64;
+    private final Map<String, Migration> migrations = new LinkedHashMap<String, Migration>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Migration> eldest) {
+            return size() > MAX_MIGRATIONS && eldest.getValue().status != Migration.RUNNING;
+        }
+    };
 
     /**
      * When receive a transfer request,
-     * get the snapshot of buckets data in the range indicated in the request body,
-     * and send the snapshot to the target replica with the address indicated in the request body.
-     * Remove all the data in the range if necessary.
+     * migrate the buckets data in the range indicated in the request body one bucket at a time
+     * to the target replica with the address indicated in the request body,
+     * over its internal RPC port if the request body has one.
+     * Remove each bucket in the range once the target replica acknowledged it if necessary.
+     * Reply the progress of the migration, with the checkpoint to resume from if it failed.
+     * If the migration with the same id is still running or done, only reply its progress.
      *
      * @param request
      * @param response
+     * @return String
      */
     @RequestMapping(value = "/transfer", method = RequestMethod.POST, produces = "application/json")
-    public void transfer(@RequestBody String request, HttpServletResponse response) {
+    public String transfer(@RequestBody String request, HttpServletResponse response) {
         System.out.println("[Request] POST /transfer requestBody = " + request);
 
+        JsonObject detail;
+        Migration migration;
+
         try {
-            JsonObject detail = parseJson(request).getAsJsonObject();
-            String url = detail.get("to").getAsString() + "/receiver";
+            detail = parseJson(request).getAsJsonObject();
             JsonArray range = detail.get("range").getAsJsonArray();
-            boolean remove = detail.get("remove").getAsBoolean();
-            JsonArray buckets = Driver.dataStorage.getBucketsAndCheckRemove(range.get(0).getAsInt()
-                    , range.get(1).getAsInt(), remove);
+            String id = (detail.get("migration") != null)
+                    ? detail.get("migration").getAsString() : UUID.randomUUID().toString();
+
+            synchronized (this.migrations) {
+                migration = this.migrations.get(id);
 
-            HttpURLConnection connection = doPostRequest(url, buckets);
-            connection.getResponseCode();
-        } catch (IOException | JsonParseException e) {
+                if (migration != null && migration.status != Migration.FAILED) {
+                    response.setStatus((migration.status == Migration.RUNNING)
+                            ? HttpServletResponse.SC_CONFLICT : HttpServletResponse.SC_OK);
+                    return migration.getProgress().toString();
+                }
+
+                migration = new Migration(id, new RangeTransfer(range.get(0).getAsInt(), range.get(1).getAsInt()
+                        , detail.get("remove").getAsBoolean()));
+                this.migrations.put(id, migration);
+            }
+        } catch (JsonParseException | IllegalStateException | NullPointerException e) {
             e.printStackTrace();
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return "";
+        }
+
+        RangeTransfer transfer = migration.transfer;
+
+        try {
+            if (detail.get("toRpc") != null) {
+                transfer.toRpc(detail.get("toRpc").getAsString());
+            } else {
+                transfer.toHttp(detail.get("to").getAsString());
+            }
+
+            migration.status = Migration.DONE;
+            System.out.println("[Transfer] Sent " + transfer.getBuckets() + " buckets with "
+                    + transfer.getObjects() + " objects");
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (RuntimeException re) {
+            re.printStackTrace();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        } finally {
+            if (migration.status == Migration.RUNNING) {
+                migration.status = Migration.FAILED;
+                System.out.println("[Transfer] Migration " + migration.id + " failed at checkpoint "
+                        + transfer.getCheckpoint());
+            }
         }
+
+        return migration.getProgress().toString();
     }
 
     /**
      * When receiver a receiver request,
-     * store the buckets data from the request body into local storage.
+     * store each bucket from the streamed request body into local storage as soon as it is read.
+     * Reply the number of buckets this replica can take in the next request.
      *
      * @param request
      * @param response
+     * @return String
      */
     @RequestMapping(value = "/receiver", method = RequestMethod.POST, produces = "application/json")
-    public void receiver(@RequestBody String request, HttpServletResponse response) {
-        System.out.println("[Request] POST /receiver requestBody = " + request);
+    public String receiver(HttpServletRequest request, HttpServletResponse response) {
+        System.out.println("[Request] POST /receiver");
 
-        try {
-            JsonArray buckets = parseJson(request).getAsJsonArray();
-            Driver.dataStorage.restoreBuckets(buckets);
-        } catch (JsonParseException e) {
+        int buckets = 0;
+
+        try (JsonReader reader = new JsonReader(new InputStreamReader(request.getInputStream()
+                , StandardCharsets.UTF_8))) {
+            JsonParser parser = new JsonParser();
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                RangeTransfer.receive(parser.parse(reader).getAsJsonObject());
+                buckets++;
+            }
+            reader.endArray();
+
+            System.out.println("[Transfer] Restored " + buckets + " buckets");
+        } catch (IOException | JsonParseException | IllegalStateException e) {
             e.printStackTrace();
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return "";
+        }
+
+        return RangeTransfer.getReceiverReply().toString();
+    }
+
+    /**
+     * Nested Migration class for a migration and its status.
+     */
+    private static class Migration {
+        private static final String RUNNING = "running";
+        private static final String DONE = "done";
+        private static final String FAILED = "failed";
+        private final String id;
+        private final RangeTransfer transfer;
+        private volatile String status;
+
+        /**
+         * Migration constructor.
+         *
+         * @param id
+         * @param transfer
+         */
+        private Migration(String id, RangeTransfer transfer) {
+            this.id = id;
+            this.transfer = transfer;
+            this.status = RUNNING;
+        }
+
+        /**
+         * Return the progress of the migration with its id and status.
+         *
+         * @return JsonObject
+         */
+        private JsonObject getProgress() {
+            JsonObject progress = this.transfer.getProgress();
+            progress.addProperty("migration", this.id);
+            progress.addProperty("status", this.status);
+
+            return progress;
         }
     }
 }
@@ -0,0 +1,254 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * VectorClock class to keep a vector clock in parallel primitive arrays.
+ *
+ * Nodes are the ints from the NodeDictionary, so comparing, merging and increasing a clock
+ * never allocates unless a new node joins the clock. Entries are kept in the order of the replica ids,
+ * so the Json format, which is only produced when the clock leaves this replica, is the same on every replica.
+ *
+ * Not thread-safe, guarded by the lock of the owner.
+ */
+public class VectorClock {
+    private int[] nodes;
+    private int[] timestamps;
+    private int size;
+
+    /**
+     * VectorClock constructor for an empty clock.
+     */
+    public VectorClock() {
+        this.nodes = new int[2];
+        this.timestamps = new int[2];
+        this.size = 0;
+    }
+
+    /**
+     * Create a clock from its Json format.
+     *
+     * @param clocks
+     * @return VectorClock
+     */
+    public static VectorClock fromJson(JsonArray clocks) {
+        VectorClock vectorClock = new VectorClock();
+        vectorClock.merge(clocks);
+
+        return vectorClock;
+    }
+
+    /**
+     * Return the number of nodes in the clock.
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Return the timestamp of a node, 0 if the node is not in the clock.
+     *
+     * @param node
+     * @return int
+     */
+    public int get(int node) {
+        int i = indexOf(node);
+
+        return (i < 0) ? 0 : this.timestamps[i];
+    }
+
+    /**
+     * Initialize the timestamp of a node if necessary and increase it by one.
+     *
+     * @param node
+     */
+    public void increment(int node) {
+        int i = indexOf(node);
+
+        if (i < 0) {
+            insert(node, 1);
+        } else {
+            this.timestamps[i]++;
+        }
+    }
+
+    /**
+     * Merge another clock into this clock by taking the maximum timestamp of each node.
+     *
+     * @param other
+     */
+    public void merge(VectorClock other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = indexOf(other.nodes[j]);
+
+            if (i < 0) {
+                insert(other.nodes[j], other.timestamps[j]);
+            } else if (this.timestamps[i] < other.timestamps[j]) {
+                this.timestamps[i] = other.timestamps[j];
+            }
+        }
+    }
+
+    /**
+     * Merge a clock in Json format into this clock by taking the maximum timestamp of each node.
+     *
+     * @param clocks
+     */
+    public void merge(JsonArray clocks) {
+        for (int j = 0; j < clocks.size(); j++) {
+            JsonObject clock = clocks.get(j).getAsJsonObject();
+            int node = Driver.nodeDictionary.getIndex(clock.get("node").getAsString());
+            int timestamp = clock.get("timestamp").getAsInt();
+            int i = indexOf(node);
+
+            if (i < 0) {
+                insert(node, timestamp);
+            } else if (this.timestamps[i] < timestamp) {
+                this.timestamps[i] = timestamp;
+            }
+        }
+    }
+
+    /**
+     * Remove every node from the clock.
+     */
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * True means both clocks have the same nodes and timestamps.
+     *
+     * @param other
+     * @return boolean
+     */
+    public boolean isSameAs(VectorClock other) {
+        if (this.size != other.size) {
+            return false;
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            if (this.nodes[i] != other.nodes[i] || this.timestamps[i] != other.timestamps[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * True means this clock is equal to or after the other clock.
+     *
+     * @param other
+     * @return boolean
+     */
+    public boolean descends(VectorClock other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = indexOf(other.nodes[j]);
+
+            if (i < 0 || this.timestamps[i] < other.timestamps[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * True means no node that both clocks have is after in this clock than in the other clock.
+     *
+     * @param other
+     * @return boolean
+     */
+    public boolean isNotAfterOnCommonNodes(VectorClock other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = indexOf(other.nodes[j]);
+
+            if (i >= 0 && this.timestamps[i] > other.timestamps[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Return a digest of the clock that does not depend on the order of the entries.
+     *
+     * @return long
+     */
+    public long digest() {
+        long digest = 0;
+
+        for (int i = 0; i < this.size; i++) {
+            digest += MerkleTree.mix(Driver.nodeDictionary.getHash(this.nodes[i])
+                    + this.timestamps[i] * 0x9e3779b97f4a7c15L);
+        }
+
+        return digest;
+    }
+
+    /**
+     * Return the clock in Json format.
+     *
+     * @return JsonArray
+     */
+    public JsonArray toJson() {
+        JsonArray clocks = new JsonArray();
+
+        for (int i = 0; i < this.size; i++) {
+            JsonObject clock = new JsonObject();
+            clock.addProperty("node", Driver.nodeDictionary.getNode(this.nodes[i]));
+            clock.addProperty("timestamp", this.timestamps[i]);
+            clocks.add(clock);
+        }
+
+        return clocks;
+    }
+
+    /**
+     * Helper method to return the position of a node, -1 if it is not in the clock.
+     *
+     * @param node
+     * @return int
+     */
+    private int indexOf(int node) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.nodes[i] == node) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Helper method to insert a new node, keeping the entries in the order of the replica ids.
+     *
+     * @param node
+     * @param timestamp
+     */
+    private void insert(int node, int timestamp) {
+        if (this.size == this.nodes.length) {
+            this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+            this.timestamps = Arrays.copyOf(this.timestamps, this.size * 2);
+        }
+
+        String id = Driver.nodeDictionary.getNode(node);
+        int i = this.size;
+        while (i > 0 && Driver.nodeDictionary.getNode(this.nodes[i - 1]).compareTo(id) > 0) {
+            this.nodes[i] = this.nodes[i - 1];
+            this.timestamps[i] = this.timestamps[i - 1];
+            i--;
+        }
+
+        this.nodes[i] = node;
+        this.timestamps[i] = timestamp;
+        this.size++;
+    }
+}
@@ -0,0 +1,531 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog class to make the mutations of DataStorage durable.
+ *
+ * Every applied mutation is appended as a record framed by its length and CRC32.
+ * Writers only enqueue records, a background flusher writes and fsyncs them in groups,
+ * so concurrent writers waiting in sync() share one fsync (group commit).
+ * The flusher wakes up once per flush interval, or earlier when a full batch is waiting.
+ * A writer that must not block takes the future of syncAsync() instead, which completes on a callback thread.
+ *
+ * The log is a sequence of numbered files. Rotating starts a new file at the exact point
+ * of the call, so the older files can be deleted once their records are persisted elsewhere.
+ *
+ * If a write or fsync fails, the records are not known to be on disk, and retrying the fsync
+ * does not tell otherwise. The log stops, and every waiting and later sync() throws the failure,
+ * so no write is acknowledged as durable until the replica restarts and replays the log.
+ */
+public class WriteAheadLog implements Runnable {
+    private static final byte[] ROTATE = new byte[0];
+    private final Object lock;
+    private File directory;
+    private long flushInterval;
+    private int batchSize;
+    private FileChannel channel;
+    private long fileNumber;
+    private long writingFileNumber;
+    private List<byte[]> pending;
+    private long appendedSequence;
+    private long flushedSequence;
+    private IOException failure;
+    private final Deque<Waiter> waiters;
+    private final ExecutorService callbacks;
+    private volatile boolean open;
+
+    /**
+     * WriteAheadLog constructor, the log stays disabled until it is opened.
+     */
+    public WriteAheadLog() {
+        this.lock = new Object();
+        this.flushInterval = 2;
+        this.batchSize = 256;
+        this.pending = new ArrayList<>();
+        this.appendedSequence = 0;
+        this.flushedSequence = 0;
+        this.waiters = new ArrayDeque<>();
+        this.callbacks = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "wal-callback");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.open = false;
+    }
+
+    /**
+     * Directory setter, durability is enabled only when a directory is set.
+     *
+     * @param directory
+     */
+    public void setDirectory(String directory) {
+        this.directory = new File(directory);
+    }
+
+    /**
+     * Flush interval setter in milliseconds.
+     *
+     * @param flushInterval
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Batch size setter, the number of pending records that triggers an early flush.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Return true if a directory is configured for the log.
+     *
+     * @return boolean
+     */
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    /**
+     * Replay the log into the data storage to rebuild it after a restart.
+     * A torn or corrupt record, left by a crash in the middle of a write, ends the replay:
+     * it is truncated, and the later files are set aside, since applying the records after
+     * a missing one could leave the data storage in a state it never had.
+     *
+     * @param dataStorage
+     * @throws IOException
+     */
+    public void replay(DataStorage dataStorage) throws IOException {
+        List<Long> numbers = listFileNumbers();
+        long count = 0;
+
+        for (int i = 0; i < numbers.size(); i++) {
+            File file = getFile(numbers.get(i));
+            long size = file.length();
+
+            count += replayFile(file, dataStorage);
+            if (file.length() < size) {
+                setAside(numbers.subList(i + 1, numbers.size()));
+                break;
+            }
+        }
+
+        System.out.println("[WAL] Replayed " + count + " record(s)");
+    }
+
+    /**
+     * Helper method to replay one file of the log and return the number of records replayed.
+     *
+     * @param file
+     * @param dataStorage
+     * @return long
+     * @throws IOException
+     */
+    private long replayFile(File file, DataStorage dataStorage) throws IOException {
+        JsonParser parser = new JsonParser();
+        CRC32 crc = new CRC32();
+        long size = file.length();
+        long count = 0;
+        long validLength = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                long checksum = in.readInt() & 0xffffffffL;
+                if (length < 0 || length > size - validLength - 8) {
+                    break; // a torn or corrupt length, not a record
+                }
+
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+
+                dataStorage.replay(parser.parse(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject());
+                validLength += 8 + length;
+                count++;
+            }
+        } catch (EOFException | JsonParseException ignored) {}
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            if (channel.size() > validLength) {
+                System.out.println("[WAL] Truncated torn record at the tail of " + file);
+                channel.truncate(validLength);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Open the log for appending and start the flusher in background.
+     *
+     * @throws IOException
+     */
+    public void open() throws IOException {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IOException("Unable to create data directory " + this.directory);
+        }
+
+        List<Long> numbers = listFileNumbers();
+        this.fileNumber = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1) + 1;
+        this.writingFileNumber = this.fileNumber;
+        this.channel = openFile(this.writingFileNumber);
+        this.open = true;
+
+        Thread flusher = new Thread(this);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Enqueue a record without waiting for it to be written.
+     * Called while the mutated object is still locked, so the order in the log
+     * follows the order the mutations were applied.
+     *
+     * @param record
+     */
+    public void append(JsonObject record) {
+        if (!this.open) {
+            return;
+        }
+
+        byte[] bytes = record.toString().getBytes(StandardCharsets.UTF_8);
+
+        synchronized (this.lock) {
+            if (this.failure != null) {
+                return; // the log is stopped, sync() reports it
+            }
+
+            this.pending.add(bytes);
+            this.appendedSequence++;
+
+            if (this.pending.size() >= this.batchSize) {
+                this.lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Start a new log file, records appended after this call go to the new file.
+     * The rotation counts as a record, so a sync() after this call returns once the flusher has moved to the new file.
+     * Return the number of the new file, or -1 if the log is not open.
+     *
+     * @return long
+     */
+    public long rotate() {
+        if (!this.open) {
+            return -1;
+        }
+
+        synchronized (this.lock) {
+            this.pending.add(ROTATE);
+            this.appendedSequence++;
+            this.fileNumber++;
+            this.lock.notifyAll();
+
+            return this.fileNumber;
+        }
+    }
+
+    /**
+     * Delete the log files older than particular file number.
+     *
+     * @param number
+     */
+    public void deleteBefore(long number) {
+        for (long n : listFileNumbers()) {
+            if (n < number && !getFile(n).delete()) {
+                System.out.println("[WAL] Unable to delete " + getFile(n));
+            }
+        }
+    }
+
+    /**
+     * Enqueue the record that a whole bucket is dropped or about to be replaced.
+     *
+     * @param hashKey
+     */
+    public void appendDrop(int hashKey) {
+        JsonObject record = new JsonObject();
+        record.addProperty("hashKey", hashKey);
+        record.addProperty("op", "drop");
+        append(record);
+    }
+
+    /**
+     * Block until every record appended and every rotation started before this call is on disk.
+     * Throw if the log failed to write them, or the wait is interrupted,
+     * since the records are then not known to be durable.
+     *
+     * @throws UncheckedIOException
+     */
+    public void sync() throws UncheckedIOException {
+        if (!this.open) {
+            return;
+        }
+
+        synchronized (this.lock) {
+            long target = this.appendedSequence;
+
+            while (this.open && this.flushedSequence < target) {
+                if (this.failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", this.failure);
+                }
+
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(
+                            new InterruptedIOException("Interrupted while waiting for the write-ahead log"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a future that completes once every record appended and every rotation started before this call is on disk.
+     * The future fails the same way sync() throws, and completes on a callback thread, not on the flusher.
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> syncAsync() {
+        if (!this.open) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (this.lock) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+
+            if (this.failure != null) {
+                future.completeExceptionally(new UncheckedIOException("Write-ahead log failed", this.failure));
+            } else if (this.flushedSequence >= this.appendedSequence) {
+                future.complete(null);
+            } else {
+                this.waiters.add(new Waiter(this.appendedSequence, future));
+            }
+
+            return future;
+        }
+    }
+
+    /**
+     * Flush the pending records in groups until the server stops, or a flush fails.
+     */
+    @Override
+    public void run() {
+        while (Driver.alive && this.open) {
+            List<byte[]> batch;
+            long sequence;
+
+            synchronized (this.lock) {
+                if (this.pending.size() < this.batchSize) {
+                    try {
+                        this.lock.wait(this.flushInterval);
+                    } catch (InterruptedException ignored) {}
+                }
+
+                if (this.pending.isEmpty()) {
+                    continue;
+                }
+
+                batch = this.pending;
+                sequence = this.appendedSequence;
+                this.pending = new ArrayList<>(batch.size());
+            }
+
+            try {
+                write(batch);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                System.out.println("[WAL] Failed to flush " + batch.size() + " record(s), writes are refused until restart");
+
+                List<CompletableFuture<Void>> failed = new ArrayList<>();
+                synchronized (this.lock) {
+                    this.failure = ioe;
+                    this.pending.clear();
+                    this.lock.notifyAll();
+                    while (!this.waiters.isEmpty()) {
+                        failed.add(this.waiters.poll().future);
+                    }
+                }
+
+                UncheckedIOException error = new UncheckedIOException("Write-ahead log failed", ioe);
+                this.callbacks.execute(() -> failed.forEach(future -> future.completeExceptionally(error)));
+                return;
+            }
+
+            List<CompletableFuture<Void>> flushed = new ArrayList<>();
+            synchronized (this.lock) {
+                this.flushedSequence = sequence;
+                this.lock.notifyAll();
+                while (!this.waiters.isEmpty() && this.waiters.peek().sequence <= sequence) {
+                    flushed.add(this.waiters.poll().future);
+                }
+            }
+
+            if (!flushed.isEmpty()) {
+                this.callbacks.execute(() -> flushed.forEach(future -> future.complete(null)));
+            }
+        }
+    }
+
+    /**
+     * Helper method to frame a batch of records, write them and fsync once.
+     *
+     * @param batch
+     * @throws IOException
+     */
+    private void write(List<byte[]> batch) throws IOException {
+        int size = 0;
+        for (byte[] bytes : batch) {
+            size += 8 + bytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (byte[] bytes : batch) {
+            if (bytes == ROTATE) {
+                writeAndForce(buffer);
+                this.channel.close();
+                this.channel = openFile(++this.writingFileNumber);
+                continue;
+            }
+
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(bytes);
+        }
+
+        writeAndForce(buffer);
+    }
+
+    /**
+     * Helper method to write the framed records in the buffer to the current file and fsync.
+     *
+     * @param buffer
+     * @throws IOException
+     */
+    private void writeAndForce(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+        this.channel.force(false);
+        buffer.clear();
+    }
+
+    /**
+     * Helper method to open a log file for appending.
+     *
+     * @param number
+     * @return FileChannel
+     * @throws IOException
+     */
+    private FileChannel openFile(long number) throws IOException {
+        return FileChannel.open(getFile(number).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Helper method to return the log file with particular number.
+     *
+     * @param number
+     * @return File
+     */
+    private File getFile(long number) {
+        return new File(this.directory, String.format("wal-%010d.log", number));
+    }
+
+    /**
+     * Helper method to rename the log files after a torn or corrupt record, so they are kept for inspection
+     * but neither replayed nor deleted with the files a snapshot covers.
+     *
+     * @param numbers
+     */
+    private void setAside(List<Long> numbers) {
+        for (long number : numbers) {
+            File file = getFile(number);
+            if (file.renameTo(new File(this.directory, file.getName() + ".discarded"))) {
+                System.out.println("[WAL] Set aside " + file + " after a torn record in an earlier file");
+            } else {
+                System.out.println("[WAL] Unable to set aside " + file);
+            }
+        }
+    }
+
+    /**
+     * Helper method to list the numbers of existing log files in ascending order.
+     *
+     * @return List
+     */
+    private List<Long> listFileNumbers() {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = this.directory.list();
+
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith("wal-") && name.endsWith(".log")) {
+                    numbers.add(Long.parseLong(name.substring(4, name.length() - 4)));
+                }
+            }
+        }
+        Collections.sort(numbers);
+
+        return numbers;
+    }
+
+    /**
+     * Nested Waiter class for a syncAsync() future and the sequence it waits for.
+     */
+    private static class Waiter {
+        private final long sequence;
+        private final CompletableFuture<Void> future;
+
+        /**
+         * Waiter constructor.
+         *
+         * @param sequence
+         * @param future
+         */
+        private Waiter(long sequence, CompletableFuture<Void> future) {
+            this.sequence = sequence;
+            this.future = future;
+        }
+    }
+}
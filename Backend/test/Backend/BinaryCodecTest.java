@@ -0,0 +1,141 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * BinaryCodecTest class to check that every body decodes to the Json it was encoded from.
+ */
+public class BinaryCodecTest {
+
+    /**
+     * A replicated write round trips with its op, item, clocks and replicate flag.
+     */
+    @Test
+    public void roundTripsReplicate() {
+        JsonObject replicate = parse("{\"op\":\"remove\",\"item\":\"book\",\"replicate\":true,"
+                + "\"clocks\":[{\"node\":\"a\",\"timestamp\":3},{\"node\":\"b\",\"timestamp\":300}]}");
+
+        assertEquals(replicate, roundTripRequest(RpcServer.PUT, replicate));
+    }
+
+    /**
+     * A batch of replicated writes round trips, and so do the statuses answering it.
+     */
+    @Test
+    public void roundTripsBatchAndStatuses() {
+        JsonArray batch = new JsonArray();
+        for (int i = 0; i < 3; i++) {
+            batch.add(parse("{\"hashKey\":" + (i * 100) + ",\"key\":\"key" + i + "\",\"data\":"
+                    + "{\"op\":\"add\",\"item\":\"item" + i + "\",\"clocks\":[{\"node\":\"a\",\"timestamp\":" + i + "}]}}"));
+        }
+        JsonArray statuses = new JsonParser().parse("[200,400,200]").getAsJsonArray();
+
+        assertEquals(batch, roundTripRequest(RpcServer.PUT_BATCH, batch));
+        assertEquals(statuses, roundTripResponse(RpcServer.PUT_BATCH, 200, statuses));
+    }
+
+    /**
+     * The buckets of a transfer round trip, with the replica ids repeated across objects.
+     */
+    @Test
+    public void roundTripsBuckets() {
+        JsonArray buckets = new JsonParser().parse("[{\"hashKey\":7,\"data\":["
+                + "{\"key\":\"x\",\"object\":{\"items\":[\"1\",\"2\"],\"clocks\":[{\"node\":\"a\",\"timestamp\":1}],\"replicate\":true}},"
+                + "{\"key\":\"y\",\"object\":{\"items\":[],\"clocks\":[{\"node\":\"a\",\"timestamp\":2},{\"node\":\"b\",\"timestamp\":1}]}}]},"
+                + "{\"hashKey\":8,\"data\":[]}]").getAsJsonArray();
+
+        assertEquals(buckets, roundTripRequest(RpcServer.RECEIVER, buckets));
+    }
+
+    /**
+     * A gossip round trips with the membership and the hinted records sent along with it.
+     */
+    @Test
+    public void roundTripsGossipWithHintedData() {
+        JsonObject gossip = parse("{\"id\":\"a\",\"version\":4,\"members\":[{\"id\":\"b\",\"key\":12.5}],"
+                + "\"hintedData\":[{\"id\":\"b\",\"hashKey\":9,\"key\":\"k\",\"op\":\"add\",\"item\":\"v\","
+                + "\"clocks\":[{\"node\":\"a\",\"timestamp\":1}]}]}");
+
+        assertEquals(gossip, roundTripRequest(RpcServer.GOSSIP, gossip));
+    }
+
+    /**
+     * An object read round trips, and any other body round trips as a tagged Json tree.
+     */
+    @Test
+    public void roundTripsObjectAndJson() {
+        JsonObject object = parse("{\"items\":[\"\u00e9t\u00e9\"],\"clocks\":[{\"node\":\"a\",\"timestamp\":70000}]}");
+        JsonObject error = parse("{\"error\":\"not found\",\"required\":2,\"nested\":[null,true,false,1.25]}");
+
+        assertEquals(object, roundTripResponse(RpcServer.GET, 200, object));
+        assertEquals(error, roundTripResponse(RpcServer.GET, 400, error));
+    }
+
+    /**
+     * An empty body has no bytes at all and decodes to null.
+     */
+    @Test
+    public void encodesEmptyBodyAsNothing() {
+        BinaryCodec.Writer out = new BinaryCodec.Writer(16);
+        BinaryCodec.encodeRequest(out, RpcServer.PUT, null);
+        BinaryCodec.Reader in = new BinaryCodec.Reader(out.finish());
+
+        assertFalse(in.hasRemaining());
+        assertNull(BinaryCodec.decodeRequest(in, RpcServer.PUT));
+    }
+
+    /**
+     * Helper method to encode and decode the body of a request.
+     *
+     * @param op
+     * @param body
+     * @return JsonElement
+     */
+    private JsonElement roundTripRequest(byte op, JsonElement body) {
+        BinaryCodec.Writer out = new BinaryCodec.Writer(1);
+        BinaryCodec.encodeRequest(out, op, body);
+        BinaryCodec.Reader in = new BinaryCodec.Reader(out.finish());
+
+        JsonElement decoded = BinaryCodec.decodeRequest(in, op);
+        assertFalse(in.hasRemaining());
+
+        return decoded;
+    }
+
+    /**
+     * Helper method to encode and decode the body of a response.
+     *
+     * @param op
+     * @param status
+     * @param body
+     * @return JsonElement
+     */
+    private JsonElement roundTripResponse(byte op, int status, JsonElement body) {
+        BinaryCodec.Writer out = new BinaryCodec.Writer(1);
+        BinaryCodec.encodeResponse(out, op, status, body);
+        BinaryCodec.Reader in = new BinaryCodec.Reader(out.finish());
+
+        JsonElement decoded = BinaryCodec.decodeResponse(in, op, status);
+        assertFalse(in.hasRemaining());
+
+        return decoded;
+    }
+
+    /**
+     * Helper method to parse a Json object.
+     *
+     * @param json
+     * @return JsonObject
+     */
+    private JsonObject parse(String json) {
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,107 @@
+package Backend;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CircuitBreakerTest class to check that a circuit opens after failures in a row, lets one probe through
+ * after the cooldown, and closes again once the replica answers.
+ */
+public class CircuitBreakerTest {
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        this.circuitBreaker = new CircuitBreaker();
+        this.circuitBreaker.setThreshold(2);
+        this.circuitBreaker.setCooldown(50);
+    }
+
+    /**
+     * The circuit opens after the threshold of failures in a row, and an answer in between starts the count over.
+     */
+    @Test
+    public void opensAfterFailuresInARow() {
+        this.circuitBreaker.failure("a");
+        this.circuitBreaker.success("a");
+        this.circuitBreaker.failure("a");
+        assertFalse(this.circuitBreaker.isOpen("a"));
+
+        this.circuitBreaker.failure("a");
+        assertTrue(this.circuitBreaker.isOpen("a"));
+        assertFalse(this.circuitBreaker.allow("a"));
+        assertTrue(this.circuitBreaker.allow("b"));
+    }
+
+    /**
+     * After the cooldown only one probe is let through, and its answer closes the circuit.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void probeClosesCircuit() throws InterruptedException {
+        open("a");
+        Thread.sleep(60);
+
+        assertTrue(this.circuitBreaker.isAvailable("a"));
+        assertTrue(this.circuitBreaker.allow("a"));
+        assertFalse(this.circuitBreaker.allow("a"));
+
+        this.circuitBreaker.success("a");
+        assertFalse(this.circuitBreaker.isOpen("a"));
+        assertTrue(this.circuitBreaker.allow("a"));
+    }
+
+    /**
+     * A failed probe opens the circuit again for another cooldown.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void failedProbeReopensCircuit() throws InterruptedException {
+        open("a");
+        Thread.sleep(60);
+
+        assertTrue(this.circuitBreaker.allow("a"));
+        this.circuitBreaker.failure("a");
+
+        assertTrue(this.circuitBreaker.isOpen("a"));
+        assertFalse(this.circuitBreaker.allow("a"));
+    }
+
+    /**
+     * A tracked future counts an IOException as a failure, but not a cancelled request.
+     */
+    @Test
+    public void tracksOnlyIOExceptions() {
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<Void> future = this.circuitBreaker.track("a", new CompletableFuture<>());
+            future.completeExceptionally(new CancellationException());
+        }
+        assertFalse(this.circuitBreaker.isOpen("a"));
+
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<Void> future = this.circuitBreaker.track("a", new CompletableFuture<>());
+            future.completeExceptionally(new IOException("unreachable"));
+        }
+        assertTrue(this.circuitBreaker.isOpen("a"));
+    }
+
+    /**
+     * Helper method to open the circuit of a replica.
+     *
+     * @param id
+     */
+    private void open(String id) {
+        this.circuitBreaker.failure(id);
+        this.circuitBreaker.failure(id);
+        assertTrue(this.circuitBreaker.isOpen(id));
+    }
+}
@@ -0,0 +1,95 @@
+package Backend;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * QuorumTest class to check that a quorum is reached, fails or expires, and only the first outcome counts.
+ */
+public class QuorumTest {
+
+    /**
+     * The quorum is reached by the target number of successes, and later answers decide nothing.
+     */
+    @Test
+    public void reachedByTargetSuccesses() {
+        Quorum quorum = new Quorum("write", 2, 3);
+
+        assertNull(quorum.success());
+        assertFalse(quorum.isDecided());
+        assertEquals(Quorum.Outcome.REACHED, quorum.success());
+        assertNull(quorum.failure());
+        assertEquals(Quorum.Outcome.REACHED, quorum.getOutcome());
+    }
+
+    /**
+     * The quorum fails as soon as the target can no longer be reached, without waiting for the other replicas.
+     */
+    @Test
+    public void failsOnceTargetUnreachable() {
+        Quorum quorum = new Quorum("read", 2, 3);
+
+        assertNull(quorum.success());
+        assertNull(quorum.failure());
+        assertEquals(Quorum.Outcome.FAILED, quorum.failure());
+        assertNull(quorum.success());
+
+        Quorum.Failure failure = quorum.toFailure();
+        assertEquals(503, failure.getStatus());
+        assertEquals(3, failure.toJson().get("required").getAsInt());
+        assertEquals(2, failure.toJson().get("acknowledged").getAsInt());
+    }
+
+    /**
+     * A quorum of 0 is reached at once, and one of more than the replicas asked fails at once.
+     */
+    @Test
+    public void decidedRightAway() {
+        assertEquals(Quorum.Outcome.REACHED, new Quorum("write", 0, 2).getOutcome());
+        assertEquals(Quorum.Outcome.FAILED, new Quorum("write", 3, 2).getOutcome());
+    }
+
+    /**
+     * A quorum still open at its deadline expires and runs the callback, and fails the request with 504.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void expiresAtDeadline() throws InterruptedException {
+        Quorum quorum = new Quorum("read", 1, 2);
+        CountDownLatch expired = new CountDownLatch(1);
+
+        quorum.expireAt(Quorum.toDeadline(20L), expired::countDown);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        assertEquals(Quorum.Outcome.EXPIRED, quorum.getOutcome());
+        assertNull(quorum.success());
+        assertEquals(504, quorum.toFailure().getStatus());
+    }
+
+    /**
+     * A quorum decided before its deadline does not expire, and a request without a deadline never does.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void doesNotExpireOnceDecided() throws InterruptedException {
+        Quorum quorum = new Quorum("read", 1, 2);
+        CountDownLatch expired = new CountDownLatch(1);
+
+        quorum.expireAt(Quorum.toDeadline(50L), expired::countDown);
+        quorum.success();
+
+        assertFalse(expired.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(Quorum.Outcome.REACHED, quorum.getOutcome());
+        assertEquals(0, Quorum.toDeadline(null));
+        assertEquals(0, Quorum.toDeadline(0L));
+    }
+}
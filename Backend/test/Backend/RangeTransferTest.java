@@ -0,0 +1,168 @@
+package Backend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * RangeTransferTest class to check that a migration over Http checkpoints the buckets the receiver
+ * acknowledged, and resumes from the checkpoint after a failure, against a fake receiver.
+ */
+public class RangeTransferTest {
+    private HttpServer receiver;
+    private String address;
+    private List<Integer> received;
+    private AtomicInteger rejectedBucket;
+
+    @BeforeClass
+    public static void setUpRing() {
+        Driver.ring = new Ring(32);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.received = Collections.synchronizedList(new ArrayList<>());
+        this.rejectedBucket = new AtomicInteger(-1);
+        this.receiver = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.receiver.createContext("/receiver", this::receive);
+        this.receiver.start();
+        this.address = "127.0.0.1:" + this.receiver.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        this.receiver.stop(0);
+    }
+
+    /**
+     * A failed request leaves the checkpoint at its first bucket, keeps its buckets on this replica,
+     * and a migration resumed from the checkpoint moves the rest.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void resumesFromCheckpoint() throws IOException {
+        for (int hashKey : new int[] {9, 11, 13, 14}) {
+            store(hashKey);
+        }
+        this.rejectedBucket.set(13);
+
+        RangeTransfer transfer = new RangeTransfer(8, 15, true);
+        try {
+            transfer.toHttp(this.address);
+            fail("The rejected bucket should fail the migration");
+        } catch (IOException expected) {}
+
+        assertEquals(11, transfer.getCheckpoint());
+        assertEquals(11, transfer.getProgress().get("checkpoint").getAsInt());
+        assertNull(Driver.dataStorage.get(9, "key9"));
+        assertNotNull(Driver.dataStorage.get(11, "key11"));
+        assertNotNull(Driver.dataStorage.get(13, "key13"));
+
+        this.received.clear();
+        RangeTransfer resumed = new RangeTransfer(transfer.getCheckpoint(), 15, true);
+        resumed.toHttp(this.address);
+
+        assertEquals(-1, resumed.getCheckpoint());
+        assertEquals(Arrays.asList(11, 13, 14), this.received);
+        for (int hashKey : new int[] {11, 13, 14}) {
+            assertNull(Driver.dataStorage.get(hashKey, "key" + hashKey));
+        }
+    }
+
+    /**
+     * A range that wraps around the ring is sent in ring order, and kept on this replica unless it is removed.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void copiesRangeAroundTheRing() throws IOException {
+        store(31);
+        store(0);
+
+        RangeTransfer transfer = new RangeTransfer(30, 1, false);
+        transfer.toHttp(this.address);
+
+        assertEquals(-1, transfer.getCheckpoint());
+        assertEquals(2, transfer.getBuckets());
+        assertEquals(Arrays.asList(31, 0), this.received);
+        assertNotNull(Driver.dataStorage.get(31, "key31"));
+        assertNotNull(Driver.dataStorage.get(0, "key0"));
+    }
+
+    /**
+     * Helper method to store one object in a bucket.
+     *
+     * @param hashKey
+     */
+    private void store(int hashKey) {
+        JsonObject object = new JsonObject();
+        JsonArray items = new JsonArray();
+        items.add("item" + hashKey);
+        object.add("items", items);
+        object.add("clocks", new JsonParser().parse("[{\"node\":\"other\",\"timestamp\":1}]"));
+
+        JsonObject singleData = new JsonObject();
+        singleData.addProperty("key", "key" + hashKey);
+        singleData.add("object", object);
+
+        JsonArray dataArray = new JsonArray();
+        dataArray.add(singleData);
+        Driver.dataStorage.storeNewerObjects(hashKey, dataArray);
+    }
+
+    /**
+     * Helper method to act as the receiver endpoint: read the buckets, reject the request once if it has
+     * the rejected bucket, and acknowledge it with a window of two buckets otherwise.
+     *
+     * @param exchange
+     * @throws IOException
+     */
+    private void receive(HttpExchange exchange) throws IOException {
+        JsonArray buckets = new JsonParser().parse(new InputStreamReader(exchange.getRequestBody()
+                , StandardCharsets.UTF_8)).getAsJsonArray();
+        List<Integer> hashKeys = new ArrayList<>();
+        for (JsonElement bucket : buckets) {
+            hashKeys.add(bucket.getAsJsonObject().get("hashKey").getAsInt());
+        }
+
+        int status = 200;
+        String body = "{\"window\":2}";
+        if (hashKeys.contains(this.rejectedBucket.get())) {
+            this.rejectedBucket.set(-1);
+            status = 503;
+            body = "{}";
+        } else {
+            this.received.addAll(hashKeys);
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
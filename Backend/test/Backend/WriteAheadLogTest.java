@@ -0,0 +1,197 @@
+package Backend;
+
+import com.google.gson.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WriteAheadLogTest class to check that a replay keeps every intact record and stops at the first bad one.
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The records appended and synced are replayed in the order they were appended.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void replaysSyncedRecordsInOrder() throws IOException {
+        File directory = folder.newFolder("wal");
+        WriteAheadLog log = newLog(directory);
+        log.open();
+        for (int i = 0; i < 3; i++) {
+            log.append(record(i));
+        }
+        log.sync();
+
+        Recorder recorder = new Recorder();
+        newLog(directory).replay(recorder);
+
+        assertEquals(Arrays.asList(record(0), record(1), record(2)), recorder.records);
+    }
+
+    /**
+     * A record cut short by a crash is dropped, and the file is truncated to the records before it.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void truncatesTornTail() throws IOException {
+        File directory = folder.newFolder("wal");
+        byte[] first = frame(record(0));
+        byte[] second = frame(record(1));
+        byte[] third = frame(record(2));
+        File file = writeFile(directory, 1, first, second, Arrays.copyOf(third, third.length - 3));
+
+        Recorder recorder = new Recorder();
+        newLog(directory).replay(recorder);
+
+        assertEquals(Arrays.asList(record(0), record(1)), recorder.records);
+        assertEquals(first.length + second.length, file.length());
+    }
+
+    /**
+     * A length longer than what is left of the file ends the replay instead of allocating it.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void stopsAtCorruptLength() throws IOException {
+        File directory = folder.newFolder("wal");
+        byte[] first = frame(record(0));
+        byte[] corrupt = frame(record(1));
+        ByteBuffer.wrap(corrupt).putInt(0, Integer.MAX_VALUE);
+        File file = writeFile(directory, 1, first, corrupt, frame(record(2)));
+
+        Recorder recorder = new Recorder();
+        newLog(directory).replay(recorder);
+
+        assertEquals(Arrays.asList(record(0)), recorder.records);
+        assertEquals(first.length, file.length());
+    }
+
+    /**
+     * A record with a wrong checksum in the middle of the log ends the replay,
+     * and the later files are set aside instead of replayed.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void setsAsideFilesAfterCorruptRecord() throws IOException {
+        File directory = folder.newFolder("wal");
+        byte[] first = frame(record(0));
+        byte[] corrupt = frame(record(1));
+        corrupt[corrupt.length - 2] ^= 0x1;
+        File file = writeFile(directory, 1, first, corrupt, frame(record(2)));
+        File later = writeFile(directory, 2, frame(record(3)));
+
+        Recorder recorder = new Recorder();
+        newLog(directory).replay(recorder);
+
+        assertEquals(Arrays.asList(record(0)), recorder.records);
+        assertEquals(first.length, file.length());
+        assertFalse(later.exists());
+        assertTrue(new File(directory, later.getName() + ".discarded").exists());
+    }
+
+    /**
+     * Helper method to create a log in a directory.
+     *
+     * @param directory
+     * @return WriteAheadLog
+     */
+    private WriteAheadLog newLog(File directory) {
+        WriteAheadLog log = new WriteAheadLog();
+        log.setDirectory(directory.getPath());
+
+        return log;
+    }
+
+    /**
+     * Helper method to create a distinct record.
+     *
+     * @param sequence
+     * @return JsonObject
+     */
+    private JsonObject record(int sequence) {
+        JsonObject record = new JsonObject();
+        record.addProperty("hashKey", 1);
+        record.addProperty("op", "add");
+        record.addProperty("key", "key" + sequence);
+
+        return record;
+    }
+
+    /**
+     * Helper method to frame a record by its length and CRC32 like the log does.
+     *
+     * @param record
+     * @return byte[]
+     */
+    private byte[] frame(JsonObject record) {
+        byte[] bytes = record.toString().getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + bytes.length);
+        buffer.putInt(bytes.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bytes);
+
+        return buffer.array();
+    }
+
+    /**
+     * Helper method to write a numbered log file from framed records.
+     *
+     * @param directory
+     * @param number
+     * @param frames
+     * @return File
+     * @throws IOException
+     */
+    private File writeFile(File directory, long number, byte[]... frames) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            content.write(frame);
+        }
+
+        File file = new File(directory, String.format("wal-%010d.log", number));
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.toByteArray());
+        }
+
+        return file;
+    }
+
+    /**
+     * Nested Recorder class to keep the records replayed instead of applying them.
+     */
+    private static class Recorder extends DataStorage {
+        private final List<JsonObject> records = new ArrayList<>();
+
+        @Override
+        public void replay(JsonObject record) {
+            this.records.add(record);
+        }
+    }
+}
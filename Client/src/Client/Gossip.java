@@ -0,0 +1,56 @@
+package Client;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Gossip-base protocol to contact backend replica to keep the membership in the ring of the client.
+ */
+public class Gossip implements Runnable {
+    private static final long INTERVAL = 1000;
+    private final Ring ring;
+    private final HttpClient httpClient;
+
+    /**
+     * Gossip constructor.
+     *
+     * @param ring
+     * @param httpClient
+     */
+    public Gossip(Ring ring, HttpClient httpClient) {
+        this.ring = ring;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Randomly choose one backend replica in the ring to request for membership history per second,
+     * until the client is closed. The replicas that left are removed by the membership history,
+     * so a replica that does not answer is simply asked again later.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            String[] peerInfo = this.ring.getOnePeer();
+
+            if (peerInfo[1] != null) {
+                try {
+                    HttpClient.Response reply = this.httpClient.get(peerInfo[1] + "/gossip");
+
+                    if (reply.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                        JsonParser parser = new JsonParser();
+                        this.ring.updateMembership(parser.parse(reply.getBody()).getAsJsonObject());
+                    }
+                } catch (IOException | JsonParseException | IllegalStateException ignored) {}
+            }
+
+            try {
+                Thread.sleep(INTERVAL);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+}
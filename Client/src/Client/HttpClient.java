@@ -0,0 +1,822 @@
+package Client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HttpClient class to send Http/1.1 requests to other servers over pooled keep-alive connections.
+ *
+ * Every peer (host:port) has its own pool of idle connections. A request takes the most recently
+ * used idle connection of the peer, or opens a new one, and gives it back once the whole response is read.
+ * Connections idle for longer than the idle timeout are closed instead of reused, and a request that fails
+ * on a reused connection before any response arrives is sent again once on a new connection,
+ * since the peer may have closed the idle connection in the meantime. Only GET and HEAD requests are
+ * sent again: the peer may have applied any other request before the connection broke.
+ *
+ * Every module has the same copy of this class apart from the package, keep them identical.
+ */
+public class HttpClient {
+    private static final long IDLE_TIMEOUT = 15000;
+    private static final int DEADLINE_GRACE = 500;
+    static final String DEADLINE_HEADER = "X-Request-Deadline";
+    private final ConcurrentMap<String, Pool> pools;
+    private final AtomicLong requests;
+    private final AtomicLong created;
+    private final AtomicLong reused;
+    private final AtomicLong retried;
+    private final AtomicLong failed;
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+    private volatile int maxIdlePerPeer;
+    private volatile int deadline;
+
+    /**
+     * HttpClient constructor.
+     */
+    public HttpClient() {
+        this.pools = new ConcurrentHashMap<>();
+        this.requests = new AtomicLong();
+        this.created = new AtomicLong();
+        this.reused = new AtomicLong();
+        this.retried = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.connectTimeout = 5000;
+        this.readTimeout = 5000;
+        this.maxIdlePerPeer = 16;
+        this.deadline = 0;
+    }
+
+    /**
+     * Connect timeout setter in milliseconds.
+     *
+     * @param connectTimeout
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Read timeout setter in milliseconds.
+     *
+     * @param readTimeout
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Setter of the maximum number of idle connections kept for each peer.
+     *
+     * @param maxIdlePerPeer
+     */
+    public void setMaxIdlePerPeer(int maxIdlePerPeer) {
+        this.maxIdlePerPeer = maxIdlePerPeer;
+    }
+
+    /**
+     * Deadline setter in milliseconds, 0 for none.
+     * Every request tells the backend how long it has to answer, and waits no longer than that plus a short grace.
+     *
+     * @param deadline
+     */
+    public void setDeadline(int deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Send a GET request, the url is host:port/path.
+     *
+     * @param url
+     * @return Response
+     * @throws IOException
+     */
+    public Response get(String url) throws IOException {
+        return send("GET", url, null, this.readTimeout);
+    }
+
+    /**
+     * Send a POST request with a Json body, the url is host:port/path.
+     *
+     * @param url
+     * @param body
+     * @return Response
+     * @throws IOException
+     */
+    public Response post(String url, String body) throws IOException {
+        return send("POST", url, body, this.readTimeout);
+    }
+
+    /**
+     * Send a request and wait for the whole response.
+     * Opening a new connection waits no longer than the read timeout either.
+     *
+     * @param method
+     * @param url
+     * @param body
+     * @param readTimeout
+     * @return Response
+     * @throws IOException
+     */
+    public Response send(String method, String url, String body, int readTimeout) throws IOException {
+        int slash = url.indexOf('/');
+        String peer = (slash < 0) ? url : url.substring(0, slash);
+        String path = (slash < 0) ? "/" : url.substring(slash);
+        int deadline = this.deadline;
+        byte[] request = encodeRequest(method, peer, path, body, deadline);
+
+        if (deadline > 0) {
+            readTimeout = Math.min(readTimeout, deadline + DEADLINE_GRACE);
+        }
+        Pool pool = this.pools.computeIfAbsent(peer, Pool::new);
+
+        this.requests.incrementAndGet();
+
+        Connection connection = pool.lease();
+        if (connection != null) {
+            this.reused.incrementAndGet();
+
+            try {
+                return exchange(pool, connection, method, request, readTimeout);
+            } catch (StaleConnectionException sce) {
+                this.retried.incrementAndGet();
+            } catch (IOException ioe) {
+                this.failed.incrementAndGet();
+                throw ioe;
+            }
+        }
+
+        try {
+            connection = pool.connect(Math.min(this.connectTimeout, readTimeout));
+            this.created.incrementAndGet();
+
+            return exchange(pool, connection, method, request, readTimeout);
+        } catch (IOException ioe) {
+            this.failed.incrementAndGet();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Send a POST request with a Json body that the writer writes as it goes, in chunked transfer encoding,
+     * so the body is never held as a whole. Every flush of the writer sends what it wrote so far.
+     * The request always goes on a new connection, since a streamed body cannot be sent again.
+     *
+     * @param url
+     * @param writer
+     * @return Response
+     * @throws IOException
+     */
+    public Response stream(String url, BodyWriter writer) throws IOException {
+        int slash = url.indexOf('/');
+        String peer = (slash < 0) ? url : url.substring(0, slash);
+        String path = (slash < 0) ? "/" : url.substring(slash);
+        Pool pool = this.pools.computeIfAbsent(peer, Pool::new);
+        Connection connection;
+
+        this.requests.incrementAndGet();
+
+        try {
+            connection = pool.connect(this.connectTimeout);
+            this.created.incrementAndGet();
+        } catch (IOException ioe) {
+            this.failed.incrementAndGet();
+            throw ioe;
+        }
+
+        try {
+            connection.socket.setSoTimeout(this.readTimeout);
+            connection.out.write(("POST " + path + " HTTP/1.1\r\nHost: " + peer + "\r\n"
+                    + "Content-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+
+            ChunkedOutputStream body = new ChunkedOutputStream(connection.out);
+            writer.write(body);
+            body.close();
+            connection.out.flush();
+
+            int first = connection.in.read();
+            if (first < 0) {
+                throw new EOFException();
+            }
+
+            Response response = readResponse(connection, "POST", first);
+            pool.release(connection, response.keepAlive);
+
+            return response;
+        } catch (IOException ioe) {
+            pool.discard(connection);
+            this.failed.incrementAndGet();
+            throw ioe;
+        } catch (RuntimeException re) {
+            pool.discard(connection);
+            this.failed.incrementAndGet();
+            throw new IOException("Malformed request or response", re);
+        }
+    }
+
+    /**
+     * Return the pool metrics in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("requests", this.requests.get());
+        metrics.addProperty("connectionsCreated", this.created.get());
+        metrics.addProperty("connectionsReused", this.reused.get());
+        metrics.addProperty("staleRetries", this.retried.get());
+        metrics.addProperty("failures", this.failed.get());
+        metrics.addProperty("connectTimeout", this.connectTimeout);
+        metrics.addProperty("readTimeout", this.readTimeout);
+
+        JsonObject peers = new JsonObject();
+        for (Pool pool : this.pools.values()) {
+            JsonObject peer = new JsonObject();
+            peer.addProperty("idle", pool.idle.size());
+            peer.addProperty("inUse", pool.inUse.get());
+            peers.add(pool.peer, peer);
+        }
+        metrics.add("peers", peers);
+
+        return metrics;
+    }
+
+    /**
+     * Helper method to write the request and read the response on a connection,
+     * then return the connection to its pool if it can be reused.
+     *
+     * @param pool
+     * @param connection
+     * @param method
+     * @param request
+     * @param readTimeout
+     * @return Response
+     * @throws IOException
+     */
+    private Response exchange(Pool pool, Connection connection, String method, byte[] request, int readTimeout)
+            throws IOException {
+        boolean responded = false;
+
+        try {
+            connection.socket.setSoTimeout(readTimeout);
+            connection.out.write(request);
+            connection.out.flush();
+
+            int first = connection.in.read();
+            if (first < 0) {
+                throw new EOFException();
+            }
+            responded = true;
+
+            Response response = readResponse(connection, method, first);
+            pool.release(connection, response.keepAlive);
+
+            return response;
+        } catch (SocketTimeoutException ste) {
+            pool.discard(connection);
+            throw ste;
+        } catch (IOException ioe) {
+            pool.discard(connection);
+            if (!responded && connection.reused && (method.equals("GET") || method.equals("HEAD"))) {
+                throw new StaleConnectionException();
+            }
+            throw ioe;
+        } catch (RuntimeException re) {
+            pool.discard(connection);
+            throw new IOException("Malformed response", re);
+        }
+    }
+
+    /**
+     * Helper method to encode the request line, the headers and the body.
+     *
+     * @param method
+     * @param peer
+     * @param path
+     * @param body
+     * @param deadline
+     * @return byte[]
+     */
+    private static byte[] encodeRequest(String method, String peer, String path, String body, int deadline) {
+        byte[] content = (body == null) ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder();
+        head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(peer).append("\r\n");
+        if (deadline > 0) {
+            head.append(DEADLINE_HEADER).append(": ").append(deadline).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Type: application/json\r\n");
+            head.append("Content-Length: ").append(content.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] request = new byte[headBytes.length + content.length];
+        System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+        System.arraycopy(content, 0, request, headBytes.length, content.length);
+
+        return request;
+    }
+
+    /**
+     * Helper method to read the status line, the headers and the body of a response.
+     *
+     * @param connection
+     * @param method
+     * @param first
+     * @return Response
+     * @throws IOException
+     */
+    private static Response readResponse(Connection connection, String method, int first) throws IOException {
+        InputStream in = connection.in;
+        String statusLine = (char) first + readLine(in);
+        Map<String, String> headers = readHeaders(in);
+        int statusCode = parseStatusCode(statusLine);
+
+        while (statusCode >= 100 && statusCode < 200) {
+            // skip interim responses
+            statusLine = readLine(in);
+            headers = readHeaders(in);
+            statusCode = parseStatusCode(statusLine);
+        }
+
+        String connectionHeader = headers.get("connection");
+        boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        byte[] body;
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+
+        if (method.equals("HEAD") || statusCode == 204 || statusCode == 304) {
+            body = new byte[0];
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = readChunked(in);
+        } else if (contentLength != null) {
+            body = readFully(in, Integer.parseInt(contentLength.trim()));
+        } else {
+            body = readToEnd(in);
+            keepAlive = false;
+        }
+
+        return new Response(statusCode, headers, new String(body, StandardCharsets.UTF_8), keepAlive);
+    }
+
+    /**
+     * Helper method to parse the status code from the status line.
+     *
+     * @param statusLine
+     * @return int
+     */
+    private static int parseStatusCode(String statusLine) {
+        int start = statusLine.indexOf(' ') + 1;
+        int end = statusLine.indexOf(' ', start);
+
+        return Integer.parseInt(statusLine.substring(start, (end < 0) ? statusLine.length() : end));
+    }
+
+    /**
+     * Helper method to read headers until the empty line, the names are in lower case.
+     *
+     * @param in
+     * @return Map
+     * @throws IOException
+     */
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * Helper method to read a chunked body and its trailers.
+     *
+     * @param in
+     * @return byte[]
+     * @throws IOException
+     */
+    private static byte[] readChunked(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        while (true) {
+            String sizeLine = readLine(in);
+            int extension = sizeLine.indexOf(';');
+            int size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+
+            if (size == 0) {
+                readHeaders(in);
+                break;
+            }
+
+            body.write(readFully(in, size));
+            readLine(in);
+        }
+
+        return body.toByteArray();
+    }
+
+    /**
+     * Helper method to read exactly the given number of bytes.
+     *
+     * @param in
+     * @param length
+     * @return byte[]
+     * @throws IOException
+     */
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+
+        while (offset < length) {
+            int read = in.read(bytes, offset, length - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Helper method to read until the peer closes the connection.
+     *
+     * @param in
+     * @return byte[]
+     * @throws IOException
+     */
+    private static byte[] readToEnd(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            body.write(buffer, 0, read);
+        }
+
+        return body.toByteArray();
+    }
+
+    /**
+     * Helper method to read a line ended by CRLF or LF, without the line break.
+     *
+     * @param in
+     * @return String
+     * @throws IOException
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                sb.append((char) c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Nested Response class for the status code, headers and body of a response.
+     * A response of an internal RPC request has its body already decoded into Json instead.
+     */
+    public static class Response {
+        private final int statusCode;
+        private final Map<String, String> headers;
+        private final String body;
+        private final boolean keepAlive;
+        private final JsonElement json;
+
+        /**
+         * Response constructor.
+         *
+         * @param statusCode
+         * @param headers
+         * @param body
+         * @param keepAlive
+         */
+        Response(int statusCode, Map<String, String> headers, String body, boolean keepAlive) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+            this.keepAlive = keepAlive;
+            this.json = null;
+        }
+
+        /**
+         * Response constructor for a response of an internal RPC request.
+         *
+         * @param statusCode
+         * @param json
+         */
+        Response(int statusCode, JsonElement json) {
+            this.statusCode = statusCode;
+            this.headers = Collections.emptyMap();
+            this.body = null;
+            this.keepAlive = true;
+            this.json = json;
+        }
+
+        /**
+         * Return the status code.
+         *
+         * @return int
+         */
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+
+        /**
+         * Return the value of a header, or null if the response does not have it.
+         *
+         * @param name
+         * @return String
+         */
+        public String getHeader(String name) {
+            return this.headers.get(name.toLowerCase());
+        }
+
+        /**
+         * Return the body.
+         *
+         * @return String
+         */
+        public String getBody() {
+            if (this.body == null) {
+                return (this.json == null) ? "" : this.json.toString();
+            }
+
+            return this.body;
+        }
+
+        /**
+         * Return the decoded body of a response of an internal RPC request, or null if there is none.
+         *
+         * @return JsonElement
+         */
+        public JsonElement getJson() {
+            return this.json;
+        }
+    }
+
+    /**
+     * Nested BodyWriter interface to write the body of a streamed request.
+     */
+    public interface BodyWriter {
+
+        /**
+         * Write the body to the stream, every flush sends what is written so far.
+         *
+         * @param out
+         * @throws IOException
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Nested ChunkedOutputStream class to write a request body in chunks, one chunk per flush
+     * or per full buffer. Closing it ends the body but leaves the connection open.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer;
+        private int count;
+        private boolean closed;
+
+        /**
+         * ChunkedOutputStream constructor.
+         *
+         * @param out
+         */
+        private ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+            this.buffer = new byte[8192];
+            this.count = 0;
+            this.closed = false;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.count == this.buffer.length) {
+                writeChunk();
+            }
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.count == this.buffer.length) {
+                    writeChunk();
+                }
+
+                int n = Math.min(len, this.buffer.length - this.count);
+                System.arraycopy(b, off, this.buffer, this.count, n);
+                this.count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                writeChunk();
+                this.out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        /**
+         * Helper method to write the buffered bytes as one chunk.
+         *
+         * @throws IOException
+         */
+        private void writeChunk() throws IOException {
+            if (this.count > 0) {
+                this.out.write((Integer.toHexString(this.count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                this.out.write(this.buffer, 0, this.count);
+                this.out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                this.count = 0;
+            }
+        }
+    }
+
+    /**
+     * Nested Pool class for the idle connections to one peer.
+     */
+    private class Pool {
+        private final String peer;
+        private final String host;
+        private final int port;
+        private final ConcurrentLinkedDeque<Connection> idle;
+        private final AtomicInteger inUse;
+
+        /**
+         * Pool constructor.
+         *
+         * @param peer
+         */
+        private Pool(String peer) {
+            int colon = peer.lastIndexOf(':');
+            this.peer = peer;
+            this.host = (colon < 0) ? peer : peer.substring(0, colon);
+            this.port = (colon < 0) ? 80 : Integer.parseInt(peer.substring(colon + 1));
+            this.idle = new ConcurrentLinkedDeque<>();
+            this.inUse = new AtomicInteger();
+        }
+
+        /**
+         * Take the most recently used idle connection, or return null if there is none.
+         *
+         * @return Connection
+         */
+        private Connection lease() {
+            Connection connection;
+
+            while ((connection = this.idle.pollFirst()) != null) {
+                if (System.currentTimeMillis() - connection.lastUsed < IDLE_TIMEOUT
+                        && !connection.socket.isClosed()) {
+                    connection.reused = true;
+                    this.inUse.incrementAndGet();
+
+                    return connection;
+                }
+                connection.close();
+            }
+
+            return null;
+        }
+
+        /**
+         * Open a new connection to the peer.
+         *
+         * @param connectTimeout
+         * @return Connection
+         * @throws IOException
+         */
+        private Connection connect(int connectTimeout) throws IOException {
+            Socket socket = new Socket();
+
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(this.host, this.port), connectTimeout);
+            } catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+            this.inUse.incrementAndGet();
+
+            return new Connection(socket);
+        }
+
+        /**
+         * Give a connection back to the pool, or close it if it cannot be reused or the pool is full.
+         *
+         * @param connection
+         * @param keepAlive
+         */
+        private void release(Connection connection, boolean keepAlive) {
+            this.inUse.decrementAndGet();
+
+            if (keepAlive && this.idle.size() < HttpClient.this.maxIdlePerPeer) {
+                connection.lastUsed = System.currentTimeMillis();
+                this.idle.offerFirst(connection);
+            } else {
+                connection.close();
+            }
+        }
+
+        /**
+         * Close a broken connection.
+         *
+         * @param connection
+         */
+        private void discard(Connection connection) {
+            this.inUse.decrementAndGet();
+            connection.close();
+        }
+    }
+
+    /**
+     * Nested Connection class for a socket and its buffered streams.
+     */
+    private static class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private long lastUsed;
+        private boolean reused;
+
+        /**
+         * Connection constructor.
+         *
+         * @param socket
+         * @throws IOException
+         */
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            this.lastUsed = System.currentTimeMillis();
+            this.reused = false;
+        }
+
+        /**
+         * Close the socket quietly.
+         */
+        private void close() {
+            try {
+                this.socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Nested StaleConnectionException class for a GET or HEAD request on a reused connection
+     * closed by the peer before it responded, which is safe to send again.
+     */
+    private static class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,291 @@
+package Client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LytnamoClient class to read and write objects from a Java service straight to the backend replicas,
+ * without the hop through the frontend.
+ *
+ * The client gets the seed replicas from the membership coordinator, then keeps its own copy of the ring
+ * up to date by gossiping with the backend replicas like the frontend does. It hashes each key itself and
+ * sends the request to a replica in the preference list of the key, picked by load, over pooled keep-alive
+ * connections. The requests return a future at once and run on the executor of the client.
+ * If the replica is unreachable, the next one in the preference list is tried, and a redirect is followed once.
+ */
+public class LytnamoClient implements Closeable {
+    private static final int TEMPORARY_REDIRECT = 307;
+    private static final int DEFAULT_DEADLINE = 3000;
+    private final HttpClient httpClient;
+    private final LoadTracker loadTracker;
+    private final Ring ring;
+    private final ExecutorService executor;
+    private final Thread gossip;
+
+    /**
+     * LytnamoClient constructor to initialize the ring from the membership coordinator and start gossiping.
+     *
+     * @param coordinator
+     * @throws IOException
+     */
+    public LytnamoClient(String coordinator) throws IOException {
+        this.httpClient = new HttpClient();
+        this.httpClient.setDeadline(DEFAULT_DEADLINE);
+        this.loadTracker = new LoadTracker();
+
+        HttpClient.Response response = this.httpClient.get(coordinator + "/seeds");
+        JsonElement seeds = parse(response.getBody());
+        if (response.getStatusCode() != HttpURLConnection.HTTP_OK || seeds == null || !seeds.isJsonObject()) {
+            throw new IOException("Failed to get the seeds from " + coordinator);
+        }
+
+        JsonObject membership = seeds.getAsJsonObject();
+        this.ring = new Ring(membership.get("capacity").getAsInt(), this.loadTracker);
+        this.ring.setN(membership.get("N").getAsInt());
+        this.ring.initMembership(membership.get("seeds").getAsJsonArray());
+
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "lytnamo-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.gossip = new Thread(new Gossip(this.ring, this.httpClient), "lytnamo-gossip");
+        this.gossip.setDaemon(true);
+        this.gossip.start();
+    }
+
+    /**
+     * Connect timeout setter in milliseconds.
+     *
+     * @param connectTimeout
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.httpClient.setConnectTimeout(connectTimeout);
+    }
+
+    /**
+     * Read timeout setter in milliseconds.
+     *
+     * @param readTimeout
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.httpClient.setReadTimeout(readTimeout);
+    }
+
+    /**
+     * Setter of the maximum number of idle connections kept for each replica.
+     *
+     * @param maxIdlePerReplica
+     */
+    public void setMaxIdlePerReplica(int maxIdlePerReplica) {
+        this.httpClient.setMaxIdlePerPeer(maxIdlePerReplica);
+    }
+
+    /**
+     * Deadline setter in milliseconds, 0 for none, 3000 by default.
+     *
+     * @param deadline
+     */
+    public void setDeadline(int deadline) {
+        this.httpClient.setDeadline(deadline);
+    }
+
+    /**
+     * Latency decay setter in milliseconds, the time for the latency of an idle replica to decay.
+     *
+     * @param decay
+     */
+    public void setLatencyDecay(long decay) {
+        this.loadTracker.setDecay(decay);
+    }
+
+    /**
+     * Read a key. The reply has status 200 with the versions of the object, or 400 if the key does not exist.
+     *
+     * @param key
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Reply> get(String key) {
+        return send(key, "/get/", null);
+    }
+
+    /**
+     * Write a key with the same request body as the frontend put.
+     * The reply has status 302 with the new version of the object, or 400 if the write is rejected.
+     *
+     * @param key
+     * @param body
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Reply> put(String key, JsonObject body) {
+        return send(key, "/put/", body);
+    }
+
+    /**
+     * Return the metrics of the pooled connections and the load of each replica in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.add("pool", this.httpClient.getMetrics());
+        metrics.add("replicas", this.loadTracker.getMetrics());
+
+        return metrics;
+    }
+
+    /**
+     * Stop gossiping and stop taking new requests.
+     */
+    @Override
+    public void close() {
+        this.gossip.interrupt();
+        this.executor.shutdown();
+    }
+
+    /**
+     * Hash the key to fit in the ring, the same way the frontend does.
+     *
+     * @param key
+     * @return int
+     */
+    int getHashKey(String key) {
+        return Math.floorMod(key.hashCode(), this.ring.getMaxNumOfReplicas());
+    }
+
+    /**
+     * Helper method to send a request on the executor of the client.
+     *
+     * @param key
+     * @param path
+     * @param body
+     * @return CompletableFuture
+     */
+    private CompletableFuture<Reply> send(String key, String path, JsonObject body) {
+        int hashKey = getHashKey(key);
+
+        return CompletableFuture.supplyAsync(() -> request(hashKey, path + hashKey + "/" + key, body)
+                , this.executor);
+    }
+
+    /**
+     * Helper method to send a request to the replicas in the preference list of the key in turn,
+     * until one of them answers. A replica that does not answer in time fails the request with 504,
+     * since it may still carry out the request. The future fails if no replica is reachable.
+     *
+     * @param hashKey
+     * @param uri
+     * @param body
+     * @return Reply
+     */
+    private Reply request(int hashKey, String uri, JsonObject body) {
+        IOException failure = new IOException("No replica in the ring for hashKey " + hashKey);
+
+        for (String[] hostInfo : this.ring.findCoordinatorsForKey(hashKey)) {
+            long start = this.loadTracker.start(hostInfo[0]);
+            boolean failed = true;
+
+            try {
+                Reply reply = exchange(hostInfo[1] + uri, body);
+                failed = false;
+
+                if (reply.getStatusCode() == TEMPORARY_REDIRECT && reply.getBody() != null
+                        && reply.getBody().isJsonObject() && reply.getBody().getAsJsonObject().has("address")) {
+                    reply = exchange(reply.getBody().getAsJsonObject().get("address").getAsString() + uri, body);
+                }
+
+                return reply;
+            } catch (SocketTimeoutException ste) {
+                return new Reply(HttpURLConnection.HTTP_GATEWAY_TIMEOUT, null);
+            } catch (IOException ioe) {
+                failure = ioe;
+            } finally {
+                this.loadTracker.finish(hostInfo[0], start, failed);
+            }
+        }
+
+        throw new CompletionException(failure);
+    }
+
+    /**
+     * Helper method to send one request, a GET request if there is no body and a POST request otherwise.
+     *
+     * @param url
+     * @param body
+     * @return Reply
+     * @throws IOException
+     */
+    private Reply exchange(String url, JsonObject body) throws IOException {
+        HttpClient.Response response = (body == null)
+                ? this.httpClient.get(url) : this.httpClient.post(url, body.toString());
+
+        return new Reply(response.getStatusCode(), parse(response.getBody()));
+    }
+
+    /**
+     * Helper method to parse a response body, null if it is empty or not Json.
+     *
+     * @param body
+     * @return JsonElement
+     */
+    private JsonElement parse(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+
+        try {
+            JsonParser parser = new JsonParser();
+            return parser.parse(body);
+        } catch (JsonParseException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Nested Reply class for the status and the Json body of a reply, the body is null if there is none.
+     */
+    public static class Reply {
+        private final int statusCode;
+        private final JsonElement body;
+
+        /**
+         * Reply constructor.
+         *
+         * @param statusCode
+         * @param body
+         */
+        Reply(int statusCode, JsonElement body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        /**
+         * Return the Http status code.
+         *
+         * @return int
+         */
+        public int getStatusCode() {
+            return this.statusCode;
+        }
+
+        /**
+         * Return the Json body, null if there is none.
+         *
+         * @return JsonElement
+         */
+        public JsonElement getBody() {
+            return this.body;
+        }
+    }
+}
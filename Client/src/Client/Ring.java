@@ -0,0 +1,275 @@
+package Client;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ring class to keep the client's copy of the backend replicas, to send each request straight to a replica.
+ */
+public class Ring {
+    private final ReentrantReadWriteLock lock;
+    private final int maximumNumberOfReplicas;
+    private final Replica[] replicas;
+    private final Map<String, Integer> addLog;
+    private final Set<String> deleteLog;
+    private final LoadTracker loadTracker;
+    private volatile int N;
+
+    /**
+     * Ring constructor to initialize the ring.
+     *
+     * @param maximumNumberOfReplicas
+     * @param loadTracker
+     */
+    public Ring(int maximumNumberOfReplicas, LoadTracker loadTracker) {
+        this.lock = new ReentrantReadWriteLock();
+        this.loadTracker = loadTracker;
+        this.maximumNumberOfReplicas = maximumNumberOfReplicas;
+        this.replicas = new Replica[maximumNumberOfReplicas];
+        this.addLog = new HashMap<>();
+        this.deleteLog = new HashSet<>();
+    }
+
+    /**
+     * Add seed nodes into the ring.
+     *
+     * @param seeds
+     */
+    public void initMembership(JsonArray seeds) {
+        for (int i = 0; i < seeds.size(); i++) {
+            JsonObject seed = seeds.get(i).getAsJsonObject();
+
+            Replica replica = new Replica();
+            replica.setId(seed.get("id").getAsString());
+            replica.setHost(seed.get("host").getAsString());
+            replica.setPort(seed.get("port").getAsString());
+            replica.setSeed(true);
+            replica.setKey(seed.get("key").getAsInt());
+
+            this.replicas[replica.getKey()] = replica;
+            this.addLog.put(replica.getId(), replica.getKey());
+            printAddInfo(replica);
+        }
+    }
+
+    /**
+     * Update the membership base on the membership history from other backend replicas.
+     *
+     * @param membership
+     */
+    public void updateMembership(JsonObject membership) {
+        Set<String> inAddLog = parseLog(membership.get("add").getAsJsonArray());
+        Set<String> inDeleteLog = parseLog(membership.get("delete").getAsJsonArray());
+        JsonObject inReplicas = membership.get("replicas").getAsJsonObject();
+
+        this.lock.writeLock().lock();
+
+        addReplicas(inAddLog, inDeleteLog, inReplicas);
+        deleteReplicas(inDeleteLog);
+
+        this.lock.writeLock().unlock();
+    }
+
+    /**
+     * Parse the JsonArray log into Set.
+     *
+     * @param logArray
+     * @return Set
+     */
+    private Set<String> parseLog(JsonArray logArray) {
+        Set<String> log = new HashSet<>();
+
+        for (int i = 0; i < logArray.size(); i++) {
+            log.add(logArray.get(i).getAsString());
+        }
+
+        return log;
+    }
+
+    /**
+     * Add the backend replicas into the ring if it is not deleted.
+     *
+     * @param inAddLog
+     * @param inDeleteLog
+     * @param inReplicas
+     */
+    private void addReplicas(Set<String> inAddLog, Set<String> inDeleteLog, JsonObject inReplicas) {
+        Set<String> myAddLog = this.addLog.keySet();
+        inAddLog.removeAll(myAddLog);
+
+        for (String addId : inAddLog) {
+            if (!inDeleteLog.contains(addId) && !this.deleteLog.contains(addId)) {
+                JsonObject replica = inReplicas.get(addId).getAsJsonObject();
+
+                Replica newReplica = new Replica();
+                newReplica.setId(addId);
+                newReplica.setHost(replica.get("host").getAsString());
+                newReplica.setPort(replica.get("port").getAsString());
+                newReplica.setSeed(replica.get("seed").getAsBoolean());
+                newReplica.setKey(replica.get("key").getAsInt());
+
+                this.replicas[newReplica.getKey()] = newReplica;
+                this.addLog.put(newReplica.getId(), newReplica.getKey());
+                printAddInfo(newReplica);
+            }
+        }
+    }
+
+    /**
+     * Delete the backend replicas from the ring base on the delete log.
+     *
+     * @param inDeleteLog
+     */
+    private void deleteReplicas(Set<String> inDeleteLog) {
+        inDeleteLog.removeAll(this.deleteLog);
+
+        for (String deleteId : inDeleteLog) {
+            if (this.addLog.containsKey(deleteId)) {
+                remove(deleteId);
+            } else {
+                this.deleteLog.add(deleteId);
+            }
+        }
+    }
+
+    /**
+     * Randomly select one backend replica from the ring for gossip.
+     *
+     * @return String[]
+     */
+    public String[] getOnePeer() {
+        String[] info = new String[2];
+
+        this.lock.readLock().lock();
+
+        Set<String> addedReplicas = this.addLog.keySet();
+        addedReplicas.removeAll(this.deleteLog);
+        List<String> currentReplicas = new ArrayList<>(addedReplicas);
+
+        if (currentReplicas.size() >= 1) {
+            Random random = new Random();
+            int target = random.nextInt(currentReplicas.size());
+            String id = currentReplicas.get(target);
+            int key = this.addLog.get(id);
+            Replica peer = this.replicas[key];
+            info[0] = id;
+            info[1] = peer.getHost() + ":" + peer.getPort();
+        }
+
+        this.lock.readLock().unlock();
+
+        return info;
+    }
+
+    /**
+     * Remove the node with particular id from the ring and log it.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        this.lock.writeLock().lock();
+
+        int key = this.addLog.get(id);
+        this.replicas[key] = null;
+        this.deleteLog.add(id);
+        System.out.println("[Membership] Removed node " + id +
+                " from ring at key: " + key);
+
+        this.lock.writeLock().unlock();
+    }
+
+    /**
+     * Return the capacity of the ring.
+     *
+     * @return int
+     */
+    public int getMaxNumOfReplicas() {
+        return this.maximumNumberOfReplicas;
+    }
+
+    /**
+     * Return the replicas in the preference list of a key in the order to try them as the coordinator.
+     * Pick two replicas at random and put the one with the lower load first, so the requests move away from
+     * slow or busy replicas, then the others in the order of the preference list as fallbacks.
+     *
+     * @param hashKey
+     * @return List
+     */
+    public List<String[]> findCoordinatorsForKey(int hashKey) {
+        List<String[]> coordinators = new ArrayList<>();
+
+        this.lock.readLock().lock();
+
+        int[] preferenceList = new int[Math.min(this.N, this.maximumNumberOfReplicas)];
+        int size = getPreferenceList(hashKey, preferenceList);
+
+        if (size > 1) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(size);
+            int second = random.nextInt(size - 1);
+            if (second >= first) {
+                second++;
+            }
+
+            int best = (this.loadTracker.getCost(this.replicas[preferenceList[second]].getId())
+                    < this.loadTracker.getCost(this.replicas[preferenceList[first]].getId())) ? second : first;
+            int keyOfHost = preferenceList[best];
+            System.arraycopy(preferenceList, 0, preferenceList, 1, best);
+            preferenceList[0] = keyOfHost;
+        }
+
+        for (int i = 0; i < size; i++) {
+            Replica replica = this.replicas[preferenceList[i]];
+            coordinators.add(new String[] {replica.getId(), replica.getHost() + ":" + replica.getPort()});
+        }
+
+        this.lock.readLock().unlock();
+
+        return coordinators;
+    }
+
+    /**
+     * Fill the preference list of a key with the keys of its nodes, and return the number of nodes.
+     *
+     * @param hashKey
+     * @param preferenceList
+     * @return int
+     */
+    private int getPreferenceList(int hashKey, int[] preferenceList) {
+        int startingPoint = hashKey;
+        int totalNodeVisited = 0;
+
+        do {
+            if (this.replicas[hashKey] != null) {
+                preferenceList[totalNodeVisited++] = hashKey;
+            }
+
+            hashKey = (hashKey + 1) % this.maximumNumberOfReplicas;
+        } while (totalNodeVisited < preferenceList.length && hashKey != startingPoint);
+
+        return totalNodeVisited;
+    }
+
+    /**
+     * Helper method to print the adding information.
+     *
+     * @param replica
+     */
+    private void printAddInfo(Replica replica) {
+        System.out.println("[Membership] Added node " + replica.getId() +
+                " into ring at key: " + replica.getKey());
+    }
+
+    /**
+     * N setter.
+     *
+     * @param N
+     */
+    public void setN(int N) {
+        this.N = N;
+    }
+}
@@ -0,0 +1,150 @@
+package Client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * HttpClientTest class to check that only a GET is sent again after its pooled connection turns out
+ * to be closed by the peer, against a server that closes every connection after one response.
+ */
+public class HttpClientTest {
+    private ServerSocket server;
+    private String address;
+    private List<String> requests;
+
+    @Before
+    public void setUp() throws IOException {
+        this.requests = new CopyOnWriteArrayList<>();
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.address = "127.0.0.1:" + this.server.getLocalPort();
+
+        Thread thread = new Thread(this::serve, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.server.close();
+    }
+
+    /**
+     * A GET on a stale connection is sent again on a new one.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void resendsGetAfterStaleConnection() throws Exception {
+        HttpClient httpClient = new HttpClient();
+
+        assertEquals(200, httpClient.get(this.address + "/get/1").getStatusCode());
+        Thread.sleep(100);
+        HttpClient.Response response = httpClient.get(this.address + "/get/2");
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("GET /get/2", response.getBody());
+        assertEquals(2, this.requests.size());
+        assertEquals(1, httpClient.getMetrics().get("staleRetries").getAsInt());
+    }
+
+    /**
+     * A POST on a stale connection fails instead of being sent again, since the peer may have carried it out.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void failsPostAfterStaleConnection() throws Exception {
+        HttpClient httpClient = new HttpClient();
+
+        assertEquals(200, httpClient.post(this.address + "/put/1", "{}").getStatusCode());
+        Thread.sleep(100);
+        try {
+            httpClient.post(this.address + "/put/2", "{}");
+            fail("A POST on a stale connection should not be sent again");
+        } catch (IOException expected) {}
+
+        assertEquals(1, this.requests.size());
+    }
+
+    /**
+     * The deadline is sent along with the request when it is set.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void sendsDeadlineHeader() throws Exception {
+        HttpClient httpClient = new HttpClient();
+        httpClient.setDeadline(1500);
+
+        httpClient.get(this.address + "/get/1");
+
+        assertTrue(this.requests.get(0).contains(HttpClient.DEADLINE_HEADER + ": 1500"));
+    }
+
+    /**
+     * Helper method to answer one request on each connection with its request line, then close the connection.
+     */
+    private void serve() {
+        while (!this.server.isClosed()) {
+            try (Socket socket = this.server.accept()) {
+                String head = readHead(socket.getInputStream());
+                if (head.isEmpty()) {
+                    continue;
+                }
+                this.requests.add(head);
+
+                byte[] body = head.substring(0, head.indexOf(" HTTP/")).getBytes(StandardCharsets.UTF_8);
+                OutputStream out = socket.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.write(body);
+                out.flush();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Helper method to read the request line and the headers, and skip the body.
+     *
+     * @param in
+     * @return String
+     * @throws IOException
+     */
+    private String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+
+        while ((b = in.read()) >= 0) {
+            head.write(b);
+            if (head.toString("UTF-8").endsWith("\r\n\r\n")) {
+                break;
+            }
+        }
+
+        String text = head.toString("UTF-8");
+        for (String line : text.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                int length = Integer.parseInt(line.substring(15).trim());
+                for (int i = 0; i < length && in.read() >= 0; i++) {}
+            }
+        }
+
+        return text;
+    }
+}
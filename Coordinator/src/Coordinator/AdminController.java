@@ -0,0 +1,32 @@
+package Coordinator;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * AdminController to expose internal metrics of the membership coordinator.
+ */
+@RestController
+public class AdminController {
+
+    /**
+     * Return the metrics of the pooled connections to the backend replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/pool", method = RequestMethod.GET, produces = "application/json")
+    public String pool() {
+        return Driver.httpClient.getMetrics().toString();
+    }
+
+    /**
+     * Return the metrics of the fan-out executor for the requests to the replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/fanout", method = RequestMethod.GET, produces = "application/json")
+    public String fanOut() {
+        return Driver.fanOut.getMetrics().toString();
+    }
+}
@@ -4,6 +4,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 import java.net.InetAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Driver class to start the membership coordinator.
@@ -18,6 +20,30 @@ public class Driver {
      */
     static Ring ring;
 
+    /**
+     * Http client with pooled keep-alive connections to the backend replicas.
+     */
+    static final HttpClient httpClient = new HttpClient();
+
+    /**
+     * Shared executor for the requests to the replicas.
+     */
+    static final FanOut fanOut = new FanOut();
+
+    /**
+     * Timer to send a migration again after its backoff, without holding a thread of the fan-out executor.
+     */
+    static final ScheduledExecutorService migrationTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "migration-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Maximum number of attempts of a migration that fails.
+     */
+    static int migrationAttempts = 5;
+
     /**
      * main method to start the server with Spring Boot.
      *
@@ -77,6 +103,18 @@ public class Driver {
                     r = Integer.parseInt(args[++i]);
                     checkR = true;
                     break;
+                case "-ct":
+                    // connect timeout of requests to the backend in milliseconds
+                    Driver.httpClient.setConnectTimeout(Integer.parseInt(args[++i]));
+                    break;
+                case "-rt":
+                    // read timeout of requests to the backend in milliseconds
+                    Driver.httpClient.setReadTimeout(Integer.parseInt(args[++i]));
+                    break;
+                case "-ma":
+                    // maximum number of attempts of a migration that fails
+                    Driver.migrationAttempts = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
             }
         }
 
@@ -87,7 +125,8 @@ public class Driver {
 
         if (!checkN || !checkW || !checkR) {
             System.out.println("[System] Usage: java -jar Coordinator.jar -p <port> -max <ring_size> " +
-                    "-n <nodes_in_preference_list> -w <min_nodes_write> -r <min_nodes_read>");
+                    "-n <nodes_in_preference_list> -w <min_nodes_write> -r <min_nodes_read> " +
+                    "[-ct <connect_timeout_ms>] [-rt <read_timeout_ms>] [-ma <migration_attempts>]");
             throw new Exception();
         } else if (n <= 0 || w <= 0 || r <= 0 || w > n || r > n
                 || n > Driver.ring.getMaximumNumberOfReplicas()) {
@@ -0,0 +1,269 @@
+package Coordinator;
+
+import com.google.gson.JsonObject;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FanOut class to run the requests to the replicas on a shared executor instead of a new thread per request.
+ *
+ * The number of requests that are running or waiting is bounded, and so is the number of requests
+ * to each peer, so a slow replica cannot take every thread. A request over either bound is rejected
+ * right away and the caller handles it like an unreachable replica. Requests still waiting when the
+ * caller no longer needs them can be cancelled.
+ *
+ * The executor is a thread pool by default, or one virtual thread per request when the JVM supports it.
+ * Every module has the same copy of this class apart from the package, keep them identical.
+ */
+public class FanOut {
+    private volatile ExecutorService executor;
+    private final ConcurrentMap<String, Semaphore> peers;
+    private final AtomicLong submitted;
+    private final AtomicLong rejected;
+    private final AtomicLong cancelled;
+    private volatile Semaphore capacity;
+    private volatile int threads;
+    private volatile int queueSize;
+    private volatile int peerLimit;
+    private volatile boolean virtual;
+
+    /**
+     * FanOut constructor.
+     */
+    public FanOut() {
+        this.peers = new ConcurrentHashMap<>();
+        this.submitted = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.cancelled = new AtomicLong();
+        this.threads = 64;
+        this.queueSize = 1024;
+        this.peerLimit = 32;
+        this.virtual = false;
+        this.capacity = new Semaphore(this.threads + this.queueSize);
+        this.executor = newThreadPool(this.threads);
+    }
+
+    /**
+     * Set the number of threads, the limits are applied to requests submitted afterwards.
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+        this.capacity = new Semaphore(threads + this.queueSize);
+        if (!this.virtual) {
+            ExecutorService old = this.executor;
+            this.executor = newThreadPool(threads);
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Return the number of threads.
+     *
+     * @return int
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Set the number of requests that can wait for a thread.
+     *
+     * @param queueSize
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        this.capacity = new Semaphore(this.threads + queueSize);
+    }
+
+    /**
+     * Return the number of requests that can wait for a thread.
+     *
+     * @return int
+     */
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /**
+     * Set the maximum number of running or waiting requests to each peer.
+     *
+     * @param peerLimit
+     */
+    public void setPeerLimit(int peerLimit) {
+        this.peerLimit = peerLimit;
+        this.peers.clear();
+    }
+
+    /**
+     * Run every request on its own virtual thread, return false if the JVM does not support virtual threads.
+     *
+     * @return boolean
+     */
+    public boolean useVirtualThreads() {
+        try {
+            ExecutorService old = this.executor;
+            this.executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            this.virtual = true;
+            old.shutdown();
+
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Submit a request to a peer.
+     *
+     * @param peer
+     * @param task
+     * @return Future
+     * @throws RejectedExecutionException
+     */
+    public Future<?> submit(String peer, Runnable task) throws RejectedExecutionException {
+        Semaphore total = this.capacity;
+        Semaphore perPeer = this.peers.computeIfAbsent(peer, p -> new Semaphore(this.peerLimit));
+
+        if (!total.tryAcquire()) {
+            this.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many requests waiting");
+        }
+        if (!perPeer.tryAcquire()) {
+            total.release();
+            this.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Too many requests to " + peer);
+        }
+
+        Task future = new Task(task, perPeer, total);
+
+        try {
+            this.executor.execute(future);
+        } catch (RejectedExecutionException ree) {
+            future.cancel(false);
+            this.rejected.incrementAndGet();
+            throw ree;
+        }
+        this.submitted.incrementAndGet();
+
+        return future;
+    }
+
+    /**
+     * Cancel the requests that have not started yet, the running ones are left to finish.
+     *
+     * @param futures
+     */
+    public void cancel(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (future instanceof Task && ((Task) future).claim()) {
+                future.cancel(false);
+                this.cancelled.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Return the fan-out metrics in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("executor", this.virtual ? "virtual" : "pool");
+        metrics.addProperty("threads", this.threads);
+        metrics.addProperty("queueSize", this.queueSize);
+        metrics.addProperty("peerLimit", this.peerLimit);
+        metrics.addProperty("inFlight", this.threads + this.queueSize - this.capacity.availablePermits());
+        metrics.addProperty("submitted", this.submitted.get());
+        metrics.addProperty("rejected", this.rejected.get());
+        metrics.addProperty("cancelled", this.cancelled.get());
+
+        return metrics;
+    }
+
+    /**
+     * Helper method to create a thread pool of daemon threads that stop when idle.
+     *
+     * @param threads
+     * @return ExecutorService
+     */
+    private static ExecutorService newThreadPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "fan-out-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /**
+     * Nested Task class for a request that runs at most once, and gives back its permits when it is done or cancelled.
+     */
+    private static class Task extends FutureTask<Void> {
+        private final AtomicBoolean claimed;
+        private final Semaphore perPeer;
+        private final Semaphore total;
+
+        /**
+         * Task constructor.
+         *
+         * @param task
+         * @param perPeer
+         * @param total
+         */
+        private Task(Runnable task, Semaphore perPeer, Semaphore total) {
+            super(task, null);
+            this.claimed = new AtomicBoolean(false);
+            this.perPeer = perPeer;
+            this.total = total;
+        }
+
+        /**
+         * Claim the task to run or to cancel it, return false if it is already claimed.
+         *
+         * @return boolean
+         */
+        private boolean claim() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Run the task unless it has been cancelled before it started.
+         */
+        @Override
+        public void run() {
+            if (claim()) {
+                super.run();
+            }
+        }
+
+        /**
+         * Give back the permits.
+         */
+        @Override
+        protected void done() {
+            this.perPeer.release();
+            this.total.release();
+        }
+    }
+}
@@ -14,6 +14,9 @@ public class MembershipController {
     /**
      * Register new replica into the ring,
      * and response with the key assigned to that replica, the list of seed nodes, and the ring properties.
+     * A restarted replica that was not removed from the ring rejoins at its key, and nothing is transferred to it,
+     * since it still has its data and no other replica took over its range.
+     * The migrations of the range to a new replica run in the background, the response does not wait for them.
      *
      * @param replica
      * @param response
@@ -21,6 +24,13 @@ public class MembershipController {
      */
     @RequestMapping(value = "/register", method = RequestMethod.POST, produces = "application/json")
     public String register(@RequestBody Replica replica, HttpServletResponse response) {
+        if (Driver.ring.rejoin(replica)) {
+            JsonObject responseBody = Driver.ring.getSeedsAndRingProperty();
+            responseBody.addProperty("key", replica.getKey());
+
+            return responseBody.toString();
+        }
+
         int key = Driver.ring.add(replica);
         JsonObject responseBody = new JsonObject();
 
@@ -38,7 +48,8 @@ public class MembershipController {
     }
 
     /**
-     * Remove the replica from the ring.
+     * Remove the replica from the ring, and start migrating its range to the replicas that take it over
+     * in the background.
      *
      * @param replica
      * @param response
@@ -38,8 +38,34 @@ public class Ring {
         this.currentNumberOfReplicas = 0;
     }
 
+    /**
+     * Put back a restarted replica that is still in the ring with the same id at the key it asks for,
+     * with its new address. Return false if it is not, then it has to be added as a new replica.
+     *
+     * @param replica
+     * @return boolean
+     */
+    public boolean rejoin(Replica replica) {
+        boolean rejoined = false;
+
+        this.lock.writeLock().lock();
+
+        int key = replica.getKey();
+        if (key >= 0 && key < this.maximumNumberOfReplicas && this.replicas[key] != null
+                && this.replicas[key].getId().equals(replica.getId())) {
+            this.replicas[key] = replica;
+            rejoined = true;
+            System.out.println("[Membership] Node " + replica.getId() + " rejoined the ring at key: " + key);
+        }
+
+        this.lock.writeLock().unlock();
+
+        return rejoined;
+    }
+
     /**
      * Assign a key to the new replica and add it into the ring.
+     * A replica that asks for the key it had before a restart gets it back if the key is still free.
      * Return the key assigned.
      *
      * @param replica
@@ -51,7 +77,9 @@ public class Ring {
         this.lock.writeLock().lock();
 
         if (this.currentNumberOfReplicas < this.maximumNumberOfReplicas) {
-            key = assignKey();
+            int previous = replica.getKey();
+            key = (previous >= 0 && previous < this.maximumNumberOfReplicas && this.replicas[previous] == null)
+                    ? previous : assignKey();
             replica.setKey(key);
             this.replicas[key] = replica;
             this.currentNumberOfReplicas++;
@@ -246,7 +274,7 @@ public class Ring {
         if (this.currentNumberOfReplicas > 1) {
             if (this.currentNumberOfReplicas <= this.N) {
                 JsonObject detail = new JsonObject();
-                detail.addProperty("to", this.replicas[key].getAddress());
+                addTarget(detail, this.replicas[key]);
                 detail.addProperty("from", this.replicas[findNextKey(key)].getAddress());
 
                 JsonArray range = new JsonArray();
@@ -260,7 +288,7 @@ public class Ring {
                 int preKey = key;
                 for (int i = 0; i < this.N; i++) {
                     JsonObject detail = new JsonObject();
-                    detail.addProperty("to", this.replicas[key].getAddress());
+                    addTarget(detail, this.replicas[key]);
 
                     int nextKey = findNextKey(preKey);
                     detail.addProperty("from", this.replicas[nextKey].getAddress());
@@ -297,7 +325,7 @@ public class Ring {
             for (int i = 0; i < this.N; i++) {
                 JsonObject detail = new JsonObject();
                 key = findNextKey(key);
-                detail.addProperty("to", this.replicas[key].getAddress());
+                addTarget(detail, this.replicas[key]);
 
                 int fromKey = findPreNthKey(1, key);
                 detail.addProperty("from", this.replicas[fromKey].getAddress());
@@ -334,6 +362,21 @@ public class Ring {
         return next;
     }
 
+    /**
+     * Helper method to add the address of the replica receiving a transfer into the transfer detail,
+     * and its internal RPC address if it has one.
+     *
+     * @param detail
+     * @param replica
+     */
+    private void addTarget(JsonObject detail, Replica replica) {
+        detail.addProperty("to", replica.getAddress());
+
+        if (replica.getRpcAddress() != null) {
+            detail.addProperty("toRpc", replica.getRpcAddress());
+        }
+    }
+
     /**
      * Helper method to find the location range between two replicas counterclockwise of a key.
      * Start means the starting point replica.
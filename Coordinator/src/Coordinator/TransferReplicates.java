@@ -1,17 +1,30 @@
 package Coordinator;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * TransferReplicates class to send transfer request and details.
+ * Every transfer is a migration with its own id, and runs in the background: the caller does not wait for it.
+ * If it fails, it is sent again after a backoff, resuming from the checkpoint the replica replied,
+ * at most the maximum number of attempts. While the replica replies that the migration is still running,
+ * it is only polled again, and a poll that finds it has made no progress since the last one counts as an attempt.
+ * Each request runs on the fan-out executor, and the backoff in between is waited on the migration timer,
+ * so no thread is held while a migration waits.
  */
 public class TransferReplicates {
+    private static final long INITIAL_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 30000;
     private final int key;
     private final String uri;
 
@@ -30,18 +43,7 @@ public class TransferReplicates {
      */
     public void toNewReplica() {
         List<JsonObject> details = Driver.ring.getTransferDetailForAddingReplica(this.key);
-        Thread[] tasks = new Thread[details.size()];
-
-        try {
-            for (int i = 0; i < details.size(); i++) {
-                tasks[i] = new Thread(new Send(details.get(i), this.uri));
-                tasks[i].start();
-            }
-
-            for (Thread task : tasks) {
-                task.join();
-            }
-        } catch (Exception ignored) {}
+        send(details);
     }
 
     /**
@@ -49,59 +51,132 @@ public class TransferReplicates {
      */
     public void toRemappedReplica() {
         List<JsonObject> details = Driver.ring.getTransferDetailForRemovingReplica(this.key);
-        Thread[] tasks = new Thread[details.size()];
-
-        try {
-            for (int i = 0; i < details.size(); i++) {
-                tasks[i] = new Thread(new Send(details.get(i), this.uri));
-                tasks[i].start();
-            }
+        send(details);
+    }
 
-            for (Thread task : tasks) {
-                task.join();
-            }
-        } catch (Exception ignored) {}
+    /**
+     * Helper method to start the transfer requests on the shared fan-out executor without waiting for them.
+     *
+     * @param details
+     */
+    private void send(List<JsonObject> details) {
+        for (JsonObject detail : details) {
+            new Send(detail, this.uri).start();
+        }
     }
 
     /**
      * Nested Send class to send transfer request concurrently.
+     * Its state is only touched by one attempt at a time, each started after the previous one finished.
      */
     private class Send implements Runnable {
         private final JsonObject detail;
-        private final URL url;
+        private final String url;
+        private final String migration;
+        private long backoff;
+        private int attempts;
+        private String progress;
 
         /**
          * Send constructor.
          *
          * @param detail
          * @param uri
-         * @throws Exception
          */
-        private Send(JsonObject detail, String uri) throws Exception {
+        private Send(JsonObject detail, String uri) {
             this.detail = detail;
-            this.url = new URL("http://" + detail.get("from").getAsString() + uri);
+            this.url = detail.get("from").getAsString() + uri;
+            this.migration = UUID.randomUUID().toString();
+            this.detail.addProperty("migration", this.migration);
+            this.backoff = INITIAL_BACKOFF;
+            this.attempts = 0;
+            this.progress = null;
         }
 
         /**
-         * Start the POST request to inform a replica to transfer data to another replica.
+         * Submit the next attempt to the fan-out executor.
+         * An attempt the executor rejects counts as a failed one, and is tried again after the backoff.
+         */
+        private void start() {
+            try {
+                Driver.fanOut.submit(this.detail.get("from").getAsString(), this);
+            } catch (RejectedExecutionException ree) {
+                this.attempts++;
+                retry();
+            }
+        }
+
+        /**
+         * Send the POST request to inform a replica to transfer data to another replica,
+         * and schedule it again unless the migration is done or the attempts run out.
          */
         @Override
         public void run() {
             try {
-                HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
-                connection.setReadTimeout(5000);
-                connection.setConnectTimeout(5000);
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json");
-                connection.setDoOutput(true);
-
-                OutputStream os = connection.getOutputStream();
-                os.write(this.detail.toString().getBytes());
-                os.flush();
-                os.close();
-
-                connection.getResponseCode();
-            } catch (IOException ignored) {}
+                HttpClient.Response response = Driver.httpClient.post(this.url, this.detail.toString());
+                int status = response.getStatusCode();
+
+                if (status == HttpURLConnection.HTTP_OK) {
+                    System.out.println("[Transfer] Migration " + this.migration + " done");
+                    return;
+                } else if (status == HttpURLConnection.HTTP_BAD_REQUEST) {
+                    System.out.println("[Transfer] Migration " + this.migration + " rejected");
+                    return;
+                }
+
+                resume(response.getBody());
+                if (status != HttpURLConnection.HTTP_CONFLICT || response.getBody().equals(this.progress)) {
+                    this.attempts++;
+                }
+                this.progress = (status == HttpURLConnection.HTTP_CONFLICT) ? response.getBody() : null;
+            } catch (IOException ioe) {
+                this.attempts++;
+            }
+
+            retry();
+        }
+
+        /**
+         * Helper method to start the next attempt on the migration timer after the backoff,
+         * or give up if the attempts ran out.
+         */
+        private void retry() {
+            if (this.attempts >= Driver.migrationAttempts) {
+                System.out.println("[Transfer] Migration " + this.migration + " gave up at range "
+                        + this.detail.get("range"));
+                return;
+            }
+
+            long delay = this.backoff;
+            this.backoff = Math.min(this.backoff * 2, MAX_BACKOFF);
+            try {
+                Driver.migrationTimer.schedule(this::start, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ree) {
+                System.out.println("[Transfer] Migration " + this.migration + " stopped at range "
+                        + this.detail.get("range"));
+            }
+        }
+
+        /**
+         * Helper method to move the start of the range to the checkpoint in the progress replied,
+         * so the migration is resumed from there if it is started again.
+         *
+         * @param body
+         */
+        private void resume(String body) {
+            try {
+                JsonElement progress = new JsonParser().parse(body);
+                if (!progress.isJsonObject() || progress.getAsJsonObject().get("checkpoint") == null) {
+                    return;
+                }
+
+                int checkpoint = progress.getAsJsonObject().get("checkpoint").getAsInt();
+                if (checkpoint >= 0) {
+                    JsonArray range = this.detail.get("range").getAsJsonArray();
+                    range.set(0, progress.getAsJsonObject().get("checkpoint"));
+                    System.out.println("[Transfer] Migration " + this.migration + " resumes at range " + range);
+                }
+            } catch (JsonParseException | IllegalStateException | NumberFormatException ignored) {}
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package Coordinator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RingTest class to check that a restarted replica keeps its key, and a new one gets a free key.
+ */
+public class RingTest {
+    private Ring ring;
+
+    @Before
+    public void setUp() {
+        this.ring = new Ring(16);
+        this.ring.setN(3);
+    }
+
+    /**
+     * A replica still in the ring rejoins at its key, another id asking for that key does not.
+     */
+    @Test
+    public void rejoinsAtSameKey() {
+        int key = this.ring.add(replica("a", -1));
+
+        assertTrue(this.ring.rejoin(replica("a", key)));
+        assertFalse(this.ring.rejoin(replica("b", key)));
+        assertFalse(this.ring.rejoin(replica("a", (key + 1) % 16)));
+        assertEquals(1, this.ring.getSeedsAndRingProperty().get("seeds").getAsJsonArray().size());
+    }
+
+    /**
+     * A replica that asks for a free key gets it, and one that asks for a taken key is assigned another.
+     */
+    @Test
+    public void reusesRequestedKeyIfFree() {
+        assertEquals(5, this.ring.add(replica("a", 5)));
+
+        int key = this.ring.add(replica("b", 5));
+        assertNotEquals(5, key);
+        assertTrue(key >= 0 && key < 16);
+    }
+
+    /**
+     * A replica is not added to a full ring.
+     */
+    @Test
+    public void rejectsReplicaWhenFull() {
+        Ring full = new Ring(1);
+
+        assertEquals(0, full.add(replica("a", 3)));
+        assertEquals(-1, full.add(replica("b", -1)));
+    }
+
+    /**
+     * Helper method to create a seed replica asking for a key.
+     *
+     * @param id
+     * @param key
+     * @return Replica
+     */
+    static Replica replica(String id, int key) {
+        Replica replica = new Replica();
+        replica.setId(id);
+        replica.setHost("127.0.0.1");
+        replica.setPort("8080");
+        replica.setSeed(true);
+        replica.setKey(key);
+
+        return replica;
+    }
+}
@@ -0,0 +1,113 @@
+package Coordinator;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * TransferReplicatesTest class to check that a migration runs in the background,
+ * and is sent again from the checkpoint the replica replied, against a fake replica.
+ */
+public class TransferReplicatesTest {
+    private HttpServer sender;
+    private BlockingQueue<JsonObject> requests;
+    private CountDownLatch firstReply;
+    private AtomicBoolean replied;
+
+    @Before
+    public void setUp() throws IOException {
+        this.requests = new LinkedBlockingQueue<>();
+        this.firstReply = new CountDownLatch(1);
+        this.replied = new AtomicBoolean();
+        this.sender = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.sender.createContext("/transfer", this::transfer);
+        this.sender.start();
+
+        Driver.ring = new Ring(16);
+        Driver.ring.setN(3);
+        Replica old = RingTest.replica("old", 0);
+        old.setPort(String.valueOf(this.sender.getAddress().getPort()));
+        Driver.ring.add(old);
+    }
+
+    @After
+    public void tearDown() {
+        this.sender.stop(0);
+    }
+
+    /**
+     * Starting a migration does not wait for the replica, and a failed attempt is sent again
+     * with the same migration id, from the checkpoint.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void resumesInBackground() throws InterruptedException {
+        int key = Driver.ring.add(RingTest.replica("new", 8));
+
+        new TransferReplicates(key).toNewReplica();
+        assertFalse(this.replied.get());
+
+        JsonObject first = this.requests.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertEquals(0, first.get("range").getAsJsonArray().get(0).getAsInt());
+        this.firstReply.countDown();
+
+        JsonObject second = this.requests.poll(10, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertEquals(first.get("migration"), second.get("migration"));
+        assertEquals(5, second.get("range").getAsJsonArray().get(0).getAsInt());
+        assertNull(this.requests.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Helper method to act as the sending replica: hold the first request until the test lets it fail
+     * with a checkpoint, and finish the migration on the next one.
+     *
+     * @param exchange
+     * @throws IOException
+     */
+    private void transfer(HttpExchange exchange) throws IOException {
+        JsonObject detail = new JsonParser().parse(new InputStreamReader(exchange.getRequestBody()
+                , StandardCharsets.UTF_8)).getAsJsonObject();
+        boolean first = this.firstReply.getCount() > 0;
+        this.requests.add(detail);
+
+        int status = 200;
+        String body = "{\"checkpoint\":-1}";
+        if (first) {
+            try {
+                this.firstReply.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {}
+            status = 503;
+            body = "{\"checkpoint\":5}";
+        }
+
+        this.replied.set(true);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
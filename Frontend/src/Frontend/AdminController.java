@@ -0,0 +1,62 @@
+package Frontend;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * AdminController to expose internal metrics of the frontend.
+ */
+@RestController
+public class AdminController {
+
+    /**
+     * Return the metrics of the pooled connections to the backend replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/pool", method = RequestMethod.GET, produces = "application/json")
+    public String pool() {
+        return Driver.httpClient.getMetrics().toString();
+    }
+
+    /**
+     * Return the state of the circuit to each backend replica.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/circuits", method = RequestMethod.GET, produces = "application/json")
+    public String circuits() {
+        return Driver.circuitBreaker.getMetrics().toString();
+    }
+
+    /**
+     * Return the load of each backend replica used to pick the coordinators.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/coordinators", method = RequestMethod.GET, produces = "application/json")
+    public String coordinators() {
+        return Driver.loadTracker.getMetrics().toString();
+    }
+
+    /**
+     * Return the coordinators learned from the redirects of the backend replicas.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/redirects", method = RequestMethod.GET, produces = "application/json")
+    public String redirects() {
+        return Driver.ring.getOverrides().toString();
+    }
+
+    /**
+     * Return the metrics of the read cache.
+     *
+     * @return String
+     */
+    @RequestMapping(value = "/admin/cache", method = RequestMethod.GET, produces = "application/json")
+    public String cache() {
+        return Driver.readCache.getMetrics().toString();
+    }
+}
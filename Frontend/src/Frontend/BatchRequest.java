@@ -0,0 +1,232 @@
+package Frontend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * BatchRequest class to pass a multi-key request to the backend replicas.
+ * The keys are grouped by the coordinator picked for each of them, and each coordinator
+ * gets one request with all of its keys. The requests to different coordinators are sent concurrently.
+ * The keys redirected by their coordinators are sent again in another round to the coordinators they were
+ * redirected to, at most the maximum number of redirects.
+ */
+public class BatchRequest extends HttpRequest {
+    private final String path;
+    private final Map<String, String[]> coordinators;
+    private final Map<String, JsonArray> batches;
+    private final Map<JsonObject, String> redirects;
+    private final JsonObject replies;
+
+    /**
+     * BatchRequest constructor.
+     *
+     * @param path
+     */
+    public BatchRequest(String path) {
+        this.path = path;
+        this.coordinators = new HashMap<>();
+        this.batches = new HashMap<>();
+        this.redirects = new LinkedHashMap<>();
+        this.replies = new JsonObject();
+    }
+
+    /**
+     * Add a key into the batch of the coordinator picked for it.
+     * If there is no coordinator for the key, reply bad request for it.
+     *
+     * @param hashKey
+     * @param key
+     * @param data
+     */
+    public void add(int hashKey, String key, JsonElement data) {
+        String[] hostInfo = Driver.ring.findCoordinatorForKey(hashKey);
+
+        if (hostInfo[1] == null) {
+            addReply(key, HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        JsonObject entry = new JsonObject();
+        entry.addProperty("hashKey", hashKey);
+        entry.addProperty("key", key);
+        if (data != null) {
+            entry.add("data", data);
+        }
+
+        group(hostInfo, entry);
+    }
+
+    /**
+     * Send the batches to their coordinators concurrently, and wait until all of them reply.
+     * Then send the redirected keys to the coordinators they were redirected to, and wait again.
+     *
+     * @return JsonObject
+     */
+    public JsonObject start() {
+        for (int round = 0; !this.batches.isEmpty(); round++) {
+            CountDownLatch countDownLatch = new CountDownLatch(this.batches.size());
+            boolean follow = round < Driver.maxRedirects;
+
+            for (Map.Entry<String, JsonArray> batch : this.batches.entrySet()) {
+                Driver.batchExecutor.execute(new Send(countDownLatch, this.coordinators.get(batch.getKey())
+                        , batch.getValue(), follow));
+            }
+
+            try {
+                countDownLatch.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            this.coordinators.clear();
+            this.batches.clear();
+            synchronized (this.redirects) {
+                for (Map.Entry<JsonObject, String> redirect : this.redirects.entrySet()) {
+                    JsonObject entry = redirect.getKey();
+                    group(Driver.ring.learnCoordinator(entry.get("hashKey").getAsInt(), redirect.getValue()), entry);
+                }
+                this.redirects.clear();
+            }
+        }
+
+        synchronized (this.replies) {
+            return this.replies;
+        }
+    }
+
+    /**
+     * Helper method to add a key into the batch of its coordinator.
+     *
+     * @param hostInfo
+     * @param entry
+     */
+    private void group(String[] hostInfo, JsonObject entry) {
+        this.coordinators.put(hostInfo[0], hostInfo);
+        this.batches.computeIfAbsent(hostInfo[0], id -> new JsonArray()).add(entry);
+    }
+
+    /**
+     * Helper method to add a reply without data of a key.
+     *
+     * @param key
+     * @param status
+     */
+    private void addReply(String key, int status) {
+        JsonObject reply = new JsonObject();
+        reply.addProperty("status", status);
+
+        synchronized (this.replies) {
+            this.replies.add(key, reply);
+        }
+    }
+
+    /**
+     * Nested Send class to send a batch to its coordinator.
+     */
+    private class Send implements Runnable {
+        private final CountDownLatch countDownLatch;
+        private final String[] hostInfo;
+        private final JsonArray batch;
+        private final boolean follow;
+
+        /**
+         * Send constructor.
+         *
+         * @param countDownLatch
+         * @param hostInfo
+         * @param batch
+         * @param follow
+         */
+        private Send(CountDownLatch countDownLatch, String[] hostInfo, JsonArray batch, boolean follow) {
+            this.countDownLatch = countDownLatch;
+            this.hostInfo = hostInfo;
+            this.batch = batch;
+            this.follow = follow;
+        }
+
+        /**
+         * Send the batch and add the reply of each key, and keep the redirected keys to send again
+         * if the redirects are followed in this round.
+         * If the coordinator is unreachable, count it on its circuit and reply bad request for all its keys.
+         * If it does not answer before the deadline, reply gateway timeout for all its keys.
+         */
+        @Override
+        public void run() {
+            try {
+                HttpClient.Response response = doReplicaRequest(this.hostInfo, BatchRequest.this.path, this.batch);
+
+                if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                    JsonObject result = parseResponse(response).getAsJsonObject();
+
+                    synchronized (BatchRequest.this.replies) {
+                        for (Map.Entry<String, JsonElement> reply : result.entrySet()) {
+                            BatchRequest.this.replies.add(reply.getKey(), reply.getValue());
+                        }
+                    }
+                    if (this.follow) {
+                        keepRedirects(result);
+                    }
+                } else {
+                    failAll(response.getStatusCode());
+                }
+            } catch (SocketTimeoutException ste) {
+                failAll(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                failAll(HttpServletResponse.SC_BAD_REQUEST);
+            } catch (JsonParseException | IllegalStateException e) {
+                failAll(HttpServletResponse.SC_BAD_REQUEST);
+            } finally {
+                this.countDownLatch.countDown();
+            }
+        }
+
+        /**
+         * Helper method to keep the keys redirected to another coordinator, with the address redirected to.
+         *
+         * @param result
+         */
+        private void keepRedirects(JsonObject result) {
+            for (int i = 0; i < this.batch.size(); i++) {
+                JsonObject entry = this.batch.get(i).getAsJsonObject();
+                JsonElement reply = result.get(entry.get("key").getAsString());
+
+                if (reply != null && reply.isJsonObject() && reply.getAsJsonObject().has("status")
+                        && reply.getAsJsonObject().get("status").getAsInt()
+                        == HttpServletResponse.SC_TEMPORARY_REDIRECT) {
+                    JsonElement data = reply.getAsJsonObject().get("data");
+                    String address = (data == null) ? null : getRedirectAddress(data.toString());
+
+                    if (address != null && !address.equals(this.hostInfo[1])) {
+                        synchronized (BatchRequest.this.redirects) {
+                            BatchRequest.this.redirects.put(entry, address);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Helper method to reply the same status for all keys in the batch.
+         *
+         * @param status
+         */
+        private void failAll(int status) {
+            for (int i = 0; i < this.batch.size(); i++) {
+                addReply(this.batch.get(i).getAsJsonObject().get("key").getAsString(), status);
+            }
+        }
+    }
+}
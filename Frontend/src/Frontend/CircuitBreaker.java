@@ -0,0 +1,300 @@
+package Frontend;
+
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CircuitBreaker class to keep the health of each replica, shared by every request to it.
+ *
+ * A circuit is closed while the replica answers. After enough failed requests in a row the circuit opens,
+ * and the requests to the replica fail right away instead of waiting for a timeout, so the caller moves on
+ * to another replica at once. When the cooldown has passed, one request is let through as a probe and the
+ * circuit is half-open: an answer closes the circuit, a failure opens it again.
+ * If the probe never finishes, another one is let through after one more cooldown.
+ * Every module has the same copy of this class apart from the package, keep them identical.
+ */
+public class CircuitBreaker {
+    private final ConcurrentMap<String, Circuit> circuits;
+    private final AtomicLong rejected;
+    private volatile int threshold;
+    private volatile long cooldown;
+
+    /**
+     * State of a circuit.
+     */
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * CircuitBreaker constructor.
+     */
+    public CircuitBreaker() {
+        this.circuits = new ConcurrentHashMap<>();
+        this.rejected = new AtomicLong();
+        this.threshold = 3;
+        this.cooldown = TimeUnit.MILLISECONDS.toNanos(1000);
+    }
+
+    /**
+     * Threshold setter, the number of failed requests in a row that opens a circuit.
+     *
+     * @param threshold
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = Math.max(1, threshold);
+    }
+
+    /**
+     * Cooldown setter in milliseconds, the time an open circuit waits before letting a probe through.
+     *
+     * @param cooldown
+     */
+    public void setCooldown(long cooldown) {
+        this.cooldown = TimeUnit.MILLISECONDS.toNanos(cooldown);
+    }
+
+    /**
+     * Return true if a request to the replica may be sent, and take the probe if the circuit is ready for one.
+     *
+     * @param id
+     * @return boolean
+     */
+    public boolean allow(String id) {
+        Circuit circuit = this.circuits.get(id);
+
+        if (circuit == null || circuit.allow(System.nanoTime(), this.cooldown)) {
+            return true;
+        }
+
+        this.rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Return true if a request to the replica would be sent, without taking the probe.
+     *
+     * @param id
+     * @return boolean
+     */
+    public boolean isAvailable(String id) {
+        Circuit circuit = this.circuits.get(id);
+
+        return circuit == null || circuit.isAvailable(System.nanoTime(), this.cooldown);
+    }
+
+    /**
+     * Return true if the circuit of the replica is open.
+     *
+     * @param id
+     * @return boolean
+     */
+    public boolean isOpen(String id) {
+        Circuit circuit = this.circuits.get(id);
+
+        return circuit != null && circuit.getState() == State.OPEN;
+    }
+
+    /**
+     * Count a request the replica answered.
+     *
+     * @param id
+     */
+    public void success(String id) {
+        Circuit circuit = this.circuits.get(id);
+
+        if (circuit != null && circuit.success()) {
+            System.out.println("[Circuit] closed the circuit to " + id);
+        }
+    }
+
+    /**
+     * Count a request the replica did not answer.
+     *
+     * @param id
+     */
+    public void failure(String id) {
+        if (this.circuits.computeIfAbsent(id, peer -> new Circuit()).failure(System.nanoTime(), this.threshold)) {
+            System.out.println("[Circuit] opened the circuit to " + id);
+        }
+    }
+
+    /**
+     * Count the request of a future once it completes. Only an IOException counts as a failure,
+     * a cancelled or rejected request says nothing about the replica.
+     *
+     * @param id
+     * @param future
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<T> track(String id, CompletableFuture<T> future) {
+        future.whenComplete((response, error) -> {
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null)
+                    ? error.getCause() : error;
+
+            if (cause == null) {
+                success(id);
+            } else if (cause instanceof IOException && !(cause instanceof OpenException)) {
+                failure(id);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Forget the circuit of a replica that left the ring.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        this.circuits.remove(id);
+    }
+
+    /**
+     * Return the settings and the state of each circuit in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        metrics.addProperty("threshold", this.threshold);
+        metrics.addProperty("cooldown", TimeUnit.NANOSECONDS.toMillis(this.cooldown));
+        metrics.addProperty("rejected", this.rejected.get());
+
+        JsonObject circuits = new JsonObject();
+        for (Map.Entry<String, Circuit> entry : this.circuits.entrySet()) {
+            circuits.add(entry.getKey(), entry.getValue().toJson());
+        }
+        metrics.add("circuits", circuits);
+
+        return metrics;
+    }
+
+    /**
+     * Nested Circuit class for the state of one replica.
+     */
+    private static class Circuit {
+        private State state;
+        private int failures;
+        private long openedAt;
+
+        /**
+         * Circuit constructor.
+         */
+        private Circuit() {
+            this.state = State.CLOSED;
+            this.failures = 0;
+            this.openedAt = 0;
+        }
+
+        /**
+         * Return true if a request may be sent, and turn the circuit half-open for the probe.
+         *
+         * @param now
+         * @param cooldown
+         * @return boolean
+         */
+        private synchronized boolean allow(long now, long cooldown) {
+            if (this.state == State.CLOSED) {
+                return true;
+            } else if (now - this.openedAt < cooldown) {
+                return false;
+            }
+
+            this.state = State.HALF_OPEN;
+            this.openedAt = now;
+
+            return true;
+        }
+
+        /**
+         * Return true if a request would be sent.
+         *
+         * @param now
+         * @param cooldown
+         * @return boolean
+         */
+        private synchronized boolean isAvailable(long now, long cooldown) {
+            return this.state == State.CLOSED || now - this.openedAt >= cooldown;
+        }
+
+        /**
+         * Return the state.
+         *
+         * @return State
+         */
+        private synchronized State getState() {
+            return this.state;
+        }
+
+        /**
+         * Close the circuit, return true if it was not closed.
+         *
+         * @return boolean
+         */
+        private synchronized boolean success() {
+            boolean closed = this.state != State.CLOSED;
+            this.state = State.CLOSED;
+            this.failures = 0;
+
+            return closed;
+        }
+
+        /**
+         * Count a failure, return true if it opens the circuit.
+         * A failed probe opens it again right away.
+         *
+         * @param now
+         * @param threshold
+         * @return boolean
+         */
+        private synchronized boolean failure(long now, int threshold) {
+            this.failures++;
+
+            if (this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.failures >= threshold)) {
+                this.state = State.OPEN;
+                this.openedAt = now;
+
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Return the circuit in Json format.
+         *
+         * @return JsonObject
+         */
+        private synchronized JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("state", this.state.toString());
+            json.addProperty("failures", this.failures);
+
+            return json;
+        }
+    }
+
+    /**
+     * Nested OpenException class for a request that was not sent because the circuit of the replica is open.
+     */
+    static class OpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * OpenException constructor.
+         *
+         * @param id
+         */
+        OpenException(String id) {
+            super("Circuit to " + id + " is open");
+        }
+    }
+}
@@ -4,6 +4,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Driver class to start the Frontend.
@@ -23,6 +25,40 @@ public class Driver {
      */
     static String coordinator;
 
+    /**
+     * Http client with pooled keep-alive connections to the backend replicas.
+     */
+    static final HttpClient httpClient = new HttpClient();
+
+    /**
+     * Circuit breakers of the requests to each backend replica.
+     */
+    static final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Load of each backend replica to pick the coordinator of a request.
+     */
+    static final LoadTracker loadTracker = new LoadTracker();
+
+    /**
+     * Cache of the versions read through the frontend, off by default.
+     */
+    static final ReadCache readCache = new ReadCache();
+
+    /**
+     * Executor to send the batches of a multi-key request to the backend replicas concurrently.
+     */
+    static final ExecutorService batchExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "batch-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Maximum number of redirects of the backend replicas to follow in a request.
+     */
+    static int maxRedirects = 2;
+
     /**
      * Server alive status.
      */
@@ -63,6 +99,9 @@ public class Driver {
         boolean portInit = false;
         boolean coordinatorInit = false;
 
+        // deadline of each request to the backend in milliseconds, unless -dl sets another one
+        Driver.httpClient.setDeadline(3000);
+
         for (int i = 0; i < args.length - 1; i++) {
             if (args[i].equals("-p")) {
                 // port
@@ -72,11 +111,51 @@ public class Driver {
                 // coordinator
                 Driver.coordinator = args[++i];
                 coordinatorInit = true;
+            } else if (args[i].equals("-ct")) {
+                // connect timeout of requests to the backend in milliseconds
+                Driver.httpClient.setConnectTimeout(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-rt")) {
+                // read timeout of requests to the backend in milliseconds
+                Driver.httpClient.setReadTimeout(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-pc")) {
+                // maximum number of idle connections kept for each backend replica
+                Driver.httpClient.setMaxIdlePerPeer(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-dl")) {
+                // deadline of each request to the backend in milliseconds, 0 for none
+                Driver.httpClient.setDeadline(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-cf")) {
+                // number of failed requests in a row that opens the circuit of a backend replica
+                Driver.circuitBreaker.setThreshold(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-co")) {
+                // time an open circuit waits before probing the backend replica in milliseconds
+                Driver.circuitBreaker.setCooldown(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-ld")) {
+                // time for the latency of an idle backend replica to decay in milliseconds
+                Driver.loadTracker.setDecay(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-mr")) {
+                // maximum number of redirects of the backend replicas to follow in a request
+                Driver.maxRedirects = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-cs")) {
+                // maximum number of keys in the read cache, 0 to turn it off
+                Driver.readCache.setMaxEntries(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-cw")) {
+                // maximum total length of the versions in the read cache, 0 for no limit
+                Driver.readCache.setMaxWeight(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-sb")) {
+                // age in milliseconds after which a cached key is refreshed in the background
+                Driver.readCache.setStaleness(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-ck")) {
+                // comma separated prefixes of the keys to cache, all keys if not set
+                Driver.readCache.setKeyspaces(args[++i]);
             }
         }
 
         if (!portInit || !coordinatorInit) {
-            System.out.println("[System] Usage: java -jar Frontend.jar -p <port> -c <coordinator_address>");
+            System.out.println("[System] Usage: java -jar Frontend.jar -p <port> -c <coordinator_address> " +
+                    "[-ct <connect_timeout_ms>] [-rt <read_timeout_ms>] [-pc <idle_connections_per_peer>] " +
+                    "[-dl <request_deadline_ms>] [-cf <circuit_failures>] [-co <circuit_cooldown_ms>] " +
+                    "[-ld <latency_decay_ms>] [-mr <max_redirects>] [-cs <cache_entries>] " +
+                    "[-cw <cache_weight>] [-sb <staleness_bound_ms>] [-ck <cached_key_prefixes>]");
             throw new Exception();
         }
 
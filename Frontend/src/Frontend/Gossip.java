@@ -13,6 +13,8 @@ public class Gossip extends HttpRequest implements Runnable {
 
     /**
      * Randomly choose one backend replica in the ring to request for membership history per second.
+     * If a replica is unreachable and its circuit opens, remove it from the ring.
+     * Skip the round if the circuit of the replica is open already but not ready for a probe.
      */
     @Override
     public void run() {
@@ -20,21 +22,24 @@ public class Gossip extends HttpRequest implements Runnable {
             String[] peerInfo = Driver.ring.getOnePeer();
 
             if (peerInfo[1] != null) {
-                String url = peerInfo[1] + "/gossip";
-
                 try {
-                    HttpURLConnection connection = doGetRequest(url);
-                    JsonObject response = parseResponse(connection).getAsJsonObject();
+                    HttpClient.Response reply = doReplicaRequest(peerInfo, "/gossip", null);
 
-                    if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                    if (reply.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                        JsonObject response = parseResponse(reply).getAsJsonObject();
                         Driver.ring.updateMembership(response);
                     } else {
+                        Driver.circuitBreaker.failure(peerInfo[0]);
                         throw new IOException();
                     }
-                } catch (JsonParseException ignored) {
+                } catch (JsonParseException | CircuitBreaker.OpenException ignored) {
 
                 } catch (IOException ignored) {
-                    Driver.ring.remove(peerInfo[0]);
+                    if (Driver.circuitBreaker.isOpen(peerInfo[0])) {
+                        Driver.ring.remove(peerInfo[0]);
+                        Driver.circuitBreaker.remove(peerInfo[0]);
+                        Driver.loadTracker.remove(peerInfo[0]);
+                    }
                 }
             }
 
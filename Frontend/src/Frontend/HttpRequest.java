@@ -1,16 +1,11 @@
 package Frontend;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 
-import java.io.BufferedReader;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 /**
  * Abstract HttpRequest for commonly used connection methods.
@@ -18,54 +13,106 @@ import java.net.URL;
 abstract class HttpRequest {
 
     /**
-     * Open a Http URL connection with pass-in address.
+     * Send a GET Http request over the pooled connections.
      *
-     * @param address
-     * @return HttpURLConnection
+     * @param url
+     * @return HttpClient.Response
      * @throws IOException
      */
-    private HttpURLConnection initConnection(String address) throws IOException {
-        URL url = new URL("http://" + address);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setReadTimeout(5000);
-
-        return connection;
+    HttpClient.Response doGetRequest(String url) throws IOException {
+        return Driver.httpClient.get(url);
     }
 
     /**
-     * Initialize a GET Http request.
+     * Send a POST Http request with the Json request body over the pooled connections.
      *
      * @param url
-     * @return HttpURLConnection
+     * @param body
+     * @return HttpClient.Response
      * @throws IOException
      */
-    HttpURLConnection doGetRequest(String url) throws IOException {
-        HttpURLConnection connection = initConnection(url);
-        connection.setRequestMethod("GET");
+    HttpClient.Response doPostRequest(String url, JsonElement body) throws IOException {
+        return Driver.httpClient.post(url, body.toString());
+    }
 
-        return connection;
+    /**
+     * Send a request to a backend replica, a GET request if there is no body and a POST request otherwise.
+     * Fail right away if the circuit of the replica is open, and count the request on the circuit otherwise.
+     * The request counts in the load of the replica while it is in flight, and its latency after,
+     * or a penalty if the replica did not answer.
+     *
+     * @param hostInfo
+     * @param path
+     * @param body
+     * @return HttpClient.Response
+     * @throws IOException
+     */
+    HttpClient.Response doReplicaRequest(String[] hostInfo, String path, JsonElement body) throws IOException {
+        if (!Driver.circuitBreaker.allow(hostInfo[0])) {
+            throw new CircuitBreaker.OpenException(hostInfo[0]);
+        }
+
+        long start = Driver.loadTracker.start(hostInfo[0]);
+        boolean failed = true;
+        try {
+            HttpClient.Response response = (body == null)
+                    ? doGetRequest(hostInfo[1] + path) : doPostRequest(hostInfo[1] + path, body);
+            Driver.circuitBreaker.success(hostInfo[0]);
+            failed = false;
+
+            return response;
+        } catch (IOException ioe) {
+            Driver.circuitBreaker.failure(hostInfo[0]);
+            throw ioe;
+        } finally {
+            Driver.loadTracker.finish(hostInfo[0], start, failed);
+        }
     }
 
     /**
-     * Initialize a POST Http request and pass the Json request body.
+     * Send a request of a key to a backend replica, and follow the redirects if the replica does not
+     * handle the key, at most the maximum number of redirects. Each replica redirected to is learned
+     * as the coordinator of the key. The last redirect is returned if there are still more.
      *
-     * @param url
+     * @param hostInfo
+     * @param hashKey
+     * @param path
      * @param body
-     * @return HttpURLConnection
+     * @return HttpClient.Response
      * @throws IOException
      */
-    HttpURLConnection doPostRequest(String url, JsonObject body) throws IOException {
-        HttpURLConnection connection = initConnection(url);
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
-
-        OutputStream os = connection.getOutputStream();
-        os.write(body.toString().getBytes());
-        os.flush();
-        os.close();
-
-        return connection;
+    HttpClient.Response doKeyRequest(String[] hostInfo, int hashKey, String path, JsonElement body)
+            throws IOException {
+        HttpClient.Response response = doReplicaRequest(hostInfo, path, body);
+
+        for (int redirects = 0; redirects < Driver.maxRedirects
+                && response.getStatusCode() == HttpServletResponse.SC_TEMPORARY_REDIRECT; redirects++) {
+            String address = getRedirectAddress(response.getBody());
+            if (address == null || address.equals(hostInfo[1])) {
+                break;
+            }
+
+            hostInfo = Driver.ring.learnCoordinator(hashKey, address);
+            response = doReplicaRequest(hostInfo, path, body);
+        }
+
+        return response;
+    }
+
+    /**
+     * Return the address in the body of a redirect, null if there is none.
+     *
+     * @param body
+     * @return String
+     */
+    String getRedirectAddress(String body) {
+        try {
+            JsonElement redirect = parseJson(body).getAsJsonObject().get("address");
+
+            return (redirect == null || redirect.isJsonNull()) ? null : redirect.getAsString();
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException ignored) {
+            return null;
+        }
     }
 
     /**
@@ -81,23 +128,13 @@ abstract class HttpRequest {
     }
 
     /**
-     * Read and parse the response from a Http connection.
+     * Parse the response body of a Http request.
      *
-     * @param connection
+     * @param response
      * @return JsonElement
      * @throws JsonParseException
-     * @throws IOException
      */
-    JsonElement parseResponse(HttpURLConnection connection) throws JsonParseException, IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        StringBuilder sb = new StringBuilder();
-
-        String str;
-        while ((str = in.readLine()) != null) {
-            sb.append(str);
-        }
-        in.close();
-
-        return parseJson(sb.toString());
+    JsonElement parseResponse(HttpClient.Response response) throws JsonParseException {
+        return parseJson(response.getBody());
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package Frontend;
+
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadTracker class to keep the load of each backend replica, to pick the coordinator of a request.
+ *
+ * Every replica has a peak-sensitive moving average of its latency: a slower request raises it at once,
+ * a faster one lowers it gradually, and it decays while the replica gets no requests, so a replica that
+ * was avoided is tried again. A request the replica did not answer counts as a very slow one.
+ * The cost of a replica is its latency times the requests in flight to it plus one.
+ * Every module has the same copy of this class apart from the package, keep them identical.
+ */
+public class LoadTracker {
+    private static final double ALPHA = 0.2;
+    private static final long FAILURE_PENALTY = TimeUnit.SECONDS.toNanos(5);
+    private final ConcurrentMap<String, Load> loads;
+    private volatile long decay;
+
+    /**
+     * LoadTracker constructor.
+     */
+    public LoadTracker() {
+        this.loads = new ConcurrentHashMap<>();
+        this.decay = TimeUnit.SECONDS.toNanos(10);
+    }
+
+    /**
+     * Decay setter in milliseconds, the time for the latency of an idle replica to fall to about a third.
+     *
+     * @param decay
+     */
+    public void setDecay(long decay) {
+        this.decay = TimeUnit.MILLISECONDS.toNanos(Math.max(1, decay));
+    }
+
+    /**
+     * Count a request to a replica in flight, and return its start time.
+     *
+     * @param id
+     * @return long
+     */
+    public long start(String id) {
+        this.loads.computeIfAbsent(id, peer -> new Load()).start();
+
+        return System.nanoTime();
+    }
+
+    /**
+     * Count a request to a replica as finished, and record its latency, or the penalty if it failed.
+     *
+     * @param id
+     * @param start
+     * @param failed
+     */
+    public void finish(String id, long start, boolean failed) {
+        Load load = this.loads.get(id);
+
+        if (load != null) {
+            long now = System.nanoTime();
+            load.finish(now, failed ? FAILURE_PENALTY : now - start, this.decay);
+        }
+    }
+
+    /**
+     * Return the cost of sending a request to a replica, 0 if it has not been asked yet.
+     *
+     * @param id
+     * @return double
+     */
+    public double getCost(String id) {
+        Load load = this.loads.get(id);
+
+        return (load == null) ? 0 : load.getCost(System.nanoTime(), this.decay);
+    }
+
+    /**
+     * Forget the load of a replica removed from the ring.
+     *
+     * @param id
+     */
+    public void remove(String id) {
+        this.loads.remove(id);
+    }
+
+    /**
+     * Return the latency in milliseconds, the requests in flight and the cost of each replica in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        long now = System.nanoTime();
+
+        for (Map.Entry<String, Load> entry : this.loads.entrySet()) {
+            metrics.add(entry.getKey(), entry.getValue().toJson(now, this.decay));
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Nested Load class for the latency and the requests in flight of one replica.
+     */
+    private static class Load {
+        private double latency;
+        private long updatedAt;
+        private int inFlight;
+
+        /**
+         * Load constructor.
+         */
+        private Load() {
+            this.latency = 0;
+            this.updatedAt = System.nanoTime();
+            this.inFlight = 0;
+        }
+
+        /**
+         * Count a request in flight.
+         */
+        private synchronized void start() {
+            this.inFlight++;
+        }
+
+        /**
+         * Count a finished request, and add its latency to the moving average.
+         *
+         * @param now
+         * @param sample
+         * @param decay
+         */
+        private synchronized void finish(long now, long sample, long decay) {
+            double current = getLatency(now, decay);
+
+            this.latency = (sample > current) ? sample : ALPHA * sample + (1 - ALPHA) * current;
+            this.updatedAt = now;
+            this.inFlight = Math.max(0, this.inFlight - 1);
+        }
+
+        /**
+         * Return the latency decayed for the time since the last request finished.
+         *
+         * @param now
+         * @param decay
+         * @return double
+         */
+        private synchronized double getLatency(long now, long decay) {
+            return this.latency * Math.exp(-(double) Math.max(0, now - this.updatedAt) / decay);
+        }
+
+        /**
+         * Return the cost of one more request.
+         *
+         * @param now
+         * @param decay
+         * @return double
+         */
+        private synchronized double getCost(long now, long decay) {
+            return getLatency(now, decay) * (this.inFlight + 1);
+        }
+
+        /**
+         * Return the load in Json format.
+         *
+         * @param now
+         * @param decay
+         * @return JsonObject
+         */
+        private synchronized JsonObject toJson(long now, long decay) {
+            JsonObject json = new JsonObject();
+            json.addProperty("latency", getLatency(now, decay) / TimeUnit.MILLISECONDS.toNanos(1));
+            json.addProperty("inFlight", this.inFlight);
+            json.addProperty("cost", getCost(now, decay) / TimeUnit.MILLISECONDS.toNanos(1));
+
+            return json;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package Frontend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReadCache class to keep the merged versions of the keys read through the frontend.
+ *
+ * The cache is bounded by the number of entries and by their total weight, the length of the cached body,
+ * and evicts the least recently used entries. Every write the frontend forwards invalidates its key,
+ * and a read that started before the invalidation is not cached. An entry older than the staleness bound
+ * is still served while it is read again in the background, and the refreshed versions replace it only
+ * if their vector clocks are not older than the cached ones. The refreshes run on a few threads,
+ * and a refresh that finds them all busy and their queue full is dropped, the entry is refreshed on a later read.
+ * The cache is off while the number of entries is 0, and can be limited to the keys with some prefixes.
+ */
+public class ReadCache {
+    private static final int STRIPES = 64;
+    private static final int REFRESHERS = 4;
+    private static final int REFRESH_QUEUE = 64;
+    private final LinkedHashMap<String, Entry> entries;
+    private final long[] stamps;
+    private final ExecutorService refresher;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long refreshes;
+    private long staleRefreshes;
+    private long droppedRefreshes;
+    private volatile int maxEntries;
+    private volatile long maxWeight;
+    private volatile long staleness;
+    private volatile List<String> keyspaces;
+
+    /**
+     * ReadCache constructor.
+     */
+    public ReadCache() {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.stamps = new long[STRIPES];
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(REFRESHERS, REFRESHERS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE), r -> {
+            Thread thread = new Thread(r, "cache-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.refresher = pool;
+        this.maxEntries = 0;
+        this.maxWeight = 0;
+        this.staleness = TimeUnit.MILLISECONDS.toNanos(1000);
+        this.keyspaces = Collections.emptyList();
+    }
+
+    /**
+     * Maximum entries setter, 0 to turn the cache off.
+     *
+     * @param maxEntries
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+        evict();
+    }
+
+    /**
+     * Maximum weight setter, the total length of the cached bodies, 0 for no limit.
+     *
+     * @param maxWeight
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = Math.max(0, maxWeight);
+        evict();
+    }
+
+    /**
+     * Staleness bound setter in milliseconds, the age after which an entry is refreshed.
+     *
+     * @param staleness
+     */
+    public void setStaleness(long staleness) {
+        this.staleness = TimeUnit.MILLISECONDS.toNanos(staleness);
+    }
+
+    /**
+     * Keyspaces setter, the comma separated prefixes of the keys to cache, empty for all keys.
+     *
+     * @param keyspaces
+     */
+    public void setKeyspaces(String keyspaces) {
+        List<String> prefixes = new ArrayList<>();
+
+        for (String prefix : keyspaces.split(",")) {
+            if (!prefix.isEmpty()) {
+                prefixes.add(prefix);
+            }
+        }
+
+        this.keyspaces = prefixes;
+    }
+
+    /**
+     * Return if a key is cached, that is the cache is on and the key is in one of the keyspaces.
+     *
+     * @param key
+     * @return boolean
+     */
+    public boolean isEnabled(String key) {
+        if (this.maxEntries == 0) {
+            return false;
+        }
+
+        List<String> keyspaces = this.keyspaces;
+        if (keyspaces.isEmpty()) {
+            return true;
+        }
+
+        for (String prefix : keyspaces) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the cached versions of a key, null if it is not cached. If the entry is older than the
+     * staleness bound, it is still returned and the refresh is run in the background, once at a time.
+     * If the refreshers are saturated, the refresh is dropped and the entry can be refreshed by the next read.
+     *
+     * @param key
+     * @param refresh
+     * @return String
+     */
+    public String get(String key, Runnable refresh) {
+        boolean stale;
+        String body;
+
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry == null) {
+                this.misses++;
+                return null;
+            }
+
+            this.hits++;
+            body = entry.body;
+            stale = !entry.refreshing && System.nanoTime() - entry.loaded > this.staleness;
+            if (stale) {
+                entry.refreshing = true;
+                this.refreshes++;
+            }
+        }
+
+        if (stale) {
+            try {
+                this.refresher.execute(refresh);
+            } catch (RejectedExecutionException ree) {
+                synchronized (this) {
+                    this.droppedRefreshes++;
+                }
+                release(key);
+            }
+        }
+
+        return body;
+    }
+
+    /**
+     * Return the stamp of a key to take before reading it, to tell later if it was written since.
+     *
+     * @param key
+     * @return long
+     */
+    public synchronized long stamp(String key) {
+        return this.stamps[stripe(key)];
+    }
+
+    /**
+     * Cache the versions read of a key, unless the key was written since the stamp was taken.
+     * If the key is cached, the versions replace it only if they are not older than the cached versions,
+     * otherwise the cached versions are kept as they are still the latest.
+     *
+     * @param key
+     * @param data
+     * @param stamp
+     */
+    public synchronized void put(String key, JsonElement data, long stamp) {
+        if (this.maxEntries == 0 || this.stamps[stripe(key)] != stamp || !data.isJsonArray()) {
+            release(key);
+            return;
+        }
+
+        Entry cached = this.entries.get(key);
+        if (cached != null && isOlder(data.getAsJsonArray(), cached.versions)) {
+            this.staleRefreshes++;
+            cached.loaded = System.nanoTime();
+            cached.refreshing = false;
+            return;
+        }
+
+        Entry entry = new Entry(data.getAsJsonArray());
+        Entry replaced = this.entries.put(key, entry);
+        if (replaced != null) {
+            this.weight -= replaced.body.length();
+        }
+        this.weight += entry.body.length();
+
+        evict();
+    }
+
+    /**
+     * Let a key be refreshed again after a refresh that did not get its versions.
+     *
+     * @param key
+     */
+    public synchronized void release(String key) {
+        Entry entry = this.entries.get(key);
+
+        if (entry != null) {
+            entry.refreshing = false;
+        }
+    }
+
+    /**
+     * Remove a key that is written, so the reads that started before are not cached either.
+     *
+     * @param key
+     */
+    public synchronized void invalidate(String key) {
+        this.stamps[stripe(key)]++;
+
+        Entry entry = this.entries.remove(key);
+        if (entry != null) {
+            this.weight -= entry.body.length();
+            this.invalidations++;
+        }
+    }
+
+    /**
+     * Return the cache metrics in Json format.
+     *
+     * @return JsonObject
+     */
+    public synchronized JsonObject getMetrics() {
+        JsonObject metrics = new JsonObject();
+        JsonArray keyspaces = new JsonArray();
+        for (String prefix : this.keyspaces) {
+            keyspaces.add(prefix);
+        }
+
+        metrics.addProperty("enabled", this.maxEntries > 0);
+        metrics.add("keyspaces", keyspaces);
+        metrics.addProperty("entries", this.entries.size());
+        metrics.addProperty("maxEntries", this.maxEntries);
+        metrics.addProperty("weight", this.weight);
+        metrics.addProperty("maxWeight", this.maxWeight);
+        metrics.addProperty("staleness", TimeUnit.NANOSECONDS.toMillis(this.staleness));
+        metrics.addProperty("hits", this.hits);
+        metrics.addProperty("misses", this.misses);
+        metrics.addProperty("evictions", this.evictions);
+        metrics.addProperty("invalidations", this.invalidations);
+        metrics.addProperty("refreshes", this.refreshes);
+        metrics.addProperty("staleRefreshes", this.staleRefreshes);
+        metrics.addProperty("droppedRefreshes", this.droppedRefreshes);
+
+        return metrics;
+    }
+
+    /**
+     * Helper method to evict the least recently used entries until the cache is within its bounds.
+     */
+    private void evict() {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+
+        while (iterator.hasNext() && (this.entries.size() > this.maxEntries
+                || (this.maxWeight > 0 && this.weight > this.maxWeight))) {
+            this.weight -= iterator.next().body.length();
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Helper method to return the stripe of the stamps a key belongs to.
+     *
+     * @param key
+     * @return int
+     */
+    private int stripe(String key) {
+        return Math.floorMod(key.hashCode(), STRIPES);
+    }
+
+    /**
+     * Helper method to check if the versions read are older than the cached versions, that is every version
+     * read is descended by a cached version, and some cached version is not descended by any version read.
+     *
+     * @param versions
+     * @param cached
+     * @return boolean
+     */
+    private boolean isOlder(JsonArray versions, JsonArray cached) {
+        return coversAll(cached, versions) && !coversAll(versions, cached);
+    }
+
+    /**
+     * Helper method to check if every version of the second array is descended by a version of the first one.
+     *
+     * @param first
+     * @param second
+     * @return boolean
+     */
+    private boolean coversAll(JsonArray first, JsonArray second) {
+        for (int j = 0; j < second.size(); j++) {
+            Map<String, Long> clock = toClock(second.get(j));
+            boolean covered = false;
+
+            for (int i = 0; i < first.size() && !covered; i++) {
+                covered = descends(toClock(first.get(i)), clock);
+            }
+
+            if (!covered) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Helper method to check if a clock is equal to or after another clock.
+     *
+     * @param clock
+     * @param other
+     * @return boolean
+     */
+    private boolean descends(Map<String, Long> clock, Map<String, Long> other) {
+        for (Map.Entry<String, Long> entry : other.entrySet()) {
+            Long timestamp = clock.get(entry.getKey());
+
+            if (timestamp == null || timestamp < entry.getValue()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Helper method to read the vector clock of a version into a map from node to timestamp.
+     *
+     * @param version
+     * @return Map
+     */
+    private Map<String, Long> toClock(JsonElement version) {
+        Map<String, Long> clock = new HashMap<>();
+        JsonElement clocks = version.isJsonObject() ? version.getAsJsonObject().get("clocks") : null;
+
+        if (clocks != null && clocks.isJsonArray()) {
+            for (JsonElement element : clocks.getAsJsonArray()) {
+                JsonObject entry = element.getAsJsonObject();
+                clock.put(entry.get("node").getAsString(), entry.get("timestamp").getAsLong());
+            }
+        }
+
+        return clock;
+    }
+
+    /**
+     * Nested Entry class for the cached versions of a key.
+     */
+    private static class Entry {
+        private final JsonArray versions;
+        private final String body;
+        private long loaded;
+        private boolean refreshing;
+
+        /**
+         * Entry constructor.
+         *
+         * @param versions
+         */
+        private Entry(JsonArray versions) {
+            this.versions = versions;
+            this.body = versions.toString();
+            this.loaded = System.nanoTime();
+            this.refreshing = false;
+        }
+    }
+}
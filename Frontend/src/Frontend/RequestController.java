@@ -1,6 +1,7 @@
 package Frontend;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import org.springframework.web.bind.annotation.*;
@@ -8,6 +9,8 @@ import org.springframework.web.bind.annotation.*;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Map;
 
 /**
  * RequestController class to handle read/write request.
@@ -17,28 +20,52 @@ public class RequestController extends HttpRequest {
 
     /**
      * get() interface to hash the key and pass the request to the coordinator in the preference list.
+     * The redirects of a coordinator that does not handle the key are followed.
+     * If the key is cached, response with the cached versions, and refresh them in the background
+     * once they are stale. A Cache-Control header of no-cache reads the key again anyway,
+     * and no-store does not use the cache at all.
      *
      * @param key
+     * @param cacheControl
      * @param response
      * @return String
      */
     @RequestMapping(value = "/get/{key}", method = RequestMethod.GET, produces = "application/json")
-    public String get(@PathVariable String key, HttpServletResponse response) {
+    public String get(@PathVariable String key
+            , @RequestHeader(value = "Cache-Control", required = false) String cacheControl
+            , HttpServletResponse response) {
         System.out.println("[Request] GET key = " + key);
 
         int hashKey = getHashKey(key);
+        boolean cached = Driver.readCache.isEnabled(key) && !hasDirective(cacheControl, "no-store");
+
+        if (cached && !hasDirective(cacheControl, "no-cache")) {
+            String versions = Driver.readCache.get(key, () -> refresh(hashKey, key));
+
+            if (versions != null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                return versions;
+            }
+        }
+
+        long stamp = Driver.readCache.stamp(key);
         String[] hostInfo = Driver.ring.findCoordinatorForKey(hashKey);
 
         try {
             if (hostInfo[1] != null) {
-                String url = hostInfo[1] + "/get/" + hashKey + "/" + key;
-                HttpURLConnection connection = doGetRequest(url);
-                int statusCode = connection.getResponseCode();
+                HttpClient.Response reply = doKeyRequest(hostInfo, hashKey, "/get/" + hashKey + "/" + key, null);
+                int statusCode = reply.getStatusCode();
 
                 response.setStatus(statusCode);
-                if (statusCode == HttpURLConnection.HTTP_OK ||
-                        statusCode == HttpServletResponse.SC_TEMPORARY_REDIRECT) {
-                    return parseResponse(connection).toString();
+                if (statusCode == HttpURLConnection.HTTP_OK) {
+                    JsonElement versions = parseResponse(reply);
+                    if (cached) {
+                        Driver.readCache.put(key, versions, stamp);
+                    }
+
+                    return versions.toString();
+                } else if (statusCode == HttpServletResponse.SC_TEMPORARY_REDIRECT || isQuorumFailure(statusCode)) {
+                    return parseResponse(reply).toString();
                 } else {
                     return null;
                 }
@@ -46,9 +73,11 @@ public class RequestController extends HttpRequest {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 return null;
             }
+        } catch (SocketTimeoutException ste) {
+            response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+            return null;
         } catch (IOException ioe) {
             ioe.printStackTrace();
-            Driver.ring.remove(hostInfo[0]);
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             return null;
         }
@@ -56,6 +85,8 @@ public class RequestController extends HttpRequest {
 
     /**
      * put() interface to hash the key and pass the request to the coordinator in the preference list.
+     * The redirects of a coordinator that does not handle the key are followed.
+     * The key is removed from the cache before the write is forwarded, and again after it is done.
      *
      * @param key
      * @param requestBody
@@ -79,16 +110,16 @@ public class RequestController extends HttpRequest {
             return null;
         }
 
+        Driver.readCache.invalidate(key);
         try {
             if (hostInfo[1] != null) {
-                String url = hostInfo[1] + "/put/" + hashKey + "/" + key;
-                HttpURLConnection connection = doPostRequest(url, body);
-                int statusCode = connection.getResponseCode();
+                HttpClient.Response reply = doKeyRequest(hostInfo, hashKey, "/put/" + hashKey + "/" + key, body);
+                int statusCode = reply.getStatusCode();
 
                 response.setStatus(statusCode);
                 if (statusCode == HttpServletResponse.SC_FOUND ||
-                        statusCode == HttpServletResponse.SC_TEMPORARY_REDIRECT) {
-                    return parseResponse(connection).toString();
+                        statusCode == HttpServletResponse.SC_TEMPORARY_REDIRECT || isQuorumFailure(statusCode)) {
+                    return parseResponse(reply).toString();
                 } else {
                     return null;
                 }
@@ -97,12 +128,89 @@ public class RequestController extends HttpRequest {
 
                 return null;
             }
+        } catch (SocketTimeoutException ste) {
+            response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+
+            return null;
         } catch (IOException ioe) {
             ioe.printStackTrace();
-            Driver.ring.remove(hostInfo[0]);
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
 
             return null;
+        } finally {
+            Driver.readCache.invalidate(key);
+        }
+    }
+
+    /**
+     * mget() interface to read multiple keys in one request.
+     * The keys are grouped by their coordinators, and each coordinator gets one request with all of its keys.
+     * Response with the status and data of each key.
+     *
+     * @param requestBody
+     * @param response
+     * @return String
+     */
+    @RequestMapping(value = "/mget", method = RequestMethod.POST, produces = "application/json")
+    public String mget(@RequestBody String requestBody, HttpServletResponse response) {
+        System.out.println("[Request] POST /mget requestBody = " +
+                requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+
+        JsonArray keys;
+
+        try {
+            keys = parseJson(requestBody).getAsJsonArray();
+        } catch (JsonParseException | IllegalStateException ignored) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+            return null;
+        }
+
+        BatchRequest batch = new BatchRequest("/mget");
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i).getAsString();
+            batch.add(getHashKey(key), key, null);
+        }
+
+        return batch.start().toString();
+    }
+
+    /**
+     * mput() interface to write multiple keys in one request.
+     * The keys are grouped by their coordinators, and each coordinator gets one request with all of its keys.
+     * Response with the status and data of each key. The keys are removed from the cache like in put().
+     *
+     * @param requestBody
+     * @param response
+     * @return String
+     */
+    @RequestMapping(value = "/mput", method = RequestMethod.POST, produces = "application/json")
+    public String mput(@RequestBody String requestBody, HttpServletResponse response) {
+        System.out.println("[Request] POST /mput requestBody = " +
+                requestBody.replaceAll(System.lineSeparator(), "").replaceAll("\t", ""));
+
+        JsonObject body;
+
+        try {
+            body = parseJson(requestBody).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException ignored) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+            return null;
+        }
+
+        BatchRequest batch = new BatchRequest("/mput");
+        for (Map.Entry<String, JsonElement> entry : body.entrySet()) {
+            Driver.readCache.invalidate(entry.getKey());
+            batch.add(getHashKey(entry.getKey()), entry.getKey(), entry.getValue());
+        }
+
+        try {
+            return batch.start().toString();
+        } finally {
+            for (String key : body.keySet()) {
+                Driver.readCache.invalidate(key);
+            }
         }
     }
 
@@ -132,28 +240,90 @@ public class RequestController extends HttpRequest {
         MergeReconciliation reconciliation = new MergeReconciliation();
         JsonObject mergedData = reconciliation.merge(body);
 
+        Driver.readCache.invalidate(key);
         try {
             if (hostInfo[1] != null) {
-                String url = hostInfo[1] + "/reconcile/merge/" + hashKey + "/" + key;
-                HttpURLConnection connection = doPostRequest(url, mergedData);
+                HttpClient.Response reply = doKeyRequest(hostInfo, hashKey
+                        , "/reconcile/merge/" + hashKey + "/" + key, mergedData);
 
-                response.setStatus(connection.getResponseCode());
+                response.setStatus(reply.getStatusCode());
             } else {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
             }
+        } catch (SocketTimeoutException ste) {
+            response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
         } catch (IOException ioe) {
-            Driver.ring.remove(hostInfo[0]);
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } finally {
+            Driver.readCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Helper method to read a cached key again in the background, and cache the versions if the key
+     * was not written meanwhile. The cached versions are kept if the key cannot be read.
+     *
+     * @param hashKey
+     * @param key
+     */
+    private void refresh(int hashKey, String key) {
+        long stamp = Driver.readCache.stamp(key);
+        String[] hostInfo = Driver.ring.findCoordinatorForKey(hashKey);
+
+        try {
+            if (hostInfo[1] != null) {
+                HttpClient.Response reply = doKeyRequest(hostInfo, hashKey, "/get/" + hashKey + "/" + key, null);
+
+                if (reply.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                    Driver.readCache.put(key, parseResponse(reply), stamp);
+                    return;
+                }
+            }
+        } catch (IOException | JsonParseException ignored) {}
+
+        Driver.readCache.release(key);
+    }
+
+    /**
+     * Return true if a Cache-Control header has a directive.
+     *
+     * @param cacheControl
+     * @param directive
+     * @return boolean
+     */
+    private boolean hasDirective(String cacheControl, String directive) {
+        if (cacheControl == null) {
+            return false;
         }
+
+        for (String value : cacheControl.split(",")) {
+            if (value.trim().equalsIgnoreCase(directive)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return true if the backend could not reach the quorum or the deadline of the request,
+     * the response body then tells how many replicas were required and acknowledged.
+     *
+     * @param statusCode
+     * @return boolean
+     */
+    private boolean isQuorumFailure(int statusCode) {
+        return statusCode == HttpServletResponse.SC_SERVICE_UNAVAILABLE ||
+                statusCode == HttpServletResponse.SC_GATEWAY_TIMEOUT;
     }
 
     /**
-     * Hash the key to fit in the ring.
+     * Hash the key to fit in the ring, keys with a negative hash code wrap around like the others.
      *
      * @param key
      * @return int
      */
     private int getHashKey(String key) {
-        return key.hashCode() % Driver.ring.getMaxNumOfReplicas();
+        return Math.floorMod(key.hashCode(), Driver.ring.getMaxNumOfReplicas());
     }
 }
\ No newline at end of file
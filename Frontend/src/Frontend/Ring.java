@@ -4,10 +4,16 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Ring class to store the detail of the backend replicas.
+ *
+ * The coordinators that backend replicas redirected the keys to are kept as overrides of the ring,
+ * until the membership changes, since a redirect means the ring of the frontend is stale for the key.
  */
 public class Ring {
     private final ReentrantReadWriteLock lock;
@@ -15,6 +21,7 @@ public class Ring {
     private final Replica[] replicas;
     private final Map<String, Integer> addLog;
     private final Set<String> deleteLog;
+    private final ConcurrentMap<Integer, String[]> overrides;
     private volatile int N;
     private volatile int W;
     private volatile int R;
@@ -30,6 +37,7 @@ public class Ring {
         this.replicas = new Replica[maximumNumberOfReplicas];
         this.addLog = new HashMap<>();
         this.deleteLog = new HashSet<>();
+        this.overrides = new ConcurrentHashMap<>();
     }
 
     /**
@@ -66,8 +74,12 @@ public class Ring {
 
         this.lock.writeLock().lock();
 
+        int logSize = this.addLog.size() + this.deleteLog.size();
         addReplicas(inAddLog, inDeleteLog, inReplicas);
         deleteReplicas(inDeleteLog);
+        if (this.addLog.size() + this.deleteLog.size() != logSize) {
+            this.overrides.clear();
+        }
 
         this.lock.writeLock().unlock();
     }
@@ -174,6 +186,7 @@ public class Ring {
         int key = this.addLog.get(id);
         this.replicas[key] = null;
         this.deleteLog.add(id);
+        this.overrides.clear();
         System.out.println("[Membership] Removed node " + id +
                 " from ring at key: " + key);
 
@@ -190,24 +203,57 @@ public class Ring {
     }
 
     /**
-     * Randomly choose a replication coordinator from the preference list of a key.
+     * Choose a replication coordinator from the preference list of a key.
      * That means any node in the preference could be the coordinator to replicate the data.
+     * Pick two nodes at random and take the one with the lower load, so the requests move away from
+     * slow or busy nodes. Nodes with an open circuit are skipped, unless the circuits of all of them are open.
+     * If a backend replica redirected the key since the last membership change, the node it redirected to is
+     * chosen instead, as long as its circuit is not open.
      *
      * @param hashKey
      * @return String[]
      */
     public String[] findCoordinatorForKey(int hashKey) {
-        int randomPick, keyOfHost;
-        Random random = new Random();
+        String[] override = this.overrides.get(hashKey);
+        if (override != null && Driver.circuitBreaker.isAvailable(override[0])) {
+            return override.clone();
+        }
+
         String[] hostInfo = new String[2];
 
         this.lock.readLock().lock();
 
-        List<Integer> preferenceList = getPreferenceList(hashKey);
-        randomPick = random.nextInt(preferenceList.size());
-        keyOfHost = preferenceList.get(randomPick);
-        hostInfo[0] = this.replicas[keyOfHost].getId();
-        hostInfo[1] = this.replicas[keyOfHost].getHost() + ":" + this.replicas[keyOfHost].getPort();
+        int[] preferenceList = new int[Math.min(this.N, this.maximumNumberOfReplicas)];
+        int size = getPreferenceList(hashKey, preferenceList);
+        int available = 0;
+        for (int i = 0; i < size; i++) {
+            if (Driver.circuitBreaker.isAvailable(this.replicas[preferenceList[i]].getId())) {
+                preferenceList[available++] = preferenceList[i];
+            }
+        }
+        if (available > 0) {
+            size = available;
+        }
+
+        if (size > 0) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int keyOfHost = preferenceList[random.nextInt(size)];
+
+            if (size > 1) {
+                int first = random.nextInt(size);
+                int second = random.nextInt(size - 1);
+                if (second >= first) {
+                    second++;
+                }
+
+                keyOfHost = (Driver.loadTracker.getCost(this.replicas[preferenceList[second]].getId())
+                        < Driver.loadTracker.getCost(this.replicas[preferenceList[first]].getId()))
+                        ? preferenceList[second] : preferenceList[first];
+            }
+
+            hostInfo[0] = this.replicas[keyOfHost].getId();
+            hostInfo[1] = this.replicas[keyOfHost].getHost() + ":" + this.replicas[keyOfHost].getPort();
+        }
 
         this.lock.readLock().unlock();
 
@@ -215,26 +261,71 @@ public class Ring {
     }
 
     /**
-     * Get the preference list of a key.
+     * Learn the coordinator a backend replica redirected a key to, and choose it for the key until
+     * the membership changes. If the node is not in the ring yet, it is known by its address.
+     *
+     * @param hashKey
+     * @param address
+     * @return String[]
+     */
+    public String[] learnCoordinator(int hashKey, String address) {
+        String[] hostInfo = new String[] {address, address};
+
+        this.lock.readLock().lock();
+
+        for (Replica replica : this.replicas) {
+            if (replica != null && address.equals(replica.getHost() + ":" + replica.getPort())) {
+                hostInfo[0] = replica.getId();
+                break;
+            }
+        }
+
+        this.lock.readLock().unlock();
+
+        this.overrides.put(hashKey, hostInfo);
+        System.out.println("[Membership] Learned coordinator " + hostInfo[0] + " for key: " + hashKey);
+
+        return hostInfo.clone();
+    }
+
+    /**
+     * Return the learned coordinator of each key in Json format.
+     *
+     * @return JsonObject
+     */
+    public JsonObject getOverrides() {
+        JsonObject overrides = new JsonObject();
+
+        for (Map.Entry<Integer, String[]> entry : this.overrides.entrySet()) {
+            JsonObject coordinator = new JsonObject();
+            coordinator.addProperty("id", entry.getValue()[0]);
+            coordinator.addProperty("address", entry.getValue()[1]);
+            overrides.add(String.valueOf(entry.getKey()), coordinator);
+        }
+
+        return overrides;
+    }
+
+    /**
+     * Fill the preference list of a key with the keys of its nodes, and return the number of nodes.
      *
      * @param hashKey
-     * @return List
+     * @param preferenceList
+     * @return int
      */
-    private List<Integer> getPreferenceList(int hashKey) {
-        List<Integer> preferenceList  = new ArrayList<>();
+    private int getPreferenceList(int hashKey, int[] preferenceList) {
         int startingPoint = hashKey;
         int totalNodeVisited = 0;
 
         do {
             if (this.replicas[hashKey] != null) {
-                preferenceList.add(hashKey);
-                totalNodeVisited++;
+                preferenceList[totalNodeVisited++] = hashKey;
             }
 
             hashKey = (hashKey + 1) % this.maximumNumberOfReplicas;
-        } while (totalNodeVisited < this.N && hashKey != startingPoint);
+        } while (totalNodeVisited < preferenceList.length && hashKey != startingPoint);
 
-        return preferenceList;
+        return totalNodeVisited;
     }
 
     /**
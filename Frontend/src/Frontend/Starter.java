@@ -16,10 +16,10 @@ public class Starter extends HttpRequest {
      */
     public void initializeRing() throws Exception {
         String url = Driver.coordinator + "/seeds";
-        HttpURLConnection connection = doGetRequest(url);
+        HttpClient.Response response = doGetRequest(url);
 
-        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-            JsonObject responseBody = parseResponse(connection).getAsJsonObject();
+        if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
+            JsonObject responseBody = parseResponse(response).getAsJsonObject();
             initRing(responseBody);
         } else {
             throw new Exception("[System] Failed to initialize to the membership.");
@@ -0,0 +1,47 @@
+package Frontend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LoadTrackerTest class to check that the cost of a replica follows its latency and its requests in flight.
+ */
+public class LoadTrackerTest {
+
+    /**
+     * A replica that has not been asked costs nothing, and one with requests in flight costs more.
+     */
+    @Test
+    public void countsRequestsInFlight() {
+        LoadTracker loadTracker = new LoadTracker();
+        assertEquals(0, loadTracker.getCost("a"), 0);
+
+        long start = loadTracker.start("a");
+        loadTracker.finish("a", start - 1000000, false);
+        double idle = loadTracker.getCost("a");
+
+        loadTracker.start("a");
+        loadTracker.start("a");
+        assertTrue(loadTracker.getCost("a") > idle);
+    }
+
+    /**
+     * A request the replica did not answer counts as a very slow one, and a forgotten replica costs nothing.
+     */
+    @Test
+    public void penalizesFailedRequests() {
+        LoadTracker loadTracker = new LoadTracker();
+
+        long start = loadTracker.start("fast");
+        loadTracker.finish("fast", start - 1000000, false);
+        start = loadTracker.start("failed");
+        loadTracker.finish("failed", start, true);
+
+        assertTrue(loadTracker.getCost("failed") > 1000 * loadTracker.getCost("fast"));
+
+        loadTracker.remove("failed");
+        assertEquals(0, loadTracker.getCost("failed"), 0);
+    }
+}
@@ -0,0 +1,134 @@
+package Frontend;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ReadCacheTest class to check that a read is only cached if its key was not written since its stamp,
+ * that older versions never replace newer ones, and that the cache stays within its bounds.
+ */
+public class ReadCacheTest {
+    private ReadCache readCache;
+
+    @Before
+    public void setUp() {
+        this.readCache = new ReadCache();
+        this.readCache.setMaxEntries(2);
+        this.readCache.setStaleness(60000);
+    }
+
+    /**
+     * Nothing is cached while the cache is off.
+     */
+    @Test
+    public void offByDefault() {
+        ReadCache off = new ReadCache();
+        off.put("k", versions(1), off.stamp("k"));
+
+        assertFalse(off.isEnabled("k"));
+        assertNull(off.get("k", () -> {}));
+    }
+
+    /**
+     * A read that started before a write of its key is not cached, a read that started after it is.
+     */
+    @Test
+    public void skipsReadStampedBeforeWrite() {
+        long stamp = this.readCache.stamp("k");
+        this.readCache.invalidate("k");
+        this.readCache.put("k", versions(1), stamp);
+        assertNull(this.readCache.get("k", () -> {}));
+
+        this.readCache.put("k", versions(2), this.readCache.stamp("k"));
+        assertEquals(versions(2).toString(), this.readCache.get("k", () -> {}));
+
+        this.readCache.invalidate("k");
+        assertNull(this.readCache.get("k", () -> {}));
+    }
+
+    /**
+     * Versions older than the cached ones are dropped, and newer ones replace them.
+     */
+    @Test
+    public void keepsNewerVersions() {
+        this.readCache.put("k", versions(2), this.readCache.stamp("k"));
+        this.readCache.put("k", versions(1), this.readCache.stamp("k"));
+        assertEquals(versions(2).toString(), this.readCache.get("k", () -> {}));
+
+        this.readCache.put("k", versions(3), this.readCache.stamp("k"));
+        assertEquals(versions(3).toString(), this.readCache.get("k", () -> {}));
+    }
+
+    /**
+     * The least recently used key is evicted once there are more keys than the maximum entries,
+     * and only the keys in the keyspaces are cached.
+     */
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        this.readCache.put("a", versions(1), this.readCache.stamp("a"));
+        this.readCache.put("b", versions(1), this.readCache.stamp("b"));
+        this.readCache.get("a", () -> {});
+        this.readCache.put("c", versions(1), this.readCache.stamp("c"));
+
+        assertNull(this.readCache.get("b", () -> {}));
+        assertEquals(versions(1).toString(), this.readCache.get("a", () -> {}));
+
+        this.readCache.setKeyspaces("user:,cart:");
+        assertTrue(this.readCache.isEnabled("cart:1"));
+        assertFalse(this.readCache.isEnabled("order:1"));
+    }
+
+    /**
+     * A stale entry is still served, and refreshed in the background once at a time.
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void refreshesStaleEntryOnce() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger refreshes = new AtomicInteger();
+        Runnable refresh = () -> {
+            refreshes.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+            this.readCache.put("k", versions(2), this.readCache.stamp("k"));
+            done.countDown();
+        };
+
+        this.readCache.put("k", versions(1), this.readCache.stamp("k"));
+        this.readCache.setStaleness(0);
+        Thread.sleep(1);
+
+        assertEquals(versions(1).toString(), this.readCache.get("k", refresh));
+        assertEquals(versions(1).toString(), this.readCache.get("k", refresh));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, refreshes.get());
+        assertEquals(versions(2).toString(), this.readCache.get("k", () -> {}));
+    }
+
+    /**
+     * Helper method to create the versions of a key with one clock at a timestamp.
+     *
+     * @param timestamp
+     * @return JsonArray
+     */
+    private JsonArray versions(int timestamp) {
+        return new JsonParser().parse("[{\"items\":[\"v" + timestamp + "\"],"
+                + "\"clocks\":[{\"node\":\"a\",\"timestamp\":" + timestamp + "}]}]").getAsJsonArray();
+    }
+}